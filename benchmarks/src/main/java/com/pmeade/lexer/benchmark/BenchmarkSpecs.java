@@ -0,0 +1,78 @@
+/*
+ * BenchmarkSpecs.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer.benchmark;
+
+import com.pmeade.lexer.CorpusGenerator;
+import com.pmeade.lexer.TokenType;
+import com.pmeade.lexer.TokenTypeBuilder;
+import com.pmeade.lexer.example.MathLexer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * BenchmarkSpecs provides the lexical specifications and inputs shared by
+ * the benchmarks. MathLexer.MATH_TOKENS is the baseline specification;
+ * larger specifications pad it with keywords that never occur in the
+ * input, which is what an engine pays for a large specification when
+ * most of it is irrelevant at any given position.
+ */
+public class BenchmarkSpecs
+{
+    /**
+     * Seed of the generated input, so every run lexes the same text.
+     */
+    public static final long SEED = 0x1e8e4L;
+
+    /**
+     * Obtain a specification of the provided size.
+     * @param size the number of TokenType objects; at least the size of
+     *             MathLexer.MATH_TOKENS
+     * @return List of TokenType objects, in priority order
+     * @throws IllegalArgumentException if size is smaller than the baseline
+     */
+    public static List<TokenType> spec(int size) {
+        int baseline = MathLexer.MATH_TOKENS.size();
+        if(size < baseline) throw new IllegalArgumentException();
+        if(size == baseline) return MathLexer.MATH_TOKENS;
+        List<TokenType> tokenTypes = new ArrayList<TokenType>();
+        for(int i=0; i<size-baseline; i++) {
+            tokenTypes.add(new TokenTypeBuilder()
+                .name("KEYWORD_" + i)
+                .pattern("keyword" + i)
+                .create());
+        }
+        tokenTypes.addAll(MathLexer.MATH_TOKENS);
+        return Collections.unmodifiableList(tokenTypes);
+    }
+
+    /**
+     * Generate a mathematical expression of about the provided length,
+     * which lexes without error under MathLexer.MATH_TOKENS.
+     * @param length the number of characters to generate
+     * @return String of at least the provided length
+     * @see CorpusGenerator
+     */
+    public static String mathInput(int length) {
+        return new CorpusGenerator(MathLexer.MATH_TOKENS)
+            .seed(SEED)
+            .weight("WHITESPACE", 2.0)
+            .generate(length);
+    }
+}
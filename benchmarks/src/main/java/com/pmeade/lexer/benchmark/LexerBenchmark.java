@@ -0,0 +1,137 @@
+/*
+ * LexerBenchmark.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer.benchmark;
+
+import com.pmeade.lexer.ExecutionMode;
+import com.pmeade.lexer.Lexer;
+import com.pmeade.lexer.LexerSpec;
+import com.pmeade.lexer.SpecializedLexer;
+import com.pmeade.lexer.Token;
+import com.pmeade.lexer.TokenStream;
+import com.pmeade.lexer.TokenType;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * LexerBenchmark measures the cost of lexing, per Token with next() and
+ * nextNoSkip(), and per input with scan().
+ *
+ * The mode parameter selects the engine: a Lexer running its matchers
+ * CONCURRENT(ly), SEQUENTIAL(ly), or ADAPTIVE(ly), or a SPECIALIZED
+ * lexer, which is a SpecializedLexer sharing one LexerSpec.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LexerBenchmark
+{
+    /**
+     * The length of the input, in characters.
+     */
+    @Param({"1024", "16384"})
+    public int inputSize;
+
+    /**
+     * The number of TokenType objects in the specification.
+     */
+    @Param({"9", "36", "144"})
+    public int specSize;
+
+    /**
+     * The engine performing the lexical analysis.
+     */
+    @Param({"CONCURRENT", "SEQUENTIAL", "ADAPTIVE", "SPECIALIZED"})
+    public String mode;
+
+    /**
+     * The engine under test, reset whenever it runs out of input.
+     */
+    private TokenStream lexer;
+
+    /**
+     * Construct the engine under test, and check that it lexes the input
+     * without error.
+     */
+    @Setup
+    public void setUp() {
+        List<TokenType> spec = BenchmarkSpecs.spec(specSize);
+        String input = BenchmarkSpecs.mathInput(inputSize);
+        if("SPECIALIZED".equals(mode)) {
+            lexer = new SpecializedLexer(LexerSpec.compile(spec), input);
+        } else {
+            lexer = new Lexer(spec, input, ExecutionMode.valueOf(mode));
+        }
+        // the input must lex without error, or we are measuring the error
+        lexer.scanNoSkip();
+        if(lexer.isError()) throw new IllegalStateException(mode);
+        lexer.reset();
+    }
+
+    /**
+     * Obtain the next non-skip Token.
+     * @return the next non-skip Token
+     */
+    @Benchmark
+    public Token next() {
+        Token token = lexer.next();
+        if(token == null) {
+            lexer.reset();
+            token = lexer.next();
+        }
+        return token;
+    }
+
+    /**
+     * Obtain the next Token, skipped or not.
+     * @return the next Token
+     */
+    @Benchmark
+    public Token nextNoSkip() {
+        Token token = lexer.nextNoSkip();
+        if(token == null) {
+            lexer.reset();
+            token = lexer.nextNoSkip();
+        }
+        return token;
+    }
+
+    /**
+     * Lex the entire input.
+     * @return List of the non-skip Token objects of the input
+     */
+    @Benchmark
+    public List<Token> scan() {
+        lexer.reset();
+        return lexer.scan();
+    }
+}
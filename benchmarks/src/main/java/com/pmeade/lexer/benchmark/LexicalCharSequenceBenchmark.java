@@ -0,0 +1,114 @@
+/*
+ * LexicalCharSequenceBenchmark.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer.benchmark;
+
+import com.pmeade.lexer.LexicalCharSequence;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * LexicalCharSequenceBenchmark measures the operations the Lexer performs
+ * on its input, for a LexicalCharSequence and for the plain String it
+ * decorates. This is where the performance claims in the documentation of
+ * LexicalCharSequence can be checked.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LexicalCharSequenceBenchmark
+{
+    /**
+     * The length of the input, in characters.
+     */
+    @Param({"1024", "65536"})
+    public int inputSize;
+
+    /**
+     * The kind of CharSequence under test.
+     */
+    @Param({"lexical", "string"})
+    public String sequence;
+
+    /**
+     * The input, as the kind of CharSequence under test.
+     */
+    private CharSequence input;
+
+    /**
+     * A short subSequence of the input.
+     */
+    private CharSequence token;
+
+    /**
+     * Prepare the input.
+     */
+    @Setup
+    public void setUp() {
+        String source = BenchmarkSpecs.mathInput(inputSize);
+        input = "lexical".equals(sequence) ? new LexicalCharSequence(source) : source;
+        // an eight character token, half way through the input
+        int middle = input.length() / 2;
+        token = input.subSequence(middle, middle + 8);
+    }
+
+    /**
+     * Trim one token off the front of the input, as the Lexer does after
+     * every Token.
+     * @return the remaining input
+     */
+    @Benchmark
+    public CharSequence subSequence() {
+        return input.subSequence(8, input.length());
+    }
+
+    /**
+     * Read every character of the input.
+     * @return a checksum of the characters, so the reads are not eliminated
+     */
+    @Benchmark
+    public int charAt() {
+        int sum = 0;
+        for(int i=0; i<input.length(); i++) {
+            sum += input.charAt(i);
+        }
+        return sum;
+    }
+
+    /**
+     * Obtain the text of a token.
+     * @return the text of the token
+     */
+    @Benchmark
+    public String toText() {
+        return token.toString();
+    }
+}
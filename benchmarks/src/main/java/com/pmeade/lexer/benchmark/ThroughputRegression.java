@@ -0,0 +1,369 @@
+/*
+ * ThroughputRegression.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer.benchmark;
+
+import com.pmeade.lexer.CorpusGenerator;
+import com.pmeade.lexer.ExecutionMode;
+import com.pmeade.lexer.Lexer;
+import com.pmeade.lexer.LexerSpec;
+import com.pmeade.lexer.SpecializedLexer;
+import com.pmeade.lexer.Token;
+import com.pmeade.lexer.TokenStream;
+import com.pmeade.lexer.example.MathLexer;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * ThroughputRegression lexes a synthetic corpus with each engine, and
+ * compares the results against stored baselines. It records, for each
+ * engine:
+ *
+ * <ul>
+ *   <li>relativeThroughput - chars lexed per second, divided by the chars
+ *       per second of the reference workload</li>
+ *   <li>bytesPerToken - bytes allocated on the heap per Token</li>
+ *   <li>tokensPerSecond - Token objects lexed per second</li>
+ *   <li>megabytesPerSecond - MB of input (2^20 chars) lexed per second</li>
+ * </ul>
+ *
+ * Tokens and MB per second depend on the machine, so they are stored for
+ * information only: they are never compared, but a regression prints them
+ * beside their baselines, to trace it in real units. The reference workload is a plain java.util.regex scan of a
+ * corpus, which does not touch the lexer; timed just before every run of
+ * each engine, it stands in for the speed of the machine at that moment,
+ * and the ratio to it carries over from one machine to another far better
+ * than a raw rate does. It does not carry over exactly (a different CPU or
+ * JVM favors some code over other code), so baselines from a very
+ * different machine may still need to be recorded again there.
+ *
+ * It exits with status 1 if any throughput falls more than the tolerance
+ * below its baseline, or any allocation rises more than the tolerance
+ * above it. Run it with --record to store the current results as the new
+ * baselines instead:
+ *
+ * <code>
+ * java -cp target/benchmarks.jar com.pmeade.lexer.benchmark.ThroughputRegression
+ *     [--record] [--tolerance 0.25] baselines.properties
+ * </code>
+ *
+ * The benchmarks module runs it with: mvn verify -Pregression
+ */
+public class ThroughputRegression
+{
+    /**
+     * Run the throughput regression suite.
+     * @param args command line arguments; see the class documentation
+     * @throws IOException if the baselines can not be read or written
+     */
+    public static void main(String[] args) throws IOException
+    {
+        boolean record = false;
+        double tolerance = DEFAULT_TOLERANCE;
+        File baselineFile = null;
+        for(int i=0; i<args.length; i++) {
+            if(args[i].equals("--record")) {
+                record = true;
+            } else if(args[i].equals("--tolerance") && i+1 < args.length) {
+                tolerance = Double.parseDouble(args[++i]);
+            } else {
+                baselineFile = new File(args[i]);
+            }
+        }
+        if(baselineFile == null) {
+            System.err.println("usage: ThroughputRegression [--record] [--tolerance t] baselines.properties");
+            System.exit(2);
+        }
+        Properties results = new Properties();
+        for(Engine engine : Engine.values()) {
+            measure(engine, results);
+        }
+        if(record) {
+            OutputStream out = new FileOutputStream(baselineFile);
+            try {
+                results.store(out, "ThroughputRegression baselines");
+            } finally {
+                out.close();
+            }
+            System.out.println("Recorded baselines to " + baselineFile);
+            // the CONCURRENT Lexer leaves idle pool threads behind
+            System.exit(0);
+        }
+        Properties baselines = new Properties();
+        InputStream in = new FileInputStream(baselineFile);
+        try {
+            baselines.load(in);
+        } finally {
+            in.close();
+        }
+        System.exit(compare(results, baselines, tolerance) ? 0 : 1);
+    }
+
+    /**
+     * Generate the corpus of the given size.
+     * @param size the length of the corpus, in characters
+     * @return the corpus
+     */
+    private static String corpus(int size) {
+        return new CorpusGenerator(MathLexer.MATH_TOKENS)
+            .seed(BenchmarkSpecs.SEED)
+            .weight("WHITESPACE", 2.0)
+            .generate(size);
+    }
+
+    /**
+     * Time one scan of the reference workload.
+     * @param matcher Matcher of REFERENCE_PATTERN over its corpus
+     * @return the time the scan took, in nanoseconds
+     */
+    private static long scanReference(Matcher matcher) {
+        long timeBefore = System.nanoTime();
+        matcher.reset();
+        while(matcher.find()) {
+            // every match is a step of the workload
+        }
+        return System.nanoTime() - timeBefore;
+    }
+
+    /**
+     * Measure an engine, lexing its corpus several times. The reference
+     * workload is timed just before each run, so both see the machine in
+     * the same state, and the throughput relative to it is the median over
+     * the runs, which a passing spike of load on the machine does not move.
+     * The allocation is the least over the runs, and the tokens and MB per
+     * second are those of the fastest run.
+     * @param engine the engine to be measured
+     * @param results Properties to receive the results
+     */
+    private static void measure(Engine engine, Properties results) {
+        String corpus = corpus(engine.corpusSize);
+        String referenceCorpus = corpus(REFERENCE_CORPUS_SIZE);
+        Matcher reference = REFERENCE_PATTERN.matcher(referenceCorpus);
+        LexerSpec spec = LexerSpec.compile(MathLexer.MATH_TOKENS);
+        double bestSeconds = Double.MAX_VALUE;
+        double[] ratios = new double[MEASURED_RUNS];
+        long bestBytes = Long.MAX_VALUE;
+        int tokens = 0;
+        for(int run=0; run<WARMUP_RUNS+MEASURED_RUNS; run++) {
+            long referenceTime = scanReference(reference);
+            TokenStream lexer = engine.create(spec, corpus);
+            long bytesBefore = allocatedBytes();
+            long timeBefore = System.nanoTime();
+            List<Token> result = lexer.scanNoSkip();
+            long time = System.nanoTime() - timeBefore;
+            long bytes = allocatedBytes() - bytesBefore;
+            if(lexer.isError()) {
+                throw new IllegalStateException(engine + " failed to lex the corpus");
+            }
+            if(run < WARMUP_RUNS) continue;
+            tokens = result.size();
+            bestSeconds = Math.min(bestSeconds, time / 1e9);
+            ratios[run - WARMUP_RUNS] = ((double) corpus.length() / time)
+                    / ((double) referenceCorpus.length() / referenceTime);
+            bestBytes = Math.min(bestBytes, bytes);
+        }
+        double tokensPerSecond = tokens / bestSeconds;
+        double megabytesPerSecond = corpus.length() / bestSeconds / (1 << 20);
+        Arrays.sort(ratios);
+        double relativeThroughput = ratios[MEASURED_RUNS / 2];
+        double bytesPerToken = (double) bestBytes / tokens;
+        results.setProperty(engine.key + ".relativeThroughput", format(relativeThroughput));
+        results.setProperty(engine.key + ".bytesPerToken", format(bytesPerToken));
+        results.setProperty(engine.key + ".tokensPerSecond", format(tokensPerSecond));
+        results.setProperty(engine.key + ".megabytesPerSecond", format(megabytesPerSecond));
+        System.out.println(String.format(Locale.ROOT,
+                "%-12s %14.1f tokens/s %10.3f MB/s %10.4f x reference %10.1f bytes/token",
+                engine.key, tokensPerSecond, megabytesPerSecond, relativeThroughput, bytesPerToken));
+    }
+
+    /**
+     * Compare results against baselines. The informational results are
+     * not compared; they are printed along with any regression of their
+     * engine.
+     * @param results the results of this run
+     * @param baselines the stored baselines
+     * @param tolerance the fraction by which a result may be worse than
+     *                  its baseline
+     * @return true, if no result regressed, otherwise false
+     */
+    private static boolean compare(Properties results, Properties baselines, double tolerance) {
+        boolean passed = true;
+        for(String key : results.stringPropertyNames()) {
+            if(isInformational(key)) continue;
+            String baselineText = baselines.getProperty(key);
+            if(baselineText == null) {
+                System.out.println("no baseline: " + key);
+                continue;
+            }
+            double result = Double.parseDouble(results.getProperty(key));
+            double baseline = Double.parseDouble(baselineText);
+            boolean higherIsBetter = (key.endsWith(".bytesPerToken") == false);
+            boolean regressed = higherIsBetter
+                    ? result < baseline * (1.0 - tolerance)
+                    : result > baseline * (1.0 + tolerance);
+            if(regressed) {
+                System.out.println("REGRESSION: " + key + " = " + format(result)
+                        + ", baseline " + format(baseline));
+                String engine = key.substring(0, key.indexOf('.'));
+                for(String suffix : INFORMATIONAL) {
+                    System.out.println("    " + engine + suffix + " = "
+                            + results.getProperty(engine + suffix)
+                            + ", baseline " + baselines.getProperty(engine + suffix));
+                }
+                passed = false;
+            }
+        }
+        return passed;
+    }
+
+    /**
+     * Determine if a result is stored for information only.
+     * @param key the key of the result
+     * @return true, if the result is never compared against its baseline
+     */
+    private static boolean isInformational(String key) {
+        for(String suffix : INFORMATIONAL) {
+            if(key.endsWith(suffix)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Obtain the number of bytes allocated so far by every live thread.
+     * The CONCURRENT Lexer allocates on its pool threads, so the calling
+     * thread alone would not tell the whole story.
+     * @return bytes allocated by all live threads, or 0 if the JVM can
+     *         not tell
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if((bean instanceof com.sun.management.ThreadMXBean) == false) return 0L;
+        com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+        long total = 0L;
+        for(long bytes : sunBean.getThreadAllocatedBytes(bean.getAllThreadIds())) {
+            if(bytes > 0L) total += bytes;
+        }
+        return total;
+    }
+
+    /**
+     * Format a measurement for the baselines file.
+     * @param value the measurement
+     * @return the measurement, to six significant digits
+     */
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.6g", value);
+    }
+
+    /**
+     * The engines under test, and the size of the corpus each one lexes;
+     * big enough to take a fraction of a second.
+     */
+    private enum Engine
+    {
+        CONCURRENT("concurrent", 1 << 15),
+        SEQUENTIAL("sequential", 1 << 19),
+        ADAPTIVE("adaptive", 1 << 19),
+        SPECIALIZED("specialized", 1 << 22);
+
+        /**
+         * Construct an Engine.
+         * @param key the prefix of the properties of the engine
+         * @param corpusSize the length of the corpus, in characters
+         */
+        Engine(String key, int corpusSize) {
+            this.corpusSize = corpusSize;
+            this.key = key;
+        }
+
+        /**
+         * Create a lexer of this kind.
+         * @param spec the compiled MathLexer specification
+         * @param corpus the input to be lexed
+         * @return TokenStream over the corpus
+         */
+        TokenStream create(LexerSpec spec, String corpus) {
+            switch(this) {
+                case CONCURRENT:
+                    return new Lexer(spec.getTokenTypes(), corpus, ExecutionMode.CONCURRENT);
+                case SEQUENTIAL:
+                    return new Lexer(spec.getTokenTypes(), corpus, ExecutionMode.SEQUENTIAL);
+                case ADAPTIVE:
+                    return new Lexer(spec.getTokenTypes(), corpus, ExecutionMode.ADAPTIVE);
+                default:
+                    return new SpecializedLexer(spec, corpus);
+            }
+        }
+
+        /**
+         * The length of the corpus, in characters.
+         */
+        final int corpusSize;
+
+        /**
+         * The prefix of the properties of the engine.
+         */
+        final String key;
+    }
+
+    /**
+     * The default fraction by which a result may be worse than its baseline.
+     */
+    private static final double DEFAULT_TOLERANCE = 0.25;
+
+    /**
+     * The suffixes of the results stored for information only; they depend
+     * on the machine, so they are not compared against their baselines.
+     */
+    private static final String[] INFORMATIONAL = {
+        ".tokensPerSecond", ".megabytesPerSecond"
+    };
+
+    /**
+     * The number of runs measured, after the warmup runs.
+     */
+    private static final int MEASURED_RUNS = 5;
+
+    /**
+     * The length of the corpus of the reference workload, in characters.
+     */
+    private static final int REFERENCE_CORPUS_SIZE = 1 << 20;
+
+    /**
+     * The Pattern of the reference workload: one match per number, word,
+     * run of whitespace, or other char.
+     */
+    private static final Pattern REFERENCE_PATTERN =
+            Pattern.compile("[0-9]+|[A-Za-z_][A-Za-z_0-9]*|\\s+|.", Pattern.DOTALL);
+
+    /**
+     * The number of runs to warm up the JIT compiler before measuring.
+     */
+    private static final int WARMUP_RUNS = 3;
+}
@@ -0,0 +1,127 @@
+/*
+ * TokenTypeBenchmark.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer.benchmark;
+
+import com.pmeade.lexer.TokenType;
+import com.pmeade.lexer.example.MathLexer;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * TokenTypeBenchmark measures matching the Pattern of a single TokenType
+ * of MathLexer.MATH_TOKENS against input that begins with a Token of that
+ * type, and against input that does not.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenTypeBenchmark
+{
+    /**
+     * The name of the TokenType under test.
+     */
+    @Param({"PLUS", "FLOAT_LITERAL", "INTEGER_LITERAL", "WHITESPACE"})
+    public String tokenType;
+
+    /**
+     * Input beginning with a Token of the TokenType under test.
+     */
+    private String hit;
+
+    /**
+     * Input that the TokenType under test does not match.
+     */
+    private String miss;
+
+    /**
+     * The TokenType under test.
+     */
+    private TokenType type;
+
+    /**
+     * Matcher reused across invocations, over the hit input.
+     */
+    private Matcher matcher;
+
+    /**
+     * Prepare the input.
+     */
+    @Setup
+    public void setUp() {
+        for(TokenType candidate : MathLexer.MATH_TOKENS) {
+            if(candidate.getName().equals(tokenType)) {
+                type = candidate;
+            }
+        }
+        if("PLUS".equals(tokenType)) {
+            hit = "+ 12345)";
+        } else if("FLOAT_LITERAL".equals(tokenType)) {
+            hit = "3.14159 )";
+        } else if("INTEGER_LITERAL".equals(tokenType)) {
+            hit = "1048576 )";
+        } else {
+            hit = "     \n  12";
+        }
+        miss = "(x)";
+        matcher = type.getPattern().matcher(hit);
+    }
+
+    /**
+     * Match with a new Matcher, as Lexer does for every TokenType at every
+     * position.
+     * @return true, if the Pattern matched
+     */
+    @Benchmark
+    public boolean lookingAtHit() {
+        return type.getPattern().matcher(hit).lookingAt();
+    }
+
+    /**
+     * Fail to match with a new Matcher.
+     * @return true, if the Pattern matched
+     */
+    @Benchmark
+    public boolean lookingAtMiss() {
+        return type.getPattern().matcher(miss).lookingAt();
+    }
+
+    /**
+     * Match with a Matcher that is reused, by resetting its region.
+     * @return true, if the Pattern matched
+     */
+    @Benchmark
+    public boolean regionHit() {
+        matcher.region(0, hit.length());
+        return matcher.lookingAt();
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * BudgetOverrun.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.pmeade.lexer;
+
+/**
+ * BudgetOverrun is the error status of a Lexer that stopped because
+ * matching used up its step budget (see Lexer.setStepBudget()). It names
+ * the TokenType whose match was cut off and the position in the input
+ * where it was tried, so the regular expression to blame can be found
+ * and hardened.
+ */
+public final class BudgetOverrun
+{
+    /**
+     * Construct a BudgetOverrun.
+     * @param tokenType the TokenType whose match was cut off
+     * @param position the position in the input where it was tried
+     * @param steps the number of steps the budget allowed
+     * @param documentBudget true if the budget for the whole input was used
+     *                       up, false if the budget for one Token was
+     */
+    BudgetOverrun(TokenType tokenType, int position, long steps,
+            boolean documentBudget)
+    {
+        this.documentBudget = documentBudget;
+        this.position = position;
+        this.steps = steps;
+        this.tokenType = tokenType;
+    }
+
+    /**
+     * Obtain the position in the input where the match was tried.
+     * @return the position of the match that was cut off
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * Obtain the number of steps the budget allowed the match. A step is
+     * one call to <code>charAt()</code> by the regular expression engine.
+     * @return the number of steps allowed
+     */
+    public long getSteps() {
+        return steps;
+    }
+
+    /**
+     * Obtain the TokenType whose match was cut off.
+     * @return the TokenType whose match was cut off
+     */
+    public TokenType getTokenType() {
+        return tokenType;
+    }
+
+    /**
+     * Determine which budget was used up.
+     * @return true if the budget for the whole input was used up, false
+     *         if the budget for a single Token was
+     */
+    public boolean isDocumentBudget() {
+        return documentBudget;
+    }
+
+    /**
+     * Obtain a String representation of this BudgetOverrun, suitable for
+     * a log.
+     * @return a String representation of this BudgetOverrun
+     */
+    @Override
+    public String toString() {
+        return "step budget " + ((documentBudget) ? "of input" : "of token")
+                + " exceeded by " + tokenType.getName() + " at " + position
+                + " after " + steps + " steps";
+    }
+
+    /**
+     * Flag: Was the budget for the whole input used up?
+     */
+    private final boolean documentBudget;
+
+    /**
+     * The position in the input where the match was tried.
+     */
+    private final int position;
+
+    /**
+     * The number of steps the budget allowed.
+     */
+    private final long steps;
+
+    /**
+     * The TokenType whose match was cut off.
+     */
+    private final TokenType tokenType;
+}
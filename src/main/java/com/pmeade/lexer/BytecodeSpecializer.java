@@ -0,0 +1,1028 @@
+/*
+ * BytecodeSpecializer.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BytecodeSpecializer turns a LexerSpec into a SpecMatcher class at
+ * runtime. This does for specifications assembled at runtime what
+ * LexerGenerator does for those known at build time.
+ *
+ * The generated class has one static method per linear TokenType, in
+ * which the steps of the pattern are unrolled and every character class
+ * and literal character is a constant in a comparison. Its match() method
+ * switches on the first character of the input (a tableswitch over the
+ * ASCII range) and calls the candidates for that character in priority
+ * order. The JIT compiler sees nothing but constants and straight-line
+ * code, and can specialize it accordingly.
+ *
+ * The class is loaded as a hidden class with
+ * MethodHandles.Lookup.defineHiddenClass, so it can be unloaded along
+ * with the LexerSpec, and is invisible to everything else. The library is
+ * built for Java 7, so that method is found by reflection. If hidden
+ * classes are not available (before Java 15), or the specification is too
+ * large for a single method, an InterpretedSpecMatcher is used instead.
+ *
+ * @see SpecializedLexer
+ */
+final class BytecodeSpecializer
+{
+    /**
+     * Create a SpecMatcher for the provided LexerSpec.
+     * @param spec the compiled lexical specification
+     * @return SpecMatcher specialized to the LexerSpec, or an
+     *         InterpretedSpecMatcher if the LexerSpec could not be specialized
+     */
+    public static SpecMatcher specialize(LexerSpec spec) {
+        try {
+            byte[] classFile = new BytecodeSpecializer(spec).generate();
+            // MethodHandles.Lookup.defineHiddenClass(classFile, true)
+            Class<?> options = Class.forName(
+                    "[Ljava.lang.invoke.MethodHandles$Lookup$ClassOption;");
+            Method defineHiddenClass = MethodHandles.Lookup.class.getMethod(
+                    "defineHiddenClass", byte[].class, boolean.class, options);
+            MethodHandles.Lookup lookup = (MethodHandles.Lookup) defineHiddenClass.invoke(
+                    MethodHandles.lookup(), classFile, true,
+                    Array.newInstance(options.getComponentType(), 0));
+            return (SpecMatcher) lookup.lookupClass()
+                    .getDeclaredConstructor().newInstance();
+        } catch(LinkageError e) {
+            // hidden classes are not available on this runtime
+            return new InterpretedSpecMatcher(spec);
+        } catch(IllegalStateException e) {
+            // the specification is too large to specialize
+            return new InterpretedSpecMatcher(spec);
+        } catch(ReflectiveOperationException e) {
+            return new InterpretedSpecMatcher(spec);
+        }
+    }
+
+    /**
+     * Construct a BytecodeSpecializer.
+     * @param spec the compiled lexical specification
+     */
+    private BytecodeSpecializer(LexerSpec spec) {
+        this.constants = new ConstantPool();
+        this.spec = spec;
+    }
+
+    /**
+     * Generate the class file of the SpecMatcher.
+     * @return bytes of the class file
+     */
+    byte[] generate() {
+        int thisClass = constants.classRef(CLASS_NAME);
+        int superClass = constants.classRef("java/lang/Object");
+        int matcherInterface = constants.classRef("com/pmeade/lexer/SpecMatcher");
+        List<byte[]> methods = new ArrayList<byte[]>();
+        methods.add(generateConstructor());
+        methods.add(generateMatch());
+        for(int i=0; i<spec.size(); i++) {
+            LinearPattern linear = spec.getTokenType(i).getLinearPattern();
+            if(linear != null) {
+                methods.add(generateMatchType(i, linear));
+            }
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_VERSION);
+            constants.writeTo(out);
+            out.writeShort(ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(matcherInterface);
+            out.writeShort(0);
+            out.writeShort(methods.size());
+            for(byte[] method : methods) {
+                out.write(method);
+            }
+            out.writeShort(0);
+            out.flush();
+            return bytes.toByteArray();
+        } catch(IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Generate the no-argument constructor.
+     * @return bytes of the method_info structure
+     */
+    private byte[] generateConstructor() {
+        Code code = new Code();
+        code.op(ALOAD_0);
+        code.op(INVOKESPECIAL);
+        code.u2(constants.methodRef("java/lang/Object", "<init>", "()V"));
+        code.op(RETURN);
+        return method(ACC_PUBLIC, "<init>", "()V", code, 1, 1);
+    }
+
+    /**
+     * Generate match(CharSequence, int, int), which switches on the first
+     * character of the input and tries the linear candidates for it.
+     * @return bytes of the method_info structure
+     */
+    private byte[] generateMatch() {
+        // locals: 0=this 1=input 2=start 3=end 4=c 5=longest 6=winner 7=length
+        Code code = new Code();
+        code.op(ALOAD_1);
+        code.op(ILOAD);
+        code.u1(2);
+        code.op(INVOKEINTERFACE);
+        code.u2(constants.interfaceMethodRef("java/lang/CharSequence", "charAt", "(I)C"));
+        code.u1(2);
+        code.u1(0);
+        code.op(ISTORE);
+        code.u1(4);
+        code.op(ICONST_M1);
+        code.op(ISTORE);
+        code.u1(5);
+        code.op(ICONST_M1);
+        code.op(ISTORE);
+        code.u1(6);
+        // group the ASCII characters by their linear candidates
+        int[] everywhere = linearOnly(everywhereCandidates());
+        Map<String, Label> labelByKey = new LinkedHashMap<String, Label>();
+        Map<String, int[]> candidatesByKey = new LinkedHashMap<String, int[]>();
+        Label defaultLabel = new Label();
+        Label[] targets = new Label[128];
+        for(char c=0; c<128; c++) {
+            int[] candidates = linearOnly(spec.getCandidates(c));
+            if(Arrays.equals(candidates, everywhere)) {
+                targets[c] = defaultLabel;
+                continue;
+            }
+            String key = Arrays.toString(candidates);
+            if(labelByKey.containsKey(key) == false) {
+                labelByKey.put(key, new Label());
+                candidatesByKey.put(key, candidates);
+            }
+            targets[c] = labelByKey.get(key);
+        }
+        Label done = new Label();
+        code.op(ILOAD);
+        code.u1(4);
+        code.tableSwitch(0, targets, defaultLabel);
+        for(Map.Entry<String, Label> entry : labelByKey.entrySet()) {
+            code.mark(entry.getValue());
+            for(int index : candidatesByKey.get(entry.getKey())) {
+                generateTry(code, index);
+            }
+            code.jump(GOTO, done);
+        }
+        code.mark(defaultLabel);
+        for(int i=0; i<spec.size(); i++) {
+            if(spec.getTokenType(i).getLinearPattern() == null) continue;
+            CharSet first = spec.getFirstSet(i);
+            if(first.equals(CharSet.ALL)) {
+                generateTry(code, i);
+            } else if(first.hasNonAscii()) {
+                Label skip = new Label();
+                code.op(ILOAD);
+                code.u1(4);
+                code.pushInt(128);
+                code.jump(IF_ICMPLT, skip);
+                generateTest(code, first, 4, skip);
+                generateTry(code, i);
+                code.mark(skip);
+            }
+        }
+        code.mark(done);
+        Label found = new Label();
+        code.op(ILOAD);
+        code.u1(6);
+        code.jump(IFGE, found);
+        code.op(LDC2_W);
+        code.u2(constants.longConstant(SpecMatcher.NO_MATCH));
+        code.op(LRETURN);
+        code.mark(found);
+        code.op(ILOAD);
+        code.u1(5);
+        code.op(I2L);
+        code.pushInt(32);
+        code.op(LSHL);
+        code.op(ILOAD);
+        code.u1(6);
+        code.op(I2L);
+        code.op(LOR);
+        code.op(LRETURN);
+        return method(ACC_PUBLIC, "match", "(Ljava/lang/CharSequence;II)J", code, 8, 8);
+    }
+
+    /**
+     * Generate the code in match() that tries a single TokenType, and
+     * keeps it if it is the longest match so far.
+     * @param code the code under construction
+     * @param index the index of the TokenType
+     */
+    private void generateTry(Code code, int index) {
+        code.op(ALOAD_1);
+        code.op(ILOAD);
+        code.u1(2);
+        code.op(ILOAD);
+        code.u1(3);
+        code.op(INVOKESTATIC);
+        code.u2(constants.methodRef(CLASS_NAME, "match" + index, "(Ljava/lang/CharSequence;II)I"));
+        code.op(ISTORE);
+        code.u1(7);
+        // a FALLBACK from any TokenType is passed straight back
+        Label notFallback = new Label();
+        code.op(ILOAD);
+        code.u1(7);
+        code.op(ICONST_M1);
+        code.jump(IF_ICMPGE, notFallback);
+        code.op(LDC2_W);
+        code.u2(constants.longConstant(SpecMatcher.FALLBACK));
+        code.op(LRETURN);
+        code.mark(notFallback);
+        Label notLonger = new Label();
+        code.op(ILOAD);
+        code.u1(7);
+        code.op(ILOAD);
+        code.u1(5);
+        code.jump(IF_ICMPLE, notLonger);
+        code.op(ILOAD);
+        code.u1(7);
+        code.op(ISTORE);
+        code.u1(5);
+        code.pushInt(index);
+        code.op(ISTORE);
+        code.u1(6);
+        code.mark(notLonger);
+    }
+
+    /**
+     * Generate the static method that matches a single linear TokenType.
+     * It returns the length of the match, LinearPattern.NO_MATCH, or
+     * LinearPattern.FALLBACK.
+     * @param index the index of the TokenType
+     * @param linear the linear pattern of the TokenType
+     * @return bytes of the method_info structure
+     */
+    private byte[] generateMatchType(int index, LinearPattern linear) {
+        // locals: 0=input 1=start 2=end 3=p 4=stepStart 5=c 6=limit
+        Code code = new Code();
+        boolean canFail = true;
+        for(int a=0; a<linear.getAlternativeCount() && canFail; a++) {
+            Label fail = new Label();
+            canFail = false;
+            code.op(ILOAD);
+            code.u1(1);
+            code.op(ISTORE);
+            code.u1(3);
+            for(int s=0; s<linear.getStepCount(a); s++) {
+                canFail |= generateStep(code, linear, a, s, fail);
+            }
+            code.op(ILOAD);
+            code.u1(3);
+            code.op(ILOAD);
+            code.u1(1);
+            code.op(ISUB);
+            code.op(IRETURN);
+            code.mark(fail);
+        }
+        if(canFail) {
+            code.pushInt(LinearPattern.NO_MATCH);
+            code.op(IRETURN);
+        }
+        return method(ACC_STATIC, "match" + index,
+                "(Ljava/lang/CharSequence;II)I", code, 6, 7);
+    }
+
+    /**
+     * Generate the code for one step of a linear pattern.
+     * @param code the code under construction
+     * @param linear the linear pattern
+     * @param a the index of the alternative
+     * @param s the index of the step
+     * @param fail the Label to jump to if the step fails
+     * @return true, if the step can fail
+     */
+    private boolean generateStep(Code code, LinearPattern linear, int a, int s, Label fail) {
+        CharSet chars = linear.getChars(a, s);
+        int min = linear.getMin(a, s);
+        int max = linear.getMax(a, s);
+        if(min == 1 && max == 1) {
+            // if(p >= end) fail
+            code.op(ILOAD);
+            code.u1(3);
+            code.op(ILOAD);
+            code.u1(2);
+            code.jump(IF_ICMPGE, fail);
+            generateCharAt(code);
+            if(linear.hasSurrogates()) {
+                // a surrogate, member or not, needs the Pattern
+                generateSurrogateCheck(code);
+            }
+            generateTest(code, chars, 5, fail);
+            code.iinc(3, 1);
+            return true;
+        }
+        // stepStart = p
+        code.op(ILOAD);
+        code.u1(3);
+        code.op(ISTORE);
+        code.u1(4);
+        // limit = end, or p + max if that is sooner
+        if(max == RegexNode.UNBOUNDED) {
+            code.op(ILOAD);
+            code.u1(2);
+            code.op(ISTORE);
+            code.u1(6);
+        } else {
+            Label useEnd = new Label();
+            Label haveLimit = new Label();
+            code.op(ILOAD);
+            code.u1(2);
+            code.op(ILOAD);
+            code.u1(3);
+            code.op(ISUB);
+            code.pushInt(max);
+            code.jump(IF_ICMPLE, useEnd);
+            code.op(ILOAD);
+            code.u1(3);
+            code.pushInt(max);
+            code.op(IADD);
+            code.op(ISTORE);
+            code.u1(6);
+            code.jump(GOTO, haveLimit);
+            code.mark(useEnd);
+            code.op(ILOAD);
+            code.u1(2);
+            code.op(ISTORE);
+            code.u1(6);
+            code.mark(haveLimit);
+        }
+        // while(p < limit && chars.contains(c = input.charAt(p))) p++;
+        Label loop = new Label();
+        Label exit = new Label();
+        code.mark(loop);
+        code.op(ILOAD);
+        code.u1(3);
+        code.op(ILOAD);
+        code.u1(6);
+        code.jump(IF_ICMPGE, exit);
+        generateCharAt(code);
+        generateTest(code, chars, 5, exit);
+        if(chars.hasSurrogates()) {
+            generateSurrogateCheck(code);
+        }
+        code.iinc(3, 1);
+        code.jump(GOTO, loop);
+        code.mark(exit);
+        if(min == 0) {
+            return false;
+        }
+        Label enough = new Label();
+        code.op(ILOAD);
+        code.u1(3);
+        code.op(ILOAD);
+        code.u1(4);
+        code.op(ISUB);
+        code.pushInt(min);
+        code.jump(IF_ICMPGE, enough);
+        if(linear.hasSurrogates()) {
+            // a surrogate where the step came up short needs the Pattern
+            code.op(ILOAD);
+            code.u1(3);
+            code.op(ILOAD);
+            code.u1(2);
+            code.jump(IF_ICMPGE, fail);
+            generateCharAt(code);
+            generateSurrogateCheck(code);
+        }
+        code.jump(GOTO, fail);
+        code.mark(enough);
+        return true;
+    }
+
+    /**
+     * Generate c = input.charAt(p).
+     * @param code the code under construction
+     */
+    private void generateCharAt(Code code) {
+        code.op(ALOAD_0);
+        code.op(ILOAD);
+        code.u1(3);
+        code.op(INVOKEINTERFACE);
+        code.u2(constants.interfaceMethodRef("java/lang/CharSequence", "charAt", "(I)C"));
+        code.u1(2);
+        code.u1(0);
+        code.op(ISTORE);
+        code.u1(5);
+    }
+
+    /**
+     * Generate if(Character.isSurrogate(c)) return FALLBACK.
+     * @param code the code under construction
+     */
+    private void generateSurrogateCheck(Code code) {
+        Label notSurrogate = new Label();
+        code.op(ILOAD);
+        code.u1(5);
+        code.pushInt(Character.MIN_SURROGATE);
+        code.jump(IF_ICMPLT, notSurrogate);
+        code.op(ILOAD);
+        code.u1(5);
+        code.pushInt(Character.MAX_SURROGATE);
+        code.jump(IF_ICMPGT, notSurrogate);
+        code.pushInt(LinearPattern.FALLBACK);
+        code.op(IRETURN);
+        code.mark(notSurrogate);
+    }
+
+    /**
+     * Generate a membership test of a char local against a CharSet. Small
+     * sets are tested range by range. Larger sets test the ASCII bitmap
+     * of the CharSet, with both halves inlined as long constants, and then
+     * the non-ASCII ranges.
+     * @param code the code under construction
+     * @param chars the CharSet to test membership of
+     * @param local the index of the local holding the char
+     * @param fail the Label to jump to if the char is not a member
+     */
+    private void generateTest(Code code, CharSet chars, int local, Label fail) {
+        Label member = new Label();
+        int firstRange = 0;
+        if(chars.getRangeCount() > MAX_INLINE_RANGES) {
+            Label high = new Label();
+            Label nonAscii = new Label();
+            code.op(ILOAD);
+            code.u1(local);
+            code.pushInt(64);
+            code.jump(IF_ICMPGE, high);
+            generateBitTest(code, chars.getAsciiLo(), local, 0, member, fail);
+            code.mark(high);
+            code.op(ILOAD);
+            code.u1(local);
+            code.pushInt(128);
+            code.jump(IF_ICMPGE, nonAscii);
+            generateBitTest(code, chars.getAsciiHi(), local, 64, member, fail);
+            code.mark(nonAscii);
+            while(firstRange < chars.getRangeCount() && chars.getRangeHi(firstRange) < 128) {
+                firstRange++;
+            }
+        }
+        for(int r=firstRange; r<chars.getRangeCount(); r++) {
+            char lo = chars.getRangeLo(r);
+            char hi = chars.getRangeHi(r);
+            if(lo == hi) {
+                code.op(ILOAD);
+                code.u1(local);
+                code.pushInt(lo);
+                code.jump(IF_ICMPEQ, member);
+            } else {
+                Label next = new Label();
+                code.op(ILOAD);
+                code.u1(local);
+                code.pushInt(lo);
+                code.jump(IF_ICMPLT, next);
+                code.op(ILOAD);
+                code.u1(local);
+                code.pushInt(hi);
+                code.jump(IF_ICMPLE, member);
+                code.mark(next);
+            }
+        }
+        code.jump(GOTO, fail);
+        code.mark(member);
+    }
+
+    /**
+     * Generate a test of one bit of a 64-bit bitmap.
+     * @param code the code under construction
+     * @param bitmap the bitmap, inlined as a constant
+     * @param local the index of the local holding the char
+     * @param base the char value of bit 0 of the bitmap
+     * @param member the Label to jump to if the bit is set
+     * @param fail the Label to jump to if the bit is clear
+     */
+    private void generateBitTest(Code code, long bitmap, int local, int base,
+            Label member, Label fail)
+    {
+        code.op(LDC2_W);
+        code.u2(constants.longConstant(bitmap));
+        code.op(ILOAD);
+        code.u1(local);
+        if(base != 0) {
+            code.pushInt(base);
+            code.op(ISUB);
+        }
+        code.op(LUSHR);
+        code.op(LCONST_1);
+        code.op(LAND);
+        code.op(LCONST_0);
+        code.op(LCMP);
+        code.jump(IFNE, member);
+        code.jump(GOTO, fail);
+    }
+
+    /**
+     * Obtain the indexes of the TokenType objects that are candidates for
+     * every first character.
+     * @return indexes of the TokenType objects that are tried everywhere
+     */
+    private int[] everywhereCandidates() {
+        int[] result = new int[spec.size()];
+        int count = 0;
+        for(int i=0; i<spec.size(); i++) {
+            if(spec.getFirstSet(i).equals(CharSet.ALL)) {
+                result[count++] = i;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Filter a list of candidates down to those with a linear pattern.
+     * @param candidates indexes of candidate TokenType objects
+     * @return indexes of the candidates that have a linear pattern
+     */
+    private int[] linearOnly(int[] candidates) {
+        int[] result = new int[candidates.length];
+        int count = 0;
+        for(int index : candidates) {
+            if(spec.getTokenType(index).getLinearPattern() != null) {
+                result[count++] = index;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Assemble a method_info structure.
+     * @param access the access flags of the method
+     * @param name the name of the method
+     * @param descriptor the descriptor of the method
+     * @param code the code of the method
+     * @param maxStack the maximum depth of the operand stack
+     * @param maxLocals the number of local variable slots
+     * @return bytes of the method_info structure
+     */
+    private byte[] method(int access, String name, String descriptor, Code code,
+            int maxStack, int maxLocals)
+    {
+        byte[] bytecode = code.toByteArray();
+        if(bytecode.length > Short.MAX_VALUE) {
+            throw new IllegalStateException("method too large");
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeShort(access);
+            out.writeShort(constants.utf8(name));
+            out.writeShort(constants.utf8(descriptor));
+            out.writeShort(1);
+            out.writeShort(constants.utf8("Code"));
+            out.writeInt(12 + bytecode.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(bytecode.length);
+            out.write(bytecode);
+            out.writeShort(0);
+            out.writeShort(0);
+            out.flush();
+            return bytes.toByteArray();
+        } catch(IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Label is a position in the bytecode of a method, which may be the
+     * target of a jump before its position is known.
+     */
+    private static final class Label
+    {
+        /**
+         * The offset of the Label in the bytecode, or -1 if not yet marked.
+         */
+        int offset = -1;
+    }
+
+    /**
+     * Code accumulates the bytecode of a single method, and resolves the
+     * offsets of jumps to Labels.
+     */
+    private final class Code
+    {
+        /**
+         * Append an opcode.
+         * @param opcode the opcode to append
+         */
+        void op(int opcode) {
+            u1(opcode);
+        }
+
+        /**
+         * Append an unsigned byte.
+         * @param value the byte to append
+         */
+        void u1(int value) {
+            ensure(1);
+            bytes[length++] = (byte) value;
+        }
+
+        /**
+         * Append an unsigned short.
+         * @param value the short to append
+         */
+        void u2(int value) {
+            u1(value >>> 8);
+            u1(value);
+        }
+
+        /**
+         * Append a signed int.
+         * @param value the int to append
+         */
+        void u4(int value) {
+            u2(value >>> 16);
+            u2(value);
+        }
+
+        /**
+         * Append the shortest instruction that pushes an int constant.
+         * @param value the int to push
+         */
+        void pushInt(int value) {
+            if(value >= -1 && value <= 5) {
+                op(ICONST_0 + value);
+            } else if(value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                op(BIPUSH);
+                u1(value);
+            } else if(value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                op(SIPUSH);
+                u2(value);
+            } else {
+                op(LDC_W);
+                u2(constants.intConstant(value));
+            }
+        }
+
+        /**
+         * Append an iinc instruction.
+         * @param local the index of the local to increment
+         * @param delta the amount to add to the local
+         */
+        void iinc(int local, int delta) {
+            op(IINC);
+            u1(local);
+            u1(delta);
+        }
+
+        /**
+         * Append a jump instruction with a 16-bit offset.
+         * @param opcode the jump opcode
+         * @param target the Label to jump to
+         */
+        void jump(int opcode, Label target) {
+            int at = length;
+            op(opcode);
+            fixups.add(new int[] { at, length, 2 });
+            fixupLabels.add(target);
+            u2(0);
+        }
+
+        /**
+         * Append a tableswitch instruction.
+         * @param low the value of the first target
+         * @param targets the Labels to jump to, for low, low+1, ...
+         * @param defaultTarget the Label to jump to for all other values
+         */
+        void tableSwitch(int low, Label[] targets, Label defaultTarget) {
+            int at = length;
+            op(TABLESWITCH);
+            while(length % 4 != 0) {
+                u1(0);
+            }
+            fixups.add(new int[] { at, length, 4 });
+            fixupLabels.add(defaultTarget);
+            u4(0);
+            u4(low);
+            u4(low + targets.length - 1);
+            for(Label target : targets) {
+                fixups.add(new int[] { at, length, 4 });
+                fixupLabels.add(target);
+                u4(0);
+            }
+        }
+
+        /**
+         * Mark the current position of the bytecode with a Label.
+         * @param label the Label to mark
+         */
+        void mark(Label label) {
+            label.offset = length;
+        }
+
+        /**
+         * Obtain the bytecode, with every jump offset resolved.
+         * @return the bytecode of the method
+         */
+        byte[] toByteArray() {
+            for(int i=0; i<fixups.size(); i++) {
+                int[] fixup = fixups.get(i);
+                Label label = fixupLabels.get(i);
+                if(label.offset < 0) throw new IllegalStateException("unmarked label");
+                int delta = label.offset - fixup[0];
+                if(fixup[2] == 2) {
+                    if(delta < Short.MIN_VALUE || delta > Short.MAX_VALUE) {
+                        throw new IllegalStateException("method too large");
+                    }
+                    bytes[fixup[1]] = (byte) (delta >>> 8);
+                    bytes[fixup[1]+1] = (byte) delta;
+                } else {
+                    bytes[fixup[1]] = (byte) (delta >>> 24);
+                    bytes[fixup[1]+1] = (byte) (delta >>> 16);
+                    bytes[fixup[1]+2] = (byte) (delta >>> 8);
+                    bytes[fixup[1]+3] = (byte) delta;
+                }
+            }
+            return Arrays.copyOf(bytes, length);
+        }
+
+        /**
+         * Ensure there is room to append more bytes.
+         * @param count the number of bytes to be appended
+         */
+        private void ensure(int count) {
+            if(length + count > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + count));
+            }
+        }
+
+        /**
+         * The bytecode under construction.
+         */
+        private byte[] bytes = new byte[256];
+
+        /**
+         * Jumps to be resolved: { opcode offset, operand offset, width }.
+         */
+        private final List<int[]> fixups = new ArrayList<int[]>();
+
+        /**
+         * The target Label of each jump to be resolved.
+         */
+        private final List<Label> fixupLabels = new ArrayList<Label>();
+
+        /**
+         * The number of bytes of bytecode appended so far.
+         */
+        private int length;
+    }
+
+    /**
+     * ConstantPool accumulates the constant pool of the class file,
+     * sharing identical entries.
+     */
+    private static final class ConstantPool
+    {
+        /**
+         * Obtain the index of a CONSTANT_Utf8 entry.
+         * @param text the text of the entry
+         * @return the constant pool index of the entry
+         */
+        int utf8(String text) {
+            return entry("U" + text, TAG_UTF8, text, 0, 0, 1);
+        }
+
+        /**
+         * Obtain the index of a CONSTANT_Class entry.
+         * @param internalName the internal name of the class
+         * @return the constant pool index of the entry
+         */
+        int classRef(String internalName) {
+            return entry("C" + internalName, TAG_CLASS, null, utf8(internalName), 0, 1);
+        }
+
+        /**
+         * Obtain the index of a CONSTANT_Methodref entry.
+         * @param owner the internal name of the class
+         * @param name the name of the method
+         * @param descriptor the descriptor of the method
+         * @return the constant pool index of the entry
+         */
+        int methodRef(String owner, String name, String descriptor) {
+            return entry("M" + owner + "." + name + descriptor, TAG_METHODREF, null,
+                    classRef(owner), nameAndType(name, descriptor), 1);
+        }
+
+        /**
+         * Obtain the index of a CONSTANT_InterfaceMethodref entry.
+         * @param owner the internal name of the interface
+         * @param name the name of the method
+         * @param descriptor the descriptor of the method
+         * @return the constant pool index of the entry
+         */
+        int interfaceMethodRef(String owner, String name, String descriptor) {
+            return entry("F" + owner + "." + name + descriptor, TAG_INTERFACE_METHODREF,
+                    null, classRef(owner), nameAndType(name, descriptor), 1);
+        }
+
+        /**
+         * Obtain the index of a CONSTANT_Integer entry.
+         * @param value the value of the entry
+         * @return the constant pool index of the entry
+         */
+        int intConstant(int value) {
+            return entry("I" + value, TAG_INTEGER, null, value, 0, 1);
+        }
+
+        /**
+         * Obtain the index of a CONSTANT_Long entry.
+         * @param value the value of the entry
+         * @return the constant pool index of the entry
+         */
+        int longConstant(long value) {
+            return entry("J" + value, TAG_LONG, null, (int) (value >>> 32), (int) value, 2);
+        }
+
+        /**
+         * Obtain the index of a CONSTANT_NameAndType entry.
+         * @param name the name of the member
+         * @param descriptor the descriptor of the member
+         * @return the constant pool index of the entry
+         */
+        private int nameAndType(String name, String descriptor) {
+            return entry("N" + name + ":" + descriptor, TAG_NAME_AND_TYPE, null,
+                    utf8(name), utf8(descriptor), 1);
+        }
+
+        /**
+         * Obtain the index of an entry, adding it if it is new.
+         * @param key a key unique to the entry
+         * @param tag the tag of the entry
+         * @param text the text of a CONSTANT_Utf8 entry
+         * @param a the first operand of the entry
+         * @param b the second operand of the entry
+         * @param slots the number of constant pool slots the entry occupies
+         * @return the constant pool index of the entry
+         */
+        private int entry(String key, int tag, String text, int a, int b, int slots) {
+            Integer index = indexes.get(key);
+            if(index != null) return index;
+            try {
+                out.writeByte(tag);
+                switch(tag) {
+                    case TAG_UTF8:
+                        out.writeUTF(text);
+                        break;
+                    case TAG_CLASS:
+                        out.writeShort(a);
+                        break;
+                    case TAG_INTEGER:
+                        out.writeInt(a);
+                        break;
+                    case TAG_LONG:
+                        out.writeInt(a);
+                        out.writeInt(b);
+                        break;
+                    default:
+                        out.writeShort(a);
+                        out.writeShort(b);
+                        break;
+                }
+            } catch(IOException e) {
+                throw new IllegalStateException(e);
+            }
+            index = count;
+            count += slots;
+            indexes.put(key, index);
+            return index;
+        }
+
+        /**
+         * Write the constant_pool_count and the constant pool.
+         * @param target the stream to write to
+         * @throws IOException if the constant pool can not be written
+         */
+        void writeTo(DataOutputStream target) throws IOException {
+            out.flush();
+            target.writeShort(count);
+            target.write(bytes.toByteArray());
+        }
+
+        /**
+         * The encoded entries.
+         */
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        /**
+         * The next free constant pool index.
+         */
+        private int count = 1;
+
+        /**
+         * The constant pool index of each entry, by key.
+         */
+        private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+
+        /**
+         * Stream writing to the encoded entries.
+         */
+        private final DataOutputStream out = new DataOutputStream(bytes);
+    }
+
+    // class file constants
+    private static final String CLASS_NAME = "com/pmeade/lexer/SpecMatcher$Specialized";
+    private static final int CLASS_VERSION = 49;
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+    private static final int TAG_UTF8 = 1;
+    private static final int TAG_INTEGER = 3;
+    private static final int TAG_LONG = 5;
+    private static final int TAG_CLASS = 7;
+    private static final int TAG_METHODREF = 10;
+    private static final int TAG_INTERFACE_METHODREF = 11;
+    private static final int TAG_NAME_AND_TYPE = 12;
+
+    // opcodes
+    private static final int ICONST_M1 = 0x02;
+    private static final int ICONST_0 = 0x03;
+    private static final int LCONST_0 = 0x09;
+    private static final int LCONST_1 = 0x0A;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC_W = 0x13;
+    private static final int LDC2_W = 0x14;
+    private static final int ILOAD = 0x15;
+    private static final int ALOAD_0 = 0x2A;
+    private static final int ALOAD_1 = 0x2B;
+    private static final int ISTORE = 0x36;
+    private static final int IADD = 0x60;
+    private static final int ISUB = 0x64;
+    private static final int LSHL = 0x79;
+    private static final int LUSHR = 0x7D;
+    private static final int LAND = 0x7F;
+    private static final int LOR = 0x81;
+    private static final int IINC = 0x84;
+    private static final int I2L = 0x85;
+    private static final int LCMP = 0x94;
+    private static final int IFNE = 0x9A;
+    private static final int IFGE = 0x9C;
+    private static final int IF_ICMPEQ = 0x9F;
+    private static final int IF_ICMPLT = 0xA1;
+    private static final int IF_ICMPGE = 0xA2;
+    private static final int IF_ICMPGT = 0xA3;
+    private static final int IF_ICMPLE = 0xA4;
+    private static final int GOTO = 0xA7;
+    private static final int TABLESWITCH = 0xAA;
+    private static final int IRETURN = 0xAC;
+    private static final int LRETURN = 0xAD;
+    private static final int RETURN = 0xB1;
+    private static final int INVOKESPECIAL = 0xB7;
+    private static final int INVOKESTATIC = 0xB8;
+    private static final int INVOKEINTERFACE = 0xB9;
+
+    /**
+     * Character classes with more ranges than this are tested against
+     * an inlined ASCII bitmap before their non-ASCII ranges.
+     */
+    private static final int MAX_INLINE_RANGES = 4;
+
+    /**
+     * The constant pool of the class under construction.
+     */
+    private final ConstantPool constants;
+
+    /**
+     * The compiled lexical specification to be specialized.
+     */
+    private final LexerSpec spec;
+}
@@ -0,0 +1,230 @@
+/*
+ * CandidateOrder.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * CandidateOrder is the memory of an ADAPTIVE Lexer. It divides the ASCII
+ * characters into classes, by which TokenType objects are candidates at
+ * each character, and counts which TokenType wins in each class. The
+ * candidates of a class are kept in order of their wins, so the likely
+ * winner is tried first; a Lexer that knows the most any other candidate
+ * could match can then stop as soon as none of them could beat it.
+ *
+ * Characters outside ASCII are not counted; their candidates are tried in
+ * priority order.
+ *
+ * A CandidateOrder belongs to a single Lexer, and is not thread-safe.
+ */
+final class CandidateOrder
+{
+    /**
+     * Construct a CandidateOrder for a compiled specification.
+     * @param spec the compiled lexical specification
+     */
+    CandidateOrder(LexerSpec spec)
+    {
+        this.spec = spec;
+        this.maxLengths = new int[spec.size()];
+        for(int i=0; i<maxLengths.length; i++) {
+            int length = spec.getMaxLength(i);
+            maxLengths[i] = (length == TokenType.UNBOUNDED) ? Integer.MAX_VALUE : length;
+        }
+        this.ascii = new CandidateClass[128];
+        List<CandidateClass> distinct = new ArrayList<CandidateClass>();
+        for(char c=0; c<128; c++) {
+            int[] candidates = spec.getCandidates(c);
+            for(CandidateClass candidateClass : distinct) {
+                if(Arrays.equals(candidateClass.candidates, candidates)) {
+                    ascii[c] = candidateClass;
+                    break;
+                }
+            }
+            if(ascii[c] == null) {
+                ascii[c] = new CandidateClass(candidates, maxLengths);
+                distinct.add(ascii[c]);
+            }
+        }
+    }
+
+    /**
+     * Obtain the candidates at a character, in the order they should be
+     * tried.
+     * @param c the first character of the input
+     * @return CandidateClass of the character
+     */
+    CandidateClass forChar(char c) {
+        if(c < 128) {
+            return ascii[c];
+        }
+        return new CandidateClass(spec.getCandidates(c), maxLengths);
+    }
+
+    /**
+     * Obtain the most chars that a TokenType could match.
+     * @param index the index of the TokenType in the specification
+     * @return the maximum length of a match, or Integer.MAX_VALUE if it
+     *         is unbounded
+     */
+    int getMaxLength(int index) {
+        return maxLengths[index];
+    }
+
+    /**
+     * CandidateClass is the candidates shared by a class of characters,
+     * ordered by how often each has won.
+     */
+    static final class CandidateClass
+    {
+        /**
+         * Construct a CandidateClass.
+         * @param candidates the candidate indexes, in priority order
+         * @param maxLengths the maximum length of each TokenType
+         */
+        CandidateClass(int[] candidates, int[] maxLengths)
+        {
+            this.candidates = candidates;
+            this.maxLengths = maxLengths;
+            this.order = candidates.clone();
+            this.wins = new int[candidates.length];
+            this.bounds = new int[candidates.length];
+            computeBounds(candidates.length - 1);
+        }
+
+        /**
+         * Obtain the most chars that any candidate from a position in the
+         * order onward could match.
+         * @param i the position in the order
+         * @return the maximum length of a match of the remaining candidates
+         */
+        int getBound(int i) {
+            return bounds[i];
+        }
+
+        /**
+         * Obtain the candidate at a position in the order.
+         * @param i the position in the order
+         * @return the index of the TokenType in the specification
+         */
+        int getCandidate(int i) {
+            return order[i];
+        }
+
+        /**
+         * Record that a candidate won, moving it ahead of the candidates
+         * that have won less often. The win belongs to the TokenType whose
+         * Pattern matched, before classify() finds a keyword in the match:
+         * the order is of the Patterns to run, and a keyword TokenType is
+         * never run by itself, only found through the TokenType that has
+         * it as a keyword.
+         * @param index the index of the winning TokenType
+         */
+        void recordWin(int index) {
+            int i = 0;
+            while(order[i] != index) i++;
+            wins[i]++;
+            if(i == 0 || wins[i] <= wins[i-1]) return;
+            int moved = i;
+            while(i > 0 && wins[i] > wins[i-1]) {
+                swap(i, i-1);
+                i--;
+            }
+            computeBounds(moved);
+        }
+
+        /**
+         * Obtain the number of candidates.
+         * @return the number of candidates
+         */
+        int size() {
+            return order.length;
+        }
+
+        /**
+         * Recompute the bounds from a position in the order back to the
+         * start of the order.
+         * @param from the last position whose bound may have changed
+         */
+        private void computeBounds(int from) {
+            for(int i=from; i>=0; i--) {
+                int bound = maxLengths[order[i]];
+                if(i+1 < bounds.length) bound = Math.max(bound, bounds[i+1]);
+                bounds[i] = bound;
+            }
+        }
+
+        /**
+         * Exchange two positions in the order.
+         * @param i a position in the order
+         * @param j another position in the order
+         */
+        private void swap(int i, int j) {
+            int candidate = order[i];
+            order[i] = order[j];
+            order[j] = candidate;
+            int count = wins[i];
+            wins[i] = wins[j];
+            wins[j] = count;
+        }
+
+        /**
+         * The most chars that any candidate from each position in the
+         * order onward could match.
+         */
+        private final int[] bounds;
+
+        /**
+         * The candidate indexes, in priority order.
+         */
+        private final int[] candidates;
+
+        /**
+         * The maximum length of each TokenType in the specification.
+         */
+        private final int[] maxLengths;
+
+        /**
+         * The candidate indexes, in the order they should be tried.
+         */
+        private final int[] order;
+
+        /**
+         * The number of wins of the candidate at each position in the order.
+         */
+        private final int[] wins;
+    }
+
+    /**
+     * The CandidateClass of each ASCII character.
+     */
+    private final CandidateClass[] ascii;
+
+    /**
+     * The most chars that each TokenType could match.
+     */
+    private final int[] maxLengths;
+
+    /**
+     * The compiled lexical specification.
+     */
+    private final LexerSpec spec;
+}
@@ -0,0 +1,126 @@
+/*
+ * CharClassRun.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+/**
+ * CharClassRun matches a run of characters from one CharSet: patterns
+ * like <code>\s+</code>, <code>[0-9]+</code>, or <code>[a-z]*</code>.
+ * These make up most of the Token objects of a typical input, and are
+ * simple enough to match with a single loop over the input, instead of
+ * the java.util.regex engine.
+ *
+ * A CharClassRun is only made for a CharSet without surrogates, so that
+ * a run of chars is exactly the run of code points that Matcher.lookingAt()
+ * would consume.
+ *
+ * Runs in a String are scanned by RunScanner.INSTANCE. On Java 17 and
+ * later, with the jdk.incubator.vector module present, it compares many
+ * chars at once with the Vector API; otherwise the run is scanned one
+ * char at a time.
+ *
+ * @see LinearPattern#asRun()
+ * @see RunScanner
+ */
+final class CharClassRun
+{
+    /**
+     * Result of match() when the run is too short to match.
+     */
+    public static final int NO_MATCH = -1;
+
+    /**
+     * Construct a CharClassRun.
+     * @param chars the characters of the run; none may be surrogates
+     * @param min the fewest characters the run may have
+     */
+    CharClassRun(CharSet chars, int min) {
+        this.chars = chars;
+        this.min = min;
+    }
+
+    /**
+     * Obtain the characters of the run.
+     * @return CharSet of the characters of the run
+     */
+    public CharSet getChars() {
+        return chars;
+    }
+
+    /**
+     * Obtain the fewest characters the run may have.
+     * @return the minimum length of a match
+     */
+    public int getMin() {
+        return min;
+    }
+
+    /**
+     * Match this run against the input at the provided position. This
+     * gives the same result as Matcher.lookingAt() on the Pattern this run
+     * was derived from, with the region [start, end).
+     * @param input the input to be matched
+     * @param start the position at which the run must begin
+     * @param end the position at which the input ends
+     * @return the length of the run, or NO_MATCH if it is too short
+     */
+    public int match(CharSequence input, int start, int end) {
+        int position = start;
+        int offset = 0;
+        CharSequence text = input;
+        if(input instanceof LexicalCharSequence) {
+            // the Lexer decorates its input; scan the String beneath
+            LexicalCharSequence lexical = (LexicalCharSequence) input;
+            if(lexical.getSource() instanceof String) {
+                text = lexical.getSource();
+                offset = lexical.getOffset();
+            }
+        }
+        if(text instanceof String) {
+            // a String is the common case, and RunScanner may use SIMD
+            position = RunScanner.INSTANCE.scan((String) text, start + offset,
+                    end + offset, chars) - offset;
+        } else {
+            while(position < end && chars.contains(input.charAt(position))) {
+                position++;
+            }
+        }
+        int length = position - start;
+        return (length >= min) ? length : NO_MATCH;
+    }
+
+    /**
+     * Obtain a String representation of this CharClassRun. This may be
+     * useful for debugging purposes.
+     * @return a String representation of this CharClassRun
+     */
+    @Override
+    public String toString() {
+        return chars + "{" + min + ",}";
+    }
+
+    /**
+     * The characters of the run.
+     */
+    private final CharSet chars;
+
+    /**
+     * The fewest characters the run may have.
+     */
+    private final int min;
+}
@@ -0,0 +1,436 @@
+/*
+ * CharSet.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.util.Arrays;
+
+/**
+ * CharSet is an immutable set of char values. It is the lexer's model of
+ * a regular expression character class, such as <code>[0-9]</code>,
+ * <code>\s</code> or a single literal character.
+ *
+ * The set is stored as a sorted list of disjoint, inclusive ranges. For
+ * speed, membership of the ASCII characters is also precomputed into a
+ * 128-bit bitmap, so the common case never has to search the ranges.
+ */
+final class CharSet
+{
+    /**
+     * The empty set.
+     */
+    public static final CharSet EMPTY = new CharSet(new char[0]);
+
+    /**
+     * Every char value.
+     */
+    public static final CharSet ALL = range(Character.MIN_VALUE, Character.MAX_VALUE);
+
+    /**
+     * The predefined class <code>\d</code>; [0-9]
+     */
+    public static final CharSet DIGIT = range('0', '9');
+
+    /**
+     * The predefined class <code>\s</code>; [ \t\n\x0B\f\r]
+     */
+    public static final CharSet SPACE = of(" \t\n\u000B\f\r");
+
+    /**
+     * The predefined class <code>\w</code>; [a-zA-Z_0-9]
+     */
+    public static final CharSet WORD = range('a', 'z')
+            .union(range('A', 'Z'))
+            .union(of('_'))
+            .union(DIGIT);
+
+    /**
+     * The characters considered to be line terminators by the expression
+     * <code>.</code> when the DOTALL flag is not in effect.
+     */
+    public static final CharSet LINE_TERMINATORS = of("\n\r\u0085")
+            .union(range('\u2028', '\u2029'));
+
+    /**
+     * Create a CharSet containing a single character.
+     * @param c the character in the set
+     * @return CharSet containing only the provided character
+     */
+    public static CharSet of(char c) {
+        return new CharSet(new char[] { c, c });
+    }
+
+    /**
+     * Create a CharSet containing each of the characters of the provided
+     * String.
+     * @param chars the characters in the set
+     * @return CharSet containing the provided characters
+     */
+    public static CharSet of(String chars) {
+        CharSet charSet = EMPTY;
+        for(int i=0; i<chars.length(); i++) {
+            charSet = charSet.union(of(chars.charAt(i)));
+        }
+        return charSet;
+    }
+
+    /**
+     * Create a CharSet containing an inclusive range of characters.
+     * @param lo the first character of the range
+     * @param hi the last character of the range
+     * @return CharSet containing the provided range of characters
+     * @throws IllegalArgumentException if hi is less than lo
+     */
+    public static CharSet range(char lo, char hi) {
+        if(hi < lo) throw new IllegalArgumentException();
+        return new CharSet(new char[] { lo, hi });
+    }
+
+    /**
+     * Construct a CharSet from sorted, disjoint, non-adjacent ranges.
+     * @param ranges pairs of inclusive (lo, hi) bounds
+     */
+    private CharSet(char[] ranges) {
+        this.ranges = ranges;
+        long lo = 0L;
+        long hi = 0L;
+        for(int i=0; i<ranges.length; i+=2) {
+            for(int c=ranges[i]; c<=ranges[i+1] && c<128; c++) {
+                if(c < 64) {
+                    lo |= 1L << c;
+                } else {
+                    hi |= 1L << (c - 64);
+                }
+            }
+        }
+        this.asciiLo = lo;
+        this.asciiHi = hi;
+    }
+
+    /**
+     * Obtain the low 64 bits of the ASCII bitmap of this CharSet. Bit n is
+     * set if character n is a member of the set.
+     * @return bitmap of the characters 0 to 63
+     */
+    public long getAsciiLo() {
+        return asciiLo;
+    }
+
+    /**
+     * Obtain the high 64 bits of the ASCII bitmap of this CharSet. Bit n is
+     * set if character (n + 64) is a member of the set.
+     * @return bitmap of the characters 64 to 127
+     */
+    public long getAsciiHi() {
+        return asciiHi;
+    }
+
+    /**
+     * Obtain the number of ranges in this CharSet.
+     * @return the number of ranges in this CharSet
+     */
+    public int getRangeCount() {
+        return ranges.length / 2;
+    }
+
+    /**
+     * Obtain the first character of a range in this CharSet.
+     * @param index the index of the range
+     * @return the first character of the range
+     */
+    public char getRangeLo(int index) {
+        return ranges[index*2];
+    }
+
+    /**
+     * Obtain the last character of a range in this CharSet.
+     * @param index the index of the range
+     * @return the last character of the range
+     */
+    public char getRangeHi(int index) {
+        return ranges[index*2+1];
+    }
+
+    /**
+     * Determine if the provided character is a member of this CharSet.
+     * @param c the character to test
+     * @return true, if the character is a member of this set, otherwise false
+     */
+    public boolean contains(char c) {
+        if(c < 64) {
+            return ((asciiLo >>> c) & 1L) != 0L;
+        }
+        if(c < 128) {
+            return ((asciiHi >>> (c - 64)) & 1L) != 0L;
+        }
+        int lo = 0;
+        int hi = (ranges.length / 2) - 1;
+        while(lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if(c < ranges[mid*2]) {
+                hi = mid - 1;
+            } else if(c > ranges[mid*2+1]) {
+                lo = mid + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determine if this CharSet contains any characters at or above 128.
+     * @return true, if any non-ASCII character is a member, otherwise false
+     */
+    public boolean hasNonAscii() {
+        return ranges.length > 0 && ranges[ranges.length-1] >= 128;
+    }
+
+    /**
+     * Determine if this CharSet contains any surrogate characters. The
+     * java.util.regex engine matches surrogate pairs as a single code point,
+     * so a char-by-char matcher must defer to the Pattern when it meets a
+     * surrogate in the input, if this set could have matched it.
+     * @return true, if any surrogate character is a member, otherwise false
+     */
+    public boolean hasSurrogates() {
+        return intersects(SURROGATES);
+    }
+
+    /**
+     * Determine if this CharSet has no members.
+     * @return true, if this CharSet is empty, otherwise false
+     */
+    public boolean isEmpty() {
+        return ranges.length == 0;
+    }
+
+    /**
+     * Determine if this CharSet contains exactly one character.
+     * @return true, if this CharSet has exactly one member, otherwise false
+     */
+    public boolean isSingleton() {
+        return ranges.length == 2 && ranges[0] == ranges[1];
+    }
+
+    /**
+     * Count the members of this CharSet.
+     * @return the number of characters in this CharSet
+     */
+    public int size() {
+        int size = 0;
+        for(int i=0; i<ranges.length; i+=2) {
+            size += ranges[i+1] - ranges[i] + 1;
+        }
+        return size;
+    }
+
+    /**
+     * Obtain the complement of this CharSet.
+     * @return CharSet containing every character not in this set
+     */
+    public CharSet complement() {
+        char[] result = new char[ranges.length + 2];
+        int n = 0;
+        int next = Character.MIN_VALUE;
+        for(int i=0; i<ranges.length; i+=2) {
+            if(ranges[i] > next) {
+                result[n++] = (char) next;
+                result[n++] = (char) (ranges[i] - 1);
+            }
+            next = ranges[i+1] + 1;
+        }
+        if(next <= Character.MAX_VALUE) {
+            result[n++] = (char) next;
+            result[n++] = Character.MAX_VALUE;
+        }
+        return new CharSet(Arrays.copyOf(result, n));
+    }
+
+    /**
+     * Obtain the intersection of this CharSet and the provided CharSet.
+     * @param other CharSet to intersect with this one
+     * @return CharSet containing the characters present in both sets
+     */
+    public CharSet intersect(CharSet other) {
+        return complement().union(other.complement()).complement();
+    }
+
+    /**
+     * Determine if this CharSet shares any members with the provided CharSet.
+     * @param other CharSet to test against this one
+     * @return true, if any character is a member of both sets
+     */
+    public boolean intersects(CharSet other) {
+        if((asciiLo & other.asciiLo) != 0L) return true;
+        if((asciiHi & other.asciiHi) != 0L) return true;
+        int i = 0;
+        int j = 0;
+        while(i < ranges.length && j < other.ranges.length) {
+            if(ranges[i+1] < other.ranges[j]) {
+                i += 2;
+            } else if(other.ranges[j+1] < ranges[i]) {
+                j += 2;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determine if every member of the provided CharSet is also a member
+     * of this CharSet.
+     * @param other CharSet to test against this one
+     * @return true, if the provided set is a subset of this one
+     */
+    public boolean containsAll(CharSet other) {
+        return other.intersects(complement()) == false;
+    }
+
+    /**
+     * Obtain the union of this CharSet and the provided CharSet.
+     * @param other CharSet to combine with this one
+     * @return CharSet containing the characters of both sets
+     */
+    public CharSet union(CharSet other) {
+        char[] all = new char[ranges.length + other.ranges.length];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while(i < ranges.length || j < other.ranges.length) {
+            char lo;
+            char hi;
+            if(j >= other.ranges.length
+                    || (i < ranges.length && ranges[i] <= other.ranges[j])) {
+                lo = ranges[i];
+                hi = ranges[i+1];
+                i += 2;
+            } else {
+                lo = other.ranges[j];
+                hi = other.ranges[j+1];
+                j += 2;
+            }
+            if(n > 0 && lo <= all[n-1] + 1) {
+                if(hi > all[n-1]) {
+                    all[n-1] = hi;
+                }
+            } else {
+                all[n++] = lo;
+                all[n++] = hi;
+            }
+        }
+        return new CharSet(Arrays.copyOf(all, n));
+    }
+
+    /**
+     * Obtain this CharSet with US-ASCII case folding applied. This is the
+     * behavior of the CASE_INSENSITIVE flag without UNICODE_CASE; every
+     * ASCII letter in the set brings its opposite case letter along.
+     * @return CharSet closed under ASCII case conversion
+     */
+    public CharSet foldAsciiCase() {
+        CharSet folded = this;
+        for(char c='a'; c<='z'; c++) {
+            char upper = (char) (c - 32);
+            if(contains(c) || contains(upper)) {
+                folded = folded.union(of(c)).union(of(upper));
+            }
+        }
+        return folded;
+    }
+
+    /**
+     * Determine if the provided Object is an identical set of characters.
+     * @param obj Object to compare with this CharSet
+     * @return true, if the provided Object is a CharSet with the same members
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if(obj instanceof CharSet) {
+            return Arrays.equals(ranges, ((CharSet) obj).ranges);
+        }
+        return false;
+    }
+
+    /**
+     * Obtain the hashCode of this CharSet.
+     * @return the hashCode of this CharSet
+     */
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(ranges);
+    }
+
+    /**
+     * Obtain a String representation of this CharSet, in the syntax of
+     * a regular expression character class. This may be useful for
+     * debugging purposes.
+     * @return a String representation of this CharSet
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for(int i=0; i<ranges.length; i+=2) {
+            appendChar(sb, ranges[i]);
+            if(ranges[i+1] != ranges[i]) {
+                sb.append('-');
+                appendChar(sb, ranges[i+1]);
+            }
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * Append a character to a character class String, escaping it if
+     * necessary.
+     * @param sb StringBuilder to which the character is appended
+     * @param c the character to be appended
+     */
+    private static void appendChar(StringBuilder sb, char c) {
+        if(c >= 0x20 && c < 0x7F) {
+            if("\\[]^-&".indexOf(c) >= 0) {
+                sb.append('\\');
+            }
+            sb.append(c);
+        } else {
+            sb.append(String.format("\\u%04X", (int) c));
+        }
+    }
+
+    /**
+     * The surrogate characters, high and low.
+     */
+    private static final CharSet SURROGATES =
+            range(Character.MIN_SURROGATE, Character.MAX_SURROGATE);
+
+    /**
+     * Bitmap of the ASCII characters 64 to 127 in this set.
+     */
+    private final long asciiHi;
+
+    /**
+     * Bitmap of the ASCII characters 0 to 63 in this set.
+     */
+    private final long asciiLo;
+
+    /**
+     * Sorted, disjoint, inclusive (lo, hi) ranges of this set.
+     */
+    private final char[] ranges;
+}
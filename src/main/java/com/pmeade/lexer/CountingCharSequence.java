@@ -0,0 +1,200 @@
+/*
+ * CountingCharSequence.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+/**
+ * CountingCharSequence is an instrumented decorator for CharSequence. Like
+ * LexicalCharSequence, its subSequence() points into the original input;
+ * every sub-sequence shares the count of the sequence it came from.
+ *
+ * The count of <code>charAt()</code> calls is a measure of the work a
+ * regular expression engine did against the input. Unlike the time it
+ * took, it does not depend on the machine, the JIT, or the garbage
+ * collector, so the same input always has the same cost.
+ *
+ * A budget limits the count. When the budget is spent, charAt() throws
+ * BudgetExceededException, which stops a catastrophic match early.
+ */
+class CountingCharSequence implements CharSequence
+{
+    /**
+     * Decorate a CharSequence to count calls to <code>charAt()</code>.
+     * @param source CharSequence to be decorated
+     * @param budget the number of calls to charAt() allowed before
+     *               BudgetExceededException is thrown
+     */
+    public CountingCharSequence(CharSequence source, long budget) {
+        this(source, 0, source.length(), budget, new long[] { budget });
+    }
+
+    /**
+     * Decorate a CharSequence to count calls to <code>charAt()</code>
+     * against a budget shared with other CountingCharSequence objects.
+     * Only the calls made through this one are counted by getCount().
+     * @param source CharSequence to be decorated
+     * @param remaining shared one-element array holding the remaining
+     *                  budget
+     */
+    CountingCharSequence(CharSequence source, long[] remaining) {
+        this(source, 0, source.length(), remaining[0], remaining);
+    }
+
+    /**
+     * Construct a CountingCharSequence that points to a specific offset
+     * within the provided CharSequence, and shares a remaining budget.
+     * @param source CharSequence to be decorated
+     * @param offset offset into the source input where the sequence starts
+     * @param count size of the sequence considered valid
+     * @param budget the remaining budget when the original
+     *               CountingCharSequence was constructed
+     * @param remaining shared one-element array holding the remaining budget
+     */
+    private CountingCharSequence(CharSequence source, int offset, int count,
+            long budget, long[] remaining) {
+        this.budget = budget;
+        this.count = count;
+        this.offset = offset;
+        this.remaining = remaining;
+        this.source = source;
+    }
+
+    /**
+     * Obtain the length of this CountingCharSequence.
+     * @return the length of this CountingCharSequence
+     */
+    @Override
+    public int length() {
+        return count;
+    }
+
+    /**
+     * Obtain the character at the specified position, and count the call.
+     * @param index index of the character to be returned
+     * @return char value at the specified position
+     * @throws BudgetExceededException if the budget has been spent
+     */
+    @Override
+    public char charAt(int index) {
+        if(remaining[0] <= 0L) {
+            throw BudgetExceededException.INSTANCE;
+        }
+        remaining[0]--;
+        return source.charAt(index+offset);
+    }
+
+    /**
+     * Obtain a CharSequence that corresponds to a sub-sequence of this
+     * CountingCharSequence. Calls to charAt() on the sub-sequence are
+     * counted against the same budget.
+     * @param start starting index of the sub-sequence, inclusive
+     * @param end ending index of the sub-sequence, exclusive
+     * @return a CharSequence representing the requested sub-sequence
+     * @throws IndexOutOfBoundsException if start or end are less than 0,
+     *         if end is less than start, or end is greater than the
+     *         length of this CharSequence
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if(start < 0) throw new IndexOutOfBoundsException();
+        if(end < 0) throw new IndexOutOfBoundsException();
+        if(end < start) throw new IndexOutOfBoundsException();
+        if(end > count) throw new IndexOutOfBoundsException();
+        return new CountingCharSequence(source, offset+start, end-start,
+                budget, remaining);
+    }
+
+    /**
+     * Obtain this CharSequence in String form. This is not counted.
+     * @return String object, containing the character data represented by
+     *         this CharSequence
+     */
+    @Override
+    public String toString() {
+        return source.subSequence(offset, offset+count).toString();
+    }
+
+    /**
+     * Obtain the number of calls to charAt() counted so far, by this
+     * CountingCharSequence and every sub-sequence obtained from it.
+     * @return the number of calls to charAt()
+     */
+    public long getCount() {
+        return budget - remaining[0];
+    }
+
+    /**
+     * Determine if the budget has been spent.
+     * @return true if no more calls to charAt() are allowed, otherwise false
+     */
+    public boolean isExhausted() {
+        return remaining[0] <= 0L;
+    }
+
+    /**
+     * BudgetExceededException is thrown by charAt() when the budget of a
+     * CountingCharSequence has been spent. It is thrown for control flow
+     * only, so a single instance without a stack trace is shared.
+     */
+    static final class BudgetExceededException extends RuntimeException
+    {
+        /**
+         * The shared instance of BudgetExceededException.
+         */
+        static final BudgetExceededException INSTANCE = new BudgetExceededException();
+
+        /**
+         * Construct the BudgetExceededException.
+         */
+        private BudgetExceededException() {
+            super("budget exceeded", null, false, false);
+        }
+
+        /**
+         * Version of the serialized form of BudgetExceededException.
+         */
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * The remaining budget when the original CountingCharSequence was
+     * constructed.
+     */
+    private final long budget;
+
+    /**
+     * Length of this sub-sequence of the original provided input.
+     */
+    private final int count;
+
+    /**
+     * Offset into the original provided input where this sub-sequence
+     * begins.
+     */
+    private final int offset;
+
+    /**
+     * Remaining budget, shared with every sub-sequence.
+     */
+    private final long[] remaining;
+
+    /**
+     * The original provided input.
+     */
+    private final CharSequence source;
+}
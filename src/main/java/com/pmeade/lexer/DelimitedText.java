@@ -0,0 +1,331 @@
+/*
+ * DelimitedText.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * DelimitedText matches text between an open and a close delimiter: block
+ * comments, string literals, heredocs, and the like. Such patterns are
+ * usually written as a reluctant regular expression, such as
+ * <code>/\*.*?\*&#47;</code>, which the java.util.regex engine matches one
+ * char at a time, with recursion that can overflow the stack on a long
+ * body. DelimitedText is matched with a loop over the input instead.
+ *
+ * Without an escape or nesting, the close delimiter is found with a
+ * Boyer-Moore-Horspool search, which skips over most of the body without
+ * looking at it. Otherwise every char of the body is looked at once: an
+ * escape char and the char after it never end the text, and while the
+ * nesting depth allows, each open delimiter needs a close delimiter of
+ * its own.
+ *
+ * The regular expression from toRegex() gives exactly the same matches,
+ * so the TokenType still has a Pattern for everything else.
+ *
+ * @see TokenTypeBuilder#delimited(String, String, char)
+ */
+final class DelimitedText
+{
+    /**
+     * Result of match() when the input does not match.
+     */
+    public static final int NO_MATCH = -1;
+
+    /**
+     * Value of escape when there is no escape char.
+     */
+    private static final int NO_ESCAPE = -1;
+
+    /**
+     * Construct a DelimitedText.
+     * @param open the text that begins a match
+     * @param close the text that ends a match
+     * @param escape the escape char, or NO_ESCAPE if there is none
+     * @param nesting the deepest that delimited text may nest inside a
+     *                match, or zero if it does not nest
+     * @throws NullPointerException if open or close is null
+     * @throws IllegalArgumentException if open or close is empty or begins
+     *         with the escape char or a low surrogate, if the escape char
+     *         is a surrogate, if nesting is negative, or if text that nests
+     *         has one delimiter beginning with the other
+     */
+    private DelimitedText(String open, String close, int escape, int nesting) {
+        if(open == null) throw new NullPointerException();
+        if(close == null) throw new NullPointerException();
+        if(open.isEmpty() || close.isEmpty()) {
+            throw new IllegalArgumentException("delimiters must not be empty");
+        }
+        if(escape != NO_ESCAPE && (open.charAt(0) == escape || close.charAt(0) == escape)) {
+            throw new IllegalArgumentException("delimiters must not begin with the escape char");
+        }
+        if(escape != NO_ESCAPE && Character.isSurrogate((char) escape)) {
+            throw new IllegalArgumentException("escape must not be a surrogate");
+        }
+        if(Character.isLowSurrogate(open.charAt(0)) || Character.isLowSurrogate(close.charAt(0))) {
+            throw new IllegalArgumentException("delimiters must not begin with a low surrogate");
+        }
+        if(nesting < 0) throw new IllegalArgumentException("nesting must not be negative");
+        if(nesting > 0 && (open.startsWith(close) || close.startsWith(open))) {
+            throw new IllegalArgumentException("nested delimiters must not begin with each other");
+        }
+        this.open = open;
+        this.close = close;
+        this.escape = escape;
+        this.nesting = nesting;
+        this.skips = new int[256];
+        Arrays.fill(skips, close.length());
+        for(int i=0; i<close.length()-1; i++) {
+            skips[close.charAt(i) & 0xFF] = close.length() - 1 - i;
+        }
+    }
+
+    /**
+     * Construct a DelimitedText without an escape char.
+     * @param open the text that begins a match
+     * @param close the text that ends a match
+     * @throws NullPointerException if open or close is null
+     * @throws IllegalArgumentException if open or close is empty or begins
+     *         with a low surrogate
+     */
+    DelimitedText(String open, String close) {
+        this(open, close, NO_ESCAPE, 0);
+    }
+
+    /**
+     * Construct a DelimitedText with an escape char.
+     * @param open the text that begins a match
+     * @param close the text that ends a match
+     * @param escape the escape char
+     * @throws NullPointerException if open or close is null
+     * @throws IllegalArgumentException if open or close is empty or begins
+     *         with the escape char or a low surrogate, or if the escape
+     *         char is a surrogate
+     */
+    DelimitedText(String open, String close, char escape) {
+        this(open, close, escape, 0);
+    }
+
+    /**
+     * Obtain the text that ends a match.
+     * @return the close delimiter
+     */
+    public String getClose() {
+        return close;
+    }
+
+    /**
+     * Obtain the deepest that delimited text may nest inside a match.
+     * @return the nesting depth, or zero if the text does not nest
+     */
+    public int getNesting() {
+        return nesting;
+    }
+
+    /**
+     * Obtain the text that begins a match.
+     * @return the open delimiter
+     */
+    public String getOpen() {
+        return open;
+    }
+
+    /**
+     * Match delimited text against the input at the provided position.
+     * This gives the same result as Matcher.lookingAt() on the Pattern of
+     * toRegex(), with the region [start, end).
+     * @param input the input to be matched
+     * @param start the position at which the open delimiter must begin
+     * @param end the position at which the input ends
+     * @return the length of the match, or NO_MATCH if there is none
+     */
+    public int match(CharSequence input, int start, int end) {
+        if(startsWith(input, start, end, open) == false) return NO_MATCH;
+        int position = start + open.length();
+        int stop = (escape == NO_ESCAPE && nesting == 0)
+                ? find(input, position, end)
+                : scan(input, position, end);
+        return (stop < 0) ? NO_MATCH : stop - start;
+    }
+
+    /**
+     * Obtain a DelimitedText like this one, that nests.
+     * @param nesting the deepest that delimited text may nest inside a
+     *                match, or zero if it does not nest
+     * @return DelimitedText that nests to the provided depth
+     * @throws IllegalArgumentException if nesting is negative, or if one
+     *         delimiter begins with the other
+     */
+    public DelimitedText nest(int nesting) {
+        return new DelimitedText(open, close, escape, nesting);
+    }
+
+    /**
+     * Obtain a regular expression with the same matches as this
+     * DelimitedText. Each level of nesting repeats the body inside itself,
+     * so the expression grows with the nesting depth.
+     * @return regular expression equivalent to this DelimitedText
+     */
+    public String toRegex() {
+        return Pattern.quote(open) + toRegex(nesting) + Pattern.quote(close);
+    }
+
+    /**
+     * Obtain a String representation of this DelimitedText. This may be
+     * useful for debugging purposes.
+     * @return a String representation of this DelimitedText
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(open).append("...").append(close);
+        if(escape != NO_ESCAPE) sb.append(" escape ").append((char) escape);
+        if(nesting > 0) sb.append(" nesting ").append(nesting);
+        return sb.toString();
+    }
+
+    /**
+     * Find the end of the first close delimiter at or after a position,
+     * with a Boyer-Moore-Horspool search. The last char of the window is
+     * looked up in the skip table to decide how far to move the window;
+     * chars share a slot by their low byte, which can only shorten a skip.
+     * @param input the input to be searched
+     * @param position the position at which to begin the search
+     * @param end the position at which the input ends
+     * @return the position after the close delimiter, or -1 if there is
+     *         none before the end
+     */
+    private int find(CharSequence input, int position, int end) {
+        int length = close.length();
+        char last = close.charAt(length - 1);
+        int p = position + length - 1;
+        while(p < end) {
+            char c = input.charAt(p);
+            if(c == last && startsWith(input, p - length + 1, end, close)) {
+                return p + 1;
+            }
+            p += skips[c & 0xFF];
+        }
+        return -1;
+    }
+
+    /**
+     * Find the end of the close delimiter that ends a match, looking at
+     * each char for escapes and, while the nesting depth allows, open
+     * delimiters.
+     * @param input the input to be scanned
+     * @param position the position after the open delimiter
+     * @param end the position at which the input ends
+     * @return the position after the close delimiter, or -1 if there is
+     *         none before the end
+     */
+    private int scan(CharSequence input, int position, int end) {
+        char first = open.charAt(0);
+        char last = close.charAt(0);
+        int depth = 0;
+        int p = position;
+        while(p < end) {
+            char c = input.charAt(p);
+            if(c == escape) {
+                // the escape char and the code point after it
+                if(p + 1 >= end) return -1;
+                boolean pair = Character.isHighSurrogate(input.charAt(p + 1))
+                        && p + 2 < end
+                        && Character.isLowSurrogate(input.charAt(p + 2));
+                p += (pair) ? 3 : 2;
+            } else if(c == first && depth < nesting && startsWith(input, p, end, open)) {
+                depth++;
+                p += open.length();
+            } else if(c == last && startsWith(input, p, end, close)) {
+                p += close.length();
+                if(depth == 0) return p;
+                depth--;
+            } else {
+                p++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Determine if the input has the provided text at a position.
+     * @param input the input to be checked
+     * @param position the position of the first char of the text
+     * @param end the position at which the input ends
+     * @param text the text to look for
+     * @return true, if the text is at the position, otherwise false
+     */
+    private static boolean startsWith(CharSequence input, int position, int end, String text) {
+        if(position + text.length() > end) return false;
+        for(int i=0; i<text.length(); i++) {
+            if(input.charAt(position + i) != text.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Obtain a regular expression for the body of a match: anything but
+     * the close delimiter, escaped code points, and nested text.
+     * @param depth the deepest that delimited text may nest in the body
+     * @return regular expression for the body
+     */
+    private String toRegex(int depth) {
+        String quotedOpen = Pattern.quote(open);
+        String quotedClose = Pattern.quote(close);
+        String quotedEscape = (escape == NO_ESCAPE) ? null : Pattern.quote(String.valueOf((char) escape));
+        StringBuilder sb = new StringBuilder("(?:");
+        if(quotedEscape != null) {
+            sb.append(quotedEscape).append("(?s:.)|");
+        }
+        if(depth > 0) {
+            sb.append(quotedOpen).append(toRegex(depth - 1)).append(quotedClose).append("|");
+        }
+        sb.append("(?!").append(quotedClose);
+        if(quotedEscape != null) sb.append("|").append(quotedEscape);
+        if(depth > 0) sb.append("|").append(quotedOpen);
+        sb.append(")(?s:.))*");
+        return sb.toString();
+    }
+
+    /**
+     * The text that ends a match.
+     */
+    private final String close;
+
+    /**
+     * The escape char, or NO_ESCAPE if there is none.
+     */
+    private final int escape;
+
+    /**
+     * The deepest that delimited text may nest inside a match.
+     */
+    private final int nesting;
+
+    /**
+     * The text that begins a match.
+     */
+    private final String open;
+
+    /**
+     * How far the window of the Boyer-Moore-Horspool search may move, by
+     * the low byte of its last char.
+     */
+    private final int[] skips;
+}
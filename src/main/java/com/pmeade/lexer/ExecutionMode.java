@@ -0,0 +1,49 @@
+/*
+ * ExecutionMode.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+/**
+ * ExecutionMode determines how a Lexer runs the Pattern matchers of its
+ * TokenType objects against the input.
+ */
+public enum ExecutionMode
+{
+    /**
+     * Run the Pattern matchers concurrently, on a thread pool owned by the
+     * Lexer. This is the default.
+     */
+    CONCURRENT,
+
+    /**
+     * Run the Pattern matchers one after another, on the calling thread.
+     * For small specifications, this avoids the cost of handing each match
+     * to another thread and back.
+     */
+    SEQUENTIAL,
+
+    /**
+     * Run the Pattern matchers one after another, on the calling thread,
+     * but only those that could match the first character of the input,
+     * and only until none of the rest could beat the longest match so far.
+     * The Lexer learns which TokenType objects tend to win at each first
+     * character, and tries those first. The Token objects are the same as
+     * in the other modes.
+     */
+    ADAPTIVE
+}
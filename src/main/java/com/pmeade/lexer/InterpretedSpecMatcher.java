@@ -0,0 +1,67 @@
+/*
+ * InterpretedSpecMatcher.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+/**
+ * InterpretedSpecMatcher is the SpecMatcher used when a LexerSpec can not
+ * be specialized into bytecode. It walks the LinearPattern objects of the
+ * candidate TokenType objects instead of running generated code, and
+ * gives exactly the same results.
+ */
+class InterpretedSpecMatcher implements SpecMatcher
+{
+    /**
+     * Construct an InterpretedSpecMatcher.
+     * @param spec the compiled lexical specification to be matched
+     */
+    public InterpretedSpecMatcher(LexerSpec spec) {
+        this.spec = spec;
+    }
+
+    /**
+     * Find the longest match among the linear TokenType objects.
+     * @param input the input to be matched
+     * @param start the position at which the match must begin
+     * @param end the position at which the input ends
+     * @return (length &lt;&lt; 32) | index of the winning TokenType, or
+     *         NO_MATCH, or FALLBACK
+     */
+    @Override
+    public long match(CharSequence input, int start, int end) {
+        int winner = -1;
+        int longest = -1;
+        for(int index : spec.getCandidates(input.charAt(start))) {
+            LinearPattern linear = spec.getTokenType(index).getLinearPattern();
+            if(linear == null) continue;
+            int length = linear.match(input, start, end);
+            if(length == LinearPattern.FALLBACK) return FALLBACK;
+            if(length > longest) {
+                longest = length;
+                winner = index;
+            }
+        }
+        if(winner < 0) return NO_MATCH;
+        return ((long) longest << 32) | winner;
+    }
+
+    /**
+     * The compiled lexical specification to be matched.
+     */
+    private final LexerSpec spec;
+}
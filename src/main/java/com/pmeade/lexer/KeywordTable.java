@@ -0,0 +1,253 @@
+/*
+ * KeywordTable.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * KeywordTable recognizes keywords among the matches of an identifier
+ * TokenType. Instead of trying each keyword TokenType against the input,
+ * the Lexer matches the identifier once, and looks its text up here.
+ *
+ * The lookup is a minimal perfect hash: every keyword has its own slot,
+ * found by hashing the text of the match twice, with no probing. The text
+ * is then compared with the keyword in that slot, because text that is
+ * not a keyword hashes to a slot too. Nothing is allocated.
+ *
+ * If the keyword TokenType objects ignore case, so does the table; with
+ * Pattern.UNICODE_CASE, beyond US-ASCII, just as Pattern would.
+ *
+ * A KeywordTable is immutable, and may be shared between threads.
+ */
+final class KeywordTable
+{
+    /**
+     * Construct a KeywordTable.
+     * @param keywords the keyword TokenType objects; each must have static
+     *                 text, and all must agree on case sensitivity
+     * @throws NullPointerException if keywords, or any keyword, is null
+     * @throws IllegalArgumentException if a keyword has no static text, if
+     *         the keywords disagree on case sensitivity, or if two keywords
+     *         have the same text
+     */
+    KeywordTable(List<TokenType> keywords)
+    {
+        int n = keywords.size();
+        int foldFlags = -1;
+        for(TokenType keyword : keywords) {
+            if(keyword == null) throw new NullPointerException();
+            if(keyword.getStaticText() == null) {
+                throw new IllegalArgumentException("keyword " + keyword.getName() + " has no static text");
+            }
+            int flags = keyword.getPattern().flags() & (Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+            if((flags & Pattern.CASE_INSENSITIVE) == 0) flags = 0;
+            if(foldFlags != -1 && flags != foldFlags) {
+                throw new IllegalArgumentException("keywords disagree on case sensitivity");
+            }
+            foldFlags = flags;
+        }
+        this.ignoreCase = (foldFlags > 0);
+        this.unicodeCase = (foldFlags & Pattern.UNICODE_CASE) != 0;
+        this.keywords = new TokenType[n];
+        this.texts = new String[n];
+        this.seeds = new int[n];
+        if(n == 0) return;
+        // equal keywords would share a slot, whatever the seed
+        Set<String> folded = new HashSet<String>();
+        for(TokenType keyword : keywords) {
+            StringBuilder text = new StringBuilder(keyword.getStaticText());
+            for(int i=0; i<text.length(); i++) {
+                text.setCharAt(i, fold(text.charAt(i)));
+            }
+            if(folded.add(text.toString()) == false) {
+                throw new IllegalArgumentException("keywords have the same text: " + keyword.getStaticText());
+            }
+        }
+        // distribute the keywords into buckets
+        final List<List<Integer>> buckets = new ArrayList<List<Integer>>();
+        for(int i=0; i<n; i++) {
+            buckets.add(new ArrayList<Integer>());
+        }
+        for(int i=0; i<n; i++) {
+            String text = keywords.get(i).getStaticText();
+            buckets.get(index(hash(0, text, 0, text.length()), n)).add(i);
+        }
+        // place the biggest buckets first, while there is room to spare
+        Integer[] order = new Integer[n];
+        for(int i=0; i<n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return buckets.get(o2).size() - buckets.get(o1).size();
+            }
+        });
+        boolean[] taken = new boolean[n];
+        int free = 0;
+        for(int b : order) {
+            List<Integer> bucket = buckets.get(b);
+            if(bucket.isEmpty()) break;
+            if(bucket.size() == 1) {
+                // a single keyword goes directly in any free slot
+                while(taken[free]) free++;
+                place(keywords.get(bucket.get(0)), free, taken);
+                seeds[b] = -free - 1;
+                continue;
+            }
+            // search for a seed that sends the bucket to free slots
+            for(int seed=1; ; seed++) {
+                int[] slots = new int[bucket.size()];
+                boolean fits = true;
+                for(int k=0; k<slots.length && fits; k++) {
+                    String text = keywords.get(bucket.get(k)).getStaticText();
+                    slots[k] = index(hash(seed, text, 0, text.length()), n);
+                    fits = (taken[slots[k]] == false);
+                    for(int j=0; j<k && fits; j++) {
+                        fits = (slots[j] != slots[k]);
+                    }
+                }
+                if(fits) {
+                    for(int k=0; k<slots.length; k++) {
+                        place(keywords.get(bucket.get(k)), slots[k], taken);
+                    }
+                    seeds[b] = seed;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Put a keyword in a slot of the table.
+     * @param keyword the keyword TokenType
+     * @param slot the slot for the keyword
+     * @param taken which slots are already taken
+     */
+    private void place(TokenType keyword, int slot, boolean[] taken) {
+        keywords[slot] = keyword;
+        texts[slot] = keyword.getStaticText();
+        taken[slot] = true;
+    }
+
+    /**
+     * Obtain the keyword TokenType objects of this table.
+     * @return unmodifiable List of the keyword TokenType objects, in the
+     *         order of their slots
+     */
+    List<TokenType> getKeywords() {
+        return Collections.unmodifiableList(Arrays.asList(keywords));
+    }
+
+    /**
+     * Look up a range of text in this table.
+     * @param source the input
+     * @param start the position of the first character of the text
+     * @param end the position after the last character of the text
+     * @return the keyword TokenType whose text is the provided range, or
+     *         null if the text is not a keyword
+     */
+    TokenType lookup(CharSequence source, int start, int end) {
+        int n = keywords.length;
+        if(n == 0) return null;
+        int seed = seeds[index(hash(0, source, start, end), n)];
+        int slot = (seed < 0) ? -seed - 1 : index(hash(seed, source, start, end), n);
+        String text = texts[slot];
+        if(text.length() != end - start) return null;
+        for(int i=0; i<text.length(); i++) {
+            if(fold(text.charAt(i)) != fold(source.charAt(start + i))) return null;
+        }
+        return keywords[slot];
+    }
+
+    /**
+     * Fold a character for comparison, if this table ignores case.
+     * @param c the character to fold
+     * @return the folded character
+     */
+    private char fold(char c) {
+        if(ignoreCase == false) return c;
+        if(c < 128) {
+            return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+        }
+        return (unicodeCase) ? Character.toLowerCase(Character.toUpperCase(c)) : c;
+    }
+
+    /**
+     * Hash a range of text, after folding its characters.
+     * @param seed the seed of the hash function
+     * @param text the text to hash
+     * @param start the position of the first character to hash
+     * @param end the position after the last character to hash
+     * @return the hash of the text
+     */
+    private int hash(int seed, CharSequence text, int start, int end) {
+        int h = 0x811c9dc5 ^ (seed * 0x9e3779b9);
+        for(int i=start; i<end; i++) {
+            h = (h ^ fold(text.charAt(i))) * 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    /**
+     * Reduce a hash to an index.
+     * @param hash the hash
+     * @param n the number of slots
+     * @return an index between 0 and n-1
+     */
+    private static int index(int hash, int n) {
+        return (int) (((hash & 0xffffffffL) * n) >>> 32);
+    }
+
+    /**
+     * Flag: Does this table ignore case?
+     */
+    private final boolean ignoreCase;
+
+    /**
+     * The keyword TokenType in each slot.
+     */
+    private final TokenType[] keywords;
+
+    /**
+     * For each bucket of the first hash, the seed of the second hash, or
+     * the slot of its only keyword as -(slot)-1.
+     */
+    private final int[] seeds;
+
+    /**
+     * The text of the keyword in each slot.
+     */
+    private final String[] texts;
+
+    /**
+     * Flag: Does this table fold case beyond US-ASCII?
+     */
+    private final boolean unicodeCase;
+}
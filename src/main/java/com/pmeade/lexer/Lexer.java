@@ -19,13 +19,17 @@
 package com.pmeade.lexer;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -43,6 +47,11 @@ import java.util.regex.Pattern;
  * If you want to receive all of the tokens in a List, call the method
  * <code>scan()</code> or <code>scanNoSkip()</code>.
  * 
+ * If the TokenType objects are only active in some lexical states (see
+ * TokenTypeBuilder.state()), only those active in the current state are
+ * tried, and a Token may push, pop, or switch the lexical state. The
+ * Lexer begins in TokenType.DEFAULT_STATE.
+ * 
  * If you want to restart lexical analysis from the beginning of the input,
  * call the method <code>reset()</code>.
  * 
@@ -51,9 +60,32 @@ import java.util.regex.Pattern;
  * and <code>scanNoSkip()</code> methods will not contain this null token.
  * 
  * To determine if the Lexer has encountered an error, call the method
- * <code>isError()</code>.
+ * <code>isError()</code>. If you would rather the Lexer carried on past
+ * unlexable input, returning it as TokenType.ERROR Token objects, call
+ * the method <code>setErrorRecovery()</code>.
+ * 
+ * If the input may be hostile, bound the work of the regular expression
+ * engine with <code>setStepBudget()</code>. A Lexer that runs out of
+ * budget stops with an error, and <code>getBudgetOverrun()</code> says
+ * which TokenType ran it out, and where.
+ * 
+ * The longest match wins, unless <code>setMatchPolicy()</code> says
+ * otherwise; a specification written so that the first TokenType to match
+ * is the right one can say so, and skip most of the matching.
+ * 
+ * If some TokenType objects match only rarely, like block comments, call
+ * <code>setFindAhead()</code> to have the Lexer look ahead for where each
+ * could next match, and pass over them until the input gets there.
+ * 
+ * If you want to know which TokenType objects are expensive, or which ones
+ * never match, provide a LexerMonitor with <code>setMonitor()</code>.
+ * If you want to know where in the input a Token took too long to decide,
+ * provide a SlowTokenDetector with <code>setSlowTokenDetector()</code>.
+ * If you want Token objects to share the text of repeated identifiers and
+ * literals, provide a SymbolPool with <code>setSymbolPool()</code>.
+ * The Lexer also reports to the Java Flight Recorder; see LexerEvents.
  */
-public class Lexer
+public class Lexer implements TokenStream
 {
     /**
      * Construct a Lexer to perform lexical analysis on the provided
@@ -63,17 +95,79 @@ public class Lexer
      * @throws NullPointerException if either spec or source are null
      */
     public Lexer(List<TokenType> spec, CharSequence source)
+    {
+        this(spec, source, ExecutionMode.CONCURRENT);
+    }
+
+    /**
+     * Construct a Lexer to perform lexical analysis on the provided
+     * input using the provided token types and execution mode.
+     * @param spec List of TokenType objects used to lex the provided input
+     * @param source input to be processed into lexical Token objects
+     * @param executionMode how the Pattern matchers are to be run
+     * @throws NullPointerException if spec, source, or executionMode are null
+     */
+    public Lexer(List<TokenType> spec, CharSequence source, ExecutionMode executionMode)
     {
         // validate input
         if(spec == null) throw new NullPointerException();
+        if(executionMode == null) throw new NullPointerException();
         // cache important values, set up initial lexer state
+        this.candidateOrders = (executionMode == ExecutionMode.ADAPTIVE)
+                ? new HashMap<Object, CandidateOrder>() : null;
         this.error = false;
-        this.executorService = Executors.newCachedThreadPool();
+        this.executionMode = executionMode;
+        this.expectedIndexes = new HashMap<List<Object>, int[]>();
+        this.executorService = (executionMode == ExecutionMode.CONCURRENT)
+                ? Executors.newCachedThreadPool() : null;
         this.input = new LexicalCharSequence(source);
+        this.matchPolicy = MatchPolicy.LONGEST_MATCH;
         this.position = 0;
         this.sequence = 0;
         this.source = source;
         this.spec = spec;
+        this.states = new LexicalStates(spec);
+        this.stateStack = (states.isStateful()) ? new LexicalStates.Stack() : null;
+        EVENTS.lifecycle("created", spec.size(), source.length());
+    }
+
+    /**
+     * Obtain the error status of a Lexer that ran out of step budget.
+     * @return BudgetOverrun naming the TokenType and position where the
+     *         budget ran out, or null if it has not run out
+     */
+    public BudgetOverrun getBudgetOverrun() {
+        return budgetOverrun;
+    }
+
+    /**
+     * Obtain how the Lexer chooses among the TokenType objects that match.
+     * @return the MatchPolicy of the Lexer
+     */
+    public MatchPolicy getMatchPolicy() {
+        return matchPolicy;
+    }
+
+    /**
+     * Obtain the current lexical state of the Lexer. Only the TokenType
+     * objects active in this state are tried against the input.
+     * @return the name of the current lexical state
+     */
+    public String getState() {
+        return (stateStack == null) ? TokenType.DEFAULT_STATE : stateStack.getState();
+    }
+
+    /**
+     * Obtain the LineIndex of the input, to find the line and column of
+     * a Token. The LineIndex is built on first use, and shared by every
+     * later call.
+     * @return LineIndex of the input
+     */
+    public LineIndex getLineIndex() {
+        if(lineIndex == null) {
+            lineIndex = new LineIndex(source);
+        }
+        return lineIndex;
     }
 
     /**
@@ -96,8 +190,10 @@ public class Lexer
     public Token next() {
         // until we find something we can return to the caller
         while(true) {
+            // pass over the skipped tokens we can, without creating them
+            skipAhead(null);
             // find the next token
-            Token emitToken = nextNoSkip();
+            Token emitToken = nextNoSkip(null);
             // if we've reached the end
             if(emitToken == null) {
                 // return that we've reached the end
@@ -111,6 +207,31 @@ public class Lexer
         }
     }
     
+    /**
+     * Obtain the next lexical Token of the provided input, trying only the
+     * expected TokenType objects. Tokens generated from TokenType objects
+     * marked as skipped are always tried, and suppressed for a non-skip
+     * Token. A parser that knows what may come next can use this to avoid
+     * both the cost of the other TokenType objects, and their longer
+     * matches; a RIGHT_SHIFT that is not expected can not take the place
+     * of a GREATER_THAN that is.
+     * @param expected the TokenType objects that may come next
+     * @return Token representing the next lexical unit from the input. If
+     *         none of the expected TokenType objects match, the Lexer
+     *         encounters an error and this method returns null, as it does
+     *         at the end of the input.
+     * @throws NullPointerException if expected is null
+     */
+    public Token next(TokenTypeSet expected) {
+        if(expected == null) throw new NullPointerException();
+        while(true) {
+            skipAhead(expected);
+            Token emitToken = nextNoSkip(expected);
+            if(emitToken == null) return null;
+            if(emitToken.getTokenType().isSkipped() == false) return emitToken;
+        }
+    }
+
     /**
      * Obtain the next lexical Token of the provided input. Even Token objects
      * generated from a TokenType marked as skipped will be returned by this
@@ -120,31 +241,229 @@ public class Lexer
      *         method will return null.
      */
     public Token nextNoSkip() {
+        return nextNoSkip(null);
+    }
+
+    /**
+     * Obtain the next lexical Token of the provided input, including
+     * Token objects generated from a TokenType marked as skipped.
+     * @param expected the TokenType objects to try, besides the skipped
+     *                 ones, or null to try every TokenType
+     * @return Token representing the next lexical unit from the input, or
+     *         null on error or at the end of the input
+     */
+    private Token nextNoSkip(TokenTypeSet expected) {
         // check if we've still got input
         if(error) { return null; }
         if(input.length() == 0) { return null; }
         // build up the scanners
+        LexerMonitor monitor = this.monitor;
+        SlowTokenDetector detector = this.detector;
+        boolean timed = (monitor != null) || (detector != null);
+        // every match deciding the token shares one step budget
+        long steps = getStepLimit();
+        long[] budget = (steps != Long.MAX_VALUE) ? new long[] { steps } : null;
         List<ScanResult> scanResults = new ArrayList();
-        for(int i=0; i<spec.size(); i++) {
-            scanResults.add(new ScanResult(i, spec.get(i), input));
+        int[] active = getActiveIndexes(expected);
+        if(active == null) {
+            for(int i=0; i<spec.size(); i++) {
+                scanResults.add(new ScanResult(i, spec.get(i), input, timed, budget));
+            }
+        } else {
+            // only the ones active in the current lexical state, and expected
+            for(int i : active) {
+                scanResults.add(new ScanResult(i, spec.get(i), input, timed, budget));
+            }
+        }
+        // pass over the TokenType objects that can not match until later
+        if(findAhead && budget == null) {
+            for(ScanResult scanResult : scanResults) {
+                if(isDue(scanResult.getPriority()) == false) scanResult.defer();
+            }
+        }
+        // decide the next token, reporting it to the flight recorder
+        int start = position;
+        long startNanos = (detector != null) ? System.nanoTime() : 0L;
+        Object scope = EVENTS.beginToken(sequence);
+        Token token = decideToken(scanResults, expected, monitor, budget);
+        if(token == null && error && errorRecovery && budgetOverrun == null) {
+            token = recover(expected);
+        }
+        if(scope != null) {
+            EVENTS.endToken(scope, token, position, getState());
+        }
+        // follow the token to its lexical state
+        if(token != null && stateStack != null) {
+            stateStack.apply(token.getTokenType());
+        }
+        // report the decision if it was a slow one; the breakdown by
+        // TokenType is only gathered for those, as most decisions are fast
+        if(detector != null) {
+            long elapsedNanos = System.nanoTime() - startNanos;
+            if(elapsedNanos >= detector.getThresholdNanos()) {
+                long[] matchNanos = new long[spec.size()];
+                for(ScanResult scanResult : scanResults) {
+                    matchNanos[scanResult.getPriority()] = scanResult.getMatchNanos();
+                }
+                detector.check(source, start, elapsedNanos, token, spec, matchNanos);
+            }
         }
+        return token;
+    }
+
+    /**
+     * Decide the next lexical Token of the input, by matching every
+     * TokenType against it and choosing the longest match.
+     * @param scanResults a ScanResult for each TokenType to try, in priority
+     *                    order
+     * @param expected the expected TokenType objects, or null
+     * @param monitor LexerMonitor to record the decision with, or null
+     * @param budget the steps left for the whole decision, shared by every
+     *               match, or null if there is no step budget
+     * @return Token representing the next lexical unit from the input, or
+     *         null if no TokenType matched the input, or the step budget
+     *         ran out
+     */
+    private Token decideToken(List<ScanResult> scanResults, TokenTypeSet expected,
+            LexerMonitor monitor, long[] budget) {
+        long allowed = (budget != null) ? budget[0] : Long.MAX_VALUE;
         // run the scan concurrently on multiple threads
         List<Future<ScanResult>> results;
-        while(true) {
-            try {
-                results = executorService.invokeAll(scanResults);
-                break;
-            } catch(InterruptedException e) {
-                // oops
+        if(executionMode == ExecutionMode.ADAPTIVE) {
+            // or only the ones that could still win, on this thread
+            results = scanAdaptive(scanResults, expected);
+        } else if(executionMode == ExecutionMode.SEQUENTIAL || budget != null) {
+            // or one after another on this thread; the matches share the
+            // step budget, so they take turns with it
+            results = new ArrayList<Future<ScanResult>>();
+            for(ScanResult scanResult : scanResults) {
+                FutureTask<ScanResult> task = new FutureTask<ScanResult>(scanResult);
+                task.run();
+                results.add(task);
+                // a match before the cutoff wins without trying the rest
+                if(scanResult.getPriority() < matchCutoff && scanResult.isSuccess()) break;
+            }
+        } else {
+            while(true) {
+                try {
+                    results = executorService.invokeAll(scanResults);
+                    break;
+                } catch(InterruptedException e) {
+                    // oops
+                }
+            }
+        }
+        // charge the whole decision to the step budget, stopping if it ran out
+        if(budget != null) {
+            spendSteps(allowed - budget[0]);
+            for(Future<ScanResult> result : results) {
+                ScanResult ran;
+                try {
+                    ran = result.get();
+                } catch(Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                if(ran.isOverBudget()) {
+                    overrun(ran.getTokenType(), position, allowed);
+                    break;
+                }
+            }
+            if(budgetOverrun != null) {
+                if(monitor != null) monitor.recordError();
+                return null;
             }
         }
         // if we didn't get any results at all
         if(results.isEmpty()) {
             // indicate that lexical analysis failed on the input
             error = true;
+            if(monitor != null) monitor.recordError();
             // and return end-of-stream
             return null;
         }
+        // obtain the first match before the cutoff, if there is one
+        Future<ScanResult> winner = null;
+        if(matchCutoff > 0) {
+            int first = matchCutoff;
+            for(Future<ScanResult> result : results) {
+                ScanResult ran;
+                try {
+                    ran = result.get();
+                } catch(Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                if(ran.isSuccess() && ran.getPriority() < first) {
+                    first = ran.getPriority();
+                    winner = result;
+                }
+            }
+        }
+        // or else the one with the longest match and highest priority
+        if(winner == null) {
+            winner = findLongest(results);
+        }
+        ScanResult scanResult;
+        try {
+            scanResult = winner.get();
+        } catch(Exception e) {
+            throw new IllegalStateException(e);
+        }
+        // record how long each of the matches took
+        if(monitor != null) {
+            for(Future<ScanResult> result : results) {
+                ScanResult ran;
+                try {
+                    ran = result.get();
+                } catch(Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                if(ran.isDeferred()) continue;
+                monitor.recordMatch(ran.getPriority(), ran.getLength(), ran.getMatchNanos());
+            }
+        }
+        // if the winner wasn't even a successful match
+        if(scanResult.isSuccess() == false) {
+            // indicate that lexical analysis failed on the input
+            error = true;
+            if(monitor != null) monitor.recordError();
+            // and return end-of-stream
+            return null;
+        }
+        // determine if the match spells one of the winner's keywords
+        int length = scanResult.getLength();
+        TokenType tokenType = scanResult.getTokenType().classify(input, 0, length);
+        // determine if we use the canonical text from the TokenType
+        String tokenText = tokenType.getStaticText();
+        int symbol = Token.NO_SYMBOL;
+        if(tokenText == null) {
+            // nope, we need the actual text that we scanned from the input
+            if(symbolPool != null) {
+                // share the canonical text, if the pool has room for it
+                symbol = symbolPool.intern(input, 0, length);
+            }
+            tokenText = (symbol != Token.NO_SYMBOL) ? symbolPool.getText(symbol)
+                    : scanResult.getTokenText();
+        }
+        Token token = new Token(sequence, tokenType, tokenText, position, symbol);
+        // trim the token's text off the front of the input
+        input = input.subSequence(length, input.length());
+        // update our position count
+        position += length;
+        // update our sequence count
+        sequence++;
+        if(monitor != null) monitor.recordToken(scanResult.getPriority());
+        // return the winning token to the caller
+        return token;
+    }
+
+    /**
+     * Find the result with the longest match, and among those, the one of
+     * highest priority.
+     * @param results the results of the ScanResult objects that were run;
+     *                this List is sorted in place
+     * @return the winning result
+     */
+    private static Future<ScanResult> findLongest(List<Future<ScanResult>> results) {
         // sort the results by token priority
         Collections.sort(results, new Comparator<Future<ScanResult>>() {
             @Override
@@ -167,57 +486,559 @@ public class Lexer
                 try {
                     ScanResult sr1 = o1.get();
                     ScanResult sr2 = o2.get();
-                    int l1 = (sr1.isSuccess()) ? sr1.getTokenText().length() : -1;
-                    int l2 = (sr2.isSuccess()) ? sr2.getTokenText().length() : -1;
-                    return l2 - l1;
+                    return sr2.getLength() - sr1.getLength();
                 } catch(Exception e) {
                     return 0;
                 }
             }
         });
         // obtain the scan result with the longest match and highest priority
-        Future<ScanResult> winner = results.get(0);
-        ScanResult scanResult;
-        try {
-            scanResult = winner.get();
-        } catch(Exception e) {
-            throw new IllegalStateException(e);
+        return results.get(0);
+    }
+
+    /**
+     * Run the ScanResult objects that could still produce the winning
+     * Token, in the order of the CandidateOrder. Those before the cutoff
+     * of the MatchPolicy are run first, in priority order, and the first
+     * of them to match ends the search. A ScanResult is passed
+     * over if its TokenType could not match the first character of the
+     * input, or could not match more than the longest match so far.
+     * @param scanResults a ScanResult for each active TokenType, in priority
+     *                    order
+     * @param expected the expected TokenType objects, or null
+     * @return List of the ScanResult objects that were run
+     */
+    private List<Future<ScanResult>> scanAdaptive(List<ScanResult> scanResults,
+            TokenTypeSet expected) {
+        List<Future<ScanResult>> results = new ArrayList<Future<ScanResult>>();
+        String state = getState();
+        Object key = (expected == null) ? state : Arrays.<Object>asList(state, expected);
+        CandidateOrder candidateOrder = candidateOrders.get(key);
+        if(candidateOrder == null) {
+            LexerSpec active = getCompiledSpec().forState(state);
+            if(expected != null) active = active.restrict(expected);
+            candidateOrder = new CandidateOrder(active);
+            candidateOrders.put(key, candidateOrder);
         }
-        // if the winner wasn't even a successful match
-        if(scanResult.isSuccess() == false) {
-            // indicate that lexical analysis failed on the input
-            error = true;
-            // and return end-of-stream
-            return null;
+        CandidateOrder.CandidateClass candidates = candidateOrder.forChar(input.charAt(0));
+        // the candidates before the cutoff go first, in priority order
+        if(matchCutoff > 0) {
+            int[] first = new int[candidates.size()];
+            int count = 0;
+            for(int i=0; i<candidates.size(); i++) {
+                int index = candidates.getCandidate(i);
+                if(scanResults.get(index).getPriority() < matchCutoff) first[count++] = index;
+            }
+            Arrays.sort(first, 0, count);
+            for(int i=0; i<count; i++) {
+                ScanResult scanResult = scanResults.get(first[i]);
+                FutureTask<ScanResult> task = new FutureTask<ScanResult>(scanResult);
+                task.run();
+                results.add(task);
+                if(scanResult.isSuccess()) {
+                    candidates.recordWin(first[i]);
+                    return results;
+                }
+            }
         }
-        // determine if we use the canonical text from the TokenType
-        TokenType tokenType = scanResult.getTokenType();
-        String tokenText = tokenType.getStaticText();
-        if(tokenText == null) {
-            // nope, we need the actual text that we scanned from the input
-            tokenText = scanResult.getTokenText();
+        int remaining = input.length();
+        int longest = -1;
+        int winner = -1;
+        for(int i=0; i<candidates.size(); i++) {
+            // stop once none of the remaining candidates could win
+            if(candidates.getBound(i) < longest) break;
+            // pass over this candidate if it could not win
+            int index = candidates.getCandidate(i);
+            if(scanResults.get(index).getPriority() < matchCutoff) continue;
+            int most = Math.min(candidateOrder.getMaxLength(index), remaining);
+            if(most < longest || (most == longest && index > winner)) continue;
+            ScanResult scanResult = scanResults.get(index);
+            FutureTask<ScanResult> task = new FutureTask<ScanResult>(scanResult);
+            task.run();
+            results.add(task);
+            if(scanResult.isSuccess()) {
+                int length = scanResult.getLength();
+                if(length > longest || (length == longest && index < winner)) {
+                    longest = length;
+                    winner = index;
+                }
+            }
         }
-        Token token = new Token(sequence, tokenType, tokenText, position);
-        // trim the token's text off the front of the input
-        input = input.subSequence(scanResult.getTokenText().length(), input.length());
-        // update our position count
-        position += scanResult.getTokenText().length();
-        // update our sequence count
+        if(winner >= 0) {
+            // the Pattern that matched wins, even if it spells a keyword
+            candidates.recordWin(winner);
+        }
+        return results;
+    }
+
+    /**
+     * Obtain the compiled lexical specification, compiling it on first use.
+     * @return LexerSpec compiled from the TokenType objects of this Lexer
+     */
+    private LexerSpec getCompiledSpec() {
+        if(compiledSpec == null) {
+            compiledSpec = LexerSpec.compile(spec);
+        }
+        return compiledSpec;
+    }
+
+    /**
+     * Recover from an error at the current position. The unlexable span
+     * runs up to the next position where one of the TokenType objects to
+     * try actually matches, or to the end of the input; it becomes an
+     * ERROR Token, and lexical analysis resumes after it.
+     * @param expected the expected TokenType objects, or null
+     * @return Token of TokenType.ERROR covering the unlexable span
+     */
+    private Token recover(TokenTypeSet expected) {
+        error = false;
+        int start = position;
+        int resume = resync(expected);
+        if(error) return null;
+        String tokenText = source.subSequence(start, resume).toString();
+        Token token = new Token(sequence, TokenType.ERROR, tokenText, start);
+        input = input.subSequence(resume - start, input.length());
+        position = resume;
         sequence++;
-        // return the winning token to the caller
         return token;
     }
 
+    /**
+     * Find the next position after the current one where a TokenType can
+     * match. The first-character table of the compiled specification rules
+     * out most positions without running a Pattern; only the candidates at
+     * the remaining positions are matched.
+     * @param expected the expected TokenType objects, or null
+     * @return the position where lexical analysis can resume, or the
+     *         length of the input if there is none
+     */
+    private int resync(TokenTypeSet expected) {
+        LexerSpec compiled = getCompiledSpec();
+        int[] active = getActiveIndexes(expected);
+        int end = source.length();
+        for(int p=position+1; p<end; p++) {
+            char c = source.charAt(p);
+            if(compiled.canStart(c) == false) continue;
+            long allowed = getStepLimit();
+            long[] budget = (allowed != Long.MAX_VALUE) ? new long[] { allowed } : null;
+            for(int index : compiled.getCandidates(c)) {
+                if(active != null && Arrays.binarySearch(active, index) < 0) continue;
+                if(matchAt(index, p, budget, allowed) >= 0) return p;
+                if(error) return end;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Match a TokenType against the input at a position, on the calling
+     * thread. If the match runs out of step budget, the Lexer stops with
+     * a BudgetOverrun.
+     * @param index the index of the TokenType in the specification
+     * @param p the position in the input
+     * @param budget the steps left for the whole decision at the position,
+     *               shared by every match tried there, or null if there is
+     *               no step budget
+     * @param allowed the steps the decision was allowed at the start
+     * @return the length of the match, or -1 if there is no match
+     */
+    private int matchAt(int index, int p, long[] budget, long allowed) {
+        TokenType tokenType = spec.get(index);
+        int maxLength = tokenType.getMaxLength();
+        int end = source.length();
+        int stop = (maxLength != TokenType.UNBOUNDED && maxLength < end - p)
+                ? p + maxLength : end;
+        int length = LinearPattern.FALLBACK;
+        CharClassRun run = tokenType.getCharClassRun();
+        LinearPattern linear = tokenType.getLinearPattern();
+        DelimitedText delimited = tokenType.getDelimitedText();
+        if(run != null) {
+            length = run.match(source, p, stop);
+        } else if(linear != null) {
+            length = linear.match(source, p, stop);
+        } else if(delimited != null) {
+            length = delimited.match(source, p, stop);
+        }
+        if(length != LinearPattern.FALLBACK) {
+            return (length >= 0) ? length : -1;
+        }
+        if(budget != null) {
+            // count the steps of the regex engine against the budget
+            CountingCharSequence counted = new CountingCharSequence(source, budget);
+            Matcher matcher = tokenType.getPattern().matcher(counted);
+            matcher.region(p, stop);
+            boolean success;
+            try {
+                success = matcher.lookingAt();
+            } catch(CountingCharSequence.BudgetExceededException e) {
+                spendSteps(counted.getCount());
+                overrun(tokenType, p, allowed);
+                return -1;
+            }
+            spendSteps(counted.getCount());
+            return success ? matcher.end() - p : -1;
+        }
+        if(localMatchers == null) {
+            localMatchers = new Matcher[spec.size()];
+        }
+        Matcher matcher = localMatchers[index];
+        if(matcher == null) {
+            matcher = tokenType.getPattern().matcher(source);
+            localMatchers[index] = matcher;
+        }
+        matcher.region(p, stop);
+        return matcher.lookingAt() ? matcher.end() - p : -1;
+    }
+
+    /**
+     * Pass over the skipped Token objects at the current position, without
+     * creating them. Every TokenType that could begin with the next char is
+     * matched on the calling thread, and while the longest match is of a
+     * skipped TokenType, the Lexer moves past it, exactly as nextNoSkip()
+     * would have. The first time a TokenType that is not skipped would win,
+     * or nothing matches, the Lexer stops and leaves the decision to
+     * nextNoSkip(). A char that begins no skipped TokenType stops the Lexer
+     * without matching anything at all.
+     *
+     * Nothing is passed over while a LexerMonitor, a SlowTokenDetector, or
+     * the Token events of the flight recorder want to see each decision.
+     * @param expected the expected TokenType objects, or null
+     */
+    private void skipAhead(TokenTypeSet expected) {
+        if(error) return;
+        if(monitor != null || detector != null || EVENTS.isTokenEnabled()) return;
+        LexerSpec compiled = getCompiledSpec();
+        if(skipFirstSet == null) {
+            CharSet union = CharSet.EMPTY;
+            for(int i=0; i<spec.size(); i++) {
+                if(spec.get(i).isSkipped()) union = union.union(compiled.getFirstSet(i));
+            }
+            skipFirstSet = union;
+        }
+        int end = source.length();
+        int start = position;
+        int p = position;
+        int[] active = null;
+        boolean lookup = true;
+        while(p < end) {
+            char c = source.charAt(p);
+            if(skipFirstSet.contains(c) == false) break;
+            if(lookup) {
+                active = getActiveIndexes(expected);
+                lookup = false;
+            }
+            int winner = -1;
+            int longest = -1;
+            long allowed = getStepLimit();
+            long[] budget = (allowed != Long.MAX_VALUE) ? new long[] { allowed } : null;
+            int count = (active == null) ? spec.size() : active.length;
+            for(int k=0; k<count; k++) {
+                int index = (active == null) ? k : active[k];
+                if(compiled.getFirstSet(index).contains(c) == false) continue;
+                int length = matchAt(index, p, budget, allowed);
+                if(length > longest) {
+                    longest = length;
+                    winner = index;
+                }
+                // a match before the cutoff wins outright
+                if(length >= 0 && index < matchCutoff) break;
+            }
+            if(error || longest <= 0) break;
+            TokenType tokenType = spec.get(winner).classify(source, p, p + longest);
+            if(tokenType.isSkipped() == false) break;
+            p += longest;
+            sequence++;
+            if(stateStack != null && tokenType.getTransition() != null) {
+                stateStack.apply(tokenType);
+                lookup = true;
+            }
+        }
+        if(p != start) {
+            input = input.subSequence(p - start, input.length());
+            position = p;
+        }
+    }
+
+    /**
+     * Determine if a TokenType could match at the current position, using
+     * find-ahead. For a TokenType that needs the regex engine, and whose
+     * match does not depend on the input around it, Matcher.find() gives
+     * the next position where it could match; if a Pattern matched at an
+     * earlier position with lookingAt(), find() would have stopped there.
+     * The TokenType is due at that position, and the next one is found
+     * once the Lexer moves past it.
+     * @param index the index of the TokenType in the specification
+     * @return true, if the TokenType must be tried at the current
+     *         position, otherwise false
+     */
+    private boolean isDue(int index) {
+        if(nextStarts == null) {
+            LexerSpec compiled = getCompiledSpec();
+            nextStarts = new int[spec.size()];
+            findMatchers = new Matcher[spec.size()];
+            for(int i=0; i<spec.size(); i++) {
+                TokenType tokenType = spec.get(i);
+                RegexNode syntax = tokenType.getSyntax();
+                boolean sparse = tokenType.getCharClassRun() == null
+                        && tokenType.getLinearPattern() == null
+                        && tokenType.getDelimitedText() == null
+                        && syntax != null
+                        && syntax.hasOpaque() == false
+                        && syntax.isNullable() == false
+                        && compiled.getFirstSet(i).hasSurrogates() == false
+                        && (tokenType.getPattern().flags() & Pattern.CANON_EQ) == 0;
+                nextStarts[i] = (sparse) ? UNKNOWN_START : ALWAYS_DUE;
+            }
+        }
+        int next = nextStarts[index];
+        if(next == ALWAYS_DUE) return true;
+        if(next < position) {
+            Matcher matcher = findMatchers[index];
+            if(matcher == null) {
+                matcher = spec.get(index).getPattern().matcher(source);
+                findMatchers[index] = matcher;
+            }
+            next = matcher.find(position) ? matcher.start() : NEVER_DUE;
+            nextStarts[index] = next;
+        }
+        return next == position;
+    }
+
+    /**
+     * Obtain the step budget of the next decision: what is left of the
+     * budget of the input, but no more than the budget of a Token.
+     * @return the number of steps the matches deciding the next Token may
+     *         take together, or
+     *         Long.MAX_VALUE if there is no step budget
+     */
+    private long getStepLimit() {
+        long steps = (tokenStepBudget > 0L) ? tokenStepBudget : Long.MAX_VALUE;
+        if(documentStepBudget > 0L) {
+            steps = Math.min(steps, Math.max(0L, documentStepsLeft));
+        }
+        return steps;
+    }
+
+    /**
+     * Stop the Lexer, because a match ran out of step budget. The steps of
+     * the decision must already be charged to the budget of the input.
+     * @param tokenType the TokenType whose match was cut off
+     * @param p the position in the input where it was tried
+     * @param steps the number of steps the decision was allowed
+     */
+    private void overrun(TokenType tokenType, int p, long steps) {
+        boolean document = documentStepBudget > 0L && (tokenStepBudget <= 0L
+                || steps < tokenStepBudget || documentStepsLeft <= 0L);
+        budgetOverrun = new BudgetOverrun(tokenType, p, steps, document);
+        error = true;
+    }
+
+    /**
+     * Charge steps taken by the regex engine to the budget of the input.
+     * @param steps the number of steps taken
+     */
+    private void spendSteps(long steps) {
+        if(documentStepBudget > 0L) {
+            documentStepsLeft -= steps;
+        }
+    }
+
+    /**
+     * Obtain the indexes of the TokenType objects to try against the input.
+     * @param expected the expected TokenType objects, or null
+     * @return indexes of the TokenType objects active in the lexical state
+     *         and either expected or skipped, in priority order; or null to
+     *         try every TokenType
+     */
+    private int[] getActiveIndexes(TokenTypeSet expected) {
+        if(expected == null) {
+            return (stateStack == null) ? null : states.getIndexes(stateStack.getState());
+        }
+        String state = getState();
+        List<Object> key = Arrays.<Object>asList(state, expected);
+        int[] result = expectedIndexes.get(key);
+        if(result == null) {
+            int[] indexes = new int[spec.size()];
+            int count = 0;
+            for(int i=0; i<spec.size(); i++) {
+                TokenType tokenType = spec.get(i);
+                if(tokenType.isActiveIn(state)
+                        && (tokenType.isSkipped() || expected.contains(tokenType))) {
+                    indexes[count++] = i;
+                }
+            }
+            result = new int[count];
+            System.arraycopy(indexes, 0, result, 0, count);
+            expectedIndexes.put(key, result);
+        }
+        return result;
+    }
+
     /**
      * Reset the state of the Lexer. Returns the Lexer to its initial state,
      * even after reaching an error or the end of the input.
      */
     public void reset()
     {
+        this.budgetOverrun = null;
+        this.nextStarts = null;
+        this.documentStepsLeft = documentStepBudget;
         this.error = false;
         this.input = new LexicalCharSequence(source);
         this.position = 0;
         this.sequence = 0;
+        if(stateStack != null) {
+            stateStack.reset();
+        }
+        EVENTS.lifecycle("reset", spec.size(), source.length());
+    }
+
+    /**
+     * Provide a LexerMonitor to collect runtime statistics from this Lexer.
+     * Monitoring is off unless a LexerMonitor is provided.
+     * @param monitor LexerMonitor built for the same List of TokenType
+     *                objects as this Lexer, or null to stop monitoring
+     * @throws IllegalArgumentException if the LexerMonitor was built for a
+     *         different specification
+     */
+    public void setMonitor(LexerMonitor monitor)
+    {
+        if(monitor != null && monitor.isFor(spec) == false) {
+            throw new IllegalArgumentException("LexerMonitor is for a different specification");
+        }
+        this.monitor = monitor;
+    }
+
+    /**
+     * Provide a SlowTokenDetector to report the Token decisions of this
+     * Lexer that take too long. Detection is off unless a SlowTokenDetector
+     * is provided.
+     * @param detector SlowTokenDetector to check each Token decision, or
+     *                 null to stop detection
+     */
+    public void setSlowTokenDetector(SlowTokenDetector detector)
+    {
+        this.detector = detector;
+    }
+
+    /**
+     * Turn error recovery on or off. Without it, the Lexer stops at the
+     * first position where no TokenType matches, and isError() becomes
+     * true. With it, the Lexer returns a Token of TokenType.ERROR covering
+     * the unlexable text instead, up to the next position where some
+     * TokenType matches, and carries on from there; isError() stays false.
+     * Error recovery is off unless turned on.
+     * @param errorRecovery true, to recover from errors, otherwise false
+     */
+    public void setErrorRecovery(boolean errorRecovery)
+    {
+        this.errorRecovery = errorRecovery;
+    }
+
+    /**
+     * Turn find-ahead on or off. With it, the Lexer finds the next position
+     * where each TokenType that needs the regex engine could match, with
+     * Matcher.find(), and does not try the TokenType again until the input
+     * reaches that position. A TokenType that matches at only a handful of
+     * positions, like a block comment, then costs one pass over the input
+     * instead of a match for every Token. The Token objects are the same
+     * either way. A TokenType whose Pattern has assertions or lookaround,
+     * or can match the empty string, is always tried. Find-ahead is off
+     * unless turned on, and does nothing while there is a step budget.
+     * @param findAhead true, to find ahead, otherwise false
+     */
+    public void setFindAhead(boolean findAhead)
+    {
+        this.findAhead = findAhead;
+    }
+
+    /**
+     * Choose how the Lexer decides among the TokenType objects that match.
+     * The policy must not need a cutoff; see the other setMatchPolicy().
+     * @param matchPolicy LONGEST_MATCH (the default) or FIRST_MATCH
+     * @throws NullPointerException if matchPolicy is null
+     * @throws IllegalArgumentException if matchPolicy is PRIORITY_CUTOFF
+     */
+    public void setMatchPolicy(MatchPolicy matchPolicy)
+    {
+        setMatchPolicy(matchPolicy, null);
+    }
+
+    /**
+     * Choose how the Lexer decides among the TokenType objects that match.
+     * With PRIORITY_CUTOFF, the TokenType objects before the cutoff are
+     * tried first, in priority order, and the first of them to match wins;
+     * only if none does, the longest match among the rest wins.
+     * @param matchPolicy how to decide among the TokenType objects
+     * @param cutoff the first TokenType after the cutoff, for
+     *               PRIORITY_CUTOFF; otherwise null
+     * @throws NullPointerException if matchPolicy is null
+     * @throws IllegalArgumentException if a cutoff is provided for a policy
+     *         other than PRIORITY_CUTOFF, or is missing for PRIORITY_CUTOFF,
+     *         or is not in the specification of this Lexer
+     */
+    public void setMatchPolicy(MatchPolicy matchPolicy, TokenType cutoff)
+    {
+        if(matchPolicy == null) throw new NullPointerException();
+        if((matchPolicy == MatchPolicy.PRIORITY_CUTOFF) != (cutoff != null)) {
+            throw new IllegalArgumentException("a cutoff must be provided for PRIORITY_CUTOFF only");
+        }
+        int index = 0;
+        if(matchPolicy == MatchPolicy.FIRST_MATCH) {
+            index = spec.size();
+        } else if(matchPolicy == MatchPolicy.PRIORITY_CUTOFF) {
+            index = spec.indexOf(cutoff);
+            if(index < 0) {
+                throw new IllegalArgumentException("cutoff " + cutoff.getName() + " is not in the specification");
+            }
+        }
+        this.matchCutoff = index;
+        this.matchPolicy = matchPolicy;
+    }
+
+    /**
+     * Bound the work of the regular expression engine, for input that may
+     * be hostile. A step is one call to <code>charAt()</code> made by a
+     * Pattern; a TokenType matched without the regex engine (a literal, a
+     * run of a character class, and so on) takes time linear in its match,
+     * and costs no steps. All the matches deciding a Token together may
+     * take up to tokenSteps steps, and all the matches against the input
+     * together up to documentSteps. A match that would take more is cut
+     * off, and the Lexer stops: isError() becomes true, getBudgetOverrun()
+     * reports the TokenType and position, and error recovery does not carry
+     * on past it. While there is a step budget, the matches deciding a
+     * Token take turns on the calling thread, even in CONCURRENT mode, so
+     * the budget is shared exactly and the same input always stops at the
+     * same TokenType.
+     * There is no step budget unless one is provided; setting one starts
+     * the budget of the input afresh.
+     * @param tokenSteps the steps allowed the matches deciding each Token,
+     *                   or 0 for no limit
+     * @param documentSteps the steps allowed all matches against the
+     *                      input, or 0 for no limit
+     * @throws IllegalArgumentException if either budget is negative
+     */
+    public void setStepBudget(long tokenSteps, long documentSteps)
+    {
+        if(tokenSteps < 0L || documentSteps < 0L) {
+            throw new IllegalArgumentException("step budget must not be negative");
+        }
+        this.documentStepBudget = documentSteps;
+        this.documentStepsLeft = documentSteps;
+        this.tokenStepBudget = tokenSteps;
+    }
+
+    /**
+     * Provide a SymbolPool to intern the text of Token objects whose
+     * TokenType has no static text. Each Token then carries the canonical
+     * String and the symbol id of its text. Interning is off unless a
+     * SymbolPool is provided.
+     * @param symbolPool SymbolPool to intern Token text, or null to stop
+     *                   interning
+     */
+    public void setSymbolPool(SymbolPool symbolPool)
+    {
+        this.symbolPool = symbolPool;
     }
 
     /**
@@ -230,12 +1051,16 @@ public class Lexer
      */
     public List<Token> scan()
     {
+        Object scope = EVENTS.beginScan();
         List<Token> tokens = new ArrayList();
         while(true) {
             Token token = next();
             if(token == null) break;
             tokens.add(token);
         }
+        if(scope != null) {
+            EVENTS.endScan(scope, true, tokens.size(), source.length(), error);
+        }
         return tokens;
     }
 
@@ -249,25 +1074,111 @@ public class Lexer
      */
     public List<Token> scanNoSkip()
     {
+        Object scope = EVENTS.beginScan();
         List<Token> tokens = new ArrayList();
         while(true) {
             Token token = nextNoSkip();
             if(token == null) break;
             tokens.add(token);
         }
+        if(scope != null) {
+            EVENTS.endScan(scope, false, tokens.size(), source.length(), error);
+        }
         return tokens;
     }
 
+    /**
+     * Value in nextStarts of a TokenType that is tried at every position.
+     */
+    private static final int ALWAYS_DUE = -2;
+
+    /**
+     * Where the Lexer reports what it is doing to the Java Flight Recorder.
+     */
+    private static final LexerEvents EVENTS = LexerEvents.INSTANCE;
+
+    /**
+     * Value in nextStarts of a TokenType that can not match again.
+     */
+    private static final int NEVER_DUE = Integer.MAX_VALUE;
+
+    /**
+     * Value in nextStarts of a TokenType whose next match is not known.
+     */
+    private static final int UNKNOWN_START = -1;
+
+    /**
+     * The error status of a Lexer that ran out of step budget, or null if
+     * it has not run out.
+     */
+    private BudgetOverrun budgetOverrun;
+
+    /**
+     * The order in which to try the TokenType objects of each lexical
+     * state; this is null unless the Lexer is ADAPTIVE.
+     */
+    private final Map<Object, CandidateOrder> candidateOrders;
+
+    /**
+     * The compiled lexical specification, or null until it is needed by
+     * ADAPTIVE execution or error recovery.
+     */
+    private LexerSpec compiledSpec;
+
+    /**
+     * SlowTokenDetector checking each Token decision, or null if slow
+     * Token decisions are not being detected.
+     */
+    private SlowTokenDetector detector;
+
+    /**
+     * The steps allowed all matches against the input, or 0 for no limit.
+     */
+    private long documentStepBudget;
+
+    /**
+     * The steps left in the budget of the input.
+     */
+    private long documentStepsLeft;
+
     /**
      * Flag: Did the Lexer encounter an error during lexical analysis?
      */
     private boolean error;
 
     /**
-     * Thread pool used to run Pattern matchers concurrently.
+     * Flag: Does the Lexer return ERROR Token objects instead of stopping?
+     */
+    private boolean errorRecovery;
+
+    /**
+     * How the Pattern matchers are run; provided at construction time.
+     */
+    private final ExecutionMode executionMode;
+
+    /**
+     * Thread pool used to run Pattern matchers concurrently; this is null
+     * when the Lexer runs them sequentially.
      */
     private final ExecutorService executorService;
 
+    /**
+     * The indexes of the TokenType objects to try, for each lexical state
+     * and TokenTypeSet provided to next(TokenTypeSet).
+     */
+    private final Map<List<Object>, int[]> expectedIndexes;
+
+    /**
+     * Flag: Does the Lexer find ahead for where TokenType objects match?
+     */
+    private boolean findAhead;
+
+    /**
+     * Matcher for each TokenType over the whole input, for find-ahead;
+     * null until first needed.
+     */
+    private Matcher[] findMatchers;
+
     /**
      * Input to be divided into lexical Token objects. This is typically a
      * LexicalCharSequence and represents the current state of the input.
@@ -275,6 +1186,42 @@ public class Lexer
      */
     private CharSequence input;
 
+    /**
+     * The LineIndex of the input, or null until it is first needed.
+     */
+    private LineIndex lineIndex;
+
+    /**
+     * Matcher for each TokenType over the whole input, for matching on the
+     * calling thread; null until first needed.
+     */
+    private Matcher[] localMatchers;
+
+    /**
+     * The index of the first TokenType after the cutoff of the MatchPolicy;
+     * a match of any TokenType before it wins outright. This is 0 for
+     * LONGEST_MATCH.
+     */
+    private int matchCutoff;
+
+    /**
+     * How the Lexer decides among the TokenType objects that match.
+     */
+    private MatchPolicy matchPolicy;
+
+    /**
+     * LexerMonitor collecting runtime statistics, or null if the Lexer is
+     * not being monitored.
+     */
+    private LexerMonitor monitor;
+
+    /**
+     * The next position where each TokenType could match, for find-ahead;
+     * or ALWAYS_DUE, NEVER_DUE, or UNKNOWN_START. This is null until first
+     * needed.
+     */
+    private int[] nextStarts;
+
     /**
      * The current position of the next character to be analyzed by the Lexer.
      * This is tracked so that it can be provided to Token objects. This way
@@ -283,12 +1230,19 @@ public class Lexer
      */
     private int position;
 
+
     /**
      * A simple count of the number of Token objects generated by the Lexer.
      * This is tracked so that it can be provided to Token objects.
      */
     private int sequence;
 
+    /**
+     * The chars that could begin a match of a skipped TokenType, or null
+     * until first needed.
+     */
+    private CharSet skipFirstSet;
+
     /**
      * The original input to be lexically analyzed. This was provided at
      * construction time.
@@ -303,6 +1257,28 @@ public class Lexer
      * appearing first in the list will take precedence.
      */
     private final List<TokenType> spec;
+
+    /**
+     * The lexical state of the Lexer, or null if the specification does
+     * not use lexical states.
+     */
+    private final LexicalStates.Stack stateStack;
+
+    /**
+     * The TokenType objects active in each lexical state.
+     */
+    private final LexicalStates states;
+
+    /**
+     * The SymbolPool that interns the text of Token objects, or null if
+     * the text is not interned.
+     */
+    private SymbolPool symbolPool;
+
+    /**
+     * The steps allowed all the matches deciding a Token, or 0 for no limit.
+     */
+    private long tokenStepBudget;
 }
 
 /**
@@ -320,10 +1296,19 @@ class ScanResult implements Callable<ScanResult>
      * @param priority the priority of the TokenType from the list
      * @param tokenType the TokenType to use for a Pattern
      * @param input the input to be lexically analyzed
+     * @param timed true, if the match should be timed, otherwise false
+     * @param budget the steps left for the whole Token decision, shared by
+     *               every ScanResult deciding it, or null if they are not
+     *               counted
      */
-    public ScanResult(int priority, TokenType tokenType, CharSequence input) {
+    public ScanResult(int priority, TokenType tokenType, CharSequence input,
+            boolean timed, long[] budget)
+    {
+        this.budget = budget;
         this.priority = priority;
         this.input = input;
+        this.length = -1;
+        this.timed = timed;
         this.tokenType = tokenType;
     }
 
@@ -336,13 +1321,79 @@ class ScanResult implements Callable<ScanResult>
      */
     @Override
     public ScanResult call() throws Exception {
-        Pattern pattern = tokenType.getPattern();
-        Matcher matcher = pattern.matcher(input);
-        success = matcher.lookingAt();
-        tokenText = (success) ? matcher.group() : null;
+        if(deferred) return this;
+        long start = (timed) ? System.nanoTime() : 0L;
+        int maxLength = tokenType.getMaxLength();
+        // look no further into the input than a match could reach
+        int end = (maxLength != TokenType.UNBOUNDED && maxLength < input.length())
+                ? maxLength : input.length();
+        // runs, other linear patterns, and delimited text need no regex engine
+        int length = LinearPattern.FALLBACK;
+        CharClassRun run = tokenType.getCharClassRun();
+        LinearPattern linear = tokenType.getLinearPattern();
+        DelimitedText delimited = tokenType.getDelimitedText();
+        if(run != null) {
+            length = run.match(input, 0, end);
+        } else if(linear != null) {
+            length = linear.match(input, 0, end);
+        } else if(delimited != null) {
+            length = delimited.match(input, 0, end);
+        }
+        if(length != LinearPattern.FALLBACK) {
+            success = (length >= 0);
+        } else {
+            // count the steps of the regex engine, if there is a budget
+            CountingCharSequence counted = (budget != null)
+                    ? new CountingCharSequence(input, budget) : null;
+            Matcher matcher = tokenType.getPattern().matcher(
+                    (counted != null) ? counted : input);
+            if(end < input.length()) {
+                matcher.region(0, end);
+            }
+            try {
+                success = matcher.lookingAt();
+            } catch(CountingCharSequence.BudgetExceededException e) {
+                overBudget = true;
+                success = false;
+            }
+            length = (success) ? matcher.end() : -1;
+            if(counted != null) {
+                steps = counted.getCount();
+            }
+        }
+        this.length = (success) ? length : -1;
+        if(timed) {
+            matchNanos = System.nanoTime() - start;
+        }
         return this;
     }
 
+    /**
+     * Pass over the TokenType of this ScanResult: call() fails at once,
+     * without matching anything.
+     */
+    public void defer() {
+        deferred = true;
+    }
+
+    /**
+     * Obtain the length of the portion of the input that matched the
+     * TokenType.
+     * @return the length of the match, or -1 if the TokenType did not match
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Obtain the time taken by the Pattern matcher.
+     * @return the time taken to match, in nanoseconds, or 0 if the match
+     *         was not timed
+     */
+    public long getMatchNanos() {
+        return matchNanos;
+    }
+
     /**
      * Obtain the priority of the ScanResult. This is equivalent to the
      * position of the TokenType on the List of TokenType objects provided
@@ -354,11 +1405,25 @@ class ScanResult implements Callable<ScanResult>
     }
 
     /**
-     * Obtain the portion of the input that matched the TokenType.
+     * Obtain the number of steps the regex engine took.
+     * @return the number of calls to charAt() made by the Pattern matcher,
+     *         or 0 if they were not counted
+     */
+    public long getSteps() {
+        return steps;
+    }
+
+    /**
+     * Obtain the portion of the input that matched the TokenType. The text
+     * is only copied out of the input when it is first asked for.
      * @return the actual text of the input, if it matched the TokenType's
      *         Pattern, otherwise null
      */
     public String getTokenText() {
+        if(success == false) return null;
+        if(tokenText == null) {
+            tokenText = input.subSequence(0, length).toString();
+        }
         return tokenText;
     }
 
@@ -382,29 +1447,82 @@ class ScanResult implements Callable<ScanResult>
         return success;
     }
 
+    /**
+     * Determine if the TokenType of this ScanResult was passed over.
+     * @return true, if defer() was called, otherwise false
+     */
+    public boolean isDeferred() {
+        return deferred;
+    }
+
+    /**
+     * Determine if the match was cut off for running out of step budget.
+     * @return true, if the match ran out of budget, otherwise false
+     */
+    public boolean isOverBudget() {
+        return overBudget;
+    }
+
+    /**
+     * The steps left for the whole Token decision, shared by every
+     * ScanResult deciding it, or null if they are not counted. This is
+     * provided at construction time.
+     */
+    private final long[] budget;
+
+    /**
+     * Flag: Was the TokenType of this ScanResult passed over?
+     */
+    private boolean deferred;
+
     /**
      * The current input to be matched during lexical analysis. This is
      * provided at construction time.
      */
     private final CharSequence input;
 
+    /**
+     * The length of the match, or -1 if the Matcher was not successful.
+     */
+    private int length;
+
+    /**
+     * The time taken by the Pattern matcher, in nanoseconds.
+     */
+    private long matchNanos;
+
+    /**
+     * Flag: Was the match cut off for running out of step budget?
+     */
+    private boolean overBudget;
+
     /**
      * The priority of the TokenType as provided to the Lexer. This is provided
      * at construction time.
      */
     private final int priority;
 
+    /**
+     * The number of steps the regex engine took, if they were counted.
+     */
+    private long steps;
+
     /**
      * Flag: Did the Matcher succeed in matching the input?
      */
     private boolean success;
 
     /**
-     * The actual text from the input, matched by the Matcher. If the
-     * Matcher was not successful, this is null.
+     * The actual text from the input, matched by the Matcher, or null
+     * until getTokenText() copies it out of the input.
      */
     private String tokenText;
 
+    /**
+     * Flag: Should the Pattern matcher be timed?
+     */
+    private final boolean timed;
+
     /**
      * TokenType to be used for lexical analysis of the input. This is provided
      * at construction time.
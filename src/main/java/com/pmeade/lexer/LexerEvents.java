@@ -0,0 +1,155 @@
+/*
+ * LexerEvents.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+/**
+ * LexerEvents is how a Lexer reports what it is doing to the Java Flight
+ * Recorder. Every event is disabled by default; enable them in a
+ * recording, for example with the lexer.jfc settings file:
+ *
+ * <code>
+ * java -XX:StartFlightRecording:settings=default,settings=lexer.jfc ...
+ * </code>
+ *
+ * The Lexer asks for an opaque scope object when it begins some work, and
+ * hands it back when it ends. While the corresponding events are disabled,
+ * the scope is null and nothing is allocated or timed.
+ *
+ * The events are defined by JfrLexerEvents, which lives in the Java 17
+ * part of the multi-release jar (src/main/java17). Before Java 17, or on
+ * a JVM without the Java Flight Recorder (a runtime image without the
+ * jdk.jfr module), INSTANCE does nothing at all.
+ *
+ * @see JfrLexerEvents
+ */
+abstract class LexerEvents
+{
+    /**
+     * The LexerEvents used by every Lexer.
+     */
+    static final LexerEvents INSTANCE = create();
+
+    /**
+     * Create the LexerEvents for this JVM.
+     * @return JfrLexerEvents if the Java Flight Recorder is available,
+     *         otherwise a LexerEvents that does nothing
+     */
+    private static LexerEvents create() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (LexerEvents) Class.forName("com.pmeade.lexer.JfrLexerEvents")
+                    .getDeclaredConstructor().newInstance();
+        } catch(ReflectiveOperationException e) {
+            return new NoLexerEvents();
+        } catch(LinkageError e) {
+            return new NoLexerEvents();
+        }
+    }
+
+    /**
+     * Report a change in the lifecycle of a Lexer.
+     * @param phase what happened to the Lexer; "created" or "reset"
+     * @param specSize the number of TokenType objects of the Lexer
+     * @param inputLength the length of the input of the Lexer
+     */
+    abstract void lifecycle(String phase, int specSize, int inputLength);
+
+    /**
+     * Begin a scan of an entire document.
+     * @return scope of the scan, or null if scan events are disabled
+     */
+    abstract Object beginScan();
+
+    /**
+     * End a scan of an entire document.
+     * @param scope the scope returned by beginScan(); not null
+     * @param skipped true, if skipped Token objects were suppressed
+     * @param tokenCount the number of Token objects returned
+     * @param inputLength the length of the input
+     * @param error true, if the scan ended with an error
+     */
+    abstract void endScan(Object scope, boolean skipped, int tokenCount,
+            int inputLength, boolean error);
+
+    /**
+     * Begin the decision of a single Token.
+     * @param sequence the sequence number of the Token to be decided; one
+     *                 Token in every sample interval is reported
+     * @return scope of the decision, or null if token and error events
+     *         are disabled
+     */
+    abstract Object beginToken(int sequence);
+
+    /**
+     * End the decision of a single Token.
+     * @param scope the scope returned by beginToken(); not null
+     * @param token the Token decided, or null on error; a Token of
+     *              TokenType.ERROR when the Lexer recovered from an error
+     * @param position the position at which the decision was made
+     * @param state the lexical state in which the decision was made
+     */
+    abstract void endToken(Object scope, Token token, int position, String state);
+
+    /**
+     * Determine if any of the events of a Token decision are enabled.
+     * While they are not, a Lexer may pass over skipped Token objects
+     * without deciding them one at a time.
+     * @return true, if beginToken() could return a scope, otherwise false
+     */
+    abstract boolean isTokenEnabled();
+
+    /**
+     * NoLexerEvents is the LexerEvents for a JVM without the Java Flight
+     * Recorder; every event is disabled.
+     */
+    private static final class NoLexerEvents extends LexerEvents
+    {
+        @Override
+        void lifecycle(String phase, int specSize, int inputLength) {
+            // no flight recorder; nothing to do
+        }
+
+        @Override
+        Object beginScan() {
+            return null;
+        }
+
+        @Override
+        void endScan(Object scope, boolean skipped, int tokenCount,
+                int inputLength, boolean error)
+        {
+            // no flight recorder; nothing to do
+        }
+
+        @Override
+        Object beginToken(int sequence) {
+            return null;
+        }
+
+        @Override
+        void endToken(Object scope, Token token, int position, String state) {
+            // no flight recorder; nothing to do
+        }
+
+        @Override
+        boolean isTokenEnabled() {
+            return false;
+        }
+    }
+}
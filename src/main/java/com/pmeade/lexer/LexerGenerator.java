@@ -0,0 +1,709 @@
+/*
+ * LexerGenerator.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LexerGenerator writes the Java source of a lexer specialized to a single
+ * lexical specification. The generated class implements TokenStream and
+ * produces exactly the same Token objects as a Lexer would for the same
+ * specification and input, without interpreting the specification at
+ * runtime.
+ *
+ * The generated lexer dispatches on the first character of the input with
+ * a switch statement, so only the TokenType objects that could possibly
+ * match there are tried. Each TokenType with a linear pattern is matched
+ * by straight-line code, with its character classes and literal characters
+ * written out as comparisons. Any TokenType whose Pattern can not be
+ * unrolled this way is still matched by its Pattern.
+ *
+ * The generated class refers back to the List of TokenType objects it was
+ * generated from, so its Token objects carry the very same TokenType
+ * instances. It checks at class initialization that the specification has
+ * not changed since it was generated.
+ *
+ * LexerGenerator is usually run at build time; see main() for the command
+ * line, and the project pom.xml for an example that generates a lexer from
+ * MathLexer.MATH_TOKENS.
+ *
+ * @see TokenStream
+ * @see LexerSpec
+ */
+public class LexerGenerator
+{
+    /**
+     * Generate a lexer from the command line.
+     *
+     * <code>LexerGenerator &lt;spec field&gt; &lt;class name&gt; &lt;output dir&gt;</code>
+     *
+     * The spec field is the fully qualified name of a static field holding
+     * a List of TokenType objects, such as
+     * <code>com.pmeade.lexer.example.MathLexer.MATH_TOKENS</code>. The class
+     * name is the fully qualified name of the lexer to be generated. The
+     * source file is written to the appropriate package directory beneath
+     * the output directory.
+     * @param args command line arguments
+     * @throws Exception if the spec field can not be read, or the source
+     *         file can not be written
+     */
+    public static void main(String[] args) throws Exception {
+        if(args.length != 3) {
+            System.err.println("Usage: LexerGenerator <spec field> <class name> <output dir>");
+            System.exit(1);
+        }
+        List<TokenType> tokenTypes = readSpecField(args[0]);
+        LexerGenerator generator = new LexerGenerator(
+                LexerSpec.compile(tokenTypes), args[0], args[1]);
+        File file = generator.writeTo(new File(args[2]));
+        System.out.println("Generated " + file);
+    }
+
+    /**
+     * Read a lexical specification from a static field.
+     * @param specField fully qualified name of the static field
+     * @return List of TokenType objects held by the field
+     * @throws Exception if the field can not be read
+     */
+    @SuppressWarnings("unchecked")
+    static List<TokenType> readSpecField(String specField) throws Exception {
+        int dot = specField.lastIndexOf('.');
+        Class<?> owner = Class.forName(specField.substring(0, dot));
+        Field field = owner.getField(specField.substring(dot + 1));
+        return (List<TokenType>) field.get(null);
+    }
+
+    /**
+     * Construct a LexerGenerator.
+     * @param spec the compiled lexical specification
+     * @param specExpression a Java expression that evaluates to the List of
+     *                       TokenType objects the specification was compiled
+     *                       from, such as the name of a static field
+     * @param className fully qualified name of the class to be generated
+     * @throws NullPointerException if any of the arguments are null
+     * @throws IllegalArgumentException if the specification uses lexical
+     *         states; use a Lexer or SpecializedLexer for those
+     */
+    public LexerGenerator(LexerSpec spec, String specExpression, String className) {
+        if(spec == null) throw new NullPointerException();
+        if(specExpression == null) throw new NullPointerException();
+        if(className == null) throw new NullPointerException();
+        if(spec.isStateful()) {
+            throw new IllegalArgumentException("Generated lexers do not support lexical states");
+        }
+        this.className = className;
+        this.spec = spec;
+        this.specExpression = specExpression;
+    }
+
+    /**
+     * Generate the source of the lexer.
+     * @return Java source code of the generated lexer
+     */
+    public String generate() {
+        out = new StringBuilder();
+        tables.clear();
+        int dot = className.lastIndexOf('.');
+        String packageName = (dot < 0) ? null : className.substring(0, dot);
+        String simpleName = className.substring(dot + 1);
+        line("/*");
+        line(" * " + simpleName + ".java");
+        line(" * Generated by LexerGenerator from " + specExpression);
+        line(" * Do not edit; changes will be lost when the lexer is generated again.");
+        line(" */");
+        line("");
+        if(packageName != null) {
+            line("package " + packageName + ";");
+            line("");
+        }
+        line("import com.pmeade.lexer.Token;");
+        line("import com.pmeade.lexer.TokenStream;");
+        line("import com.pmeade.lexer.TokenType;");
+        line("import java.util.ArrayList;");
+        line("import java.util.List;");
+        line("import java.util.regex.Matcher;");
+        line("");
+        line("/**");
+        line(" * " + simpleName + " is a lexer specialized to the lexical specification");
+        line(" * " + specExpression + ".");
+        line(" */");
+        line("public final class " + simpleName + " implements TokenStream");
+        line("{");
+        generateStatics();
+        generateConstructor(simpleName);
+        generatePublicMethods();
+        generateNextNoSkip();
+        for(int i=0; i<spec.size(); i++) {
+            generateMatch(i);
+        }
+        generateHelpers();
+        generateFields();
+        line("}");
+        return out.toString();
+    }
+
+    /**
+     * Generate the source of the lexer, and write it to the appropriate
+     * package directory beneath the provided directory.
+     * @param directory root directory of the generated sources
+     * @return File to which the source was written
+     * @throws IOException if the source file can not be written
+     */
+    public File writeTo(File directory) throws IOException {
+        File file = new File(directory, className.replace('.', File.separatorChar) + ".java");
+        File parent = file.getParentFile();
+        if(parent.isDirectory() == false && parent.mkdirs() == false) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(generate());
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    /**
+     * Generate the static fields, and the check that the specification has
+     * not changed since the lexer was generated.
+     */
+    private void generateStatics() {
+        int size = spec.size();
+        line("    private static final List<TokenType> SPEC = " + specExpression + ";");
+        line("");
+        line("    private static final TokenType[] TYPES = SPEC.toArray(new TokenType[SPEC.size()]);");
+        line("");
+        line("    static {");
+        line("        if(TYPES.length != " + size + ") {");
+        line("            throw new IllegalStateException(\"Specification changed since generation\");");
+        line("        }");
+        for(int i=0; i<size; i++) {
+            TokenType tokenType = spec.getTokenType(i);
+            line("        check(" + i + ", " + quote(tokenType.getPattern().pattern())
+                    + ", " + tokenType.getPattern().flags() + ", "
+                    + tokenType.getMaxLength() + ");");
+        }
+        line("    }");
+        line("");
+        for(int i=0; i<size; i++) {
+            CharSet first = spec.getFirstSet(i);
+            if(first.getRangeCount() > MAX_INLINE_RANGES) {
+                tableName(first);
+            }
+            LinearPattern linear = spec.getTokenType(i).getLinearPattern();
+            if(linear == null) continue;
+            for(int a=0; a<linear.getAlternativeCount(); a++) {
+                for(int s=0; s<linear.getStepCount(a); s++) {
+                    CharSet chars = linear.getChars(a, s);
+                    if(chars.getRangeCount() > MAX_INLINE_RANGES) {
+                        tableName(chars);
+                    }
+                }
+            }
+        }
+        for(CharSet chars : tables.keySet()) {
+            StringBuilder sb = new StringBuilder();
+            for(int r=0; r<chars.getRangeCount(); r++) {
+                if(r > 0) sb.append(", ");
+                sb.append(charLiteral(chars.getRangeLo(r))).append(", ")
+                  .append(charLiteral(chars.getRangeHi(r)));
+            }
+            line("    private static final char[] " + tables.get(chars) + " = { " + sb + " };");
+            line("");
+        }
+    }
+
+    /**
+     * Generate the constructor.
+     * @param simpleName the simple name of the generated class
+     */
+    private void generateConstructor(String simpleName) {
+        line("    public " + simpleName + "(CharSequence source)");
+        line("    {");
+        line("        if(source == null) throw new NullPointerException();");
+        line("        this.end = source.length();");
+        line("        this.error = false;");
+        line("        this.matchers = new Matcher[TYPES.length];");
+        line("        this.position = 0;");
+        line("        this.sequence = 0;");
+        line("        this.source = source;");
+        line("    }");
+        line("");
+    }
+
+    /**
+     * Generate the methods of TokenStream other than nextNoSkip().
+     */
+    private void generatePublicMethods() {
+        line("    @Override");
+        line("    public boolean isError() {");
+        line("        return error;");
+        line("    }");
+        line("");
+        line("    @Override");
+        line("    public Token next() {");
+        line("        while(true) {");
+        line("            Token token = nextNoSkip();");
+        line("            if(token == null) return null;");
+        line("            if(token.getTokenType().isSkipped() == false) return token;");
+        line("        }");
+        line("    }");
+        line("");
+        line("    @Override");
+        line("    public void reset() {");
+        line("        this.error = false;");
+        line("        this.position = 0;");
+        line("        this.sequence = 0;");
+        line("    }");
+        line("");
+        line("    @Override");
+        line("    public List<Token> scan() {");
+        line("        List<Token> tokens = new ArrayList<Token>();");
+        line("        for(Token token = next(); token != null; token = next()) {");
+        line("            tokens.add(token);");
+        line("        }");
+        line("        return tokens;");
+        line("    }");
+        line("");
+        line("    @Override");
+        line("    public List<Token> scanNoSkip() {");
+        line("        List<Token> tokens = new ArrayList<Token>();");
+        line("        for(Token token = nextNoSkip(); token != null; token = nextNoSkip()) {");
+        line("            tokens.add(token);");
+        line("        }");
+        line("        return tokens;");
+        line("    }");
+        line("");
+    }
+
+    /**
+     * Generate nextNoSkip(), with its switch on the first character.
+     */
+    private void generateNextNoSkip() {
+        line("    @Override");
+        line("    public Token nextNoSkip() {");
+        line("        if(error) return null;");
+        line("        if(position >= end) return null;");
+        line("        int winner = -1;");
+        line("        int longest = -1;");
+        line("        int length;");
+        line("        char c = source.charAt(position);");
+        line("        switch(c) {");
+        // group the ASCII characters by their candidate TokenType objects
+        Map<String, List<Character>> cases = new LinkedHashMap<String, List<Character>>();
+        Map<String, int[]> candidatesByKey = new LinkedHashMap<String, int[]>();
+        String defaultKey = keyOf(defaultCandidates());
+        for(char c=0; c<128; c++) {
+            int[] candidates = spec.getCandidates(c);
+            String key = keyOf(candidates);
+            if(key.equals(defaultKey)) continue;
+            if(cases.containsKey(key) == false) {
+                cases.put(key, new ArrayList<Character>());
+                candidatesByKey.put(key, candidates);
+            }
+            cases.get(key).add(c);
+        }
+        for(Map.Entry<String, List<Character>> entry : cases.entrySet()) {
+            StringBuilder labels = new StringBuilder("            ");
+            int count = 0;
+            for(char c : entry.getValue()) {
+                if(count > 0 && count % 8 == 0) {
+                    line(labels.toString());
+                    labels = new StringBuilder("            ");
+                } else if(count > 0) {
+                    labels.append(' ');
+                }
+                labels.append("case ").append(charLiteral(c)).append(':');
+                count++;
+            }
+            line(labels.toString());
+            for(int index : candidatesByKey.get(entry.getKey())) {
+                generateTry(index, "                ");
+            }
+            line("                break;");
+        }
+        line("            default:");
+        for(int i=0; i<spec.size(); i++) {
+            CharSet first = spec.getFirstSet(i);
+            if(first.equals(CharSet.ALL)) {
+                generateTry(i, "                ");
+            } else if(first.hasNonAscii()) {
+                line("                if(c >= 128 && (" + charTest(first, "c") + ")) {");
+                generateTry(i, "                    ");
+                line("                }");
+            }
+        }
+        line("                break;");
+        line("        }");
+        line("        if(winner < 0) {");
+        line("            error = true;");
+        line("            return null;");
+        line("        }");
+        line("        TokenType tokenType = TYPES[winner].classify(source, position, position + longest);");
+        line("        String tokenText = tokenType.getStaticText();");
+        line("        if(tokenText == null) {");
+        line("            tokenText = source.subSequence(position, position + longest).toString();");
+        line("        }");
+        line("        Token token = new Token(sequence, tokenType, tokenText, position);");
+        line("        position += longest;");
+        line("        sequence++;");
+        line("        return token;");
+        line("    }");
+        line("");
+    }
+
+    /**
+     * Generate the code that tries a single TokenType and keeps it if it
+     * is the longest match so far. TokenType objects are always tried in
+     * priority order, so a match of equal length never displaces the winner.
+     * @param index the index of the TokenType
+     * @param indent the indentation of the generated code
+     */
+    private void generateTry(int index, String indent) {
+        line(indent + "length = match" + index + "(position); // "
+                + spec.getTokenType(index).getName());
+        line(indent + "if(length > longest) { longest = length; winner = " + index + "; }");
+    }
+
+    /**
+     * Determine the candidates of a character that no linear TokenType can
+     * start with; these are the TokenType objects that are tried everywhere.
+     * @return indexes of the TokenType objects that are tried everywhere
+     */
+    private int[] defaultCandidates() {
+        List<Integer> indexes = new ArrayList<Integer>();
+        for(int i=0; i<spec.size(); i++) {
+            if(spec.getFirstSet(i).equals(CharSet.ALL)) {
+                indexes.add(i);
+            }
+        }
+        int[] result = new int[indexes.size()];
+        for(int i=0; i<result.length; i++) {
+            result[i] = indexes.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Generate the method that matches a single TokenType.
+     * @param index the index of the TokenType
+     */
+    private void generateMatch(int index) {
+        TokenType tokenType = spec.getTokenType(index);
+        LinearPattern linear = tokenType.getLinearPattern();
+        line("    // " + tokenType.getName() + ": " + tokenType.getPattern().pattern());
+        line("    private int match" + index + "(int start) {");
+        if(linear == null) {
+            line("        return lookingAt(" + index + ", start);");
+            line("    }");
+            line("");
+            return;
+        }
+        line("        int p;");
+        boolean canFail = true;
+        for(int a=0; a<linear.getAlternativeCount() && canFail; a++) {
+            line("        alternative" + a + ": {");
+            line("            p = start;");
+            canFail = false;
+            for(int s=0; s<linear.getStepCount(a); s++) {
+                canFail |= generateStep(index, linear, a, s);
+            }
+            line("            return p - start;");
+            line("        }");
+        }
+        if(canFail) {
+            // the last alternative may fail, so there may be no match
+            line("        return -1;");
+        }
+        line("    }");
+        line("");
+    }
+
+    /**
+     * Generate the code for a single step of a linear pattern.
+     * @param index the index of the TokenType
+     * @param linear the linear pattern of the TokenType
+     * @param a the index of the alternative
+     * @param s the index of the step within the alternative
+     * @return true, if the generated code may break out of the alternative
+     */
+    private boolean generateStep(int index, LinearPattern linear, int a, int s) {
+        CharSet chars = linear.getChars(a, s);
+        int min = linear.getMin(a, s);
+        int max = linear.getMax(a, s);
+        String fail = "break alternative" + a + ";";
+        String surrogateCheck = chars.hasSurrogates()
+                ? "if(Character.isSurrogate(c)) return lookingAt(" + index + ", start); "
+                : "";
+        if(min == 1 && max == 1) {
+            line("            if(p >= end) " + fail);
+            if(chars.isSingleton() && surrogateCheck.isEmpty()) {
+                line("            if(source.charAt(p) != " + charLiteral(chars.getRangeLo(0)) + ") " + fail);
+            } else {
+                line("            {");
+                line("                char c = source.charAt(p);");
+                if(surrogateCheck.isEmpty() == false) {
+                    line("                " + surrogateCheck.trim());
+                }
+                line("                if(!(" + charTest(chars, "c") + ")) " + fail);
+                line("            }");
+            }
+            line("            p++;");
+            return true;
+        }
+        line("            {");
+        line("                int s = p;");
+        String limit = (max == RegexNode.UNBOUNDED)
+                ? "end" : "(int) Math.min(end, (long) p + " + max + ")";
+        line("                int limit = " + limit + ";");
+        line("                while(p < limit) {");
+        line("                    char c = source.charAt(p);");
+        line("                    if(!(" + charTest(chars, "c") + ")) break;");
+        if(surrogateCheck.isEmpty() == false) {
+            line("                    " + surrogateCheck.trim());
+        }
+        line("                    p++;");
+        line("                }");
+        if(min > 0) {
+            if(linear.hasSurrogates()) {
+                line("                if(p - s < " + min + " && p < end && Character.isSurrogate(source.charAt(p))) return lookingAt(" + index + ", start);");
+            }
+            line("                if(p - s < " + min + ") " + fail);
+        }
+        line("            }");
+        return min > 0;
+    }
+
+    /**
+     * Generate the helper methods of the generated lexer.
+     */
+    private void generateHelpers() {
+        line("    private int lookingAt(int index, int start) {");
+        line("        Matcher matcher = matchers[index];");
+        line("        if(matcher == null) {");
+        line("            matcher = TYPES[index].getPattern().matcher(source);");
+        line("            matchers[index] = matcher;");
+        line("        }");
+        line("        int maxLength = TYPES[index].getMaxLength();");
+        line("        int stop = (maxLength != TokenType.UNBOUNDED && maxLength < end - start)");
+        line("                ? start + maxLength : end;");
+        line("        matcher.region(start, stop);");
+        line("        return matcher.lookingAt() ? matcher.end() - start : -1;");
+        line("    }");
+        line("");
+        line("    private static boolean inRanges(char[] ranges, char c) {");
+        line("        int lo = 0;");
+        line("        int hi = (ranges.length / 2) - 1;");
+        line("        while(lo <= hi) {");
+        line("            int mid = (lo + hi) >>> 1;");
+        line("            if(c < ranges[mid*2]) {");
+        line("                hi = mid - 1;");
+        line("            } else if(c > ranges[mid*2+1]) {");
+        line("                lo = mid + 1;");
+        line("            } else {");
+        line("                return true;");
+        line("            }");
+        line("        }");
+        line("        return false;");
+        line("    }");
+        line("");
+        line("    private static void check(int index, String regex, int flags, int maxLength) {");
+        line("        if(TYPES[index].getPattern().pattern().equals(regex) == false");
+        line("                || TYPES[index].getPattern().flags() != flags");
+        line("                || TYPES[index].getMaxLength() != maxLength) {");
+        line("            throw new IllegalStateException(\"Specification changed since generation\");");
+        line("        }");
+        line("    }");
+        line("");
+    }
+
+    /**
+     * Generate the instance fields of the generated lexer.
+     */
+    private void generateFields() {
+        line("    private final int end;");
+        line("");
+        line("    private boolean error;");
+        line("");
+        line("    private final Matcher[] matchers;");
+        line("");
+        line("    private int position;");
+        line("");
+        line("    private int sequence;");
+        line("");
+        line("    private final CharSequence source;");
+    }
+
+    /**
+     * Obtain a Java boolean expression that tests if a variable holds a
+     * member of the provided CharSet.
+     * @param chars the CharSet to test membership of
+     * @param var the name of the char variable
+     * @return Java expression testing membership in the CharSet
+     */
+    private String charTest(CharSet chars, String var) {
+        if(chars.isEmpty()) return "false";
+        if(chars.getRangeCount() > MAX_INLINE_RANGES) {
+            return "inRanges(" + tableName(chars) + ", " + var + ")";
+        }
+        StringBuilder sb = new StringBuilder();
+        for(int r=0; r<chars.getRangeCount(); r++) {
+            char lo = chars.getRangeLo(r);
+            char hi = chars.getRangeHi(r);
+            if(r > 0) sb.append(" || ");
+            if(lo == hi) {
+                sb.append(var).append(" == ").append(charLiteral(lo));
+            } else if(lo == Character.MIN_VALUE) {
+                sb.append(var).append(" <= ").append(charLiteral(hi));
+            } else if(hi == Character.MAX_VALUE) {
+                sb.append(var).append(" >= ").append(charLiteral(lo));
+            } else {
+                sb.append('(').append(var).append(" >= ").append(charLiteral(lo))
+                  .append(" && ").append(var).append(" <= ").append(charLiteral(hi))
+                  .append(')');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Obtain the name of the static range table for a CharSet, assigning
+     * one if necessary.
+     * @param chars the CharSet of the range table
+     * @return the name of the range table
+     */
+    private String tableName(CharSet chars) {
+        String name = tables.get(chars);
+        if(name == null) {
+            name = "RANGES_" + tables.size();
+            tables.put(chars, name);
+        }
+        return name;
+    }
+
+    /**
+     * Obtain a key identifying a list of candidate indexes.
+     * @param candidates indexes of candidate TokenType objects
+     * @return key that is equal for equal lists of candidates
+     */
+    private static String keyOf(int[] candidates) {
+        StringBuilder sb = new StringBuilder();
+        for(int candidate : candidates) {
+            sb.append(candidate).append(',');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Obtain a Java literal for a char value.
+     * @param c the char value
+     * @return Java source for the char value
+     */
+    private static String charLiteral(char c) {
+        switch(c) {
+            case '\'': return "'\\''";
+            case '\\': return "'\\\\'";
+            case '\t': return "'\\t'";
+            case '\n': return "'\\n'";
+            case '\r': return "'\\r'";
+            case '\f': return "'\\f'";
+            default:
+                if(c >= 0x20 && c < 0x7F) {
+                    return "'" + c + "'";
+                }
+                return String.format("(char) 0x%04X", (int) c);
+        }
+    }
+
+    /**
+     * Obtain a Java String literal for the provided text.
+     * @param text the text of the String
+     * @return Java source for the String
+     */
+    private static String quote(String text) {
+        StringBuilder sb = new StringBuilder("\"");
+        for(int i=0; i<text.length(); i++) {
+            char c = text.charAt(i);
+            switch(c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\t': sb.append("\\t"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                default:
+                    if(c >= 0x20 && c < 0x7F) {
+                        sb.append(c);
+                    } else {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * Append a line to the generated source.
+     * @param text the text of the line
+     */
+    private void line(String text) {
+        out.append(text).append('\n');
+    }
+
+    /**
+     * Character classes with more ranges than this are tested with a
+     * binary search of a static table, instead of inline comparisons.
+     */
+    private static final int MAX_INLINE_RANGES = 6;
+
+    /**
+     * The fully qualified name of the class to be generated.
+     */
+    private final String className;
+
+    /**
+     * The generated source, under construction.
+     */
+    private StringBuilder out;
+
+    /**
+     * The compiled lexical specification.
+     */
+    private final LexerSpec spec;
+
+    /**
+     * A Java expression that evaluates to the List of TokenType objects
+     * the specification was compiled from.
+     */
+    private final String specExpression;
+
+    /**
+     * The names of the static range tables, by CharSet.
+     */
+    private final Map<CharSet, String> tables = new LinkedHashMap<CharSet, String>();
+}
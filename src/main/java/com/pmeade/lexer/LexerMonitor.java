@@ -0,0 +1,359 @@
+/*
+ * LexerMonitor.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * LexerMonitor collects runtime statistics from Lexer objects. Monitoring
+ * is opt-in: construct a LexerMonitor for a specification, and provide it
+ * to each Lexer of that specification with <code>setMonitor()</code>. A
+ * Lexer without a LexerMonitor pays nothing more than a null check per
+ * Token.
+ *
+ * For each TokenType, the monitor counts match attempts, successful
+ * matches, wins (Token objects produced), characters matched, and the time
+ * spent matching. For the Lexer objects as a whole, it counts Token
+ * objects and errors. Counts are kept in striped counters, so the threads
+ * of a CONCURRENT Lexer, or many Lexer objects sharing one LexerMonitor,
+ * do not contend with one another.
+ *
+ * Call <code>snapshot()</code> to obtain the statistics as a LexerStats,
+ * or <code>register()</code> to make them available over JMX.
+ */
+public class LexerMonitor implements LexerMonitorMXBean
+{
+    /**
+     * Construct a LexerMonitor for the provided specification.
+     * @param spec List of TokenType objects, in priority order
+     * @throws NullPointerException if spec is null
+     */
+    public LexerMonitor(List<TokenType> spec)
+    {
+        if(spec == null) throw new NullPointerException();
+        int size = spec.size();
+        this.attempts = newCounters(size);
+        this.errors = new StripedCounter();
+        this.matchNanos = newCounters(size);
+        this.matchedChars = newCounters(size);
+        this.objectNames = new ArrayList<ObjectName>();
+        this.spec = Collections.unmodifiableList(new ArrayList<TokenType>(spec));
+        this.startNanos = System.nanoTime();
+        this.successes = newCounters(size);
+        this.tokens = new StripedCounter();
+        this.wins = newCounters(size);
+    }
+
+    /**
+     * Create an array of StripedCounter objects.
+     * @param size the length of the array
+     * @return array of new StripedCounter objects
+     */
+    private static StripedCounter[] newCounters(int size) {
+        StripedCounter[] counters = new StripedCounter[size];
+        for(int i=0; i<size; i++) {
+            counters[i] = new StripedCounter();
+        }
+        return counters;
+    }
+
+    /**
+     * Determine if this LexerMonitor can monitor a Lexer of the provided
+     * specification.
+     * @param spec List of TokenType objects, in priority order
+     * @return true, if the specification has the same TokenType objects
+     *         in the same order as the one this LexerMonitor was built for
+     */
+    boolean isFor(List<TokenType> spec) {
+        return this.spec.equals(spec);
+    }
+
+    /**
+     * Record a match attempt.
+     * @param index the index of the TokenType
+     * @param length the length of the match, or -1 if it failed
+     * @param nanos the time taken by the attempt, in nanoseconds
+     */
+    void recordMatch(int index, int length, long nanos) {
+        attempts[index].increment();
+        matchNanos[index].add(nanos);
+        if(length >= 0) {
+            successes[index].increment();
+            matchedChars[index].add(length);
+        }
+    }
+
+    /**
+     * Record a Token produced by a Lexer.
+     * @param index the index of the TokenType of the Token
+     */
+    void recordToken(int index) {
+        wins[index].increment();
+        tokens.increment();
+    }
+
+    /**
+     * Record that a Lexer encountered an error.
+     */
+    void recordError() {
+        errors.increment();
+    }
+
+    /**
+     * Obtain a snapshot of the statistics collected so far.
+     * @return LexerStats containing the statistics collected so far
+     */
+    public LexerStats snapshot() {
+        List<TokenTypeStats> tokenTypeStats = new ArrayList<TokenTypeStats>();
+        for(int i=0; i<spec.size(); i++) {
+            tokenTypeStats.add(new TokenTypeStats(spec.get(i), attempts[i].sum(),
+                    successes[i].sum(), wins[i].sum(), matchedChars[i].sum(),
+                    matchNanos[i].sum()));
+        }
+        return new LexerStats(tokens.sum(), errors.sum(), System.nanoTime() - startNanos,
+                Collections.unmodifiableList(tokenTypeStats));
+    }
+
+    /**
+     * Obtain the number of Token objects produced.
+     * @return the number of Token objects produced
+     */
+    @Override
+    public long getTokenCount() {
+        return tokens.sum();
+    }
+
+    /**
+     * Obtain the number of times lexical analysis failed.
+     * @return the number of errors
+     */
+    @Override
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    /**
+     * Obtain the rate at which Token objects have been produced, since
+     * this LexerMonitor was created or last reset.
+     * @return Token objects per second
+     */
+    @Override
+    public double getTokensPerSecond() {
+        long elapsed = System.nanoTime() - startNanos;
+        return (elapsed <= 0) ? 0.0 : tokens.sum() * 1e9 / elapsed;
+    }
+
+    /**
+     * Reset every count to zero, and restart the clock for the rate of
+     * Token objects.
+     */
+    @Override
+    public void reset() {
+        for(int i=0; i<spec.size(); i++) {
+            attempts[i].reset();
+            matchNanos[i].reset();
+            matchedChars[i].reset();
+            successes[i].reset();
+            wins[i].reset();
+        }
+        errors.reset();
+        tokens.reset();
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Register this LexerMonitor with the platform MBeanServer. One MXBean
+     * is registered for the LexerMonitor itself, named
+     * <code>com.pmeade.lexer:type=LexerMonitor,name=<i>name</i></code>,
+     * and one for each TokenType, with an additional key
+     * <code>tokenType=<i>TokenType name</i></code>.
+     * @param name the name under which to register
+     * @throws IllegalStateException if the MXBeans could not be registered;
+     *         for example, if the name is already taken
+     */
+    public synchronized void register(String name) {
+        if(objectNames.isEmpty() == false) {
+            throw new IllegalStateException("already registered");
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            String prefix = "com.pmeade.lexer:type=LexerMonitor,name=" + ObjectName.quote(name);
+            ObjectName objectName = new ObjectName(prefix);
+            server.registerMBean(new StandardMBean(this, LexerMonitorMXBean.class, true), objectName);
+            objectNames.add(objectName);
+            for(int i=0; i<spec.size(); i++) {
+                objectName = new ObjectName(prefix + ",tokenType="
+                        + ObjectName.quote(i + ":" + spec.get(i).getName()));
+                server.registerMBean(new StandardMBean(new TokenTypeMonitor(i),
+                        TokenTypeMonitorMXBean.class, true), objectName);
+                objectNames.add(objectName);
+            }
+        } catch(JMException e) {
+            unregister();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Unregister the MXBeans registered by <code>register()</code>. This
+     * does nothing if this LexerMonitor is not registered.
+     */
+    public synchronized void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for(ObjectName objectName : objectNames) {
+            try {
+                server.unregisterMBean(objectName);
+            } catch(JMException e) {
+                // already gone; nothing to do
+            }
+        }
+        objectNames.clear();
+    }
+
+    /**
+     * TokenTypeMonitor is the live view of the statistics of one TokenType,
+     * registered over JMX.
+     */
+    private final class TokenTypeMonitor implements TokenTypeMonitorMXBean
+    {
+        /**
+         * Construct a TokenTypeMonitor.
+         * @param index the index of the TokenType
+         */
+        TokenTypeMonitor(int index) {
+            this.index = index;
+        }
+
+        /**
+         * Obtain the name of the TokenType.
+         * @return the name of the TokenType
+         */
+        @Override
+        public String getName() {
+            return spec.get(index).getName();
+        }
+
+        /**
+         * Obtain the number of match attempts.
+         * @return the number of match attempts
+         */
+        @Override
+        public long getAttempts() {
+            return attempts[index].sum();
+        }
+
+        /**
+         * Obtain the number of successful matches.
+         * @return the number of successful matches
+         */
+        @Override
+        public long getSuccesses() {
+            return successes[index].sum();
+        }
+
+        /**
+         * Obtain the number of Token objects of the TokenType.
+         * @return the number of Token objects of the TokenType
+         */
+        @Override
+        public long getWins() {
+            return wins[index].sum();
+        }
+
+        /**
+         * Obtain the total length of the successful matches.
+         * @return the number of characters matched
+         */
+        @Override
+        public long getMatchedChars() {
+            return matchedChars[index].sum();
+        }
+
+        /**
+         * Obtain the total time spent matching.
+         * @return the time spent matching, in nanoseconds
+         */
+        @Override
+        public long getMatchNanos() {
+            return matchNanos[index].sum();
+        }
+
+        /**
+         * The index of the TokenType.
+         */
+        private final int index;
+    }
+
+    /**
+     * Match attempts, for each TokenType.
+     */
+    private final StripedCounter[] attempts;
+
+    /**
+     * Errors encountered by the monitored Lexer objects.
+     */
+    private final StripedCounter errors;
+
+    /**
+     * Time spent matching, in nanoseconds, for each TokenType.
+     */
+    private final StripedCounter[] matchNanos;
+
+    /**
+     * Characters matched, for each TokenType.
+     */
+    private final StripedCounter[] matchedChars;
+
+    /**
+     * The names under which the MXBeans are registered, if they are.
+     */
+    private final List<ObjectName> objectNames;
+
+    /**
+     * The TokenType objects of the monitored specification.
+     */
+    private final List<TokenType> spec;
+
+    /**
+     * The value of System.nanoTime() when monitoring (re)started.
+     */
+    private volatile long startNanos;
+
+    /**
+     * Successful matches, for each TokenType.
+     */
+    private final StripedCounter[] successes;
+
+    /**
+     * Token objects produced by the monitored Lexer objects.
+     */
+    private final StripedCounter tokens;
+
+    /**
+     * Wins (Token objects produced), for each TokenType.
+     */
+    private final StripedCounter[] wins;
+}
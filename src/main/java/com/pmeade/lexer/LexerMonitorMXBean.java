@@ -0,0 +1,50 @@
+/*
+ * LexerMonitorMXBean.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+/**
+ * LexerMonitorMXBean is the management interface of a LexerMonitor, as
+ * registered with the platform MBeanServer by LexerMonitor.register().
+ */
+public interface LexerMonitorMXBean
+{
+    /**
+     * Obtain the number of Token objects produced.
+     * @return the number of Token objects produced
+     */
+    long getTokenCount();
+
+    /**
+     * Obtain the number of times lexical analysis failed.
+     * @return the number of errors
+     */
+    long getErrorCount();
+
+    /**
+     * Obtain the rate at which Token objects have been produced, since the
+     * LexerMonitor was created or last reset.
+     * @return Token objects per second
+     */
+    double getTokensPerSecond();
+
+    /**
+     * Reset every count to zero.
+     */
+    void reset();
+}
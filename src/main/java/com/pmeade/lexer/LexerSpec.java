@@ -0,0 +1,332 @@
+/*
+ * LexerSpec.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * LexerSpec is a compiled lexical specification. It is built from a List
+ * of TokenType objects in priority order, and holds the results of
+ * analyzing them as a whole.
+ *
+ * Chief among those results is the candidate table: for a given first
+ * character of input, which TokenType objects could possibly match there?
+ * Any TokenType whose Pattern could not be analyzed, or which can match
+ * the empty string, is a candidate everywhere.
+ *
+ * A specification with lexical states is also compiled once for each
+ * state, from the TokenType objects active in that state.
+ *
+ * A LexerSpec is immutable, and may be shared between threads.
+ *
+ * @see LexerGenerator
+ * @see SpecializedLexer
+ */
+public final class LexerSpec
+{
+    /**
+     * Compile a lexical specification.
+     * @param tokenTypes List of TokenType objects, in priority order
+     * @return LexerSpec compiled from the provided TokenType objects
+     * @throws NullPointerException if tokenTypes is null
+     */
+    public static LexerSpec compile(List<TokenType> tokenTypes) {
+        if(tokenTypes == null) throw new NullPointerException();
+        return new LexerSpec(tokenTypes);
+    }
+
+    /**
+     * Construct a LexerSpec.
+     * @param tokenTypes List of TokenType objects, in priority order
+     */
+    private LexerSpec(List<TokenType> tokenTypes) {
+        int size = tokenTypes.size();
+        this.tokenTypes = Collections.unmodifiableList(new ArrayList<TokenType>(tokenTypes));
+        this.firstSets = new CharSet[size];
+        for(int i=0; i<size; i++) {
+            firstSets[i] = computeFirstSet(this.tokenTypes.get(i));
+        }
+        this.states = new LexicalStates(this.tokenTypes);
+        this.stateSpecs = new HashMap<String, LexerSpec>();
+        this.expectedSpecs = new HashMap<TokenTypeSet, LexerSpec>();
+        this.asciiCandidates = new int[128][];
+        for(char c=0; c<128; c++) {
+            asciiCandidates[c] = computeCandidates(c);
+        }
+    }
+
+    /**
+     * Compute the characters that could begin a match of the provided
+     * TokenType.
+     * @param tokenType the TokenType to analyze
+     * @return CharSet of the possible first characters of a match; this is
+     *         every character if nothing more specific can be proven
+     */
+    private static CharSet computeFirstSet(TokenType tokenType) {
+        RegexNode syntax = tokenType.getSyntax();
+        if(syntax == null || syntax.isNullable()) {
+            return CharSet.ALL;
+        }
+        return syntax.firstSet();
+    }
+
+    /**
+     * Compute the TokenType indexes that are candidates at a character.
+     * @param c the first character of the input
+     * @return indexes of the candidate TokenType objects, in priority order
+     */
+    private int[] computeCandidates(char c) {
+        int[] candidates = new int[firstSets.length];
+        int count = 0;
+        for(int i=0; i<firstSets.length; i++) {
+            if(firstSets[i].contains(c)) {
+                candidates[count++] = i;
+            }
+        }
+        int[] result = new int[count];
+        System.arraycopy(candidates, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * Obtain the TokenType objects that could match input beginning with
+     * the provided character.
+     * @param c the first character of the input
+     * @return indexes of the candidate TokenType objects, in priority order.
+     *         The caller must not modify the returned array.
+     */
+    int[] getCandidates(char c) {
+        if(c < 128) {
+            return asciiCandidates[c];
+        }
+        return computeCandidates(c);
+    }
+
+    /**
+     * Determine if any TokenType could match input beginning with the
+     * provided character. This is the same as asking if getCandidates()
+     * is non-empty, without computing the candidates.
+     * @param c the first character of the input
+     * @return true, if some TokenType could match there, otherwise false
+     */
+    boolean canStart(char c) {
+        if(c < 128) {
+            return asciiCandidates[c].length != 0;
+        }
+        for(CharSet firstSet : firstSets) {
+            if(firstSet.contains(c)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Obtain the characters that could begin a match of a TokenType.
+     * @param index the index of the TokenType in this specification
+     * @return CharSet of the possible first characters of a match
+     */
+    CharSet getFirstSet(int index) {
+        return firstSets[index];
+    }
+
+    /**
+     * Obtain the most chars that a match of a TokenType could consume.
+     * @param index the index of the TokenType in this specification
+     * @return the maximum length of a match, or TokenType.UNBOUNDED
+     */
+    int getMaxLength(int index) {
+        return tokenTypes.get(index).getMaxLength();
+    }
+
+    /**
+     * Check the TokenType objects of this specification for patterns that
+     * can match the empty string, which would make a Lexer loop forever,
+     * and for the nested or overlapping repetitions that can make a failed
+     * match take exponential time.
+     * @return LintReport of every issue found; call check() on it to reject
+     *         a specification with errors
+     */
+    public LintReport lint() {
+        return SpecLinter.lint(tokenTypes);
+    }
+
+    /**
+     * Optimize this specification: remove the TokenType objects that can
+     * never win a match, and merge runs of literals into single TokenType
+     * objects with shared prefixes factored out. The result produces the
+     * same Token objects, while trying fewer TokenType objects for each.
+     * @return OptimizationReport holding the optimized TokenType objects,
+     *         and what was removed and merged
+     */
+    public OptimizationReport optimize() {
+        return SpecOptimizer.optimize(tokenTypes);
+    }
+
+    /**
+     * Obtain the compiled specification for a lexical state. It holds only
+     * the TokenType objects active in that state, and is compiled on first
+     * use.
+     * @param state the name of the lexical state
+     * @return LexerSpec of the TokenType objects active in the state; this
+     *         LexerSpec if the specification does not use lexical states
+     */
+    LexerSpec forState(String state) {
+        if(states.isStateful() == false) {
+            return this;
+        }
+        synchronized(stateSpecs) {
+            LexerSpec result = stateSpecs.get(state);
+            if(result == null) {
+                List<TokenType> active = new ArrayList<TokenType>();
+                for(TokenType tokenType : tokenTypes) {
+                    if(tokenType.isActiveIn(state)) active.add(tokenType);
+                }
+                result = new LexerSpec(active);
+                stateSpecs.put(state, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Obtain the compiled specification for a set of expected TokenType
+     * objects. It holds only the TokenType objects of this specification
+     * that are expected or skipped, and is compiled on first use.
+     * @param expected the expected TokenType objects
+     * @return LexerSpec of the expected and skipped TokenType objects
+     */
+    LexerSpec restrict(TokenTypeSet expected) {
+        synchronized(expectedSpecs) {
+            LexerSpec result = expectedSpecs.get(expected);
+            if(result == null) {
+                List<TokenType> active = new ArrayList<TokenType>();
+                for(TokenType tokenType : tokenTypes) {
+                    if(tokenType.isSkipped() || expected.contains(tokenType)) {
+                        active.add(tokenType);
+                    }
+                }
+                result = new LexerSpec(active);
+                expectedSpecs.put(expected, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Obtain the SpecMatcher of this specification. The SpecMatcher is
+     * specialized on first use, and shared from then on.
+     * @return SpecMatcher for the linear TokenType objects of this
+     *         specification
+     */
+    SpecMatcher getSpecMatcher() {
+        SpecMatcher result = specMatcher;
+        if(result == null) {
+            synchronized(this) {
+                result = specMatcher;
+                if(result == null) {
+                    result = BytecodeSpecializer.specialize(this);
+                    specMatcher = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Obtain the names of the lexical states of this specification.
+     * @return unmodifiable Set of the names of the lexical states, beginning
+     *         with TokenType.DEFAULT_STATE
+     */
+    public Set<String> getStates() {
+        return states.getNames();
+    }
+
+    /**
+     * Determine if this specification uses lexical states.
+     * @return true, if any TokenType changes the lexical state, or is not
+     *         active in every lexical state
+     */
+    boolean isStateful() {
+        return states.isStateful();
+    }
+
+    /**
+     * Obtain a TokenType of this specification.
+     * @param index the index (priority) of the TokenType
+     * @return the TokenType at the provided index
+     */
+    public TokenType getTokenType(int index) {
+        return tokenTypes.get(index);
+    }
+
+    /**
+     * Obtain the TokenType objects of this specification.
+     * @return unmodifiable List of the TokenType objects, in priority order
+     */
+    public List<TokenType> getTokenTypes() {
+        return tokenTypes;
+    }
+
+    /**
+     * Obtain the number of TokenType objects in this specification.
+     * @return the number of TokenType objects in this specification
+     */
+    public int size() {
+        return tokenTypes.size();
+    }
+
+    /**
+     * Candidate TokenType indexes for each ASCII first character.
+     */
+    private final int[][] asciiCandidates;
+
+    /**
+     * The compiled specification of each expected TokenTypeSet, once used.
+     */
+    private final Map<TokenTypeSet, LexerSpec> expectedSpecs;
+
+    /**
+     * The possible first characters of a match, for each TokenType.
+     */
+    private final CharSet[] firstSets;
+
+    /**
+     * The compiled specification of each lexical state, once used.
+     */
+    private final Map<String, LexerSpec> stateSpecs;
+
+    /**
+     * The TokenType objects active in each lexical state.
+     */
+    private final LexicalStates states;
+
+    /**
+     * The SpecMatcher of this specification, once it has been specialized.
+     */
+    private volatile SpecMatcher specMatcher;
+
+    /**
+     * The TokenType objects of this specification, in priority order.
+     */
+    private final List<TokenType> tokenTypes;
+}
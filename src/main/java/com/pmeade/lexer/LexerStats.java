@@ -0,0 +1,126 @@
+/*
+ * LexerStats.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.util.List;
+
+/**
+ * LexerStats is a snapshot of the statistics collected by a LexerMonitor.
+ * The counts are read one at a time while lexing may be under way, so
+ * they may be very slightly out of step with one another.
+ *
+ * @see LexerMonitor#snapshot()
+ */
+public final class LexerStats
+{
+    /**
+     * Construct a LexerStats.
+     * @param tokenCount the number of Token objects produced
+     * @param errorCount the number of errors
+     * @param elapsedNanos the time since monitoring started, in nanoseconds
+     * @param tokenTypeStats the statistics of each TokenType, in priority
+     *                       order; the caller must not modify the List
+     */
+    LexerStats(long tokenCount, long errorCount, long elapsedNanos,
+            List<TokenTypeStats> tokenTypeStats)
+    {
+        this.elapsedNanos = elapsedNanos;
+        this.errorCount = errorCount;
+        this.tokenCount = tokenCount;
+        this.tokenTypeStats = tokenTypeStats;
+    }
+
+    /**
+     * Obtain the time over which the statistics were collected.
+     * @return the time since the LexerMonitor was created or last reset,
+     *         in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Obtain the number of times lexical analysis failed.
+     * @return the number of errors
+     */
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * Obtain the number of Token objects produced.
+     * @return the number of Token objects produced
+     */
+    public long getTokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * Obtain the rate at which Token objects were produced.
+     * @return Token objects per second, over the elapsed time
+     */
+    public double getTokensPerSecond() {
+        return (elapsedNanos <= 0) ? 0.0 : tokenCount * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Obtain the statistics of each TokenType.
+     * @return unmodifiable List of TokenTypeStats, in priority order
+     */
+    public List<TokenTypeStats> getTokenTypeStats() {
+        return tokenTypeStats;
+    }
+
+    /**
+     * Obtain a String representation of this LexerStats. This may be
+     * useful for debugging purposes.
+     * @return a String representation of this LexerStats
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("tokens=").append(tokenCount)
+          .append(" errors=").append(errorCount)
+          .append(" tokens/s=").append(getTokensPerSecond());
+        for(TokenTypeStats stats : tokenTypeStats) {
+            sb.append('\n').append(stats);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The time since monitoring started, in nanoseconds.
+     */
+    private final long elapsedNanos;
+
+    /**
+     * The number of errors.
+     */
+    private final long errorCount;
+
+    /**
+     * The number of Token objects produced.
+     */
+    private final long tokenCount;
+
+    /**
+     * The statistics of each TokenType, in priority order.
+     */
+    private final List<TokenTypeStats> tokenTypeStats;
+}
@@ -93,6 +93,24 @@ public class LexicalCharSequence implements CharSequence
         return source.charAt(index+offset);
     }
 
+    /**
+     * Obtain the offset into the original provided input where this
+     * sub-sequence begins.
+     * @return the offset of this sub-sequence in getSource()
+     */
+    int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Obtain the original provided input, so that a matcher can scan it
+     * directly when it is a String.
+     * @return the CharSequence decorated by this LexicalCharSequence
+     */
+    CharSequence getSource() {
+        return source;
+    }
+
     /**
      * Obtain a CharSequence that corresponds to a sub-sequence of
      * this LexicalCharSequence. Unlike the standard CharSequence,
@@ -0,0 +1,180 @@
+/*
+ * LexicalStates.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * LexicalStates divides a lexical specification by lexical state. For
+ * each state named by the TokenType objects, it holds the indexes of the
+ * TokenType objects active in that state, so a Lexer in that state only
+ * tries those.
+ *
+ * LexicalStates is immutable, and may be shared between threads.
+ */
+final class LexicalStates
+{
+    /**
+     * Construct LexicalStates for a lexical specification.
+     * @param tokenTypes List of TokenType objects, in priority order
+     */
+    LexicalStates(List<TokenType> tokenTypes)
+    {
+        Set<String> names = new LinkedHashSet<String>();
+        names.add(TokenType.DEFAULT_STATE);
+        boolean stateful = false;
+        for(TokenType tokenType : tokenTypes) {
+            for(String state : tokenType.getStates()) {
+                if(state.equals(TokenType.ANY_STATE) == false) names.add(state);
+            }
+            if(tokenType.getTransition() != null) {
+                stateful = true;
+                if(tokenType.getTransitionState() != null) {
+                    names.add(tokenType.getTransitionState());
+                }
+            }
+        }
+        this.indexes = new LinkedHashMap<String, int[]>();
+        for(String name : names) {
+            int[] active = new int[tokenTypes.size()];
+            int count = 0;
+            for(int i=0; i<tokenTypes.size(); i++) {
+                if(tokenTypes.get(i).isActiveIn(name)) {
+                    active[count++] = i;
+                }
+            }
+            int[] result = new int[count];
+            System.arraycopy(active, 0, result, 0, count);
+            indexes.put(name, result);
+            stateful |= (count != tokenTypes.size());
+        }
+        this.stateful = stateful;
+    }
+
+    /**
+     * Obtain the TokenType objects active in a lexical state.
+     * @param state the name of the lexical state
+     * @return indexes of the active TokenType objects, in priority order,
+     *         or null if no TokenType names the state. The caller must not
+     *         modify the returned array.
+     */
+    int[] getIndexes(String state) {
+        return indexes.get(state);
+    }
+
+    /**
+     * Obtain the names of the lexical states of the specification.
+     * @return unmodifiable Set of the names, beginning with the default
+     *         lexical state
+     */
+    Set<String> getNames() {
+        return Collections.unmodifiableSet(indexes.keySet());
+    }
+
+    /**
+     * Determine if the lexical state matters to the specification. If no
+     * TokenType changes the state, and every TokenType is active in the
+     * default state, a Lexer never needs to look at its state.
+     * @return true, if the specification uses lexical states
+     */
+    boolean isStateful() {
+        return stateful;
+    }
+
+    /**
+     * Stack is the lexical state of a single Lexer: the current state, and
+     * the states to return to.
+     */
+    static final class Stack
+    {
+        /**
+         * Construct a Stack in the default lexical state.
+         */
+        Stack()
+        {
+            this.pushed = new ArrayList<String>();
+            this.state = TokenType.DEFAULT_STATE;
+        }
+
+        /**
+         * Apply the transition of a TokenType to the lexical state.
+         * @param tokenType the TokenType of the latest Token
+         */
+        void apply(TokenType tokenType) {
+            StateTransition transition = tokenType.getTransition();
+            if(transition == null) return;
+            switch(transition) {
+                case PUSH:
+                    pushed.add(state);
+                    state = tokenType.getTransitionState();
+                    break;
+                case POP:
+                    if(pushed.isEmpty() == false) {
+                        state = pushed.remove(pushed.size() - 1);
+                    }
+                    break;
+                case SWITCH:
+                    state = tokenType.getTransitionState();
+                    break;
+            }
+        }
+
+        /**
+         * Obtain the current lexical state.
+         * @return the name of the current lexical state
+         */
+        String getState() {
+            return state;
+        }
+
+        /**
+         * Return to the default lexical state, forgetting the others.
+         */
+        void reset() {
+            pushed.clear();
+            state = TokenType.DEFAULT_STATE;
+        }
+
+        /**
+         * The lexical states to return to, most recent last.
+         */
+        private final List<String> pushed;
+
+        /**
+         * The current lexical state.
+         */
+        private String state;
+    }
+
+    /**
+     * The indexes of the active TokenType objects, for each lexical state.
+     */
+    private final Map<String, int[]> indexes;
+
+    /**
+     * Flag: Does the lexical state matter to the specification?
+     */
+    private final boolean stateful;
+}
@@ -0,0 +1,381 @@
+/*
+ * LineIndex.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * LineIndex maps positions in an input to line and column numbers. It
+ * holds the position where each line begins, found by one scan of the
+ * input for line terminators, so a lookup is a binary search rather than
+ * a scan from the beginning of the input. Lines and columns are numbered
+ * from 1; a column counts chars, as positions do.
+ *
+ * A line ends with "\n", "\r\n", or "\r". The position after the last
+ * char of the input also has a line and column, for diagnostics at the
+ * end of the input.
+ *
+ * The scan happens on first use. Large inputs are scanned in parallel,
+ * each block into a buffer of chars that RunScanner searches for line
+ * terminators, with the Vector API where it is available.
+ * When the input is edited, update() rescans only the edited text.
+ *
+ * A LineIndex is not safe for use by multiple threads without external
+ * synchronization.
+ *
+ * @see Lexer#getLineIndex()
+ */
+public final class LineIndex
+{
+    /**
+     * Construct a LineIndex for an input.
+     * @param source the input to index
+     * @throws NullPointerException if source is null
+     */
+    public LineIndex(CharSequence source)
+    {
+        if(source == null) throw new NullPointerException();
+        this.source = source;
+    }
+
+    /**
+     * Obtain the column of a Token of the input.
+     * @param token a Token of the input that this LineIndex indexes
+     * @return the column where the Token begins, starting from 1
+     * @throws NullPointerException if token is null
+     * @throws IllegalArgumentException if the Token does not fit in the
+     *         input, and so can not have come from it
+     */
+    public int columnOf(Token token) {
+        return getColumn(positionOf(token));
+    }
+
+    /**
+     * Obtain the line of a Token of the input.
+     * @param token a Token of the input that this LineIndex indexes
+     * @return the line where the Token begins, starting from 1
+     * @throws NullPointerException if token is null
+     * @throws IllegalArgumentException if the Token does not fit in the
+     *         input, and so can not have come from it
+     */
+    public int lineOf(Token token) {
+        return getLine(positionOf(token));
+    }
+
+    /**
+     * Obtain the column of a position.
+     * @param position the position in the input, from 0 to its length
+     * @return the column of the position, starting from 1
+     * @throws IndexOutOfBoundsException if the position is not in the input
+     */
+    public int getColumn(int position) {
+        int line = getLine(position);
+        return position - lineStarts[line - 1] + 1;
+    }
+
+    /**
+     * Obtain the line of a position.
+     * @param position the position in the input, from 0 to its length
+     * @return the line of the position, starting from 1
+     * @throws IndexOutOfBoundsException if the position is not in the input
+     */
+    public int getLine(int position) {
+        if(position < 0 || position > source.length()) {
+            throw new IndexOutOfBoundsException("position " + position);
+        }
+        build();
+        int index = Arrays.binarySearch(lineStarts, 0, lineCount, position);
+        return (index >= 0) ? index + 1 : -index - 1;
+    }
+
+    /**
+     * Obtain the number of lines in the input. An input that ends with a
+     * line terminator has an empty last line.
+     * @return the number of lines, at least 1
+     */
+    public int getLineCount() {
+        build();
+        return lineCount;
+    }
+
+    /**
+     * Obtain the position where a line begins.
+     * @param line the line, starting from 1
+     * @return the position of the first char of the line
+     * @throws IndexOutOfBoundsException if there is no such line
+     */
+    public int getLineStart(int line) {
+        build();
+        if(line < 1 || line > lineCount) {
+            throw new IndexOutOfBoundsException("line " + line);
+        }
+        return lineStarts[line - 1];
+    }
+
+    /**
+     * Obtain the input that this LineIndex indexes.
+     * @return the input, as of the last update
+     */
+    public CharSequence getSource() {
+        return source;
+    }
+
+    /**
+     * Update the index after an edit of the input. The chars from start
+     * up to start + removed were replaced by inserted chars; only those
+     * are scanned again, and the lines after them are moved.
+     * @param edited the input after the edit
+     * @param start the position of the edit
+     * @param removed the number of chars removed from the input
+     * @param inserted the number of chars inserted into the input
+     * @throws NullPointerException if edited is null
+     * @throws IndexOutOfBoundsException if the edit is not within the
+     *         input, or does not agree with the length of edited
+     */
+    public void update(CharSequence edited, int start, int removed, int inserted) {
+        if(edited == null) throw new NullPointerException();
+        if(start < 0 || removed < 0 || inserted < 0
+                || start + removed > source.length()
+                || edited.length() != source.length() - removed + inserted) {
+            throw new IndexOutOfBoundsException("edit does not fit the input");
+        }
+        CharSequence original = source;
+        source = edited;
+        if(lineStarts == null) return;
+        // a line start depends on the char before it, and the one at it
+        int oldEnd = Math.min(start + removed + 1, original.length());
+        int newEnd = Math.min(start + inserted + 1, edited.length());
+        // the first line always starts at 0
+        int from = Math.max(start, 1);
+        int first = lowerBound(from);
+        int last = lowerBound(oldEnd + 1);
+        int[] middle = new int[Math.max(newEnd - from + 1, 0)];
+        int count = 0;
+        for(int p=from; p<=newEnd; p++) {
+            if(isLineStart(edited, p)) middle[count++] = p;
+        }
+        int tail = lineCount - last;
+        int newCount = first + count + tail;
+        int[] result = (newCount <= lineStarts.length) ? lineStarts : new int[newCount * 3 / 2 + 1];
+        if(result != lineStarts) {
+            System.arraycopy(lineStarts, 0, result, 0, first);
+        }
+        int delta = inserted - removed;
+        System.arraycopy(lineStarts, last, result, first + count, tail);
+        for(int i=first+count; i<newCount; i++) {
+            result[i] += delta;
+        }
+        System.arraycopy(middle, 0, result, first, count);
+        lineStarts = result;
+        lineCount = newCount;
+    }
+
+    /**
+     * Find the first line start at or after a position.
+     * @param position a position in the input
+     * @return the index of the first line start that is not before the
+     *         position, or the number of lines if there is none
+     */
+    private int lowerBound(int position) {
+        int index = Arrays.binarySearch(lineStarts, 0, lineCount, position);
+        return (index >= 0) ? index : -index - 1;
+    }
+
+    /**
+     * Obtain the position of a Token, checking that it fits in the input.
+     * @param token a Token of the input
+     * @return the position of the Token
+     */
+    private int positionOf(Token token) {
+        int position = token.getPosition();
+        if(position < 0 || position + token.getTokenText().length() > source.length()) {
+            throw new IllegalArgumentException("Token at " + position
+                    + " does not fit in an input of length " + source.length());
+        }
+        return position;
+    }
+
+    /**
+     * Scan the input for line starts, unless that is already done.
+     */
+    private void build() {
+        if(lineStarts != null) return;
+        int length = source.length();
+        int[] starts = (length < PARALLEL_THRESHOLD)
+                ? new Scan(source, 1, length + 1).compute()
+                : SharedPool.INSTANCE.invoke(new Scan(source, 1, length + 1));
+        lineStarts = new int[starts[0] + 1];
+        lineStarts[0] = 0;
+        System.arraycopy(starts, 1, lineStarts, 1, starts[0]);
+        lineCount = starts[0] + 1;
+    }
+
+    /**
+     * Determine if a line begins at a position.
+     * @param source the input
+     * @param p a position in the input, after the first
+     * @return true, if the char before the position ends a line, otherwise
+     *         false
+     */
+    private static boolean isLineStart(CharSequence source, int p) {
+        char c = source.charAt(p - 1);
+        if(c == '\n') return true;
+        return (c == '\r') && (p == source.length() || source.charAt(p) != '\n');
+    }
+
+    /**
+     * SharedPool holds the ForkJoinPool that scans large inputs, shared by
+     * every LineIndex. It is created on first use; its threads are daemon
+     * threads, and do not keep the JVM alive.
+     */
+    private static final class SharedPool
+    {
+        /**
+         * The ForkJoinPool shared by every LineIndex.
+         */
+        static final ForkJoinPool INSTANCE = new ForkJoinPool();
+    }
+
+    /**
+     * Scan is the task of scanning a range of positions for line starts.
+     * A large range is split in half, and the halves scanned in parallel.
+     */
+    private static final class Scan extends RecursiveTask<int[]>
+    {
+        /**
+         * Construct a Scan.
+         * @param source the input
+         * @param from the first position to check
+         * @param to the position after the last one to check
+         */
+        Scan(CharSequence source, int from, int to) {
+            this.source = source;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Scan the range for line starts.
+         * @return the number of line starts in element 0, followed by the
+         *         line starts in order
+         */
+        @Override
+        protected int[] compute() {
+            if(to - from > PARALLEL_THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                Scan left = new Scan(source, from, middle);
+                Scan right = new Scan(source, middle, to);
+                left.fork();
+                int[] rightStarts = right.compute();
+                int[] leftStarts = left.join();
+                int[] result = new int[leftStarts[0] + rightStarts[0] + 1];
+                result[0] = leftStarts[0] + rightStarts[0];
+                System.arraycopy(leftStarts, 1, result, 1, leftStarts[0]);
+                System.arraycopy(rightStarts, 1, result, 1 + leftStarts[0], rightStarts[0]);
+                return result;
+            }
+            int[] result = new int[16];
+            int count = 0;
+            char[] buffer = new char[Math.min(BUFFER_SIZE, Math.max(to - from, 1))];
+            RunScanner scanner = RunScanner.INSTANCE;
+            // the char before each position decides if a line starts there
+            for(int block=from-1; block<to-1; block+=buffer.length) {
+                int blockEnd = Math.min(block + buffer.length, to - 1);
+                int n = blockEnd - block;
+                fill(buffer, block, n);
+                for(int i=scanner.indexOf(buffer, 0, n, '\n', '\r'); i<n;
+                        i=scanner.indexOf(buffer, i + 1, n, '\n', '\r')) {
+                    char c = buffer[i];
+                    int p = block + i + 1;
+                    if(c == '\r' && p < source.length() && source.charAt(p) == '\n') continue;
+                    if(count + 1 == result.length) {
+                        result = Arrays.copyOf(result, result.length * 2);
+                    }
+                    result[++count] = p;
+                }
+            }
+            result[0] = count;
+            return result;
+        }
+
+        /**
+         * Copy chars of the input into the buffer.
+         * @param buffer the buffer
+         * @param start the position of the first char to copy
+         * @param n the number of chars to copy
+         */
+        private void fill(char[] buffer, int start, int n) {
+            if(source instanceof String) {
+                ((String) source).getChars(start, start + n, buffer, 0);
+            } else {
+                for(int i=0; i<n; i++) {
+                    buffer[i] = source.charAt(start + i);
+                }
+            }
+        }
+
+        /**
+         * Version of the serialized form of Scan.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The first position to check.
+         */
+        private final int from;
+
+        /**
+         * The input.
+         */
+        private final CharSequence source;
+
+        /**
+         * The position after the last one to check.
+         */
+        private final int to;
+    }
+
+    /**
+     * The number of chars copied out of the input at a time.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Inputs with more chars than this are scanned in parallel.
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 20;
+
+    /**
+     * The number of lines in the input.
+     */
+    private int lineCount;
+
+    /**
+     * The position where each line begins, in order; null until the input
+     * is scanned. Only the first lineCount elements are used.
+     */
+    private int[] lineStarts;
+
+    /**
+     * The input, as of the last update.
+     */
+    private CharSequence source;
+}
@@ -0,0 +1,393 @@
+/*
+ * LinearPattern.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * LinearPattern is a form of regular expression that can be matched
+ * without backtracking, one char at a time, and still give exactly the
+ * result that Matcher.lookingAt() would give.
+ *
+ * A LinearPattern is a list of alternatives, tried in order. Each
+ * alternative is a list of steps, and each step is a CharSet repeated
+ * between min and max times. A step that may repeat a variable number of
+ * times must be greedy (or possessive), and its CharSet must not overlap
+ * any of the characters that could follow it. Under those conditions,
+ * consuming as many characters as possible is always what the backtracking
+ * engine would have settled on.
+ *
+ * Most of the patterns in a typical lexical specification have this form:
+ * literal symbols and keywords, <code>[0-9]+\.[0-9]+</code>,
+ * <code>([1-9][0-9]*)|(0)</code>, <code>\s+</code>, and so on.
+ */
+final class LinearPattern
+{
+    /**
+     * Result of match() when the pattern does not match the input.
+     */
+    public static final int NO_MATCH = -1;
+
+    /**
+     * Result of match() when the input contains a surrogate character
+     * where this pattern could have matched one. The java.util.regex engine
+     * treats surrogate pairs as a single code point, so the caller must ask
+     * the Pattern instead.
+     */
+    public static final int FALLBACK = -2;
+
+    /**
+     * Create a LinearPattern from the provided syntax tree.
+     * @param node the root of the syntax tree of a regular expression
+     * @return LinearPattern equivalent to the regular expression, or null
+     *         if the regular expression does not have a linear form
+     */
+    public static LinearPattern from(RegexNode node) {
+        if(node == null) return null;
+        List<RegexNode> roots;
+        if(node.getKind() == RegexNode.Kind.ALTERNATION) {
+            roots = node.getChildren();
+        } else {
+            roots = Collections.singletonList(node);
+        }
+        List<Step[]> alternatives = new ArrayList<Step[]>();
+        for(RegexNode root : roots) {
+            List<Step> steps = new ArrayList<Step>();
+            if(flatten(root, steps) == false) return null;
+            Step[] stepArray = steps.toArray(new Step[steps.size()]);
+            if(isDeterministic(stepArray) == false) return null;
+            alternatives.add(stepArray);
+        }
+        return new LinearPattern(alternatives.toArray(new Step[alternatives.size()][]));
+    }
+
+    /**
+     * Append the steps of the provided node to the provided list.
+     * @param node the node to be flattened
+     * @param steps List of steps to which the steps of the node are added
+     * @return true, if the node could be expressed as steps, otherwise false
+     */
+    private static boolean flatten(RegexNode node, List<Step> steps) {
+        CharSet chars = asChars(node);
+        if(chars != null) {
+            steps.add(new Step(chars, 1, 1));
+            return true;
+        }
+        switch(node.getKind()) {
+            case SEQUENCE:
+                for(RegexNode child : node.getChildren()) {
+                    if(flatten(child, steps) == false) return false;
+                }
+                return true;
+            case REPEAT:
+                if(node.getMode() == RegexNode.Mode.RELUCTANT) return false;
+                RegexNode child = node.getChildren().get(0);
+                CharSet repeated = asChars(child);
+                if(repeated != null) {
+                    steps.add(new Step(repeated, node.getMin(), node.getMax()));
+                    return true;
+                }
+                if(node.getMin() == 1 && node.getMax() == 1) {
+                    return flatten(child, steps);
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Obtain the CharSet of a node that matches exactly one character:
+     * a CHARS node, or an alternation of single characters.
+     * @param node the node to examine
+     * @return CharSet matched by the node, or null if the node matches
+     *         something other than a single character
+     */
+    private static CharSet asChars(RegexNode node) {
+        switch(node.getKind()) {
+            case CHARS:
+                return node.getChars();
+            case ALTERNATION:
+                CharSet union = CharSet.EMPTY;
+                for(RegexNode child : node.getChildren()) {
+                    CharSet chars = asChars(child);
+                    if(chars == null) return null;
+                    union = union.union(chars);
+                }
+                return union;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Determine if consuming as many characters as possible at every step
+     * gives the same result as the backtracking engine.
+     * @param steps the steps of a single alternative
+     * @return true, if no step could ever need to give back a character
+     */
+    private static boolean isDeterministic(Step[] steps) {
+        for(int i=0; i<steps.length; i++) {
+            if(steps[i].min == steps[i].max) continue;
+            for(int j=i+1; j<steps.length; j++) {
+                if(steps[i].chars.intersects(steps[j].chars)) return false;
+                if(steps[j].min > 0) break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Construct a LinearPattern.
+     * @param alternatives the steps of each alternative, in order
+     */
+    private LinearPattern(Step[][] alternatives) {
+        this.alternatives = alternatives;
+        CharSet first = CharSet.EMPTY;
+        boolean surrogates = false;
+        for(Step[] steps : alternatives) {
+            for(Step step : steps) {
+                first = first.union(step.chars);
+                if(step.min > 0) break;
+            }
+            for(Step step : steps) {
+                surrogates |= step.chars.hasSurrogates();
+            }
+        }
+        this.firstSet = first;
+        this.surrogates = surrogates;
+    }
+
+    /**
+     * Obtain the number of alternatives of this LinearPattern.
+     * @return the number of alternatives
+     */
+    public int getAlternativeCount() {
+        return alternatives.length;
+    }
+
+    /**
+     * Obtain the number of steps in an alternative.
+     * @param alternative the index of the alternative
+     * @return the number of steps in the alternative
+     */
+    public int getStepCount(int alternative) {
+        return alternatives[alternative].length;
+    }
+
+    /**
+     * Obtain the CharSet of a step.
+     * @param alternative the index of the alternative
+     * @param step the index of the step within the alternative
+     * @return the characters the step may consume
+     */
+    public CharSet getChars(int alternative, int step) {
+        return alternatives[alternative][step].chars;
+    }
+
+    /**
+     * Obtain the minimum repetitions of a step.
+     * @param alternative the index of the alternative
+     * @param step the index of the step within the alternative
+     * @return the minimum number of characters the step consumes
+     */
+    public int getMin(int alternative, int step) {
+        return alternatives[alternative][step].min;
+    }
+
+    /**
+     * Obtain the maximum repetitions of a step.
+     * @param alternative the index of the alternative
+     * @param step the index of the step within the alternative
+     * @return the maximum number of characters the step consumes, or
+     *         RegexNode.UNBOUNDED
+     */
+    public int getMax(int alternative, int step) {
+        return alternatives[alternative][step].max;
+    }
+
+    /**
+     * Obtain the characters that may begin a match of this LinearPattern.
+     * @return CharSet of the possible first characters of a match
+     */
+    public CharSet getFirstSet() {
+        return firstSet;
+    }
+
+    /**
+     * Obtain the CharClassRun form of this LinearPattern, if it is a single
+     * CharSet repeated without an upper bound, like <code>[0-9]+</code>.
+     * @return CharClassRun equivalent to this LinearPattern, or null if it
+     *         is not a run, or if the run could contain surrogates
+     */
+    public CharClassRun asRun() {
+        if(alternatives.length != 1 || alternatives[0].length != 1) return null;
+        if(surrogates) return null;
+        Step step = alternatives[0][0];
+        if(step.max != RegexNode.UNBOUNDED) return null;
+        return new CharClassRun(step.chars, step.min);
+    }
+
+    /**
+     * Obtain the literal text matched by this LinearPattern, if it only
+     * ever matches one exact String.
+     * @return the literal text matched by this LinearPattern, or null
+     */
+    public String getLiteral() {
+        if(alternatives.length != 1) return null;
+        StringBuilder sb = new StringBuilder();
+        for(Step step : alternatives[0]) {
+            if(step.min != 1 || step.max != 1) return null;
+            if(step.chars.isSingleton() == false) return null;
+            sb.append(step.chars.getRangeLo(0));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Determine if this LinearPattern can match the empty string.
+     * @return true, if some alternative can match without consuming input
+     */
+    public boolean isNullable() {
+        nextAlternative:
+        for(Step[] steps : alternatives) {
+            for(Step step : steps) {
+                if(step.min > 0) continue nextAlternative;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Determine if any step of this LinearPattern could match a surrogate
+     * character.
+     * @return true, if match() may return FALLBACK
+     */
+    public boolean hasSurrogates() {
+        return surrogates;
+    }
+
+    /**
+     * Match this LinearPattern against the input at the provided position.
+     * This gives the same result as Matcher.lookingAt() on the Pattern this
+     * LinearPattern was derived from, with the region [start, end).
+     * @param input the input to be matched
+     * @param start the position at which the match must begin
+     * @param end the position at which the input ends
+     * @return the length of the match, NO_MATCH if there is no match, or
+     *         FALLBACK if the Pattern must be consulted instead
+     */
+    public int match(CharSequence input, int start, int end) {
+        nextAlternative:
+        for(Step[] steps : alternatives) {
+            int position = start;
+            for(Step step : steps) {
+                int limit = (step.max == RegexNode.UNBOUNDED)
+                        ? end : (int) Math.min(end, (long) position + step.max);
+                int stepStart = position;
+                while(position < limit) {
+                    char c = input.charAt(position);
+                    if(step.chars.contains(c) == false) break;
+                    if(surrogates && Character.isSurrogate(c)) return FALLBACK;
+                    position++;
+                }
+                if(position - stepStart < step.min) {
+                    if(surrogates && position < end
+                            && Character.isSurrogate(input.charAt(position))) {
+                        return FALLBACK;
+                    }
+                    continue nextAlternative;
+                }
+            }
+            return position - start;
+        }
+        return NO_MATCH;
+    }
+
+    /**
+     * Obtain a String representation of this LinearPattern. This may be
+     * useful for debugging purposes.
+     * @return a String representation of this LinearPattern
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for(int i=0; i<alternatives.length; i++) {
+            if(i > 0) sb.append('|');
+            for(Step step : alternatives[i]) {
+                sb.append(step.chars).append('{').append(step.min).append(',');
+                if(step.max != RegexNode.UNBOUNDED) sb.append(step.max);
+                sb.append('}');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Step is a CharSet repeated between min and max times.
+     */
+    private static final class Step
+    {
+        /**
+         * Construct a Step.
+         * @param chars the characters the step may consume
+         * @param min the minimum number of characters to consume
+         * @param max the maximum number of characters to consume, or
+         *            RegexNode.UNBOUNDED
+         */
+        Step(CharSet chars, int min, int max) {
+            this.chars = chars;
+            this.max = max;
+            this.min = min;
+        }
+
+        /**
+         * The characters the step may consume.
+         */
+        final CharSet chars;
+
+        /**
+         * The maximum number of characters to consume, or UNBOUNDED.
+         */
+        final int max;
+
+        /**
+         * The minimum number of characters to consume.
+         */
+        final int min;
+    }
+
+    /**
+     * The steps of each alternative, in the order they are tried.
+     */
+    private final Step[][] alternatives;
+
+    /**
+     * The characters that may begin a match.
+     */
+    private final CharSet firstSet;
+
+    /**
+     * Flag: Could any step match a surrogate character?
+     */
+    private final boolean surrogates;
+}
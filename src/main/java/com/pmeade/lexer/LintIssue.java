@@ -0,0 +1,159 @@
+/*
+ * LintIssue.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+/**
+ * LintIssue is one problem that the SpecLinter found with the Pattern of
+ * a TokenType: what kind of problem it is, how serious, where in the
+ * Pattern, and how it might be rewritten.
+ *
+ * @see LintReport
+ */
+public final class LintIssue
+{
+    /**
+     * The kinds of problem found by the SpecLinter.
+     */
+    public enum Kind {
+        /**
+         * The Pattern can match the empty string. The Lexer would produce
+         * an empty Token, and then another, forever.
+         */
+        NULLABLE,
+        /**
+         * A repetition contains another repetition that can give back what
+         * the outer one could take instead, like <code>(a+)+</code>. A
+         * failed match can take exponential time.
+         */
+        NESTED_QUANTIFIER,
+        /**
+         * A repetition of alternatives that can begin with the same
+         * character, like <code>(a|ab)*</code>. A failed match can try
+         * every way of dividing the input between them.
+         */
+        OVERLAPPING_ALTERNATION
+    }
+
+    /**
+     * How serious a LintIssue is.
+     */
+    public enum Severity {
+        /** The TokenType can not work in a Lexer. */
+        ERROR,
+        /** The TokenType works, but may be very slow on some inputs. */
+        WARNING
+    }
+
+    /**
+     * Construct a LintIssue.
+     * @param tokenType the TokenType with the problem
+     * @param kind the kind of problem
+     * @param severity how serious the problem is
+     * @param fragment the part of the Pattern with the problem, in the
+     *                 notation of the syntax tree
+     * @param suggestion how the Pattern might be rewritten
+     */
+    LintIssue(TokenType tokenType, Kind kind, Severity severity,
+            String fragment, String suggestion)
+    {
+        this.fragment = fragment;
+        this.kind = kind;
+        this.severity = severity;
+        this.suggestion = suggestion;
+        this.tokenType = tokenType;
+    }
+
+    /**
+     * Obtain the part of the Pattern with the problem.
+     * @return the part of the Pattern, in the notation of the syntax tree
+     *         (character classes and {min,max} repetitions)
+     */
+    public String getFragment() {
+        return fragment;
+    }
+
+    /**
+     * Obtain the kind of problem.
+     * @return the kind of problem
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Obtain how serious the problem is.
+     * @return the severity of the problem
+     */
+    public Severity getSeverity() {
+        return severity;
+    }
+
+    /**
+     * Obtain a suggestion for rewriting the Pattern.
+     * @return how the Pattern might be rewritten to avoid the problem
+     */
+    public String getSuggestion() {
+        return suggestion;
+    }
+
+    /**
+     * Obtain the TokenType with the problem.
+     * @return the TokenType with the problem
+     */
+    public TokenType getTokenType() {
+        return tokenType;
+    }
+
+    /**
+     * Obtain a String representation of this LintIssue. This may be
+     * useful for debugging purposes.
+     * @return a String representation of this LintIssue
+     */
+    @Override
+    public String toString() {
+        return severity + " " + kind + " in " + tokenType.getName()
+                + " /" + tokenType.getPattern().pattern() + "/ at "
+                + fragment + ": " + suggestion;
+    }
+
+    /**
+     * The part of the Pattern with the problem.
+     */
+    private final String fragment;
+
+    /**
+     * The kind of problem.
+     */
+    private final Kind kind;
+
+    /**
+     * How serious the problem is.
+     */
+    private final Severity severity;
+
+    /**
+     * How the Pattern might be rewritten.
+     */
+    private final String suggestion;
+
+    /**
+     * The TokenType with the problem.
+     */
+    private final TokenType tokenType;
+}
@@ -0,0 +1,116 @@
+/*
+ * LintReport.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * LintReport is the result of checking a lexical specification with the
+ * SpecLinter: every LintIssue found, in the priority order of the
+ * TokenType objects. A report with errors describes a specification that
+ * can not work; check() turns that into an exception.
+ *
+ * @see LexerSpec#lint()
+ * @see TokenTypeBuilder#lint()
+ */
+public final class LintReport
+{
+    /**
+     * Construct a LintReport.
+     * @param issues the issues found; the caller must not modify the List
+     */
+    LintReport(List<LintIssue> issues)
+    {
+        this.issues = Collections.unmodifiableList(issues);
+    }
+
+    /**
+     * Throw an exception if this report has errors.
+     * @return this LintReport, if it has no errors
+     * @throws IllegalArgumentException if this report has errors; the
+     *         message is the whole report
+     */
+    public LintReport check() {
+        if(hasErrors()) throw new IllegalArgumentException(toString());
+        return this;
+    }
+
+    /**
+     * Obtain the issues of a given severity.
+     * @param severity the severity of the issues
+     * @return List of the issues of that severity, in priority order
+     */
+    public List<LintIssue> getIssues(LintIssue.Severity severity) {
+        List<LintIssue> result = new ArrayList<LintIssue>();
+        for(LintIssue issue : issues) {
+            if(issue.getSeverity() == severity) result.add(issue);
+        }
+        return result;
+    }
+
+    /**
+     * Obtain every issue found.
+     * @return unmodifiable List of the issues, in priority order
+     */
+    public List<LintIssue> getIssues() {
+        return issues;
+    }
+
+    /**
+     * Determine if this report has errors.
+     * @return true, if any issue is an ERROR, otherwise false
+     */
+    public boolean hasErrors() {
+        for(LintIssue issue : issues) {
+            if(issue.getSeverity() == LintIssue.Severity.ERROR) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Determine if the specification passed without any issue.
+     * @return true, if no issue was found, otherwise false
+     */
+    public boolean isClean() {
+        return issues.isEmpty();
+    }
+
+    /**
+     * Obtain a String representation of this LintReport, one issue per
+     * line.
+     * @return a String representation of this LintReport
+     */
+    @Override
+    public String toString() {
+        if(issues.isEmpty()) return "no issues";
+        StringBuilder sb = new StringBuilder();
+        for(LintIssue issue : issues) {
+            if(sb.length() > 0) sb.append('\n');
+            sb.append(issue);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The issues found, in priority order.
+     */
+    private final List<LintIssue> issues;
+}
@@ -0,0 +1,65 @@
+/*
+ * LoggingSlowTokenSink.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * LoggingSlowTokenSink writes the reports of a SlowTokenDetector to a
+ * java.util.logging Logger, at level WARNING.
+ */
+public class LoggingSlowTokenSink implements SlowTokenSink
+{
+    /**
+     * Construct a LoggingSlowTokenSink that writes to the Logger named
+     * "com.pmeade.lexer.SlowToken".
+     */
+    public LoggingSlowTokenSink()
+    {
+        this(Logger.getLogger("com.pmeade.lexer.SlowToken"));
+    }
+
+    /**
+     * Construct a LoggingSlowTokenSink that writes to the provided Logger.
+     * @param logger the Logger to write to
+     * @throws NullPointerException if logger is null
+     */
+    public LoggingSlowTokenSink(Logger logger)
+    {
+        if(logger == null) throw new NullPointerException();
+        this.logger = logger;
+    }
+
+    /**
+     * Write the report of a slow Token decision to the Logger.
+     * @param slowToken the report of the slow Token decision
+     */
+    @Override
+    public void slowToken(SlowToken slowToken) {
+        if(logger.isLoggable(Level.WARNING)) {
+            logger.warning(slowToken.toString());
+        }
+    }
+
+    /**
+     * The Logger to write to.
+     */
+    private final Logger logger;
+}
@@ -0,0 +1,49 @@
+/*
+ * MatchPolicy.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+/**
+ * MatchPolicy determines how a Lexer chooses among the TokenType objects
+ * that match the input.
+ */
+public enum MatchPolicy
+{
+    /**
+     * The longest match wins; among matches of the same length, the
+     * TokenType that comes first in the specification wins. Every
+     * TokenType that could match is tried. This is the default.
+     */
+    LONGEST_MATCH,
+
+    /**
+     * The first TokenType in the specification that matches wins, however
+     * long its match. TokenType objects are tried in priority order, and
+     * the rest are not tried at all once one matches. This suits the
+     * specifications written so that list order alone is correct.
+     */
+    FIRST_MATCH,
+
+    /**
+     * The TokenType objects before a cutoff TokenType are tried first, in
+     * priority order, and the first of them that matches wins. Only if
+     * none of them match is the rest of the specification tried, and the
+     * longest match among it wins.
+     */
+    PRIORITY_CUTOFF
+}
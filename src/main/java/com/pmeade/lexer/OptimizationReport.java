@@ -0,0 +1,131 @@
+/*
+ * OptimizationReport.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.pmeade.lexer;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * OptimizationReport is the result of optimizing a lexical specification
+ * with the SpecOptimizer: the optimized TokenType objects, in priority
+ * order, and what was done to get them. A TokenType is removed when it
+ * can be proven never to win a match; a run of literal TokenType objects
+ * is merged into a single TokenType that matches them all, and classifies
+ * each match back into the literal it spells (see TokenType.classify()).
+ *
+ * The optimized specification produces the same Token objects as the
+ * original, with the same TokenType objects, whenever every TokenType is
+ * tried. A parser that calls next(TokenTypeSet) must build its sets from
+ * the optimized TokenType objects; a removed or merged TokenType is no
+ * longer in the specification to be expected.
+ *
+ * @see LexerSpec#optimize()
+ */
+public final class OptimizationReport
+{
+    /**
+     * Construct an OptimizationReport.
+     * @param tokenTypes the optimized TokenType objects, in priority order
+     * @param removed each removed TokenType, with the reason it was removed
+     * @param merged each merged TokenType, with the literal TokenType
+     *               objects it matches; the caller must not modify the
+     *               List or the Map objects
+     */
+    OptimizationReport(List<TokenType> tokenTypes, Map<TokenType, String> removed,
+            Map<TokenType, List<TokenType>> merged)
+    {
+        this.merged = Collections.unmodifiableMap(merged);
+        this.removed = Collections.unmodifiableMap(removed);
+        this.tokenTypes = Collections.unmodifiableList(tokenTypes);
+    }
+
+    /**
+     * Obtain the merged TokenType objects.
+     * @return unmodifiable Map from each merged TokenType to the literal
+     *         TokenType objects it stands in for, in priority order
+     */
+    public Map<TokenType, List<TokenType>> getMerged() {
+        return merged;
+    }
+
+    /**
+     * Obtain the removed TokenType objects.
+     * @return unmodifiable Map from each removed TokenType to the reason
+     *         it can never win a match, in priority order
+     */
+    public Map<TokenType, String> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * Obtain the optimized specification.
+     * @return unmodifiable List of the optimized TokenType objects, in
+     *         priority order
+     */
+    public List<TokenType> getTokenTypes() {
+        return tokenTypes;
+    }
+
+    /**
+     * Determine if the optimizer changed nothing.
+     * @return true, if nothing was removed or merged, otherwise false
+     */
+    public boolean isUnchanged() {
+        return removed.isEmpty() && merged.isEmpty();
+    }
+
+    /**
+     * Obtain a String representation of this OptimizationReport, one
+     * change per line.
+     * @return a String representation of this OptimizationReport
+     */
+    @Override
+    public String toString() {
+        if(isUnchanged()) return "no changes";
+        StringBuilder sb = new StringBuilder();
+        for(Map.Entry<TokenType, String> entry : removed.entrySet()) {
+            if(sb.length() > 0) sb.append('\n');
+            sb.append("removed ").append(entry.getKey().getName())
+              .append(": ").append(entry.getValue());
+        }
+        for(Map.Entry<TokenType, List<TokenType>> entry : merged.entrySet()) {
+            if(sb.length() > 0) sb.append('\n');
+            sb.append("merged ").append(entry.getValue().size())
+              .append(" literals into ").append(entry.getKey().getPattern().pattern());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The merged TokenType objects, with the literals each stands in for.
+     */
+    private final Map<TokenType, List<TokenType>> merged;
+
+    /**
+     * The removed TokenType objects, with the reason for each.
+     */
+    private final Map<TokenType, String> removed;
+
+    /**
+     * The optimized TokenType objects, in priority order.
+     */
+    private final List<TokenType> tokenTypes;
+}
@@ -0,0 +1,406 @@
+/*
+ * RegexNode.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * RegexNode is a node in the syntax tree of a TokenType's regular
+ * expression, as understood by RegexParser. The tree is not used for
+ * matching; the Pattern does that. It is used to reason about the
+ * pattern: how long a match may be, which characters may start one,
+ * and whether the pattern is simple enough to be matched without the
+ * java.util.regex engine at all.
+ *
+ * Constructs that RegexParser does not model in detail (anchors,
+ * lookaround, back references, Unicode properties) become OPAQUE nodes,
+ * which carry only conservative bounds on the width of their match.
+ *
+ * @see RegexParser
+ */
+final class RegexNode
+{
+    /**
+     * Marker for a length without an upper bound.
+     */
+    public static final int UNBOUNDED = -1;
+
+    /**
+     * The kinds of node in the syntax tree.
+     */
+    public enum Kind {
+        /** A single character drawn from a CharSet. */
+        CHARS,
+        /** The children, one after the other. */
+        SEQUENCE,
+        /** The first of the children that leads to a match. */
+        ALTERNATION,
+        /** The single child, repeated between min and max times. */
+        REPEAT,
+        /** Something RegexParser does not model; only its width is known. */
+        OPAQUE
+    }
+
+    /**
+     * The backtracking behavior of a REPEAT node.
+     */
+    public enum Mode {
+        /** Match as many as possible, giving back on failure. */
+        GREEDY,
+        /** Match as few as possible, taking more on failure. */
+        RELUCTANT,
+        /** Match as many as possible, never giving back. */
+        POSSESSIVE
+    }
+
+    /**
+     * Create a node matching a single character from the provided CharSet.
+     * @param chars the characters that the node may match
+     * @return RegexNode matching a single character
+     */
+    public static RegexNode chars(CharSet chars) {
+        return new RegexNode(Kind.CHARS, chars,
+                Collections.<RegexNode>emptyList(), 1, 1, Mode.GREEDY);
+    }
+
+    /**
+     * Create a node matching each of the provided nodes in turn.
+     * @param children the nodes to be matched in order
+     * @return RegexNode matching the concatenation of the children
+     */
+    public static RegexNode sequence(List<RegexNode> children) {
+        if(children.size() == 1) {
+            return children.get(0);
+        }
+        return new RegexNode(Kind.SEQUENCE, null,
+                Collections.unmodifiableList(children), 1, 1, Mode.GREEDY);
+    }
+
+    /**
+     * Create a node matching one of the provided nodes.
+     * @param children the alternatives, in the order they are attempted
+     * @return RegexNode matching any one of the children
+     */
+    public static RegexNode alternation(List<RegexNode> children) {
+        if(children.size() == 1) {
+            return children.get(0);
+        }
+        return new RegexNode(Kind.ALTERNATION, null,
+                Collections.unmodifiableList(children), 1, 1, Mode.GREEDY);
+    }
+
+    /**
+     * Create a node matching repetitions of the provided node.
+     * @param child the node to be repeated
+     * @param min the minimum number of repetitions
+     * @param max the maximum number of repetitions, or UNBOUNDED
+     * @param mode the backtracking behavior of the repetition
+     * @return RegexNode matching repetitions of the child
+     */
+    public static RegexNode repeat(RegexNode child, int min, int max, Mode mode) {
+        return new RegexNode(Kind.REPEAT, null,
+                Collections.singletonList(child), min, max, mode);
+    }
+
+    /**
+     * Create a node for a construct that is not modeled in detail.
+     * @param min the minimum number of characters the construct consumes
+     * @param max the maximum number of characters the construct consumes,
+     *            or UNBOUNDED
+     * @return RegexNode standing in for the construct
+     */
+    public static RegexNode opaque(int min, int max) {
+        return new RegexNode(Kind.OPAQUE, null,
+                Collections.<RegexNode>emptyList(), min, max, Mode.GREEDY);
+    }
+
+    /**
+     * Construct a RegexNode.
+     * @param kind the kind of node
+     * @param chars the characters matched by a CHARS node, otherwise null
+     * @param children the child nodes
+     * @param min repetition or width minimum
+     * @param max repetition or width maximum, or UNBOUNDED
+     * @param mode backtracking behavior of a REPEAT node
+     */
+    private RegexNode(Kind kind, CharSet chars, List<RegexNode> children,
+            int min, int max, Mode mode)
+    {
+        this.chars = chars;
+        this.children = children;
+        this.kind = kind;
+        this.max = max;
+        this.min = min;
+        this.mode = mode;
+    }
+
+    /**
+     * Obtain the characters matched by a CHARS node.
+     * @return CharSet of a CHARS node, otherwise null
+     */
+    public CharSet getChars() {
+        return chars;
+    }
+
+    /**
+     * Obtain the child nodes of this node.
+     * @return List of the child nodes of this node
+     */
+    public List<RegexNode> getChildren() {
+        return children;
+    }
+
+    /**
+     * Obtain the kind of this node.
+     * @return the kind of this node
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Obtain the maximum repetitions of a REPEAT node, or the maximum width
+     * of an OPAQUE node.
+     * @return the maximum, or UNBOUNDED
+     */
+    public int getMax() {
+        return max;
+    }
+
+    /**
+     * Obtain the minimum repetitions of a REPEAT node, or the minimum width
+     * of an OPAQUE node.
+     * @return the minimum
+     */
+    public int getMin() {
+        return min;
+    }
+
+    /**
+     * Obtain the backtracking behavior of a REPEAT node.
+     * @return the backtracking behavior of this node
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Compute the minimum number of chars that a match of this node consumes.
+     * @return the minimum length of a match
+     */
+    public int minLength() {
+        switch(kind) {
+            case CHARS:
+                return 1;
+            case SEQUENCE:
+                int sum = 0;
+                for(RegexNode child : children) {
+                    sum = saturate((long) sum + child.minLength());
+                }
+                return sum;
+            case ALTERNATION:
+                int least = Integer.MAX_VALUE;
+                for(RegexNode child : children) {
+                    least = Math.min(least, child.minLength());
+                }
+                return least;
+            case REPEAT:
+                return saturate((long) min * children.get(0).minLength());
+            default:
+                return min;
+        }
+    }
+
+    /**
+     * Compute the maximum number of chars that a match of this node may
+     * consume. A character class that could match a supplementary code
+     * point may consume two chars.
+     * @return the maximum length of a match, or UNBOUNDED
+     */
+    public int maxLength() {
+        switch(kind) {
+            case CHARS:
+                return chars.hasSurrogates() ? 2 : 1;
+            case SEQUENCE:
+                long sum = 0;
+                for(RegexNode child : children) {
+                    int length = child.maxLength();
+                    if(length == UNBOUNDED) return UNBOUNDED;
+                    sum += length;
+                }
+                return bounded(sum);
+            case ALTERNATION:
+                int most = 0;
+                for(RegexNode child : children) {
+                    int length = child.maxLength();
+                    if(length == UNBOUNDED) return UNBOUNDED;
+                    most = Math.max(most, length);
+                }
+                return most;
+            case REPEAT:
+                int length = children.get(0).maxLength();
+                if(length == 0) return 0;
+                if(length == UNBOUNDED || max == UNBOUNDED) return UNBOUNDED;
+                return bounded((long) length * max);
+            default:
+                return max;
+        }
+    }
+
+    /**
+     * Determine if this node can match the empty string.
+     * @return true, if this node can match without consuming input
+     */
+    public boolean isNullable() {
+        return minLength() == 0;
+    }
+
+    /**
+     * Compute a set of characters that includes every character that can
+     * start a non-empty match of this node. The result may be larger than
+     * strictly necessary, but never smaller.
+     * @return CharSet of the possible first characters of a match
+     */
+    public CharSet firstSet() {
+        switch(kind) {
+            case CHARS:
+                return chars;
+            case SEQUENCE:
+                CharSet first = CharSet.EMPTY;
+                for(RegexNode child : children) {
+                    first = first.union(child.firstSet());
+                    if(child.isNullable() == false) break;
+                }
+                return first;
+            case ALTERNATION:
+                CharSet any = CharSet.EMPTY;
+                for(RegexNode child : children) {
+                    any = any.union(child.firstSet());
+                }
+                return any;
+            case REPEAT:
+                return (max == 0) ? CharSet.EMPTY : children.get(0).firstSet();
+            default:
+                return (max == 0) ? CharSet.EMPTY : CharSet.ALL;
+        }
+    }
+
+    /**
+     * Determine if this node, or any node beneath it, is OPAQUE.
+     * @return true, if the tree contains a construct that is not modeled
+     */
+    public boolean hasOpaque() {
+        if(kind == Kind.OPAQUE) return true;
+        for(RegexNode child : children) {
+            if(child.hasOpaque()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Determine if this node, or any node beneath it, is a zero-width
+     * assertion, such as an anchor, a word boundary, or a lookaround.
+     * Such a node depends on the input outside of the match itself.
+     * @return true, if the tree contains a zero-width assertion
+     */
+    public boolean hasAssertion() {
+        if(kind == Kind.OPAQUE && max == 0) return true;
+        for(RegexNode child : children) {
+            if(child.hasAssertion()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Obtain a String representation of this node. This may be useful
+     * for debugging purposes.
+     * @return a String representation of this node
+     */
+    @Override
+    public String toString() {
+        switch(kind) {
+            case CHARS:
+                return chars.toString();
+            case SEQUENCE:
+            case ALTERNATION:
+                StringBuilder sb = new StringBuilder("(");
+                for(int i=0; i<children.size(); i++) {
+                    if(i > 0 && kind == Kind.ALTERNATION) sb.append('|');
+                    sb.append(children.get(i));
+                }
+                return sb.append(')').toString();
+            case REPEAT:
+                return children.get(0) + "{" + min + ","
+                        + ((max == UNBOUNDED) ? "" : Integer.toString(max))
+                        + "}" + ((mode == Mode.RELUCTANT) ? "?"
+                        : (mode == Mode.POSSESSIVE) ? "+" : "");
+            default:
+                return "(?opaque)";
+        }
+    }
+
+    /**
+     * Clamp a long sum to the int range, saturating at Integer.MAX_VALUE.
+     * @param value the value to clamp
+     * @return value, or Integer.MAX_VALUE if value is larger
+     */
+    private static int saturate(long value) {
+        return (int) Math.min(value, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Clamp a long length to the int range, treating overflow as UNBOUNDED.
+     * @param value the value to clamp
+     * @return value, or UNBOUNDED if value does not fit in an int
+     */
+    private static int bounded(long value) {
+        return (value > Integer.MAX_VALUE) ? UNBOUNDED : (int) value;
+    }
+
+    /**
+     * The characters matched by a CHARS node.
+     */
+    private final CharSet chars;
+
+    /**
+     * The child nodes of this node.
+     */
+    private final List<RegexNode> children;
+
+    /**
+     * The kind of this node.
+     */
+    private final Kind kind;
+
+    /**
+     * Maximum repetitions (REPEAT) or width (OPAQUE).
+     */
+    private final int max;
+
+    /**
+     * Minimum repetitions (REPEAT) or width (OPAQUE).
+     */
+    private final int min;
+
+    /**
+     * Backtracking behavior of a REPEAT node.
+     */
+    private final Mode mode;
+}
@@ -0,0 +1,493 @@
+/*
+ * RegexParser.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * RegexParser converts the regular expression of a TokenType into a tree
+ * of RegexNode objects for analysis.
+ *
+ * The parser understands the commonly used subset of the syntax of Java's
+ * Pattern class: literal characters and escapes, character classes with
+ * ranges and the predefined classes, the dot, groups, alternation and
+ * all of the greedy, reluctant and possessive quantifiers. Anchors,
+ * lookaround and back references are recognized but left OPAQUE.
+ *
+ * When the parser meets something it does not understand, such as nested
+ * character classes or embedded flags, it gives up and returns null. The
+ * caller then simply has no analysis for that TokenType, and the lexer
+ * falls back to the Pattern for everything. The parser never throws.
+ *
+ * @see RegexNode
+ */
+final class RegexParser
+{
+    /**
+     * Parse the provided regular expression.
+     * @param regex the regular expression to parse
+     * @param flags the Pattern flags of the regular expression
+     * @return RegexNode at the root of the syntax tree, or null if the
+     *         regular expression could not be parsed
+     */
+    public static RegexNode parse(String regex, int flags) {
+        if(regex == null) return null;
+        if((flags & UNSUPPORTED_FLAGS) != 0) return null;
+        boolean ignoreCase = (flags & Pattern.CASE_INSENSITIVE) != 0;
+        if(ignoreCase && (flags & Pattern.UNICODE_CASE) != 0) return null;
+        try {
+            RegexParser parser = new RegexParser(regex, flags);
+            if((flags & Pattern.LITERAL) != 0) {
+                return parser.parseLiteral();
+            }
+            RegexNode node = parser.parseAlternation();
+            if(parser.index != regex.length()) return null;
+            return node;
+        } catch(RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Construct a RegexParser.
+     * @param regex the regular expression to parse
+     * @param flags the Pattern flags of the regular expression
+     */
+    private RegexParser(String regex, int flags) {
+        this.flags = flags;
+        this.inClass = false;
+        this.index = 0;
+        this.regex = regex;
+    }
+
+    /**
+     * Parse the whole regular expression as a sequence of literal characters.
+     * @return RegexNode matching the literal text
+     */
+    private RegexNode parseLiteral() {
+        List<RegexNode> nodes = new ArrayList<RegexNode>();
+        for(int i=0; i<regex.length(); i++) {
+            nodes.add(RegexNode.chars(literal(regex.charAt(i))));
+        }
+        return RegexNode.sequence(nodes);
+    }
+
+    /**
+     * Parse alternatives separated by '|'.
+     * @return RegexNode for the alternation
+     */
+    private RegexNode parseAlternation() {
+        List<RegexNode> alternatives = new ArrayList<RegexNode>();
+        alternatives.add(parseSequence());
+        while(index < regex.length() && regex.charAt(index) == '|') {
+            index++;
+            alternatives.add(parseSequence());
+        }
+        return RegexNode.alternation(alternatives);
+    }
+
+    /**
+     * Parse quantified atoms up to the end of the current alternative.
+     * @return RegexNode for the sequence
+     */
+    private RegexNode parseSequence() {
+        List<RegexNode> nodes = new ArrayList<RegexNode>();
+        while(index < regex.length()) {
+            char c = regex.charAt(index);
+            if(c == '|' || c == ')') break;
+            if(c == '\\' && regex.startsWith("\\Q", index)) {
+                parseQuote(nodes);
+                continue;
+            }
+            nodes.add(parseQuantifier(parseAtom()));
+        }
+        return RegexNode.sequence(nodes);
+    }
+
+    /**
+     * Parse a \Q...\E quotation into literal characters.
+     * @param nodes List to which the literal characters are added
+     */
+    private void parseQuote(List<RegexNode> nodes) {
+        int end = regex.indexOf("\\E", index + 2);
+        if(end < 0) end = regex.length();
+        for(int i=index+2; i<end; i++) {
+            nodes.add(RegexNode.chars(literal(regex.charAt(i))));
+        }
+        index = Math.min(end + 2, regex.length());
+        if(nodes.isEmpty() == false) {
+            // a quantifier binds to the last quoted character
+            RegexNode last = nodes.remove(nodes.size() - 1);
+            nodes.add(parseQuantifier(last));
+        }
+    }
+
+    /**
+     * Parse a quantifier, if one follows the provided atom.
+     * @param atom the atom to which the quantifier applies
+     * @return RegexNode for the quantified atom, or the atom itself
+     */
+    private RegexNode parseQuantifier(RegexNode atom) {
+        while(index < regex.length()) {
+            char c = regex.charAt(index);
+            int min;
+            int max;
+            if(c == '*') {
+                min = 0;
+                max = RegexNode.UNBOUNDED;
+                index++;
+            } else if(c == '+') {
+                min = 1;
+                max = RegexNode.UNBOUNDED;
+                index++;
+            } else if(c == '?') {
+                min = 0;
+                max = 1;
+                index++;
+            } else if(c == '{') {
+                int close = regex.indexOf('}', index);
+                String body = regex.substring(index + 1, close);
+                int comma = body.indexOf(',');
+                if(comma < 0) {
+                    min = Integer.parseInt(body.trim());
+                    max = min;
+                } else {
+                    min = Integer.parseInt(body.substring(0, comma).trim());
+                    String upper = body.substring(comma + 1).trim();
+                    max = upper.isEmpty() ? RegexNode.UNBOUNDED : Integer.parseInt(upper);
+                }
+                index = close + 1;
+            } else {
+                return atom;
+            }
+            RegexNode.Mode mode = RegexNode.Mode.GREEDY;
+            if(index < regex.length()) {
+                if(regex.charAt(index) == '?') {
+                    mode = RegexNode.Mode.RELUCTANT;
+                    index++;
+                } else if(regex.charAt(index) == '+') {
+                    mode = RegexNode.Mode.POSSESSIVE;
+                    index++;
+                }
+            }
+            atom = RegexNode.repeat(atom, min, max, mode);
+        }
+        return atom;
+    }
+
+    /**
+     * Parse a single atom: a group, a character class, the dot, an anchor,
+     * an escape sequence or a literal character.
+     * @return RegexNode for the atom
+     */
+    private RegexNode parseAtom() {
+        char c = regex.charAt(index++);
+        switch(c) {
+            case '(':
+                return parseGroup();
+            case '[':
+                return RegexNode.chars(parseClass());
+            case '.':
+                if((flags & Pattern.DOTALL) != 0) {
+                    return RegexNode.chars(CharSet.ALL);
+                }
+                if((flags & Pattern.UNIX_LINES) != 0) {
+                    return RegexNode.chars(CharSet.of('\n').complement());
+                }
+                return RegexNode.chars(CharSet.LINE_TERMINATORS.complement());
+            case '^':
+            case '$':
+                return RegexNode.opaque(0, 0);
+            case '\\':
+                return parseEscape();
+            case '*':
+            case '+':
+            case '?':
+            case '{':
+                throw new IllegalArgumentException("dangling quantifier");
+            default:
+                return RegexNode.chars(literal(c));
+        }
+    }
+
+    /**
+     * Parse a group, after its opening parenthesis.
+     * @return RegexNode for the group
+     */
+    private RegexNode parseGroup() {
+        RegexNode node;
+        if(regex.startsWith("?:", index)) {
+            index += 2;
+            node = parseAlternation();
+        } else if(regex.startsWith("?>", index)) {
+            index += 2;
+            node = RegexNode.repeat(parseAlternation(), 1, 1, RegexNode.Mode.POSSESSIVE);
+        } else if(regex.startsWith("?=", index) || regex.startsWith("?!", index)) {
+            index += 2;
+            parseAlternation();
+            node = RegexNode.opaque(0, 0);
+        } else if(regex.startsWith("?<=", index) || regex.startsWith("?<!", index)) {
+            index += 3;
+            parseAlternation();
+            node = RegexNode.opaque(0, 0);
+        } else if(regex.startsWith("?<", index)) {
+            index = regex.indexOf('>', index) + 1;
+            node = parseAlternation();
+        } else if(regex.startsWith("?", index)) {
+            throw new IllegalArgumentException("embedded flags");
+        } else {
+            node = parseAlternation();
+        }
+        if(regex.charAt(index++) != ')') {
+            throw new IllegalArgumentException("unclosed group");
+        }
+        return node;
+    }
+
+    /**
+     * Parse an escape sequence outside of a character class, after its
+     * backslash.
+     * @return RegexNode for the escape sequence
+     */
+    private RegexNode parseEscape() {
+        char c = regex.charAt(index);
+        switch(c) {
+            case 'b':
+            case 'B':
+            case 'A':
+            case 'G':
+            case 'Z':
+            case 'z':
+                index++;
+                return RegexNode.opaque(0, 0);
+            case 'k':
+                index = regex.indexOf('>', index) + 1;
+                return RegexNode.opaque(0, RegexNode.UNBOUNDED);
+            case 'R':
+            case 'p':
+            case 'P':
+                skipProperty();
+                return RegexNode.opaque(1, 2);
+            case 'X':
+                index++;
+                return RegexNode.opaque(1, RegexNode.UNBOUNDED);
+            default:
+                if(c >= '1' && c <= '9') {
+                    while(index < regex.length() && Character.isDigit(regex.charAt(index))) {
+                        index++;
+                    }
+                    return RegexNode.opaque(0, RegexNode.UNBOUNDED);
+                }
+                return RegexNode.chars(parseEscapedChars());
+        }
+    }
+
+    /**
+     * Skip over a \p{...}, \P{...} or \R escape, after its backslash.
+     */
+    private void skipProperty() {
+        char c = regex.charAt(index++);
+        if(c == 'R') return;
+        if(regex.charAt(index) == '{') {
+            index = regex.indexOf('}', index) + 1;
+        } else {
+            index++;
+        }
+    }
+
+    /**
+     * Parse an escape sequence that stands for a set of characters, after
+     * its backslash. This is shared between character classes and the
+     * rest of the regular expression.
+     * @return CharSet of the characters matched by the escape sequence
+     */
+    private CharSet parseEscapedChars() {
+        char c = regex.charAt(index++);
+        switch(c) {
+            case 'd': return CharSet.DIGIT;
+            case 'D': return CharSet.DIGIT.complement();
+            case 's': return CharSet.SPACE;
+            case 'S': return CharSet.SPACE.complement();
+            case 'w': return CharSet.WORD;
+            case 'W': return CharSet.WORD.complement();
+            case 't': return CharSet.of('\t');
+            case 'n': return CharSet.of('\n');
+            case 'r': return CharSet.of('\r');
+            case 'f': return CharSet.of('\f');
+            case 'a': return CharSet.of('\u0007');
+            case 'e': return CharSet.of('\u001B');
+            case '0': return literal((char) parseNumber(8, 3, 0377));
+            case 'x':
+                if(regex.charAt(index) == '{') {
+                    int close = regex.indexOf('}', index);
+                    int codePoint = Integer.parseInt(regex.substring(index + 1, close), 16);
+                    index = close + 1;
+                    if(codePoint > Character.MAX_VALUE) {
+                        throw new IllegalArgumentException("supplementary");
+                    }
+                    return literal((char) codePoint);
+                }
+                return literal((char) parseNumber(16, 2, 0xFF));
+            case 'u':
+                return literal((char) parseNumber(16, 4, 0xFFFF));
+            case 'c':
+                return literal((char) (regex.charAt(index++) ^ 64));
+            default:
+                if(Character.isLetterOrDigit(c)) {
+                    throw new IllegalArgumentException("unsupported escape");
+                }
+                return literal(c);
+        }
+    }
+
+    /**
+     * Parse a fixed-width number, as found in octal, hexadecimal and
+     * Unicode escapes.
+     * @param radix the radix of the number
+     * @param digits the maximum number of digits
+     * @param limit the maximum value of the number
+     * @return the value of the number
+     */
+    private int parseNumber(int radix, int digits, int limit) {
+        int value = 0;
+        int count = 0;
+        while(count < digits && index < regex.length()) {
+            int digit = Character.digit(regex.charAt(index), radix);
+            if(digit < 0 || value * radix + digit > limit) break;
+            value = value * radix + digit;
+            index++;
+            count++;
+        }
+        if(count == 0) throw new IllegalArgumentException("bad number");
+        return value;
+    }
+
+    /**
+     * Parse a character class, after its opening bracket.
+     * @return CharSet of the characters matched by the class
+     */
+    private CharSet parseClass() {
+        boolean negate = false;
+        if(regex.charAt(index) == '^') {
+            negate = true;
+            index++;
+        }
+        if(regex.charAt(index) == ']') {
+            throw new IllegalArgumentException("leading bracket");
+        }
+        CharSet set = CharSet.EMPTY;
+        // case folding is applied to the class as a whole, not its members
+        inClass = true;
+        while(true) {
+            char c = regex.charAt(index++);
+            if(c == ']') break;
+            if(c == '[' || (c == '&' && regex.charAt(index) == '&')) {
+                throw new IllegalArgumentException("nested class");
+            }
+            char lo;
+            if(c == '\\') {
+                if(regex.charAt(index) == 'Q') {
+                    throw new IllegalArgumentException("quote in class");
+                }
+                CharSet escaped = parseEscapedChars();
+                if(escaped.isSingleton() == false) {
+                    set = set.union(escaped);
+                    continue;
+                }
+                lo = escaped.getRangeLo(0);
+            } else {
+                lo = c;
+            }
+            if(regex.charAt(index) == '-' && regex.charAt(index + 1) != ']') {
+                index++;
+                char d = regex.charAt(index++);
+                char hi;
+                if(d == '\\') {
+                    CharSet escaped = parseEscapedChars();
+                    if(escaped.isSingleton() == false) {
+                        throw new IllegalArgumentException("bad range");
+                    }
+                    hi = escaped.getRangeLo(0);
+                } else if(d == '[') {
+                    throw new IllegalArgumentException("nested class");
+                } else {
+                    hi = d;
+                }
+                set = set.union(CharSet.range(lo, hi));
+            } else {
+                set = set.union(CharSet.of(lo));
+            }
+        }
+        inClass = false;
+        if(set.hasSurrogates()) {
+            throw new IllegalArgumentException("surrogate in class");
+        }
+        if((flags & Pattern.CASE_INSENSITIVE) != 0) {
+            set = set.foldAsciiCase();
+        }
+        return negate ? set.complement() : set;
+    }
+
+    /**
+     * Obtain the CharSet matched by a literal character, taking the
+     * CASE_INSENSITIVE flag into account.
+     * @param c the literal character
+     * @return CharSet matched by the literal character
+     */
+    private CharSet literal(char c) {
+        if(Character.isSurrogate(c)) {
+            throw new IllegalArgumentException("surrogate literal");
+        }
+        CharSet set = CharSet.of(c);
+        if(inClass == false && (flags & Pattern.CASE_INSENSITIVE) != 0) {
+            set = set.foldAsciiCase();
+        }
+        return set;
+    }
+
+    /**
+     * Pattern flags that change the syntax or semantics of the regular
+     * expression in ways this parser does not model.
+     */
+    private static final int UNSUPPORTED_FLAGS = Pattern.CANON_EQ
+            | Pattern.COMMENTS | Pattern.UNICODE_CHARACTER_CLASS;
+
+    /**
+     * The Pattern flags of the regular expression.
+     */
+    private final int flags;
+
+    /**
+     * Flag: Is the parser inside a character class?
+     */
+    private boolean inClass;
+
+    /**
+     * The index of the next character of the regular expression to be
+     * parsed.
+     */
+    private int index;
+
+    /**
+     * The regular expression being parsed.
+     */
+    private final String regex;
+}
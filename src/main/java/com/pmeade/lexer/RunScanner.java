@@ -0,0 +1,98 @@
+/*
+ * RunScanner.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+/**
+ * RunScanner finds where a run of characters from one CharSet ends in a
+ * String, and where either of two chars is in a buffer. This class scans
+ * one char at a time, on any JVM.
+ *
+ * The Java 17 part of the multi-release jar (src/main/java17) holds
+ * VectorRunScanner, a subclass that compares many chars at once with the
+ * Vector API. INSTANCE is a VectorRunScanner when that class can be
+ * loaded: on Java 17 and later, with the jdk.incubator.vector module
+ * present (java --add-modules jdk.incubator.vector). Otherwise it is a
+ * plain RunScanner.
+ *
+ * @see CharClassRun
+ * @see LineIndex
+ */
+class RunScanner
+{
+    /**
+     * The RunScanner used by every CharClassRun and LineIndex.
+     */
+    static final RunScanner INSTANCE = create();
+
+    /**
+     * Create the RunScanner for this JVM.
+     * @return VectorRunScanner if the Vector API is available, otherwise
+     *         a RunScanner that scans one char at a time
+     */
+    private static RunScanner create() {
+        try {
+            return (RunScanner) Class.forName("com.pmeade.lexer.VectorRunScanner")
+                    .getDeclaredConstructor().newInstance();
+        } catch(ReflectiveOperationException e) {
+            return new RunScanner();
+        } catch(LinkageError e) {
+            return new RunScanner();
+        }
+    }
+
+    /**
+     * Construct a RunScanner that scans one char at a time.
+     */
+    RunScanner() {
+        // nothing to set up
+    }
+
+    /**
+     * Find the first of either of two chars in a buffer.
+     * @param buffer the chars to be searched
+     * @param position the index at which the search begins
+     * @param end the index at which the search ends
+     * @param a a char to be found
+     * @param b another char to be found
+     * @return the index of the first a or b at or after position, or end
+     *         if there is none
+     */
+    int indexOf(char[] buffer, int position, int end, char a, char b) {
+        while(position < end && buffer[position] != a && buffer[position] != b) {
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * Find the end of a run of characters from a CharSet.
+     * @param text the String to be scanned
+     * @param position the position at which the run begins
+     * @param end the position at which the text ends
+     * @param chars the characters of the run; none may be surrogates
+     * @return the position of the first character at or after position
+     *         that is not in chars, or end if there is none
+     */
+    int scan(String text, int position, int end, CharSet chars) {
+        while(position < end && chars.contains(text.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+}
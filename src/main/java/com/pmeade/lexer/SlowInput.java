@@ -0,0 +1,163 @@
+/*
+ * SlowInput.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.util.Map;
+
+/**
+ * SlowInput is an input found by a SpecFuzzer, with what it costs to lex.
+ * The cost is the number of calls to <code>charAt()</code> the regular
+ * expression engine made against the input, trying each TokenType at
+ * every position. It breaks down the cost by TokenType, so the regular
+ * expression to blame can be hardened before the specification faces
+ * hostile input.
+ */
+public final class SlowInput
+{
+    /**
+     * Construct a SlowInput.
+     * @param input the input that was measured
+     * @param cost the total number of calls to charAt()
+     * @param typeCosts the number of calls to charAt() made matching each
+     *                  TokenType, in priority order; the caller must not
+     *                  modify the Map
+     * @param budgetExceeded true if any TokenType spent its whole budget
+     */
+    SlowInput(String input, long cost, Map<TokenType, Long> typeCosts,
+            boolean budgetExceeded)
+    {
+        this.budgetExceeded = budgetExceeded;
+        this.cost = cost;
+        this.input = input;
+        this.typeCosts = typeCosts;
+    }
+
+    /**
+     * Obtain the TokenType that cost the most to match.
+     * @return the costliest TokenType, or null if there were none
+     */
+    public TokenType getCostliestTokenType() {
+        TokenType costliest = null;
+        long costliestCost = -1L;
+        for(Map.Entry<TokenType, Long> entry : typeCosts.entrySet()) {
+            if(entry.getValue() > costliestCost) {
+                costliest = entry.getKey();
+                costliestCost = entry.getValue();
+            }
+        }
+        return costliest;
+    }
+
+    /**
+     * Obtain the total cost of the input.
+     * @return the number of calls to charAt() made matching every TokenType
+     */
+    public long getCost() {
+        return cost;
+    }
+
+    /**
+     * Obtain the cost of the input per character. This is the figure that
+     * a SpecFuzzer maximizes; a specification that lexes in linear time
+     * keeps it near a constant no matter the input.
+     * @return the total cost divided by the length of the input, or 0 if
+     *         the input is empty
+     */
+    public double getCostPerChar() {
+        return input.isEmpty() ? 0.0 : (double) cost / input.length();
+    }
+
+    /**
+     * Obtain the input that was measured.
+     * @return the input
+     */
+    public String getInput() {
+        return input;
+    }
+
+    /**
+     * Obtain the cost of the input for each TokenType.
+     * @return unmodifiable Map from TokenType to the number of calls to
+     *         charAt(), in priority order
+     */
+    public Map<TokenType, Long> getTypeCosts() {
+        return typeCosts;
+    }
+
+    /**
+     * Determine if matching any TokenType spent its whole budget. The cost
+     * of that TokenType is then a lower bound; the real cost may be far
+     * higher.
+     * @return true if the budget was exceeded, otherwise false
+     */
+    public boolean isBudgetExceeded() {
+        return budgetExceeded;
+    }
+
+    /**
+     * Obtain a String representation of this SlowInput, suitable for a log.
+     * @return a String representation of this SlowInput
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("slow input of ").append(input.length())
+          .append(" chars cost ").append(cost)
+          .append(budgetExceeded ? "+" : "")
+          .append(" charAt (").append(String.format("%.1f", getCostPerChar()))
+          .append(" per char): \"");
+        for(int i=0; i<input.length(); i++) {
+            char c = input.charAt(i);
+            switch(c) {
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                default: sb.append(c); break;
+            }
+        }
+        sb.append('"');
+        for(Map.Entry<TokenType, Long> entry : typeCosts.entrySet()) {
+            sb.append("\n  ").append(entry.getKey().getName()).append(": ")
+              .append(entry.getValue());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Flag: Did matching any TokenType spend its whole budget?
+     */
+    private final boolean budgetExceeded;
+
+    /**
+     * The total number of calls to charAt().
+     */
+    private final long cost;
+
+    /**
+     * The input that was measured.
+     */
+    private final String input;
+
+    /**
+     * The number of calls to charAt() made matching each TokenType.
+     */
+    private final Map<TokenType, Long> typeCosts;
+}
@@ -0,0 +1,180 @@
+/*
+ * SlowToken.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.util.Map;
+
+/**
+ * SlowToken is the report of a single Token decision that took longer
+ * than the threshold of a SlowTokenDetector. It says where in the input
+ * the decision was made, shows a bounded excerpt of the input around that
+ * position, and breaks down the time spent matching each TokenType, so
+ * the regular expression to blame can be found without reproducing the
+ * input.
+ */
+public final class SlowToken
+{
+    /**
+     * Construct a SlowToken.
+     * @param position the position in the input of the decision
+     * @param elapsedNanos the time taken by the decision, in nanoseconds
+     * @param excerptStart the position in the input of the excerpt
+     * @param excerpt the excerpt of the input around the position
+     * @param token the Token decided, or null if the decision was an error
+     * @param matchNanos the time spent matching each TokenType, in priority
+     *                   order; the caller must not modify the Map
+     */
+    SlowToken(int position, long elapsedNanos, int excerptStart, String excerpt,
+            Token token, Map<TokenType, Long> matchNanos)
+    {
+        this.elapsedNanos = elapsedNanos;
+        this.excerpt = excerpt;
+        this.excerptStart = excerptStart;
+        this.matchNanos = matchNanos;
+        this.position = position;
+        this.token = token;
+    }
+
+    /**
+     * Obtain the time taken by the decision.
+     * @return the time taken by the decision, in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Obtain the excerpt of the input around the position of the decision.
+     * @return the excerpt of the input
+     */
+    public String getExcerpt() {
+        return excerpt;
+    }
+
+    /**
+     * Obtain the position in the input where the excerpt begins.
+     * @return the position of the first character of the excerpt
+     */
+    public int getExcerptStart() {
+        return excerptStart;
+    }
+
+    /**
+     * Obtain the time spent matching each TokenType during the decision.
+     * With a CONCURRENT Lexer these times overlap, so they may add up to
+     * more than the time taken by the decision.
+     * @return unmodifiable Map from TokenType to nanoseconds, in priority
+     *         order
+     */
+    public Map<TokenType, Long> getMatchNanos() {
+        return matchNanos;
+    }
+
+    /**
+     * Obtain the position in the input where the decision was made.
+     * @return the position of the decision
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * Obtain the TokenType that took the longest to match.
+     * @return the slowest TokenType, or null if there were none
+     */
+    public TokenType getSlowestTokenType() {
+        TokenType slowest = null;
+        long slowestNanos = -1L;
+        for(Map.Entry<TokenType, Long> entry : matchNanos.entrySet()) {
+            if(entry.getValue() > slowestNanos) {
+                slowest = entry.getKey();
+                slowestNanos = entry.getValue();
+            }
+        }
+        return slowest;
+    }
+
+    /**
+     * Obtain the Token that was decided.
+     * @return the Token that was decided, or null if no TokenType matched
+     */
+    public Token getToken() {
+        return token;
+    }
+
+    /**
+     * Obtain a String representation of this SlowToken, suitable for a log.
+     * @return a String representation of this SlowToken
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("slow token at ").append(position)
+          .append(" took ").append(elapsedNanos / 1000000.0).append(" ms: ")
+          .append((token == null) ? "error" : token.getTokenType().getName())
+          .append("\n  input @").append(excerptStart).append(": \"");
+        for(int i=0; i<excerpt.length(); i++) {
+            char c = excerpt.charAt(i);
+            switch(c) {
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                default: sb.append(c); break;
+            }
+        }
+        sb.append('"');
+        for(Map.Entry<TokenType, Long> entry : matchNanos.entrySet()) {
+            sb.append("\n  ").append(entry.getKey().getName()).append(": ")
+              .append(entry.getValue() / 1000000.0).append(" ms");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The time taken by the decision, in nanoseconds.
+     */
+    private final long elapsedNanos;
+
+    /**
+     * The excerpt of the input around the position of the decision.
+     */
+    private final String excerpt;
+
+    /**
+     * The position in the input where the excerpt begins.
+     */
+    private final int excerptStart;
+
+    /**
+     * The time spent matching each TokenType, in nanoseconds.
+     */
+    private final Map<TokenType, Long> matchNanos;
+
+    /**
+     * The position in the input where the decision was made.
+     */
+    private final int position;
+
+    /**
+     * The Token that was decided, or null on error.
+     */
+    private final Token token;
+}
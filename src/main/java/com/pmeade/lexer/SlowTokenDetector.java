@@ -0,0 +1,129 @@
+/*
+ * SlowTokenDetector.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SlowTokenDetector finds the individual Token decisions that take far
+ * longer than they should. Provide one to a Lexer with
+ * <code>setSlowTokenDetector()</code>; whenever a single call to
+ * <code>nextNoSkip()</code> takes longer than the threshold, a SlowToken
+ * report is handed to the SlowTokenSink.
+ *
+ * Detection is opt-in. While a Lexer has a SlowTokenDetector, it times
+ * each TokenType match, which costs two calls to System.nanoTime() per
+ * TokenType per Token.
+ *
+ * A SlowTokenDetector may be shared by many Lexer objects.
+ */
+public class SlowTokenDetector
+{
+    /**
+     * Construct a SlowTokenDetector.
+     * @param threshold how long a Token decision may take before it is
+     *                  reported
+     * @param unit the unit of the threshold
+     * @param sink SlowTokenSink to receive the reports
+     * @throws NullPointerException if unit or sink are null
+     * @throws IllegalArgumentException if threshold is negative
+     */
+    public SlowTokenDetector(long threshold, TimeUnit unit, SlowTokenSink sink)
+    {
+        if(unit == null) throw new NullPointerException();
+        if(sink == null) throw new NullPointerException();
+        if(threshold < 0) throw new IllegalArgumentException("threshold must not be negative");
+        this.excerptLength = DEFAULT_EXCERPT_LENGTH;
+        this.sink = sink;
+        this.thresholdNanos = unit.toNanos(threshold);
+    }
+
+    /**
+     * Specify the most characters of input to include in a report. The
+     * excerpt is centered on the position of the slow decision, where the
+     * input allows.
+     * @param excerptLength the length of the excerpt, at most
+     * @return SlowTokenDetector for additional chained calls
+     * @throws IllegalArgumentException if excerptLength is negative
+     */
+    public SlowTokenDetector excerptLength(int excerptLength)
+    {
+        if(excerptLength < 0) throw new IllegalArgumentException("excerptLength must not be negative");
+        this.excerptLength = excerptLength;
+        return this;
+    }
+
+    /**
+     * Obtain the threshold of this SlowTokenDetector.
+     * @return how long a Token decision may take before it is reported,
+     *         in nanoseconds
+     */
+    public long getThresholdNanos() {
+        return thresholdNanos;
+    }
+
+    /**
+     * Check a Token decision, and report it if it took too long.
+     * @param source the input of the Lexer
+     * @param position the position in the input of the decision
+     * @param elapsedNanos the time taken by the decision, in nanoseconds
+     * @param token the Token decided, or null on error
+     * @param spec List of the TokenType objects of the Lexer
+     * @param matchNanos the time spent matching each TokenType
+     */
+    void check(CharSequence source, int position, long elapsedNanos, Token token,
+            List<TokenType> spec, long[] matchNanos)
+    {
+        if(elapsedNanos < thresholdNanos) return;
+        int length = excerptLength;
+        int start = Math.max(0, Math.min(position - length / 2, source.length() - length));
+        int end = Math.min(source.length(), start + length);
+        String excerpt = source.subSequence(start, end).toString();
+        Map<TokenType, Long> breakdown = new LinkedHashMap<TokenType, Long>();
+        for(int i=0; i<spec.size(); i++) {
+            breakdown.put(spec.get(i), matchNanos[i]);
+        }
+        sink.slowToken(new SlowToken(position, elapsedNanos, start, excerpt, token,
+                Collections.unmodifiableMap(breakdown)));
+    }
+
+    /**
+     * The default length of the excerpt of input in a report.
+     */
+    public static final int DEFAULT_EXCERPT_LENGTH = 80;
+
+    /**
+     * The most characters of input to include in a report.
+     */
+    private volatile int excerptLength;
+
+    /**
+     * SlowTokenSink to receive the reports.
+     */
+    private final SlowTokenSink sink;
+
+    /**
+     * How long a Token decision may take before it is reported.
+     */
+    private final long thresholdNanos;
+}
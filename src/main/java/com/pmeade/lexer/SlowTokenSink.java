@@ -0,0 +1,38 @@
+/*
+ * SlowTokenSink.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+/**
+ * SlowTokenSink receives the reports of a SlowTokenDetector. Implement it
+ * to send the reports wherever they are needed: a log, a metrics system,
+ * a file of inputs to reproduce later, and so on.
+ *
+ * A sink is called on the thread that called the Lexer, while the Lexer
+ * waits; keep it quick, or hand the report off to another thread.
+ *
+ * @see LoggingSlowTokenSink
+ */
+public interface SlowTokenSink
+{
+    /**
+     * Receive the report of a slow Token decision.
+     * @param slowToken the report of the slow Token decision
+     */
+    void slowToken(SlowToken slowToken);
+}
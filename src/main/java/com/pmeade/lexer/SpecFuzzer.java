@@ -0,0 +1,577 @@
+/*
+ * SpecFuzzer.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+
+/**
+ * SpecFuzzer searches for the inputs that are most expensive to lex with
+ * a specification. Static analysis (see LexerSpec.lint()) finds the
+ * well-known shapes of catastrophic backtracking; SpecFuzzer finds the
+ * rest by trying inputs against the regular expressions themselves.
+ *
+ * The cost of an input is the number of calls to <code>charAt()</code>
+ * the regular expression engine makes, trying every TokenType at every
+ * position of the input. Counting calls instead of timing them makes the
+ * search deterministic: the same specification and seed always find the
+ * same inputs, on any machine. The Pattern of every TokenType is measured,
+ * even where a Lexer would use a faster linear matcher, so the cost is an
+ * upper bound on the work of any TokenStream.
+ *
+ * The search is a mutation fuzzer, guided by both coverage and cost.
+ * It starts from single characters of the specification and a corpus
+ * of Token texts sampled from their Pattern, and mutates inputs by
+ * inserting, replacing, deleting, repeating, and splicing text. A mutant
+ * is kept for further mutation if it reaches new behavior (a TokenType
+ * matching for the first time, or a new order of magnitude of cost or
+ * match length), or if it costs more per character than its parent.
+ *
+ * The general pattern is this:
+ *
+ * <code>
+ * List&lt;SlowInput&gt; worst = new SpecFuzzer(tokenTypes)
+ *           .seed(42)
+ *           .iterations(5000)
+ *           .fuzz();
+ * </code>
+ *
+ * A specification that lexes in linear time keeps the cost per character
+ * near a constant. One that backtracks shows it growing with the length
+ * of the worst inputs; SlowInput.getTypeCosts() says which TokenType is
+ * to blame.
+ */
+public class SpecFuzzer
+{
+    /**
+     * Construct a SpecFuzzer for the provided specification.
+     * @param spec List of TokenType objects, in priority order
+     * @throws NullPointerException if spec is null
+     */
+    public SpecFuzzer(List<TokenType> spec)
+    {
+        if(spec == null) {
+            throw new NullPointerException("spec");
+        }
+        this.budget = DEFAULT_BUDGET;
+        this.iterations = DEFAULT_ITERATIONS;
+        this.keep = DEFAULT_KEEP;
+        this.maxLength = DEFAULT_MAX_LENGTH;
+        this.seed = 0L;
+        this.tokenTypes = new ArrayList<TokenType>(spec);
+    }
+
+    /**
+     * Specify the budget of calls to charAt() for each TokenType on each
+     * input. Matching stops when the budget is spent, so that an input
+     * with exponential cost does not stall the search.
+     * @param budget the number of calls to charAt() allowed
+     * @return SpecFuzzer for additional chained calls
+     * @throws IllegalArgumentException if budget is less than 1
+     */
+    public SpecFuzzer budget(long budget)
+    {
+        if(budget < 1L) {
+            throw new IllegalArgumentException("budget must be at least 1");
+        }
+        this.budget = budget;
+        return this;
+    }
+
+    /**
+     * Specify the number of mutants to try.
+     * @param iterations the number of mutants to try
+     * @return SpecFuzzer for additional chained calls
+     * @throws IllegalArgumentException if iterations is negative
+     */
+    public SpecFuzzer iterations(int iterations)
+    {
+        if(iterations < 0) {
+            throw new IllegalArgumentException("iterations must not be negative");
+        }
+        this.iterations = iterations;
+        return this;
+    }
+
+    /**
+     * Specify the number of worst inputs to report.
+     * @param keep the number of worst inputs to report
+     * @return SpecFuzzer for additional chained calls
+     * @throws IllegalArgumentException if keep is less than 1
+     */
+    public SpecFuzzer keep(int keep)
+    {
+        if(keep < 1) {
+            throw new IllegalArgumentException("keep must be at least 1");
+        }
+        this.keep = keep;
+        return this;
+    }
+
+    /**
+     * Specify the maximum length of an input.
+     * @param maxLength the maximum length of an input, in characters
+     * @return SpecFuzzer for additional chained calls
+     * @throws IllegalArgumentException if maxLength is less than 1
+     */
+    public SpecFuzzer maxLength(int maxLength)
+    {
+        if(maxLength < 1) {
+            throw new IllegalArgumentException("maxLength must be at least 1");
+        }
+        this.maxLength = maxLength;
+        return this;
+    }
+
+    /**
+     * Specify the seed of the random number generator.
+     * @param seed the seed of the random number generator
+     * @return SpecFuzzer for additional chained calls
+     */
+    public SpecFuzzer seed(long seed)
+    {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Search for the inputs that cost the most per character to lex.
+     * @return List of the worst SlowInput objects found, costliest per
+     *         character first; this is empty if the specification is empty
+     */
+    public List<SlowInput> fuzz()
+    {
+        List<SlowInput> worst = new ArrayList<SlowInput>();
+        if(tokenTypes.isEmpty()) {
+            return worst;
+        }
+        Random random = new Random(seed);
+        char[] alphabet = collectAlphabet();
+        String corpus = generateCorpus();
+        Set<String> tried = new HashSet<String>();
+        Set<Integer> coverage = new HashSet<Integer>();
+        List<SlowInput> queue = new ArrayList<SlowInput>();
+
+        List<String> seeds = new ArrayList<String>();
+        for(char c : alphabet) {
+            seeds.add(String.valueOf(c));
+        }
+        for(int i=0; i<corpus.length(); i+=maxLength) {
+            seeds.add(corpus.substring(i, Math.min(corpus.length(), i+maxLength)));
+        }
+        for(String input : seeds) {
+            if(tried.add(input)) {
+                SlowInput slowInput = measure(input, coverage);
+                queue.add(slowInput);
+                offer(worst, slowInput);
+            }
+        }
+
+        for(int i=0; i<iterations; i++) {
+            SlowInput parent = select(queue, random);
+            String input = mutate(parent.getInput(), queue, alphabet, corpus, random);
+            if(input.isEmpty() || tried.add(input) == false) {
+                continue;
+            }
+            int covered = coverage.size();
+            SlowInput slowInput = measure(input, coverage);
+            if(coverage.size() > covered
+                    || slowInput.getCostPerChar() > parent.getCostPerChar()) {
+                queue.add(slowInput);
+                if(queue.size() > MAX_QUEUE) {
+                    queue.remove(cheapest(queue));
+                }
+            }
+            offer(worst, slowInput);
+        }
+        return worst;
+    }
+
+    /**
+     * Measure the cost of lexing the provided input. Each TokenType is
+     * tried at every position of the input, as a Lexer would try it after
+     * any Token that ended there.
+     *
+     * This is useful on its own, to keep the worst inputs of a past search
+     * as a regression test for a specification.
+     * @param input the input to be measured
+     * @return SlowInput holding the cost of the input
+     * @throws NullPointerException if input is null
+     */
+    public SlowInput measure(String input)
+    {
+        return measure(input, new HashSet<Integer>());
+    }
+
+    /**
+     * Measure the cost of lexing the provided input, and record the
+     * behavior of each TokenType as coverage features.
+     * @param input the input to be measured
+     * @param coverage Set to which coverage features are added
+     * @return SlowInput holding the cost of the input
+     */
+    private SlowInput measure(String input, Set<Integer> coverage)
+    {
+        Map<TokenType, Long> typeCosts = new LinkedHashMap<TokenType, Long>();
+        long cost = 0L;
+        boolean budgetExceeded = false;
+        int end = input.length();
+        for(int i=0; i<tokenTypes.size(); i++) {
+            TokenType tokenType = tokenTypes.get(i);
+            CountingCharSequence text = new CountingCharSequence(input, budget);
+            Matcher matcher = tokenType.getPattern().matcher(text);
+            int maxLength = tokenType.getMaxLength();
+            long maxStepCost = 0L;
+            int longestMatch = -1;
+            for(int p=0; p<end; p++) {
+                int stop = (maxLength != TokenType.UNBOUNDED && maxLength < end - p)
+                        ? p + maxLength : end;
+                long before = text.getCount();
+                try {
+                    matcher.region(p, stop);
+                    if(matcher.lookingAt()) {
+                        longestMatch = Math.max(longestMatch, matcher.end() - p);
+                    }
+                } catch(CountingCharSequence.BudgetExceededException e) {
+                    budgetExceeded = true;
+                    coverage.add(feature(i, FEATURE_EXHAUSTED, 0));
+                    break;
+                }
+                maxStepCost = Math.max(maxStepCost, text.getCount() - before);
+            }
+            coverage.add(feature(i, FEATURE_STEP_COST, log2(maxStepCost)));
+            if(longestMatch >= 0) {
+                coverage.add(feature(i, FEATURE_MATCH_LENGTH, log2(longestMatch)));
+            }
+            typeCosts.put(tokenType, text.getCount());
+            cost += text.getCount();
+        }
+        return new SlowInput(input, cost,
+                Collections.unmodifiableMap(typeCosts), budgetExceeded);
+    }
+
+    /**
+     * Collect characters that are interesting to the specification: the
+     * ends of every range of characters in the syntax of each TokenType,
+     * and a few common characters besides.
+     * @return array of distinct interesting characters
+     */
+    private char[] collectAlphabet()
+    {
+        Set<Character> chars = new LinkedHashSet<Character>();
+        for(TokenType tokenType : tokenTypes) {
+            collectAlphabet(tokenType.getSyntax(), chars);
+        }
+        for(int i=0; i<COMMON_CHARS.length(); i++) {
+            chars.add(COMMON_CHARS.charAt(i));
+        }
+        char[] alphabet = new char[chars.size()];
+        int i = 0;
+        for(Character c : chars) {
+            alphabet[i++] = c;
+        }
+        return alphabet;
+    }
+
+    /**
+     * Collect characters that are interesting to a syntax tree.
+     * @param node the syntax tree, or null if it is not known
+     * @param chars Set to which the characters are added
+     */
+    private static void collectAlphabet(RegexNode node, Set<Character> chars)
+    {
+        if(node == null) {
+            return;
+        }
+        CharSet charSet = node.getChars();
+        if(charSet != null) {
+            int ranges = Math.min(charSet.getRangeCount(), MAX_RANGES);
+            for(int i=0; i<ranges; i++) {
+                chars.add(charSet.getRangeLo(i));
+                chars.add(charSet.getRangeHi(i));
+            }
+        }
+        for(RegexNode child : node.getChildren()) {
+            collectAlphabet(child, chars);
+        }
+    }
+
+    /**
+     * Generate a corpus of valid Token texts, to seed the search and to
+     * splice into mutants. Each text lexes back into a Token of the
+     * TokenType it was drawn for, even after the text before it.
+     * @return String containing the corpus, or the empty String if no
+     *         TokenType can be sampled
+     */
+    private String generateCorpus()
+    {
+        TokenSampler sampler = new TokenSampler(LexerSpec.compile(tokenTypes));
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder();
+        String last = null;
+        int lastIndex = -1;
+        int failures = 0;
+        while(sb.length() < maxLength * 4 && failures < MAX_SAMPLE_FAILURES) {
+            int index = random.nextInt(tokenTypes.size());
+            String text = sampler.sample(random, index);
+            if(text == null
+                    || sampler.lexesAs(text, index) == false
+                    || (last != null && sampler.follows(last, lastIndex, text) == false)) {
+                failures++;
+                continue;
+            }
+            sb.append(text);
+            last = text;
+            lastIndex = index;
+            failures = 0;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Mutate an input. One to three mutations are applied, and the result
+     * is cut to the maximum length.
+     * @param input the input to be mutated
+     * @param queue the inputs kept for mutation, for splicing
+     * @param alphabet the interesting characters of the specification
+     * @param corpus valid Token texts, for splicing
+     * @param random the random number generator
+     * @return the mutated input
+     */
+    private String mutate(String input, List<SlowInput> queue, char[] alphabet,
+            String corpus, Random random)
+    {
+        StringBuilder sb = new StringBuilder(input);
+        int mutations = 1 + random.nextInt(3);
+        for(int m=0; m<mutations; m++) {
+            int length = sb.length();
+            int at = random.nextInt(length + 1);
+            switch(random.nextInt(6)) {
+                case 0:
+                    sb.insert(at, alphabet[random.nextInt(alphabet.length)]);
+                    break;
+                case 1:
+                    if(at < length) {
+                        sb.setCharAt(at, alphabet[random.nextInt(alphabet.length)]);
+                    }
+                    break;
+                case 2:
+                    if(at < length) {
+                        sb.delete(at, at + 1 + random.nextInt(length - at));
+                    }
+                    break;
+                case 3:
+                    if(at < length) {
+                        // repeat a slice, to pump a loop in a regular expression
+                        int sliceEnd = at + 1 + random.nextInt(Math.min(8, length - at));
+                        String slice = sb.substring(at, sliceEnd);
+                        int copies = 1 + random.nextInt(8);
+                        for(int i=0; i<copies; i++) {
+                            sb.insert(sliceEnd, slice);
+                        }
+                    }
+                    break;
+                case 4:
+                    if(corpus.isEmpty() == false) {
+                        int start = random.nextInt(corpus.length());
+                        int end = Math.min(corpus.length(), start + 1 + random.nextInt(16));
+                        sb.insert(at, corpus, start, end);
+                    }
+                    break;
+                default:
+                    String other = queue.get(random.nextInt(queue.size())).getInput();
+                    sb.setLength(at);
+                    sb.append(other, random.nextInt(other.length() + 1), other.length());
+                    break;
+            }
+        }
+        if(sb.length() > maxLength) {
+            sb.setLength(maxLength);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Offer a SlowInput to the list of the worst inputs found.
+     * @param worst List of the worst inputs, costliest per character first
+     * @param slowInput the SlowInput to be offered
+     */
+    private void offer(List<SlowInput> worst, SlowInput slowInput)
+    {
+        int index = 0;
+        while(index < worst.size()
+                && worst.get(index).getCostPerChar() >= slowInput.getCostPerChar()) {
+            index++;
+        }
+        if(index < keep) {
+            worst.add(index, slowInput);
+            if(worst.size() > keep) {
+                worst.remove(worst.size() - 1);
+            }
+        }
+    }
+
+    /**
+     * Select an input to mutate. The costlier of two inputs drawn at
+     * random is selected, which favors costly inputs without giving up
+     * on the others.
+     * @param queue the inputs kept for mutation
+     * @param random the random number generator
+     * @return the SlowInput to mutate
+     */
+    private static SlowInput select(List<SlowInput> queue, Random random)
+    {
+        SlowInput a = queue.get(random.nextInt(queue.size()));
+        SlowInput b = queue.get(random.nextInt(queue.size()));
+        return (a.getCostPerChar() >= b.getCostPerChar()) ? a : b;
+    }
+
+    /**
+     * Find the input that costs the least per character.
+     * @param queue the inputs kept for mutation
+     * @return the cheapest SlowInput
+     */
+    private static SlowInput cheapest(List<SlowInput> queue)
+    {
+        return Collections.min(queue, new Comparator<SlowInput>() {
+            @Override
+            public int compare(SlowInput a, SlowInput b) {
+                return Double.compare(a.getCostPerChar(), b.getCostPerChar());
+            }
+        });
+    }
+
+    /**
+     * Encode a coverage feature as an Integer.
+     * @param index the index of the TokenType
+     * @param kind the kind of feature
+     * @param bucket the bucket of the feature within its kind
+     * @return Integer identifying the feature
+     */
+    private static int feature(int index, int kind, int bucket)
+    {
+        return (index << 8) | (kind << 6) | bucket;
+    }
+
+    /**
+     * Compute the bucket of a count, by order of magnitude.
+     * @param value the count, which must not be negative
+     * @return the number of bits needed to represent the count, 0 to 63
+     */
+    private static int log2(long value)
+    {
+        return Math.min(63, 64 - Long.numberOfLeadingZeros(value));
+    }
+
+    /**
+     * Characters that are always tried, whatever the specification.
+     */
+    private static final String COMMON_CHARS = " \t\n\r\"'\\/0aZ_.-+*(){}[]<>\u00e9";
+
+    /**
+     * Default budget of calls to charAt(), for each TokenType on each input.
+     */
+    public static final long DEFAULT_BUDGET = 1L << 20;
+
+    /**
+     * Default number of mutants to try.
+     */
+    public static final int DEFAULT_ITERATIONS = 2000;
+
+    /**
+     * Default number of worst inputs to report.
+     */
+    public static final int DEFAULT_KEEP = 10;
+
+    /**
+     * Default maximum length of an input, in characters.
+     */
+    public static final int DEFAULT_MAX_LENGTH = 64;
+
+    /**
+     * Coverage feature: the budget was spent.
+     */
+    private static final int FEATURE_EXHAUSTED = 0;
+
+    /**
+     * Coverage feature: the length of the longest match, by magnitude.
+     */
+    private static final int FEATURE_MATCH_LENGTH = 1;
+
+    /**
+     * Coverage feature: the cost of the costliest match, by magnitude.
+     */
+    private static final int FEATURE_STEP_COST = 2;
+
+    /**
+     * The most inputs kept for mutation.
+     */
+    private static final int MAX_QUEUE = 1024;
+
+    /**
+     * The most ranges of a CharSet that contribute characters.
+     */
+    private static final int MAX_RANGES = 16;
+
+    /**
+     * The most samples in a row that may fail before the corpus is cut
+     * short; no TokenType may be able to follow the last one, or be
+     * sampled at all.
+     */
+    private static final int MAX_SAMPLE_FAILURES = 64;
+
+    /**
+     * The budget of calls to charAt(), for each TokenType on each input.
+     */
+    private long budget;
+
+    /**
+     * The number of mutants to try.
+     */
+    private int iterations;
+
+    /**
+     * The number of worst inputs to report.
+     */
+    private int keep;
+
+    /**
+     * The maximum length of an input, in characters.
+     */
+    private int maxLength;
+
+    /**
+     * The seed of the random number generator.
+     */
+    private long seed;
+
+    /**
+     * The specification, in priority order.
+     */
+    private final List<TokenType> tokenTypes;
+}
@@ -0,0 +1,182 @@
+/*
+ * SpecLinter.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SpecLinter checks the Pattern of each TokenType for problems that only
+ * show up at runtime: a Pattern that matches the empty string, which
+ * makes the Lexer loop forever, and the shapes of regular expression that
+ * make java.util.regex backtrack exponentially on a failed match.
+ *
+ * The checks work on the syntax tree of the Pattern (see RegexParser).
+ * A repetition is only a concern if it is greedy or reluctant; possessive
+ * repetitions and atomic groups never give back what they matched, so
+ * whatever they contain is left alone. The checks err on the side of
+ * reporting; the issues they find are warnings, not errors.
+ */
+final class SpecLinter
+{
+    /**
+     * Check a lexical specification.
+     * @param tokenTypes the TokenType objects, in priority order
+     * @return LintReport of every issue found
+     */
+    static LintReport lint(List<TokenType> tokenTypes) {
+        List<LintIssue> issues = new ArrayList<LintIssue>();
+        for(TokenType tokenType : tokenTypes) {
+            lint(tokenType, issues);
+        }
+        return new LintReport(issues);
+    }
+
+    /**
+     * Check a single TokenType.
+     * @param tokenType the TokenType to check
+     * @param issues List to which the issues found are added
+     */
+    static void lint(TokenType tokenType, List<LintIssue> issues) {
+        RegexNode syntax = tokenType.getSyntax();
+        boolean nullable = (syntax != null) ? syntax.isNullable()
+                : tokenType.getPattern().matcher("").lookingAt();
+        if(nullable) {
+            issues.add(new LintIssue(tokenType, LintIssue.Kind.NULLABLE,
+                    LintIssue.Severity.ERROR,
+                    (syntax != null) ? syntax.toString() : tokenType.getPattern().pattern(),
+                    "require at least one character, e.g. + instead of *"));
+        }
+        if(syntax != null) {
+            checkRepeats(tokenType, syntax, issues);
+        }
+    }
+
+    /**
+     * Check every repetition in a syntax tree that can backtrack.
+     * @param tokenType the TokenType being checked
+     * @param node the root of the (sub)tree to check
+     * @param issues List to which the issues found are added
+     */
+    private static void checkRepeats(TokenType tokenType, RegexNode node, List<LintIssue> issues) {
+        if(node.getKind() == RegexNode.Kind.REPEAT) {
+            // nothing inside a possessive repetition or atomic group gives back
+            if(node.getMode() == RegexNode.Mode.POSSESSIVE) return;
+            RegexNode body = node.getChildren().get(0);
+            if(node.getMax() == RegexNode.UNBOUNDED || node.getMax() > 1) {
+                checkNested(tokenType, node, body, issues);
+                checkAlternation(tokenType, node, body, issues);
+            }
+        }
+        for(RegexNode child : node.getChildren()) {
+            checkRepeats(tokenType, child, issues);
+        }
+    }
+
+    /**
+     * Check a repetition for an inner repetition at the end of its body
+     * that could also consume the start of the next iteration. Then the
+     * same input can be divided between iterations in exponentially many
+     * ways, as in <code>(a+)+</code> or <code>(\w+\s?)*</code>.
+     * @param tokenType the TokenType being checked
+     * @param repeat the outer repetition
+     * @param body the body of the outer repetition
+     * @param issues List to which the issues found are added
+     */
+    private static void checkNested(TokenType tokenType, RegexNode repeat,
+            RegexNode body, List<LintIssue> issues)
+    {
+        List<RegexNode> inner = new ArrayList<RegexNode>();
+        collectTrailingRepeats(body, inner);
+        CharSet restart = body.firstSet();
+        for(RegexNode candidate : inner) {
+            if(candidate.getChildren().get(0).firstSet().intersects(restart)) {
+                issues.add(new LintIssue(tokenType, LintIssue.Kind.NESTED_QUANTIFIER,
+                        LintIssue.Severity.WARNING, repeat.toString(),
+                        "make the inner repetition " + candidate
+                        + " possessive (add +) or wrap it in an atomic group (?>...)"));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Check a repetition of alternatives that can begin with the same
+     * character, as in <code>(a|ab)*</code> or <code>(\w|\d)+</code>.
+     * @param tokenType the TokenType being checked
+     * @param repeat the outer repetition
+     * @param body the body of the outer repetition
+     * @param issues List to which the issues found are added
+     */
+    private static void checkAlternation(TokenType tokenType, RegexNode repeat,
+            RegexNode body, List<LintIssue> issues)
+    {
+        if(body.getKind() != RegexNode.Kind.ALTERNATION) return;
+        List<RegexNode> alternatives = body.getChildren();
+        for(int i=0; i<alternatives.size(); i++) {
+            for(int j=i+1; j<alternatives.size(); j++) {
+                if(alternatives.get(i).firstSet().intersects(alternatives.get(j).firstSet())) {
+                    issues.add(new LintIssue(tokenType, LintIssue.Kind.OVERLAPPING_ALTERNATION,
+                            LintIssue.Severity.WARNING, repeat.toString(),
+                            "make the repetition possessive (add +), or rewrite "
+                            + alternatives.get(i) + " and " + alternatives.get(j)
+                            + " to begin with different characters"));
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Collect the repetitions that can backtrack and may end a match of a
+     * node: a variable repetition at the end of the node, or followed only
+     * by things that can match the empty string.
+     * @param node the node to search
+     * @param result List to which the repetitions are added
+     */
+    private static void collectTrailingRepeats(RegexNode node, List<RegexNode> result) {
+        switch(node.getKind()) {
+            case REPEAT:
+                if(node.getMode() == RegexNode.Mode.POSSESSIVE) return;
+                if(node.getMin() != node.getMax()) result.add(node);
+                collectTrailingRepeats(node.getChildren().get(0), result);
+                return;
+            case SEQUENCE:
+                List<RegexNode> children = node.getChildren();
+                for(int i=children.size()-1; i>=0; i--) {
+                    collectTrailingRepeats(children.get(i), result);
+                    if(children.get(i).isNullable() == false) return;
+                }
+                return;
+            case ALTERNATION:
+                for(RegexNode child : node.getChildren()) {
+                    collectTrailingRepeats(child, result);
+                }
+                return;
+            default:
+                return;
+        }
+    }
+
+    /**
+     * SpecLinter is a collection of static methods.
+     */
+    private SpecLinter() {
+    }
+}
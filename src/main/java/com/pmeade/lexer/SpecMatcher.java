@@ -0,0 +1,56 @@
+/*
+ * SpecMatcher.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+/**
+ * SpecMatcher decides the longest match among the TokenType objects of a
+ * LexerSpec that have a linear pattern. TokenType objects without a linear
+ * pattern are left for the caller to try with their Pattern.
+ *
+ * The result is packed into a long: the length of the match in the high
+ * 32 bits and the index of the winning TokenType in the low 32 bits.
+ *
+ * @see BytecodeSpecializer
+ * @see SpecializedLexer
+ */
+interface SpecMatcher
+{
+    /**
+     * Result of match() when no linear TokenType matches the input.
+     */
+    long NO_MATCH = -1L;
+
+    /**
+     * Result of match() when a linear TokenType met a surrogate character,
+     * and the Pattern objects must be consulted instead.
+     */
+    long FALLBACK = -2L;
+
+    /**
+     * Find the longest match among the linear TokenType objects, preferring
+     * the highest priority TokenType when matches are of equal length.
+     * @param input the input to be matched
+     * @param start the position at which the match must begin; this must
+     *              be less than end
+     * @param end the position at which the input ends
+     * @return (length &lt;&lt; 32) | index of the winning TokenType, or
+     *         NO_MATCH, or FALLBACK
+     */
+    long match(CharSequence input, int start, int end);
+}
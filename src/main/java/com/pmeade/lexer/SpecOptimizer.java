@@ -0,0 +1,447 @@
+/*
+ * SpecOptimizer.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * SpecOptimizer rewrites a lexical specification into an equivalent one
+ * that tries fewer TokenType objects for each Token.
+ *
+ * A TokenType is removed if it can be proven never to win a match:
+ * <ul>
+ * <li>it is only active in lexical states that no transition enters</li>
+ * <li>its maxLength is shorter than its shortest match</li>
+ * <li>a TokenType of higher priority, active wherever it is, matches at
+ *     least as much input wherever it matches: the same Pattern, a run of
+ *     a wider character class, or a Pattern that matches every String in
+ *     its (small, finite) language in full</li>
+ * </ul>
+ * The last proof relies on the higher TokenType having no assertions,
+ * lookaround, or other OPAQUE syntax; without those, a Pattern that
+ * matches a String in full matches at least that much of any input that
+ * begins with it.
+ *
+ * Then each run of adjacent literal TokenType objects (static text, no
+ * keywords, no state transition, the same lexical states) is merged into
+ * a single TokenType. Its Pattern is a trie of the literals, with shared
+ * prefixes factored out, so <code>&lt;</code>, <code>&lt;&lt;</code>,
+ * <code>&lt;=</code> and <code>&lt;&lt;=</code> become
+ * <code>\&lt;(?:\&lt;\=?|\=)?</code>; it matches the longest literal, just as
+ * the Lexer would have chosen among them. The literals become its keywords,
+ * so each match is classified back into the TokenType it spells.
+ */
+final class SpecOptimizer
+{
+    /**
+     * Optimize a lexical specification.
+     * @param tokenTypes the TokenType objects, in priority order
+     * @return OptimizationReport holding the optimized specification
+     */
+    static OptimizationReport optimize(List<TokenType> tokenTypes) {
+        Map<TokenType, String> removed = new LinkedHashMap<TokenType, String>();
+        Set<String> reachable = findReachableStates(tokenTypes);
+        List<TokenType> live = new ArrayList<TokenType>();
+        for(TokenType tokenType : tokenTypes) {
+            String reason = findDeadReason(tokenType, live, reachable);
+            if(reason != null) {
+                removed.put(tokenType, reason);
+            } else {
+                live.add(tokenType);
+            }
+        }
+        Map<TokenType, List<TokenType>> merged = new LinkedHashMap<TokenType, List<TokenType>>();
+        List<TokenType> optimized = new ArrayList<TokenType>();
+        int i = 0;
+        while(i < live.size()) {
+            int j = i;
+            while(j < live.size() && isMergeable(live.get(j))
+                    && live.get(j).getStates().equals(live.get(i).getStates())) {
+                j++;
+            }
+            if(j - i < 2) {
+                optimized.add(live.get(i));
+                i++;
+                continue;
+            }
+            List<TokenType> literals = new ArrayList<TokenType>(live.subList(i, j));
+            TokenType merge = merge(literals);
+            merged.put(merge, literals);
+            optimized.add(merge);
+            i = j;
+        }
+        return new OptimizationReport(optimized, removed, merged);
+    }
+
+    /**
+     * Find the lexical states that the Lexer can be in: the default state,
+     * and every state entered by a TokenType active in one of those.
+     * @param tokenTypes the TokenType objects of the specification
+     * @return Set of the names of the reachable lexical states
+     */
+    private static Set<String> findReachableStates(List<TokenType> tokenTypes) {
+        Set<String> reachable = new HashSet<String>();
+        reachable.add(TokenType.DEFAULT_STATE);
+        boolean grew = true;
+        while(grew) {
+            grew = false;
+            for(TokenType tokenType : tokenTypes) {
+                String entered = tokenType.getTransitionState();
+                if(entered == null || reachable.contains(entered)) continue;
+                if(isActiveInAny(tokenType, reachable)) {
+                    reachable.add(entered);
+                    grew = true;
+                }
+            }
+        }
+        return reachable;
+    }
+
+    /**
+     * Determine if a TokenType is active in any of the provided states.
+     * @param tokenType the TokenType
+     * @param states the names of the lexical states
+     * @return true, if the TokenType is tried in one of the states
+     */
+    private static boolean isActiveInAny(TokenType tokenType, Set<String> states) {
+        for(String state : states) {
+            if(tokenType.isActiveIn(state)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Find the reason a TokenType can never win a match, if there is one.
+     * @param tokenType the TokenType to check
+     * @param higher the TokenType objects of higher priority still in the
+     *               specification
+     * @param reachable the lexical states the Lexer can be in
+     * @return the reason the TokenType can never win, or null if it may
+     */
+    private static String findDeadReason(TokenType tokenType, List<TokenType> higher,
+            Set<String> reachable) {
+        if(isActiveInAny(tokenType, reachable) == false) {
+            return "only active in unreachable lexical states " + tokenType.getStates();
+        }
+        RegexNode syntax = tokenType.getSyntax();
+        int maxLength = tokenType.getMaxLength();
+        if(syntax != null && maxLength != TokenType.UNBOUNDED
+                && syntax.minLength() > maxLength) {
+            return "shortest match is longer than maxLength " + maxLength;
+        }
+        for(TokenType other : higher) {
+            if(isShadowedBy(tokenType, other)) {
+                return "shadowed by " + other.getName();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Determine if a TokenType of higher priority matches at least as much
+     * of the input as a TokenType, wherever the TokenType is active and
+     * matches, so that the TokenType can never win.
+     * @param tokenType the TokenType of lower priority
+     * @param other the TokenType of higher priority
+     * @return true, if the TokenType is shadowed, otherwise false
+     */
+    private static boolean isShadowedBy(TokenType tokenType, TokenType other) {
+        for(String state : tokenType.getStates()) {
+            if(TokenType.ANY_STATE.equals(state)) {
+                if(other.getStates().contains(TokenType.ANY_STATE) == false) return false;
+            } else if(other.isActiveIn(state) == false) {
+                return false;
+            }
+        }
+        // the same Pattern, with the same limit, matches the same text
+        Pattern pattern = tokenType.getPattern();
+        if(pattern.pattern().equals(other.getPattern().pattern())
+                && pattern.flags() == other.getPattern().flags()
+                && tokenType.getMaxLength() == other.getMaxLength()) {
+            return true;
+        }
+        RegexNode otherSyntax = other.getSyntax();
+        if(otherSyntax == null || otherSyntax.hasOpaque()) return false;
+        // a run of a wider class, no harder to start, runs at least as far
+        CharClassRun run = tokenType.getCharClassRun();
+        CharClassRun otherRun = other.getCharClassRun();
+        if(run != null && otherRun != null) {
+            return otherRun.getChars().containsAll(run.getChars())
+                    && otherRun.getMin() <= run.getMin();
+        }
+        // every String the TokenType could match is matched in full
+        if((pattern.flags() & Pattern.CANON_EQ) != 0) return false;
+        if(tokenType.getSyntax() == null) return false;
+        Set<String> language = expand(tokenType.getSyntax());
+        if(language == null) return false;
+        int otherMax = other.getMaxLength();
+        Matcher matcher = other.getPattern().matcher("");
+        for(String text : language) {
+            if(otherMax != TokenType.UNBOUNDED && text.length() > otherMax) return false;
+            matcher.reset(text);
+            if(matcher.lookingAt() == false || matcher.end() != text.length()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Enumerate the language of a syntax tree, if it is small and finite.
+     * @param node the syntax tree
+     * @return Set of every String the syntax tree matches, or null if
+     *         there are too many, infinitely many, or if any could contain
+     *         a surrogate
+     */
+    private static Set<String> expand(RegexNode node) {
+        switch(node.getKind()) {
+            case CHARS: {
+                CharSet chars = node.getChars();
+                if(chars.hasSurrogates() || chars.size() > MAX_LANGUAGE) return null;
+                Set<String> result = new LinkedHashSet<String>();
+                for(int i=0; i<chars.getRangeCount(); i++) {
+                    for(int c=chars.getRangeLo(i); c<=chars.getRangeHi(i); c++) {
+                        result.add(String.valueOf((char) c));
+                    }
+                }
+                return result;
+            }
+            case SEQUENCE: {
+                Set<String> result = new LinkedHashSet<String>();
+                result.add("");
+                for(RegexNode child : node.getChildren()) {
+                    Set<String> part = expand(child);
+                    if(part == null) return null;
+                    result = concatenate(result, part);
+                    if(result == null) return null;
+                }
+                return result;
+            }
+            case ALTERNATION: {
+                Set<String> result = new LinkedHashSet<String>();
+                for(RegexNode child : node.getChildren()) {
+                    Set<String> part = expand(child);
+                    if(part == null) return null;
+                    result.addAll(part);
+                    if(result.size() > MAX_LANGUAGE) return null;
+                }
+                return result;
+            }
+            case REPEAT: {
+                if(node.getMax() == RegexNode.UNBOUNDED) return null;
+                Set<String> part = expand(node.getChildren().get(0));
+                if(part == null) return null;
+                Set<String> result = new LinkedHashSet<String>();
+                Set<String> repeated = new LinkedHashSet<String>();
+                repeated.add("");
+                for(int k=0; k<=node.getMax(); k++) {
+                    if(k >= node.getMin()) result.addAll(repeated);
+                    if(result.size() > MAX_LANGUAGE) return null;
+                    if(k < node.getMax()) {
+                        repeated = concatenate(repeated, part);
+                        if(repeated == null) return null;
+                    }
+                }
+                return result;
+            }
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Concatenate every String of one language with every String of
+     * another.
+     * @param prefixes the first language
+     * @param suffixes the second language
+     * @return Set of the concatenations, or null if there are too many
+     */
+    private static Set<String> concatenate(Set<String> prefixes, Set<String> suffixes) {
+        if((long) prefixes.size() * suffixes.size() > MAX_LANGUAGE) return null;
+        Set<String> result = new LinkedHashSet<String>();
+        for(String prefix : prefixes) {
+            for(String suffix : suffixes) {
+                result.add(prefix + suffix);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Determine if a TokenType is a literal that can be merged with others:
+     * it matches exactly its static text, so it can serve as a keyword,
+     * and nothing about it (keywords of its own, a state transition) would
+     * be lost by classifying a match of the merged TokenType into it.
+     * @param tokenType the TokenType to check
+     * @return true, if the TokenType can be merged, otherwise false
+     */
+    private static boolean isMergeable(TokenType tokenType) {
+        String staticText = tokenType.getStaticText();
+        LinearPattern linear = tokenType.getLinearPattern();
+        if(staticText == null || staticText.isEmpty() || linear == null) return false;
+        if(staticText.equals(linear.getLiteral()) == false) return false;
+        if(linear.hasSurrogates()) return false;
+        if((tokenType.getPattern().flags() & Pattern.CASE_INSENSITIVE) != 0) return false;
+        return tokenType.getKeywords().isEmpty() && tokenType.getTransition() == null;
+    }
+
+    /**
+     * Merge a run of literal TokenType objects into one TokenType.
+     * @param literals the literal TokenType objects, in priority order;
+     *                 their texts are all different
+     * @return TokenType matching any of the literals, with the literals as
+     *         its keywords
+     */
+    private static TokenType merge(List<TokenType> literals) {
+        Trie root = new Trie();
+        StringBuilder name = new StringBuilder();
+        for(TokenType literal : literals) {
+            root.add(literal.getStaticText());
+            if(name.length() > 0) name.append('|');
+            name.append(literal.getName());
+        }
+        StringBuilder regex = new StringBuilder();
+        root.appendChildren(regex, true);
+        TokenType first = literals.get(0);
+        return new TokenType(name.toString(), regex.toString(), 0, false, null,
+                TokenType.UNBOUNDED, first.getStates(), null, null, literals);
+    }
+
+    /**
+     * Append a character to a regular expression, escaped so that it
+     * stands for itself, inside or outside of a character class.
+     * @param sb StringBuilder holding the regular expression
+     * @param c the character
+     */
+    private static void appendEscaped(StringBuilder sb, char c) {
+        if((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+            sb.append(c);
+        } else if(c > ' ' && c < 0x7F) {
+            sb.append('\\').append(c);
+        } else {
+            sb.append("\\x{").append(Integer.toHexString(c)).append('}');
+        }
+    }
+
+    /**
+     * Trie is a node in a prefix tree of literal texts.
+     */
+    private static final class Trie
+    {
+        /**
+         * Add a text below this node.
+         * @param text the text to be added
+         */
+        void add(String text) {
+            Trie node = this;
+            for(int i=0; i<text.length(); i++) {
+                char c = text.charAt(i);
+                Trie child = node.children.get(c);
+                if(child == null) {
+                    child = new Trie();
+                    node.children.put(c, child);
+                }
+                node = child;
+            }
+            node.terminal = true;
+        }
+
+        /**
+         * Append the regular expression matching the longest text below
+         * this node. The children that end a text without going further
+         * share a character class; the others each get an alternative.
+         * @param sb StringBuilder holding the regular expression
+         * @param grouped true, if the caller has already opened a group
+         *                around the expression, otherwise false
+         */
+        void appendChildren(StringBuilder sb, boolean grouped) {
+            List<String> alternatives = new ArrayList<String>();
+            StringBuilder leaves = new StringBuilder();
+            int leafCount = 0;
+            for(Map.Entry<Character, Trie> entry : children.entrySet()) {
+                Trie child = entry.getValue();
+                if(child.children.isEmpty()) {
+                    appendEscaped(leaves, entry.getKey());
+                    leafCount++;
+                    continue;
+                }
+                StringBuilder alternative = new StringBuilder();
+                appendEscaped(alternative, entry.getKey());
+                if(child.terminal == false) {
+                    child.appendChildren(alternative, false);
+                } else if(child.hasOnlyLeaves()) {
+                    // a single char or a character class needs no group
+                    child.appendChildren(alternative, true);
+                    alternative.append('?');
+                } else {
+                    alternative.append("(?:");
+                    child.appendChildren(alternative, true);
+                    alternative.append(")?");
+                }
+                alternatives.add(alternative.toString());
+            }
+            if(leafCount == 1) {
+                alternatives.add(leaves.toString());
+            } else if(leafCount > 1) {
+                alternatives.add("[" + leaves + "]");
+            }
+            boolean group = (grouped == false) && (alternatives.size() > 1);
+            if(group) sb.append("(?:");
+            for(int i=0; i<alternatives.size(); i++) {
+                if(i > 0) sb.append('|');
+                sb.append(alternatives.get(i));
+            }
+            if(group) sb.append(')');
+        }
+
+        /**
+         * Determine if every node below this one ends a text and goes no
+         * further.
+         * @return true, if the children of this node are all leaves
+         */
+        boolean hasOnlyLeaves() {
+            for(Trie child : children.values()) {
+                if(child.children.isEmpty() == false) return false;
+            }
+            return true;
+        }
+
+        /**
+         * The nodes below this one, by the character that leads to each.
+         */
+        private final Map<Character, Trie> children = new TreeMap<Character, Trie>();
+
+        /**
+         * Flag: Does a text end at this node?
+         */
+        private boolean terminal;
+    }
+
+    /**
+     * The most Strings enumerated from the language of a TokenType.
+     */
+    private static final int MAX_LANGUAGE = 64;
+}
@@ -0,0 +1,572 @@
+/*
+ * SpecializedLexer.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+
+/**
+ * SpecializedLexer is a lexical analysis engine for specifications that
+ * are only known at runtime. It produces exactly the same Token objects as
+ * Lexer, but the TokenType objects with a linear pattern are matched by
+ * bytecode generated for the LexerSpec (see BytecodeSpecializer), and
+ * everything happens on the calling thread.
+ *
+ * The generated code is shared by every SpecializedLexer constructed
+ * from the same LexerSpec, so compile the LexerSpec once and reuse it.
+ *
+ * TokenType objects whose Pattern has no linear form are still matched
+ * with Matcher.lookingAt(), and only when the first character of the
+ * input could begin a match. The Matcher looks no further into the input
+ * than the maximum length of the TokenType.
+ *
+ * With lexical states, each state has its own generated code, for only
+ * the TokenType objects active in that state.
+ *
+ * Under a MatchPolicy other than LONGEST_MATCH, the TokenType objects
+ * before the cutoff are matched one at a time, in priority order, before
+ * the generated code runs.
+ *
+ * @see LexerSpec
+ */
+public class SpecializedLexer implements TokenStream
+{
+    /**
+     * Construct a SpecializedLexer to perform lexical analysis on the
+     * provided input using the provided compiled specification.
+     * @param spec compiled lexical specification used to lex the input
+     * @param source input to be processed into lexical Token objects
+     * @throws NullPointerException if either spec or source are null
+     */
+    public SpecializedLexer(LexerSpec spec, CharSequence source)
+    {
+        if(spec == null) throw new NullPointerException();
+        if(source == null) throw new NullPointerException();
+        this.baseSpec = spec;
+        this.end = source.length();
+        this.error = false;
+        this.position = 0;
+        this.sequence = 0;
+        this.source = source;
+        this.specMatchers = new IdentityHashMap<LexerSpec, Matcher[]>();
+        this.stateStack = (spec.isStateful()) ? new LexicalStates.Stack() : null;
+        enterState(TokenType.DEFAULT_STATE);
+    }
+
+    /**
+     * Construct a SpecializedLexer to perform lexical analysis on the
+     * provided input using the provided token types.
+     * @param spec List of TokenType objects used to lex the provided input
+     * @param source input to be processed into lexical Token objects
+     * @throws NullPointerException if either spec or source are null
+     */
+    public SpecializedLexer(List<TokenType> spec, CharSequence source)
+    {
+        this(LexerSpec.compile(spec), source);
+    }
+
+    /**
+     * Obtain the current lexical state of the SpecializedLexer.
+     * @return the name of the current lexical state
+     */
+    public String getState() {
+        return (stateStack == null) ? TokenType.DEFAULT_STATE : stateStack.getState();
+    }
+
+    /**
+     * Obtain the LineIndex of the input, to find the line and column of
+     * a Token. The LineIndex is built on first use, and shared by every
+     * later call.
+     * @return LineIndex of the input
+     */
+    public LineIndex getLineIndex() {
+        if(lineIndex == null) {
+            lineIndex = new LineIndex(source);
+        }
+        return lineIndex;
+    }
+
+    /**
+     * Determine if the SpecializedLexer has encountered an error.
+     * @return true, iff the lexer encountered an error while performing
+     *         lexical analysis on the input, otherwise false
+     */
+    @Override
+    public boolean isError() {
+        return error;
+    }
+
+    /**
+     * Obtain the next lexical Token of the provided input, suppressing
+     * Token objects of TokenType objects marked as skipped.
+     * @return Token representing the next lexical unit from the input, or
+     *         null on error or at the end of the input
+     */
+    @Override
+    public Token next() {
+        while(true) {
+            Token token = nextNoSkip();
+            if(token == null) return null;
+            if(token.getTokenType().isSkipped() == false) return token;
+        }
+    }
+
+    /**
+     * Obtain the next lexical Token of the provided input, trying only the
+     * expected TokenType objects and the skipped ones, and suppressing
+     * Token objects of TokenType objects marked as skipped. Each lexical
+     * state and TokenTypeSet has its own generated code, so reuse the same
+     * TokenTypeSet objects.
+     * @param expected the TokenType objects that may come next
+     * @return Token representing the next lexical unit from the input, or
+     *         null on error or at the end of the input. It is an error if
+     *         none of the expected TokenType objects match.
+     * @throws NullPointerException if expected is null
+     */
+    public Token next(TokenTypeSet expected) {
+        if(expected == null) throw new NullPointerException();
+        while(true) {
+            Token token = nextNoSkip(expected);
+            if(token == null) return null;
+            if(token.getTokenType().isSkipped() == false) return token;
+        }
+    }
+
+    /**
+     * Obtain the next lexical Token of the provided input, including Token
+     * objects of TokenType objects marked as skipped.
+     * @return Token representing the next lexical unit from the input, or
+     *         null on error or at the end of the input
+     */
+    @Override
+    public Token nextNoSkip() {
+        return nextNoSkip(null);
+    }
+
+    /**
+     * Obtain the next lexical Token of the provided input, including Token
+     * objects of TokenType objects marked as skipped.
+     * @param expected the TokenType objects to try, besides the skipped
+     *                 ones, or null to try all of them
+     * @return Token representing the next lexical unit from the input, or
+     *         null on error or at the end of the input
+     */
+    private Token nextNoSkip(TokenTypeSet expected) {
+        if(error) return null;
+        if(position >= end) return null;
+        LexerSpec spec = this.spec;
+        SpecMatcher specMatcher = this.specMatcher;
+        Matcher[] matchers = this.matchers;
+        if(expected != null) {
+            spec = spec.restrict(expected);
+            specMatcher = spec.getSpecMatcher();
+            matchers = getMatchers(spec);
+        }
+        long result = match(spec, specMatcher, matchers);
+        if(result == SpecMatcher.NO_MATCH) {
+            if(errorRecovery) return recover(spec, specMatcher, matchers);
+            error = true;
+            return null;
+        }
+        int longest = (int) (result >>> 32);
+        int winner = (int) result;
+        TokenType tokenType = spec.getTokenType(winner).classify(source, position, position + longest);
+        String tokenText = tokenType.getStaticText();
+        int symbol = Token.NO_SYMBOL;
+        if(tokenText == null) {
+            if(symbolPool != null) {
+                symbol = symbolPool.intern(source, position, position + longest);
+            }
+            tokenText = (symbol != Token.NO_SYMBOL) ? symbolPool.getText(symbol)
+                    : source.subSequence(position, position + longest).toString();
+        }
+        Token token = new Token(sequence, tokenType, tokenText, position, symbol);
+        position += longest;
+        sequence++;
+        if(stateStack != null && tokenType.getTransition() != null) {
+            stateStack.apply(tokenType);
+            enterState(stateStack.getState());
+        }
+        return token;
+    }
+
+    /**
+     * Match the TokenType objects of a compiled specification at the
+     * current position.
+     * @param spec the compiled specification being matched
+     * @param specMatcher the SpecMatcher of the specification
+     * @param matchers the Matcher objects of the specification
+     * @return the length of the longest match in the high 32 bits and the
+     *         index of its TokenType in the low 32 bits, or
+     *         SpecMatcher.NO_MATCH if no TokenType matches
+     */
+    private long match(LexerSpec spec, SpecMatcher specMatcher, Matcher[] matchers) {
+        if(firstMatchTypes != null) {
+            // a match before the cutoff wins outright
+            for(int index : spec.getCandidates(source.charAt(position))) {
+                if(firstMatchTypes.contains(spec.getTokenType(index)) == false) continue;
+                int length = matchGeneric(spec, matchers, index);
+                if(length >= 0) return ((long) length << 32) | index;
+            }
+        }
+        int winner = -1;
+        int longest = -1;
+        long result = specMatcher.match(source, position, end);
+        if(result == SpecMatcher.FALLBACK) {
+            // a surrogate got in the way; match every candidate generically
+            for(int index : spec.getCandidates(source.charAt(position))) {
+                int length = matchGeneric(spec, matchers, index);
+                if(length > longest) {
+                    longest = length;
+                    winner = index;
+                }
+            }
+        } else {
+            if(result != SpecMatcher.NO_MATCH) {
+                longest = (int) (result >>> 32);
+                winner = (int) result;
+            }
+            // merge in the candidates that have no linear pattern
+            for(int index : spec.getCandidates(source.charAt(position))) {
+                if(spec.getTokenType(index).getLinearPattern() != null) continue;
+                int length = matchGeneric(spec, matchers, index);
+                if(length > longest || (length == longest && index < winner)) {
+                    longest = length;
+                    winner = index;
+                }
+            }
+        }
+        if(winner < 0) return SpecMatcher.NO_MATCH;
+        return ((long) longest << 32) | winner;
+    }
+
+    /**
+     * Recover from an error at the current position. The unlexable span
+     * runs up to the next position where the specification matches, or to
+     * the end of the input; positions whose first character begins no
+     * TokenType are passed over without matching anything.
+     * @param spec the compiled specification being matched
+     * @param specMatcher the SpecMatcher of the specification
+     * @param matchers the Matcher objects of the specification
+     * @return Token of TokenType.ERROR covering the unlexable span
+     */
+    private Token recover(LexerSpec spec, SpecMatcher specMatcher, Matcher[] matchers) {
+        int start = position;
+        for(position++; position < end; position++) {
+            if(spec.canStart(source.charAt(position)) == false) continue;
+            if(match(spec, specMatcher, matchers) != SpecMatcher.NO_MATCH) break;
+        }
+        String tokenText = source.subSequence(start, position).toString();
+        Token token = new Token(sequence, TokenType.ERROR, tokenText, start);
+        sequence++;
+        return token;
+    }
+
+    /**
+     * Reset the state of the SpecializedLexer. Returns it to its initial
+     * state, even after reaching an error or the end of the input.
+     */
+    @Override
+    public void reset() {
+        this.error = false;
+        this.position = 0;
+        this.sequence = 0;
+        if(stateStack != null) {
+            stateStack.reset();
+            enterState(TokenType.DEFAULT_STATE);
+        }
+    }
+
+    /**
+     * Reset the SpecializedLexer to lex new input. Unlike constructing a
+     * new SpecializedLexer, this keeps the Matcher objects already made
+     * for the specification, so it is cheap enough to do for every one of
+     * many short inputs.
+     * @param source input to be processed into lexical Token objects
+     * @throws NullPointerException if source is null
+     */
+    void reset(CharSequence source) {
+        if(source == null) throw new NullPointerException();
+        this.end = source.length();
+        this.lineIndex = null;
+        this.source = source;
+        for(Matcher[] matcherArray : specMatchers.values()) {
+            for(Matcher matcher : matcherArray) {
+                if(matcher != null) matcher.reset(source);
+            }
+        }
+        reset();
+    }
+
+    /**
+     * Turn error recovery on or off. With it, input that no TokenType
+     * matches becomes a Token of TokenType.ERROR, up to the next position
+     * where a TokenType matches, instead of an error.
+     * @param errorRecovery true, to recover from errors, otherwise false
+     * @see Lexer#setErrorRecovery(boolean)
+     */
+    public void setErrorRecovery(boolean errorRecovery)
+    {
+        this.errorRecovery = errorRecovery;
+    }
+
+    /**
+     * Choose how the SpecializedLexer decides among the TokenType objects
+     * that match. The policy must not need a cutoff.
+     * @param matchPolicy LONGEST_MATCH (the default) or FIRST_MATCH
+     * @throws NullPointerException if matchPolicy is null
+     * @throws IllegalArgumentException if matchPolicy is PRIORITY_CUTOFF
+     * @see Lexer#setMatchPolicy(MatchPolicy)
+     */
+    public void setMatchPolicy(MatchPolicy matchPolicy)
+    {
+        setMatchPolicy(matchPolicy, null);
+    }
+
+    /**
+     * Choose how the SpecializedLexer decides among the TokenType objects
+     * that match.
+     * @param matchPolicy how to decide among the TokenType objects
+     * @param cutoff the first TokenType after the cutoff, for
+     *               PRIORITY_CUTOFF; otherwise null
+     * @throws NullPointerException if matchPolicy is null
+     * @throws IllegalArgumentException if a cutoff is provided for a policy
+     *         other than PRIORITY_CUTOFF, or is missing for PRIORITY_CUTOFF,
+     *         or is not in the specification of this SpecializedLexer
+     * @see Lexer#setMatchPolicy(MatchPolicy, TokenType)
+     */
+    public void setMatchPolicy(MatchPolicy matchPolicy, TokenType cutoff)
+    {
+        if(matchPolicy == null) throw new NullPointerException();
+        if((matchPolicy == MatchPolicy.PRIORITY_CUTOFF) != (cutoff != null)) {
+            throw new IllegalArgumentException("a cutoff must be provided for PRIORITY_CUTOFF only");
+        }
+        int count = 0;
+        if(matchPolicy == MatchPolicy.FIRST_MATCH) {
+            count = baseSpec.size();
+        } else if(matchPolicy == MatchPolicy.PRIORITY_CUTOFF) {
+            count = baseSpec.getTokenTypes().indexOf(cutoff);
+            if(count < 0) {
+                throw new IllegalArgumentException("cutoff " + cutoff.getName() + " is not in the specification");
+            }
+        }
+        Set<TokenType> types = null;
+        if(count > 0) {
+            types = Collections.newSetFromMap(new IdentityHashMap<TokenType, Boolean>());
+            for(int i=0; i<count; i++) {
+                types.add(baseSpec.getTokenType(i));
+            }
+        }
+        this.firstMatchTypes = types;
+    }
+
+    /**
+     * Provide a SymbolPool to intern the text of Token objects whose
+     * TokenType has no static text. Text already in the pool is found
+     * without creating a String. Interning is off unless a SymbolPool is
+     * provided.
+     * @param symbolPool SymbolPool to intern Token text, or null to stop
+     *                   interning
+     */
+    public void setSymbolPool(SymbolPool symbolPool)
+    {
+        this.symbolPool = symbolPool;
+    }
+
+    /**
+     * Obtain all of the non-skip lexical Token objects for the provided
+     * input.
+     * @return List of Token objects representing the lexical units of the
+     *         provided input, without the final null
+     */
+    @Override
+    public List<Token> scan() {
+        List<Token> tokens = new ArrayList<Token>();
+        for(Token token = next(); token != null; token = next()) {
+            tokens.add(token);
+        }
+        return tokens;
+    }
+
+    /**
+     * Obtain all of the lexical Token objects for the provided input,
+     * including skipped ones.
+     * @return List of Token objects representing the lexical units of the
+     *         provided input, without the final null
+     */
+    @Override
+    public List<Token> scanNoSkip() {
+        List<Token> tokens = new ArrayList<Token>();
+        for(Token token = nextNoSkip(); token != null; token = nextNoSkip()) {
+            tokens.add(token);
+        }
+        return tokens;
+    }
+
+    /**
+     * Switch to the compiled specification of a lexical state.
+     * @param state the name of the lexical state
+     */
+    private void enterState(String state) {
+        spec = baseSpec.forState(state);
+        specMatcher = spec.getSpecMatcher();
+        matchers = getMatchers(spec);
+    }
+
+    /**
+     * Obtain the Matcher objects for a compiled specification.
+     * @param spec a compiled specification of this SpecializedLexer
+     * @return Matcher for each TokenType of the specification without a
+     *         linear pattern, created on first use
+     */
+    private Matcher[] getMatchers(LexerSpec spec) {
+        Matcher[] result = specMatchers.get(spec);
+        if(result == null) {
+            result = new Matcher[spec.size()];
+            specMatchers.put(spec, result);
+        }
+        return result;
+    }
+
+    /**
+     * Match a TokenType at the current position without the SpecMatcher.
+     * @param spec the compiled specification being matched
+     * @param matchers the Matcher objects of the specification
+     * @param index the index of the TokenType
+     * @return the length of the match, or -1 if there is no match
+     */
+    private int matchGeneric(LexerSpec spec, Matcher[] matchers, int index) {
+        TokenType tokenType = spec.getTokenType(index);
+        LinearPattern linear = tokenType.getLinearPattern();
+        if(linear != null) {
+            int length = linear.match(source, position, end);
+            if(length != LinearPattern.FALLBACK) return length;
+        }
+        DelimitedText delimited = tokenType.getDelimitedText();
+        if(delimited != null) {
+            return delimited.match(source, position, end);
+        }
+        return lookingAt(spec, matchers, index);
+    }
+
+    /**
+     * Match the Pattern of a TokenType at the current position.
+     * @param spec the compiled specification being matched
+     * @param matchers the Matcher objects of the specification
+     * @param index the index of the TokenType
+     * @return the length of the match, or -1 if there is no match
+     */
+    private int lookingAt(LexerSpec spec, Matcher[] matchers, int index) {
+        Matcher matcher = matchers[index];
+        if(matcher == null) {
+            matcher = spec.getTokenType(index).getPattern().matcher(source);
+            matchers[index] = matcher;
+        }
+        int maxLength = spec.getMaxLength(index);
+        int stop = (maxLength != TokenType.UNBOUNDED && maxLength < end - position)
+                ? position + maxLength : end;
+        matcher.region(position, stop);
+        return matcher.lookingAt() ? matcher.end() - position : -1;
+    }
+
+    /**
+     * The compiled lexical specification, with all of its lexical states.
+     */
+    private final LexerSpec baseSpec;
+
+    /**
+     * The length of the input.
+     */
+    private int end;
+
+    /**
+     * Flag: Did the SpecializedLexer encounter an error during analysis?
+     */
+    private boolean error;
+
+    /**
+     * Flag: Does the SpecializedLexer return ERROR Token objects instead
+     * of stopping?
+     */
+    private boolean errorRecovery;
+
+    /**
+     * The TokenType objects before the cutoff of the MatchPolicy, whose
+     * match wins outright, or null for LONGEST_MATCH.
+     */
+    private Set<TokenType> firstMatchTypes;
+
+    /**
+     * The LineIndex of the input, or null until it is first needed.
+     */
+    private LineIndex lineIndex;
+
+    /**
+     * Matcher for each TokenType of the current lexical state without a
+     * linear pattern, created on first use.
+     */
+    private Matcher[] matchers;
+
+    /**
+     * The position of the next character to be analyzed.
+     */
+    private int position;
+
+    /**
+     * A count of the number of Token objects generated so far.
+     */
+    private int sequence;
+
+    /**
+     * The input to be lexically analyzed.
+     */
+    private CharSequence source;
+
+    /**
+     * The compiled lexical specification of the current lexical state.
+     */
+    private LexerSpec spec;
+
+    /**
+     * Matcher for the linear TokenType objects of the current lexical state.
+     */
+    private SpecMatcher specMatcher;
+
+    /**
+     * The Matcher objects of each compiled specification that has been
+     * used, by lexical state and TokenTypeSet.
+     */
+    private final Map<LexerSpec, Matcher[]> specMatchers;
+
+    /**
+     * The lexical state, or null if the specification does not use them.
+     */
+    private final LexicalStates.Stack stateStack;
+
+    /**
+     * The SymbolPool that interns the text of Token objects, or null if
+     * the text is not interned.
+     */
+    private SymbolPool symbolPool;
+}
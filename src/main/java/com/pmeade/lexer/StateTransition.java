@@ -0,0 +1,49 @@
+/*
+ * StateTransition.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+/**
+ * StateTransition is what a Token does to the lexical state of the Lexer
+ * that produced it. The Lexer keeps a stack of lexical states, and only
+ * the TokenType objects active in the state on top of the stack are tried
+ * against the input.
+ *
+ * @see TokenTypeBuilder#pushState(String)
+ * @see TokenTypeBuilder#popState()
+ * @see TokenTypeBuilder#switchState(String)
+ */
+public enum StateTransition
+{
+    /**
+     * Enter a lexical state, remembering the current one. A later POP
+     * returns to the current state.
+     */
+    PUSH,
+
+    /**
+     * Return to the lexical state that was current before the last PUSH.
+     * A POP with nothing to return to leaves the Lexer where it is.
+     */
+    POP,
+
+    /**
+     * Replace the current lexical state with another one.
+     */
+    SWITCH
+}
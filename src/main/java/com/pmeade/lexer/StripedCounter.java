@@ -0,0 +1,110 @@
+/*
+ * StripedCounter.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * StripedCounter is a counter that many threads can add to at once
+ * without contending for a single memory location. Each thread adds to
+ * one of several cells, chosen by its thread id, and the cells are spread
+ * out so that no two share a cache line. Reading the count sums the cells.
+ *
+ * This is the idea behind java.util.concurrent.atomic.LongAdder, which is
+ * not available on Java 7.
+ */
+final class StripedCounter
+{
+    /**
+     * Add to the counter.
+     * @param delta the amount to add
+     */
+    void add(long delta) {
+        cells.getAndAdd(stripe() * PADDING, delta);
+    }
+
+    /**
+     * Add one to the counter.
+     */
+    void increment() {
+        add(1L);
+    }
+
+    /**
+     * Obtain the value of the counter. This is not an atomic snapshot;
+     * additions made while summing may or may not be included.
+     * @return the sum of the cells of the counter
+     */
+    long sum() {
+        long total = 0L;
+        for(int i=0; i<STRIPES; i++) {
+            total += cells.get(i * PADDING);
+        }
+        return total;
+    }
+
+    /**
+     * Reset the counter to zero.
+     */
+    void reset() {
+        for(int i=0; i<STRIPES; i++) {
+            cells.set(i * PADDING, 0L);
+        }
+    }
+
+    /**
+     * Choose the cell of the current thread.
+     * @return the index of the cell of the current thread
+     */
+    private static int stripe() {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return (hash >>> 16) & (STRIPES - 1);
+    }
+
+    /**
+     * Compute the number of cells: a power of two, at least twice the
+     * number of processors, and at most 64.
+     * @return the number of cells of every StripedCounter
+     */
+    private static int computeStripes() {
+        int wanted = Math.min(64, 2 * Runtime.getRuntime().availableProcessors());
+        int stripes = 1;
+        while(stripes < wanted) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+
+    /**
+     * The number of longs from one cell to the next; 64 bytes apart, which
+     * is the size of a cache line on most processors.
+     */
+    private static final int PADDING = 8;
+
+    /**
+     * The number of cells of every StripedCounter.
+     */
+    private static final int STRIPES = computeStripes();
+
+    /**
+     * The cells of the counter, PADDING apart.
+     */
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+}
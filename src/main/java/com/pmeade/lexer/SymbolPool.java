@@ -0,0 +1,259 @@
+/*
+ * SymbolPool.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * SymbolPool interns the text of Token objects. Large inputs repeat the
+ * same identifiers and literals many times over; with a SymbolPool, every
+ * occurrence shares one canonical String, and carries a small symbol id
+ * that a symbol table can use instead of the text.
+ *
+ * Text is looked up by hashing a range of the input, so text that is
+ * already in the pool costs no allocation at all. Symbol ids are dense,
+ * starting at 0, and are never reused, so an array indexed by symbol id
+ * makes a fast symbol table.
+ *
+ * The pool is bounded. Once it holds its capacity, new text is no longer
+ * interned: intern() returns Token.NO_SYMBOL, and the lexer creates the
+ * String as it would without a pool.
+ *
+ * A SymbolPool may be shared by lexers on many threads. It is divided into
+ * stripes, each with its own lock, so threads interning different text
+ * rarely wait on each other; getText() takes no lock at all.
+ */
+public final class SymbolPool
+{
+    /**
+     * Construct a SymbolPool with the default number of stripes.
+     * @param capacity the most symbols the pool will hold
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    public SymbolPool(int capacity)
+    {
+        this(capacity, DEFAULT_STRIPES);
+    }
+
+    /**
+     * Construct a SymbolPool.
+     * @param capacity the most symbols the pool will hold
+     * @param stripes the number of independently locked parts of the pool,
+     *                rounded up to a power of two
+     * @throws IllegalArgumentException if capacity or stripes is not
+     *         positive
+     */
+    public SymbolPool(int capacity, int stripes)
+    {
+        if(capacity < 1) throw new IllegalArgumentException("capacity must be positive");
+        if(stripes < 1) throw new IllegalArgumentException("stripes must be positive");
+        int n = Integer.highestOneBit(stripes);
+        if(n < stripes) n <<= 1;
+        this.capacity = capacity;
+        this.nextSymbol = new AtomicInteger();
+        this.stripes = new Stripe[n];
+        for(int i=0; i<n; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.texts = new AtomicReferenceArray<String>(capacity);
+    }
+
+    /**
+     * Obtain the most symbols this pool will hold.
+     * @return the capacity of the pool
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Obtain the canonical text of a symbol.
+     * @param symbol the symbol id, as returned by intern()
+     * @return the canonical text of the symbol
+     * @throws IndexOutOfBoundsException if there is no such symbol
+     */
+    public String getText(int symbol) {
+        String text = (symbol < 0 || symbol >= capacity) ? null : texts.get(symbol);
+        if(text == null) throw new IndexOutOfBoundsException("no symbol " + symbol);
+        return text;
+    }
+
+    /**
+     * Intern a range of text.
+     * @param source the input
+     * @param start the position of the first character of the text
+     * @param end the position after the last character of the text
+     * @return the symbol id of the text, or Token.NO_SYMBOL if the text is
+     *         new and the pool is full
+     */
+    public int intern(CharSequence source, int start, int end) {
+        int hash = hash(source, start, end);
+        Stripe stripe = stripes[(hash >>> 24) & (stripes.length - 1)];
+        synchronized(stripe) {
+            int[] table = stripe.table;
+            int mask = table.length - 1;
+            for(int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                int symbol = table[slot] - 1;
+                if(symbol < 0) break;
+                if(stripe.hashes[slot] == hash && matches(texts.get(symbol), source, start, end)) {
+                    return symbol;
+                }
+            }
+            int symbol = nextSymbol.getAndIncrement();
+            if(symbol >= capacity) {
+                // stop counting, so the counter can never overflow
+                nextSymbol.set(capacity);
+                return Token.NO_SYMBOL;
+            }
+            texts.set(symbol, source.subSequence(start, end).toString());
+            stripe.add(hash, symbol);
+            return symbol;
+        }
+    }
+
+    /**
+     * Obtain the number of symbols in this pool.
+     * @return the number of symbols interned so far
+     */
+    public int size() {
+        return Math.min(nextSymbol.get(), capacity);
+    }
+
+    /**
+     * Hash a range of text.
+     * @param source the input
+     * @param start the position of the first character of the text
+     * @param end the position after the last character of the text
+     * @return the hash of the text
+     */
+    private static int hash(CharSequence source, int start, int end) {
+        int h = 0;
+        for(int i=start; i<end; i++) {
+            h = 31 * h + source.charAt(i);
+        }
+        // spread the bits, for both the stripe and the slot
+        h *= 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Determine if a range of text is the same as a String.
+     * @param text the String
+     * @param source the input
+     * @param start the position of the first character of the range
+     * @param end the position after the last character of the range
+     * @return true, if the range has the same characters as the String,
+     *         otherwise false
+     */
+    private static boolean matches(String text, CharSequence source, int start, int end) {
+        if(text.length() != end - start) return false;
+        for(int i=0; i<text.length(); i++) {
+            if(text.charAt(i) != source.charAt(start + i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Stripe is one independently locked part of a SymbolPool: an open
+     * addressing hash table of symbol ids.
+     */
+    private static final class Stripe
+    {
+        /**
+         * Add a symbol to this stripe. The caller holds the lock.
+         * @param hash the hash of the text of the symbol
+         * @param symbol the symbol id
+         */
+        void add(int hash, int symbol) {
+            if(2 * (size + 1) > table.length) {
+                // keep the table at most half full
+                int[] oldTable = table;
+                int[] oldHashes = hashes;
+                table = new int[oldTable.length * 2];
+                hashes = new int[oldTable.length * 2];
+                for(int i=0; i<oldTable.length; i++) {
+                    if(oldTable[i] != 0) put(oldHashes[i], oldTable[i]);
+                }
+            }
+            put(hash, symbol + 1);
+            size++;
+        }
+
+        /**
+         * Put an entry into the first free slot for its hash.
+         * @param hash the hash of the text of the symbol
+         * @param entry the symbol id plus one
+         */
+        private void put(int hash, int entry) {
+            int mask = table.length - 1;
+            int slot = hash & mask;
+            while(table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = entry;
+            hashes[slot] = hash;
+        }
+
+        /**
+         * The hash of the text in each slot.
+         */
+        int[] hashes = new int[INITIAL_STRIPE_SIZE];
+
+        /**
+         * The number of symbols in this stripe.
+         */
+        int size;
+
+        /**
+         * The symbol id plus one in each slot, or 0 if the slot is free.
+         */
+        int[] table = new int[INITIAL_STRIPE_SIZE];
+    }
+
+    /**
+     * The number of stripes of a SymbolPool, unless told otherwise.
+     */
+    public static final int DEFAULT_STRIPES = 16;
+
+    /**
+     * The number of slots in a new stripe; a power of two.
+     */
+    private static final int INITIAL_STRIPE_SIZE = 16;
+
+    /**
+     * The most symbols this pool will hold.
+     */
+    private final int capacity;
+
+    /**
+     * The symbol id of the next symbol to be interned.
+     */
+    private final AtomicInteger nextSymbol;
+
+    /**
+     * The independently locked parts of the pool.
+     */
+    private final Stripe[] stripes;
+
+    /**
+     * The canonical text of each symbol, by symbol id.
+     */
+    private final AtomicReferenceArray<String> texts;
+}
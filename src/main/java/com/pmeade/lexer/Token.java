@@ -64,9 +64,32 @@ public class Token
             TokenType tokenType,
             String tokenText,
             int position)
+    {
+        this(sequence, tokenType, tokenText, position, NO_SYMBOL);
+    }
+
+    /**
+     * Construct a lexical Token with interned text.
+     * @param sequence The ordinal of the Token, as it was generated by the
+     *                 Lexer.
+     * @param tokenType The type of the Token.
+     * @param tokenText The canonical text of the symbol.
+     * @param position The position within the original input where this token
+     *                 began.
+     * @param symbol The symbol id of the text in a SymbolPool, or NO_SYMBOL
+     *               if the text was not interned.
+     * @see SymbolPool
+     */
+    public Token(
+            int sequence,
+            TokenType tokenType,
+            String tokenText,
+            int position,
+            int symbol)
     {
         this.position = position;
         this.sequence = sequence;
+        this.symbol = symbol;
         this.tokenText = tokenText;
         this.tokenType = tokenType;
     }
@@ -134,6 +157,18 @@ public class Token
         return sequence;
     }
 
+    /**
+     * Obtain the symbol id of the text of this Token. Only Token objects
+     * from a lexer with a SymbolPool have one, and only if their TokenType
+     * has no static text. Two Token objects with text from the same
+     * SymbolPool have the same symbol id exactly when they have the same
+     * text. The symbol id does not take part in equals().
+     * @return the symbol id of the text of this Token, or NO_SYMBOL
+     */
+    public int getSymbol() {
+        return symbol;
+    }
+
     /**
      * Obtain the text of this Token. This is the actual text from the input
      * that was determined to be a complete token.
@@ -162,6 +197,11 @@ public class Token
         return "[#" + sequence + " @" + position + " " + tokenType.getName() + " \"" + ((tokenType.getStaticText() == null) ? tokenText : tokenType.getStaticText()) + "\"]";
     }
     
+    /**
+     * Value of getSymbol() for a Token whose text was not interned.
+     */
+    public static final int NO_SYMBOL = -1;
+
     /**
      * The position within the original input where this token began.
      * This value is provided to cross-reference back to the original input
@@ -175,6 +215,11 @@ public class Token
      */
     private final int sequence;
 
+    /**
+     * The symbol id of the text in a SymbolPool, or NO_SYMBOL.
+     */
+    private final int symbol;
+
     /**
      * The text from the input that was matched and determined to belong to
      * the provided TokenType.
@@ -0,0 +1,190 @@
+/*
+ * TokenSampler.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * TokenSampler generates text matching the Pattern of a TokenType, by
+ * walking the syntax tree RegexParser made of it and drawing at random at
+ * every alternation, repeat, and character class. It also checks that such
+ * texts lex back into the Token objects they were drawn for, alone and
+ * side by side, with a single SpecializedLexer reset to each text.
+ * SpecFuzzer uses it to find valid Token texts for a specification, as
+ * does CorpusGenerator in the test sources.
+ *
+ * A TokenType whose Pattern RegexParser can not analyze, or which has
+ * features (lookaround, back references, Unicode categories, and so on)
+ * that can not be sampled, produces no text.
+ */
+final class TokenSampler
+{
+    /**
+     * Construct a TokenSampler for the provided specification.
+     * @param spec compiled lexical specification to be sampled
+     * @throws NullPointerException if spec is null
+     */
+    TokenSampler(LexerSpec spec)
+    {
+        this.lexer = new SpecializedLexer(spec, "");
+        this.spec = spec;
+    }
+
+    /**
+     * Generate text matching the Pattern of a TokenType.
+     * @param random the random number generator
+     * @param index the index of the TokenType
+     * @return text matched in full by the Pattern, or null if the sample
+     *         failed; the caller may simply try again
+     */
+    String sample(Random random, int index) {
+        TokenType tokenType = spec.getTokenType(index);
+        RegexNode syntax = tokenType.getSyntax();
+        if(syntax == null) return null;
+        StringBuilder sb = new StringBuilder();
+        if(sample(random, syntax, sb) == false) return null;
+        if(sb.length() == 0) return null;
+        String text = sb.toString();
+        if(tokenType.getPattern().matcher(text).matches() == false) return null;
+        return text;
+    }
+
+    /**
+     * Determine if a Token text lexes back into a single Token of its own
+     * TokenType; a sampled identifier might turn out to be a keyword.
+     * @param text the text of the Token
+     * @param index the index of the TokenType of the Token
+     * @return true, if lexing the text yields exactly one Token, of the
+     *         TokenType at the provided index
+     */
+    boolean lexesAs(String text, int index) {
+        lexer.reset(text);
+        Token token = lexer.nextNoSkip();
+        if(token == null) return false;
+        if(token.getTokenType() != spec.getTokenType(index)) return false;
+        return lexer.nextNoSkip() == null && lexer.isError() == false;
+    }
+
+    /**
+     * Determine if a Token text can follow another, and still lex back
+     * into the Token objects they were generated from.
+     * @param text the text of the first Token
+     * @param index the index of the TokenType of the first Token
+     * @param following the text of the second Token
+     * @return true, if lexing the two texts yields the first Token
+     *         followed by a Token starting where the second text starts
+     */
+    boolean follows(String text, int index, String following) {
+        lexer.reset(text + following);
+        Token first = lexer.nextNoSkip();
+        if(first == null) return false;
+        if(first.getTokenType() != spec.getTokenType(index)) return false;
+        Token second = lexer.nextNoSkip();
+        return second != null && second.getPosition() == text.length();
+    }
+
+    /**
+     * Append text matching a node of a syntax tree.
+     * @param random the random number generator
+     * @param node the node to be sampled
+     * @param sb the StringBuilder to receive the text
+     * @return true, if the node could be sampled
+     */
+    private static boolean sample(Random random, RegexNode node, StringBuilder sb) {
+        switch(node.getKind()) {
+            case CHARS:
+                return sampleChar(random, node.getChars(), sb);
+            case SEQUENCE:
+                for(RegexNode child : node.getChildren()) {
+                    if(sample(random, child, sb) == false) return false;
+                }
+                return true;
+            case ALTERNATION:
+                List<RegexNode> children = node.getChildren();
+                return sample(random, children.get(random.nextInt(children.size())), sb);
+            case REPEAT:
+                int max = (node.getMax() == RegexNode.UNBOUNDED)
+                        ? node.getMin() + MAX_EXTRA_REPEATS : node.getMax();
+                int count = node.getMin() + random.nextInt(max - node.getMin() + 1);
+                for(int i=0; i<count; i++) {
+                    if(sample(random, node.getChildren().get(0), sb) == false) return false;
+                }
+                return true;
+            default:
+                // anchors and other zero-width assertions match nothing;
+                // hope they hold, and let the Pattern be the judge
+                return node.getMax() == 0;
+        }
+    }
+
+    /**
+     * Append a character drawn from a CharSet. Printable ASCII characters,
+     * tabs, and newlines are preferred, so that the corpus looks like text.
+     * @param random the random number generator
+     * @param chars the characters to draw from
+     * @param sb the StringBuilder to receive the character
+     * @return true, if the CharSet was not empty
+     */
+    private static boolean sampleChar(Random random, CharSet chars, StringBuilder sb) {
+        CharSet choices = chars.intersect(PREFERRED);
+        if(choices.isEmpty()) {
+            choices = chars.intersect(NON_SURROGATE);
+        }
+        int size = choices.size();
+        if(size == 0) return false;
+        int choice = random.nextInt(size);
+        for(int r=0; r<choices.getRangeCount(); r++) {
+            int width = choices.getRangeHi(r) - choices.getRangeLo(r) + 1;
+            if(choice < width) {
+                sb.append((char) (choices.getRangeLo(r) + choice));
+                return true;
+            }
+            choice -= width;
+        }
+        return false;
+    }
+
+    /**
+     * The most repetitions beyond the minimum for an unbounded repeat.
+     */
+    private static final int MAX_EXTRA_REPEATS = 8;
+
+    /**
+     * The characters drawn from a CharSet when it has any of them.
+     */
+    private static final CharSet PREFERRED = CharSet.range(' ', '~').union(CharSet.of("\t\n"));
+
+    /**
+     * The characters drawn from a CharSet otherwise.
+     */
+    private static final CharSet NON_SURROGATE =
+            CharSet.range(Character.MIN_SURROGATE, Character.MAX_SURROGATE).complement();
+
+    /**
+     * The SpecializedLexer that checks every Token text, reset to each
+     * new one.
+     */
+    private final SpecializedLexer lexer;
+
+    /**
+     * The compiled lexical specification.
+     */
+    private final LexerSpec spec;
+}
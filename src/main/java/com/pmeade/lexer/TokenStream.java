@@ -0,0 +1,87 @@
+/*
+ * TokenStream.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.util.List;
+
+/**
+ * TokenStream is the consumer's view of a lexer: a source of Token objects
+ * produced from some input. Lexer is the general purpose implementation.
+ * Lexers generated by LexerGenerator implement it too, so that the two may
+ * be used interchangeably.
+ * 
+ * If the TokenStream encounters an error, or the end of the input, it will
+ * return a <code>null</code> instead of a Token. To determine if an error
+ * was encountered, call the method <code>isError()</code>.
+ * 
+ * @see Lexer
+ * @see LexerGenerator
+ */
+public interface TokenStream
+{
+    /**
+     * Determine if the TokenStream has encountered an error.
+     * @return true, iff an error was encountered while performing lexical
+     *         analysis on the input, otherwise false
+     */
+    boolean isError();
+
+    /**
+     * Obtain the next lexical Token of the input. Tokens generated from
+     * TokenType objects marked as skipped will not be returned by this
+     * method, but will instead be suppressed for a non-skip Token.
+     * @return Token representing the next lexical unit from the input. If
+     *         an error or the end of the input is encountered, this method
+     *         will return null.
+     */
+    Token next();
+
+    /**
+     * Obtain the next lexical Token of the input. Even Token objects
+     * generated from a TokenType marked as skipped will be returned by this
+     * method.
+     * @return Token representing the next lexical unit from the input. If
+     *         an error or the end of the input is encountered, this method
+     *         will return null.
+     */
+    Token nextNoSkip();
+
+    /**
+     * Reset the state of the TokenStream. Returns the TokenStream to its
+     * initial state, even after reaching an error or the end of the input.
+     */
+    void reset();
+
+    /**
+     * Obtain all of the lexical Token objects for the input. Tokens
+     * generated from TokenType objects marked as skipped will be suppressed
+     * in the result List.
+     * @return List of Token objects representing the lexical units of the
+     *         input, not including the final null
+     */
+    List<Token> scan();
+
+    /**
+     * Obtain all of the lexical Token objects for the input, including those
+     * generated from TokenType objects marked as skipped.
+     * @return List of Token objects representing the lexical units of the
+     *         input, not including the final null
+     */
+    List<Token> scanNoSkip();
+}
@@ -18,6 +18,10 @@
 
 package com.pmeade.lexer;
 
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 /**
@@ -56,10 +60,348 @@ public class TokenType
             boolean skipped,
             String staticText)
     {
+        this(name, patternRegEx, patternFlags, skipped, staticText, UNBOUNDED);
+    }
+
+    /**
+     * Construct a TokenType with a limit on the length of its matches.
+     * The Lexer looks no further into the input than the limit when it
+     * matches the Pattern, so a Pattern that would otherwise scan to the
+     * end of the input fails quickly instead. A match that would be longer
+     * than the limit is cut short, as if the input ended there.
+     *
+     * The limit is ignored for a Pattern with anchors, word boundaries,
+     * or lookaround, because those depend on the input around the match.
+     * A Pattern that could be matched without java.util.regex is matched
+     * with it instead, if the limit is smaller than its longest match.
+     * @param name the name of this lexical class (i.e. "LPAREN", "RPAREN", etc)
+     * @param patternRegEx the regular expression of the Pattern to recognize
+     *                     this type of lexical token
+     * @param patternFlags the flags of the Pattern to recognize this type of
+     *                     lexical token
+     * @param skipped flag, indicating if these tokens should be skipped
+     *                (suppressed) during lexical output
+     * @param staticText flyweight text, to be used instead of the actual input
+     *                   text, or null to use the actual input text
+     * @param maxLength the most characters a match may span, or UNBOUNDED
+     *                  to rely on the analysis of the Pattern alone
+     * @throws IllegalArgumentException if maxLength is neither positive nor
+     *         UNBOUNDED
+     * @see TokenTypeBuilder#maxLength(int)
+     */
+    public TokenType(
+            String name,
+            String patternRegEx,
+            int patternFlags,
+            boolean skipped,
+            String staticText,
+            int maxLength)
+    {
+        this(name, patternRegEx, patternFlags, skipped, staticText, maxLength,
+                null, null, null);
+    }
+
+    /**
+     * Construct a TokenType for a Lexer with lexical states. The TokenType
+     * is only tried while the Lexer is in one of its states, and a Token
+     * of this type may change the state of the Lexer.
+     * @param name the name of this lexical class (i.e. "LPAREN", "RPAREN", etc)
+     * @param patternRegEx the regular expression of the Pattern to recognize
+     *                     this type of lexical token
+     * @param patternFlags the flags of the Pattern to recognize this type of
+     *                     lexical token
+     * @param skipped flag, indicating if these tokens should be skipped
+     *                (suppressed) during lexical output
+     * @param staticText flyweight text, to be used instead of the actual input
+     *                   text, or null to use the actual input text
+     * @param maxLength the most characters a match may span, or UNBOUNDED
+     *                  to rely on the analysis of the Pattern alone
+     * @param states the lexical states in which this TokenType is active,
+     *               possibly including ANY_STATE; if null or empty, only
+     *               DEFAULT_STATE
+     * @param transition what a Token of this type does to the lexical
+     *                   state, or null to leave it alone
+     * @param transitionState the lexical state entered by a PUSH or SWITCH
+     *                        transition, otherwise null
+     * @throws IllegalArgumentException if maxLength is neither positive nor
+     *         UNBOUNDED, or if transitionState does not suit transition
+     * @see TokenTypeBuilder#state(String...)
+     */
+    public TokenType(
+            String name,
+            String patternRegEx,
+            int patternFlags,
+            boolean skipped,
+            String staticText,
+            int maxLength,
+            Set<String> states,
+            StateTransition transition,
+            String transitionState)
+    {
+        this(name, patternRegEx, patternFlags, skipped, staticText, maxLength,
+                states, transition, transitionState, null);
+    }
+
+    /**
+     * Construct a TokenType that recognizes keywords among its matches.
+     * The keyword TokenType objects are not tried against the input at
+     * all; instead, when a Token of this type is matched, its text is
+     * looked up in a perfect hash table of the keywords, and the Token
+     * takes the type of the keyword it spells, if any. This is how an
+     * identifier TokenType stands in for every reserved word.
+     *
+     * A keyword is only recognized where this TokenType wins the match,
+     * so the keyword TokenType objects must not be in the specification
+     * themselves.
+     * @param name the name of this lexical class (i.e. "LPAREN", "RPAREN", etc)
+     * @param patternRegEx the regular expression of the Pattern to recognize
+     *                     this type of lexical token
+     * @param patternFlags the flags of the Pattern to recognize this type of
+     *                     lexical token
+     * @param skipped flag, indicating if these tokens should be skipped
+     *                (suppressed) during lexical output
+     * @param staticText flyweight text, to be used instead of the actual input
+     *                   text, or null to use the actual input text
+     * @param maxLength the most characters a match may span, or UNBOUNDED
+     *                  to rely on the analysis of the Pattern alone
+     * @param states the lexical states in which this TokenType is active,
+     *               possibly including ANY_STATE; if null or empty, only
+     *               DEFAULT_STATE
+     * @param transition what a Token of this type does to the lexical
+     *                   state, or null to leave it alone
+     * @param transitionState the lexical state entered by a PUSH or SWITCH
+     *                        transition, otherwise null
+     * @param keywords the keyword TokenType objects, each with static text
+     *                 matched by this TokenType, or null for none
+     * @throws NullPointerException if any keyword is null
+     * @throws IllegalArgumentException if maxLength is neither positive nor
+     *         UNBOUNDED, if transitionState does not suit transition, or if
+     *         a keyword has no static text, is not matched by the Pattern of
+     *         this TokenType, or repeats the text of another keyword
+     * @see TokenTypeBuilder#keywords(TokenType...)
+     */
+    public TokenType(
+            String name,
+            String patternRegEx,
+            int patternFlags,
+            boolean skipped,
+            String staticText,
+            int maxLength,
+            Set<String> states,
+            StateTransition transition,
+            String transitionState,
+            List<TokenType> keywords)
+    {
+        this(name, patternRegEx, patternFlags, skipped, staticText, maxLength,
+                states, transition, transitionState, keywords, null);
+    }
+
+    /**
+     * Construct a TokenType whose Pattern is the regular expression of
+     * some DelimitedText. A lexer matches the DelimitedText instead of the
+     * Pattern, unless the flags would make their matches differ.
+     * @param name the name of this lexical class (i.e. "LPAREN", "RPAREN", etc)
+     * @param patternRegEx the regular expression of the Pattern to recognize
+     *                     this type of lexical token
+     * @param patternFlags the flags of the Pattern to recognize this type of
+     *                     lexical token
+     * @param skipped flag, indicating if these tokens should be skipped
+     *                (suppressed) during lexical output
+     * @param staticText flyweight text, to be used instead of the actual input
+     *                   text, or null to use the actual input text
+     * @param maxLength the most characters a match may span, or UNBOUNDED
+     *                  to rely on the analysis of the Pattern alone
+     * @param states the lexical states in which this TokenType is active,
+     *               possibly including ANY_STATE; if null or empty, only
+     *               DEFAULT_STATE
+     * @param transition what a Token of this type does to the lexical
+     *                   state, or null to leave it alone
+     * @param transitionState the lexical state entered by a PUSH or SWITCH
+     *                        transition, otherwise null
+     * @param keywords the keyword TokenType objects, each with static text
+     *                 matched by this TokenType, or null for none
+     * @param delimitedText the DelimitedText whose toRegex() is
+     *                      patternRegEx, or null
+     * @throws NullPointerException if any keyword is null
+     * @throws IllegalArgumentException as for the public constructor
+     * @see TokenTypeBuilder#delimited(String, String, char)
+     */
+    TokenType(
+            String name,
+            String patternRegEx,
+            int patternFlags,
+            boolean skipped,
+            String staticText,
+            int maxLength,
+            Set<String> states,
+            StateTransition transition,
+            String transitionState,
+            List<TokenType> keywords,
+            DelimitedText delimitedText)
+    {
+        if(maxLength < 1 && maxLength != UNBOUNDED) {
+            throw new IllegalArgumentException("maxLength must be positive");
+        }
+        boolean entersState = (transition == StateTransition.PUSH)
+                || (transition == StateTransition.SWITCH);
+        if(entersState != (transitionState != null)) {
+            throw new IllegalArgumentException("transitionState must be provided for PUSH and SWITCH only");
+        }
+        if(ANY_STATE.equals(transitionState)) {
+            throw new IllegalArgumentException("transitionState must be a single state");
+        }
         this.name = name;
         this.pattern = Pattern.compile(patternRegEx, patternFlags);
         this.skipped = skipped;
         this.staticText = staticText;
+        this.syntax = RegexParser.parse(patternRegEx, patternFlags);
+        this.maxLength = computeMaxLength(syntax, maxLength);
+        // a limit that could cut a match short is beyond a LinearPattern
+        boolean limited = (this.maxLength != UNBOUNDED)
+                && (this.maxLength != syntax.maxLength());
+        LinearPattern linear = LinearPattern.from(syntax);
+        this.linearPattern = (limited) ? null : linear;
+        this.charClassRun = (linear == null) ? null : linear.asRun();
+        // case folding and canonical equivalence are beyond a DelimitedText
+        boolean folded = (patternFlags & (Pattern.CASE_INSENSITIVE | Pattern.CANON_EQ)) != 0;
+        this.delimitedText = (folded) ? null : delimitedText;
+        this.states = (states == null || states.isEmpty())
+                ? Collections.singleton(DEFAULT_STATE)
+                : Collections.unmodifiableSet(new LinkedHashSet<String>(states));
+        this.transition = transition;
+        this.transitionState = transitionState;
+        this.keywordTable = (keywords == null || keywords.isEmpty())
+                ? null : new KeywordTable(keywords);
+        if(keywordTable != null) {
+            for(TokenType keyword : keywordTable.getKeywords()) {
+                if(pattern.matcher(keyword.getStaticText()).matches() == false) {
+                    throw new IllegalArgumentException("keyword " + keyword.getName() + " is not matched by " + name);
+                }
+            }
+        }
+    }
+
+    /**
+     * Classify a match of this TokenType. If this TokenType has keywords,
+     * and the matched text is one of them, the match is a Token of the
+     * keyword TokenType instead.
+     * @param source the input
+     * @param start the position of the first character of the match
+     * @param end the position after the last character of the match
+     * @return the keyword TokenType spelled by the match, or this TokenType
+     */
+    public TokenType classify(CharSequence source, int start, int end) {
+        if(keywordTable == null) return this;
+        TokenType keyword = keywordTable.lookup(source, start, end);
+        return (keyword == null) ? this : keyword;
+    }
+
+    /**
+     * Compute the most characters that a match of a Pattern may span.
+     * @param syntax the syntax tree of the Pattern, or null
+     * @param hint the limit provided by the caller, or UNBOUNDED
+     * @return the smaller of the hint and the longest possible match, or
+     *         UNBOUNDED if neither is finite, or if the Pattern depends on
+     *         the input around the match
+     */
+    private static int computeMaxLength(RegexNode syntax, int hint) {
+        if(syntax == null || syntax.hasAssertion()) {
+            return UNBOUNDED;
+        }
+        int longest = syntax.maxLength();
+        if(longest == RegexNode.UNBOUNDED) return hint;
+        if(hint == UNBOUNDED) return longest;
+        return Math.min(longest, hint);
+    }
+
+    /**
+     * Obtain the keywords recognized among the matches of this TokenType.
+     * @return unmodifiable List of the keyword TokenType objects, empty if
+     *         this TokenType has none
+     */
+    public List<TokenType> getKeywords() {
+        if(keywordTable == null) return Collections.emptyList();
+        return keywordTable.getKeywords();
+    }
+
+    /**
+     * Obtain the run form of the Pattern of this TokenType. A run can be
+     * matched with a single loop over the input, even within the limit of
+     * getMaxLength().
+     * @return CharClassRun equivalent to the Pattern of this TokenType, or
+     *         null if the Pattern is not a run of one character class
+     */
+    CharClassRun getCharClassRun() {
+        return charClassRun;
+    }
+
+    /**
+     * Obtain the delimited form of the Pattern of this TokenType. Delimited
+     * text is matched with a search for its close delimiter, without the
+     * java.util.regex engine.
+     * @return DelimitedText equivalent to the Pattern of this TokenType,
+     *         or null if the TokenType was not built from one
+     */
+    DelimitedText getDelimitedText() {
+        return delimitedText;
+    }
+
+    /**
+     * Obtain the linear form of the Pattern of this TokenType. A linear
+     * pattern can be matched without the java.util.regex engine.
+     * @return LinearPattern equivalent to the Pattern of this TokenType,
+     *         or null if the Pattern has no linear form
+     */
+    LinearPattern getLinearPattern() {
+        return linearPattern;
+    }
+
+    /**
+     * Obtain the most characters that a match of this TokenType may span.
+     * This is the smaller of the limit provided at construction time and
+     * the longest match of the Pattern, where that can be proven.
+     * @return the maximum length of a match, or UNBOUNDED if there is no
+     *         known limit
+     */
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * Obtain the lexical states in which this TokenType is active.
+     * @return unmodifiable Set of the names of the lexical states, which
+     *         may include ANY_STATE
+     */
+    public Set<String> getStates() {
+        return states;
+    }
+
+    /**
+     * Obtain what a Token of this TokenType does to the lexical state of
+     * the Lexer.
+     * @return StateTransition of this TokenType, or null if a Token of
+     *         this TokenType leaves the lexical state alone
+     */
+    public StateTransition getTransition() {
+        return transition;
+    }
+
+    /**
+     * Obtain the lexical state entered by a Token of this TokenType.
+     * @return the lexical state entered by a PUSH or SWITCH, otherwise null
+     */
+    public String getTransitionState() {
+        return transitionState;
+    }
+
+    /**
+     * Determine if this TokenType is active in a lexical state.
+     * @param state the name of the lexical state
+     * @return true, if this TokenType is tried while the Lexer is in the
+     *         provided lexical state, otherwise false
+     */
+    public boolean isActiveIn(String state) {
+        return states.contains(state) || states.contains(ANY_STATE);
     }
 
     /**
@@ -96,6 +438,66 @@ public class TokenType
         return staticText;
     }
 
+    /**
+     * Obtain the syntax tree of the Pattern of this TokenType.
+     * @return RegexNode at the root of the syntax tree of the Pattern, or
+     *         null if the Pattern could not be analyzed
+     */
+    RegexNode getSyntax() {
+        return syntax;
+    }
+
+    /**
+     * The name of a lexical state that matches every lexical state. A
+     * TokenType active in ANY_STATE is tried everywhere.
+     */
+    public static final String ANY_STATE = "*";
+
+    /**
+     * The name of the lexical state in which a Lexer begins, and in which
+     * a TokenType is active unless told otherwise.
+     */
+    public static final String DEFAULT_STATE = "DEFAULT";
+
+    /**
+     * The TokenType of the Token objects that cover unlexable input, when
+     * a lexer recovers from errors. It is not part of any specification.
+     * @see Lexer#setErrorRecovery(boolean)
+     */
+    public static final TokenType ERROR = new TokenType("ERROR", ".", Pattern.DOTALL, false, null);
+
+    /**
+     * Value of getMaxLength() when there is no known limit on the length
+     * of a match.
+     */
+    public static final int UNBOUNDED = -1;
+
+    /**
+     * The run form of the Pattern, or null if it is not a run.
+     */
+    private final CharClassRun charClassRun;
+
+    /**
+     * The delimited form of the Pattern, or null if it has none.
+     */
+    private final DelimitedText delimitedText;
+
+    /**
+     * The keywords recognized among the matches of this TokenType, or null
+     * if there are none.
+     */
+    private final KeywordTable keywordTable;
+
+    /**
+     * The linear form of the Pattern of this TokenType, if it has one.
+     */
+    private final LinearPattern linearPattern;
+
+    /**
+     * The most characters that a match of this TokenType may span.
+     */
+    private final int maxLength;
+
     /**
      * The name of this TokenType.
      */
@@ -112,8 +514,28 @@ public class TokenType
      */
     private final boolean skipped;
 
+    /**
+     * The lexical states in which this TokenType is active.
+     */
+    private final Set<String> states;
+
     /**
      * The static (flyweight) text of this TokenType.
      */
     private final String staticText;
+
+    /**
+     * The syntax tree of the Pattern of this TokenType, if it was understood.
+     */
+    private final RegexNode syntax;
+
+    /**
+     * What a Token of this TokenType does to the lexical state, or null.
+     */
+    private final StateTransition transition;
+
+    /**
+     * The lexical state entered by a PUSH or SWITCH transition, or null.
+     */
+    private final String transitionState;
 }
@@ -18,6 +18,11 @@
 
 package com.pmeade.lexer;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 /**
@@ -77,6 +82,53 @@ public class TokenTypeBuilder
         return this;
     }
 
+    /**
+     * Specifies a pattern that is a run of one character class, like the
+     * digits of an INTEGER_LITERAL.
+     * 
+     * The pattern becomes <code>[charClass]+</code>, where charClass uses
+     * the syntax inside the brackets of a Pattern character class. The
+     * Lexer matches such a TokenType with a lookup table of the class: a
+     * bitmap for US-ASCII and a table of ranges beyond it, with no Matcher
+     * and no backtracking.
+     * @param charClass the characters of the run, such as "0-9"
+     * @return TokenTypeBuilder for additional chained calls
+     * @throws NullPointerException if charClass is null
+     * @throws IllegalArgumentException if charClass is empty
+     * @see #charClass(String, String)
+     */
+    public TokenTypeBuilder charClass(String charClass)
+    {
+        return charClass("", charClass);
+    }
+
+    /**
+     * Specifies a pattern that is a fixed prefix, followed by a run of one
+     * character class, like the "0x" and hexadecimal digits of a
+     * HEX_LITERAL.
+     * 
+     * The pattern becomes the quoted prefix, then <code>[charClass]+</code>.
+     * It is matched with lookup tables, as for charClass(String). If the
+     * class can not be matched that way, create() throws an
+     * IllegalArgumentException.
+     * @param prefix the literal text that begins every match, possibly empty
+     * @param charClass the characters of the run, such as "0-9a-fA-F"
+     * @return TokenTypeBuilder for additional chained calls
+     * @throws NullPointerException if prefix or charClass is null
+     * @throws IllegalArgumentException if charClass is empty
+     */
+    public TokenTypeBuilder charClass(String prefix, String charClass)
+    {
+        if(prefix == null) throw new NullPointerException();
+        if(charClass == null) throw new NullPointerException();
+        if(charClass.isEmpty()) throw new IllegalArgumentException("charClass must not be empty");
+        this.pattern = ((prefix.isEmpty()) ? "" : Pattern.quote(prefix))
+                + "[" + charClass + "]+";
+        this.charClass = true;
+        this.delimited = null;
+        return this;
+    }
+
     /**
      * Create and return a TokenType object according to the method calls
      * that have been chained to this TokenTypeBuilder.
@@ -84,12 +136,82 @@ public class TokenTypeBuilder
      */
     public TokenType create()
     {
+        DelimitedText delimitedText = null;
+        if(delimited != null) {
+            if((flags & Pattern.LITERAL) == Pattern.LITERAL) {
+                throw new IllegalArgumentException("delimited text can not be literal");
+            }
+            delimitedText = delimited.nest(nesting);
+            pattern = delimitedText.toRegex();
+        } else if(nesting > 0) {
+            throw new IllegalArgumentException("nesting needs delimited text");
+        }
         if((flags & Pattern.LITERAL) == Pattern.LITERAL) {
             if(staticText == null) {
                 staticText = pattern;
             }
         }
-        return new TokenType(name, pattern, flags, skipped, staticText);
+        TokenType tokenType = new TokenType(name, pattern, flags, skipped, staticText,
+                (maxLength > 0) ? maxLength : TokenType.UNBOUNDED,
+                states, transition, transitionState, keywords, delimitedText);
+        if(charClass && tokenType.getLinearPattern() == null
+                && tokenType.getCharClassRun() == null) {
+            throw new IllegalArgumentException("character class " + pattern + " needs the regex engine");
+        }
+        if(lint) {
+            List<LintIssue> issues = new ArrayList<LintIssue>();
+            SpecLinter.lint(tokenType, issues);
+            new LintReport(issues).check();
+        }
+        return tokenType;
+    }
+
+    /**
+     * Specifies a pattern of text between an open and a close delimiter,
+     * like a block comment or a heredoc. The first close delimiter after
+     * the open delimiter ends the match.
+     * 
+     * The Lexer matches such a TokenType with a Boyer-Moore-Horspool
+     * search for the close delimiter, with no Matcher and no recursion,
+     * so even a body of many megabytes is cheap. The Pattern of the
+     * TokenType is an equivalent regular expression.
+     * @param open the text that begins every match, such as "/*"
+     * @param close the text that ends every match, such as "*&#47;"
+     * @return TokenTypeBuilder for additional chained calls
+     * @throws NullPointerException if open or close is null
+     * @throws IllegalArgumentException if open or close is empty
+     * @see #delimited(String, String, char)
+     * @see #nesting(int)
+     */
+    public TokenTypeBuilder delimited(String open, String close)
+    {
+        this.delimited = new DelimitedText(open, close);
+        this.charClass = false;
+        return this;
+    }
+
+    /**
+     * Specifies a pattern of text between an open and a close delimiter,
+     * with an escape char, like a string literal. The escape char and the
+     * char after it never end the match; the first other close delimiter
+     * after the open delimiter does.
+     * 
+     * The Lexer matches such a TokenType with a single loop over the body,
+     * as for delimited(String, String).
+     * @param open the text that begins every match, such as "\""
+     * @param close the text that ends every match, such as "\""
+     * @param escape the escape char, such as '\\'
+     * @return TokenTypeBuilder for additional chained calls
+     * @throws NullPointerException if open or close is null
+     * @throws IllegalArgumentException if open or close is empty or begins
+     *         with the escape char
+     * @see #nesting(int)
+     */
+    public TokenTypeBuilder delimited(String open, String close, char escape)
+    {
+        this.delimited = new DelimitedText(open, close, escape);
+        this.charClass = false;
+        return this;
     }
 
     /**
@@ -214,6 +336,76 @@ public class TokenTypeBuilder
         return this;
     }
 
+    /**
+     * Recognizes keywords among the matches of the TokenType.
+     * 
+     * The keyword TokenType objects are not added to the specification.
+     * Instead, the Lexer matches this TokenType (typically an identifier)
+     * and looks its text up in a perfect hash table of the keywords; if the
+     * text is a keyword, the Token has the keyword TokenType. A specification
+     * with dozens of reserved words then tries one TokenType instead of
+     * dozens, at every identifier.
+     * 
+     * Each keyword must have static text that this TokenType matches, as
+     * created by new TokenTypeBuilder().name("CLASS").pattern("class")
+     * .literal().create(). If the keywords ignore case, so does the lookup.
+     * @param keywords the keyword TokenType objects
+     * @return TokenTypeBuilder for additional chained calls
+     * @throws NullPointerException if any of the keywords are null
+     */
+    public TokenTypeBuilder keywords(TokenType... keywords)
+    {
+        return keywords(Arrays.asList(keywords));
+    }
+
+    /**
+     * Recognizes keywords among the matches of the TokenType.
+     * @param keywords the keyword TokenType objects
+     * @return TokenTypeBuilder for additional chained calls
+     * @throws NullPointerException if any of the keywords are null
+     * @see #keywords(TokenType...)
+     */
+    public TokenTypeBuilder keywords(List<TokenType> keywords)
+    {
+        for(TokenType keyword : keywords) {
+            if(keyword == null) throw new NullPointerException();
+        }
+        if(this.keywords == null) {
+            this.keywords = new ArrayList<TokenType>();
+        }
+        this.keywords.addAll(keywords);
+        return this;
+    }
+
+    /**
+     * Checks the TokenType when it is created.
+     * 
+     * With this flag, create() runs the TokenType through the same checks
+     * as LexerSpec.lint(), and throws an IllegalArgumentException if the
+     * pattern can match the empty string. A Lexer would otherwise produce
+     * empty Token objects forever. Warnings about patterns that may
+     * backtrack exponentially do not stop create(); use LexerSpec.lint()
+     * to see them.
+     * @return TokenTypeBuilder for additional chained calls
+     */
+    public TokenTypeBuilder lint()
+    {
+        lint = true;
+        return this;
+    }
+
+    /**
+     * Instruct the TokenTypeBuilder if the TokenType should be checked when
+     * it is created, as for lint().
+     * @param apply if the TokenType should be checked or not
+     * @return TokenTypeBuilder for additional chained calls
+     */
+    public TokenTypeBuilder lint(boolean apply)
+    {
+        lint = apply;
+        return this;
+    }
+
     /**
      * Enables literal parsing of the pattern.
      * 
@@ -288,6 +480,29 @@ public class TokenTypeBuilder
         return this;
     }
 
+    /**
+     * Limits the length of a match.
+     * 
+     * The Lexer looks no further than this many characters into the input
+     * when matching the Pattern. This is for patterns like block comments
+     * or strings, whose length the Lexer cannot work out for itself; with
+     * a limit, a failed match costs no more than the limit, instead of a
+     * scan to the end of the input. A match that would be longer than the
+     * limit is cut short.
+     * 
+     * The limit is ignored for a Pattern with anchors, word boundaries,
+     * or lookaround.
+     * @param maxLength the most characters a match may span
+     * @return TokenTypeBuilder for additional chained calls
+     * @throws IllegalArgumentException if maxLength is not positive
+     */
+    public TokenTypeBuilder maxLength(int maxLength)
+    {
+        if(maxLength < 1) throw new IllegalArgumentException("maxLength must be positive");
+        this.maxLength = maxLength;
+        return this;
+    }
+
     /**
      * Enables multiline mode.
      * 
@@ -335,6 +550,26 @@ public class TokenTypeBuilder
         return this;
     }
 
+    /**
+     * Allows the text of a delimited() pattern to nest. Inside the match,
+     * each open delimiter needs a close delimiter of its own, down to the
+     * provided depth; deeper than that, an open delimiter is just text.
+     * Nested block comments, like those of Scala or Rust, need this.
+     * 
+     * The Pattern of the TokenType repeats its body for each level, so
+     * keep the depth small.
+     * @param nesting the deepest that delimited text may nest inside a
+     *                match, or zero if it does not nest
+     * @return TokenTypeBuilder for additional chained calls
+     * @throws IllegalArgumentException if nesting is negative
+     */
+    public TokenTypeBuilder nesting(int nesting)
+    {
+        if(nesting < 0) throw new IllegalArgumentException("nesting must not be negative");
+        this.nesting = nesting;
+        return this;
+    }
+
     /**
      * Set the regular expression of the Pattern used to match input
      * for this TokenType.
@@ -345,6 +580,35 @@ public class TokenTypeBuilder
     public TokenTypeBuilder pattern(String pattern)
     {
         this.pattern = pattern;
+        this.charClass = false;
+        this.delimited = null;
+        return this;
+    }
+
+    /**
+     * Makes a Token of this type return the Lexer to the lexical state it
+     * was in before the last pushState() Token.
+     * @return TokenTypeBuilder for additional chained calls
+     */
+    public TokenTypeBuilder popState()
+    {
+        this.transition = StateTransition.POP;
+        this.transitionState = null;
+        return this;
+    }
+
+    /**
+     * Makes a Token of this type put the Lexer in another lexical state,
+     * remembering the current one for a later popState() Token.
+     * @param state the name of the lexical state to enter
+     * @return TokenTypeBuilder for additional chained calls
+     * @throws NullPointerException if state is null
+     */
+    public TokenTypeBuilder pushState(String state)
+    {
+        if(state == null) throw new NullPointerException();
+        this.transition = StateTransition.PUSH;
+        this.transitionState = state;
         return this;
     }
 
@@ -376,6 +640,29 @@ public class TokenTypeBuilder
         return this;
     }
 
+    /**
+     * Adds lexical states in which the TokenType is active. A TokenType
+     * is only tried while the Lexer is in one of its states; without a
+     * call to this method, that is only TokenType.DEFAULT_STATE. Use
+     * TokenType.ANY_STATE for a TokenType that is active everywhere.
+     * @param states the names of the lexical states
+     * @return TokenTypeBuilder for additional chained calls
+     * @throws NullPointerException if any of the states are null
+     */
+    public TokenTypeBuilder state(String... states)
+    {
+        for(String state : states) {
+            if(state == null) throw new NullPointerException();
+        }
+        if(this.states == null) {
+            this.states = new LinkedHashSet<String>();
+        }
+        for(String state : states) {
+            this.states.add(state);
+        }
+        return this;
+    }
+
     /**
      * Specify the static text (flyweight text) of the TokenType under
      * construction. This is often used for very narrow lexical classes
@@ -401,6 +688,21 @@ public class TokenTypeBuilder
         return this;
     }
 
+    /**
+     * Makes a Token of this type replace the lexical state of the Lexer
+     * with another one.
+     * @param state the name of the lexical state to enter
+     * @return TokenTypeBuilder for additional chained calls
+     * @throws NullPointerException if state is null
+     */
+    public TokenTypeBuilder switchState(String state)
+    {
+        if(state == null) throw new NullPointerException();
+        this.transition = StateTransition.SWITCH;
+        this.transitionState = state;
+        return this;
+    }
+
     /**
      * Enables Unicode-aware case folding.
      * 
@@ -440,6 +742,18 @@ public class TokenTypeBuilder
         return this;
     }
 
+    /**
+     * Flag: Was the pattern specified by charClass(), so that it must be
+     * matched with lookup tables?
+     */
+    private boolean charClass;
+
+    /**
+     * The delimited text specified by delimited(), before nesting, or null
+     * if the pattern is a regular expression.
+     */
+    private DelimitedText delimited;
+
     /**
      * The Pattern flags to apply when compiling the Pattern object for
      * the TokenType.
@@ -447,12 +761,34 @@ public class TokenTypeBuilder
      */
     private int flags;
 
+    /**
+     * The keywords recognized among the matches of the TokenType, or null
+     * if there are none.
+     */
+    private List<TokenType> keywords;
+
+    /**
+     * Flag: Should the TokenType be checked when it is created?
+     */
+    private boolean lint;
+
+    /**
+     * The most characters a match of the TokenType may span, or zero if
+     * there is no limit.
+     */
+    private int maxLength;
+
     /**
      * The name of the lexical class represented by the TokenType under
      * construction by this TokenTypeBuilder.
      */
     private String name;
 
+    /**
+     * The deepest that the delimited text may nest inside a match.
+     */
+    private int nesting;
+
     /**
      * The regular expression used to match patterns for this TokenType.
      */
@@ -474,4 +810,20 @@ public class TokenTypeBuilder
      * in the actual digits that were matched by the Lexer.
      */
     private String staticText;
+
+    /**
+     * The lexical states in which the TokenType is active, or null for
+     * only the default state.
+     */
+    private Set<String> states;
+
+    /**
+     * What a Token of the TokenType does to the lexical state, or null.
+     */
+    private StateTransition transition;
+
+    /**
+     * The lexical state entered by a PUSH or SWITCH transition.
+     */
+    private String transitionState;
 }
@@ -0,0 +1,64 @@
+/*
+ * TokenTypeMonitorMXBean.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+/**
+ * TokenTypeMonitorMXBean is the management interface of the statistics of
+ * a single TokenType, as registered with the platform MBeanServer by
+ * LexerMonitor.register().
+ */
+public interface TokenTypeMonitorMXBean
+{
+    /**
+     * Obtain the name of the TokenType.
+     * @return the name of the TokenType
+     */
+    String getName();
+
+    /**
+     * Obtain the number of times the Pattern was matched against the input.
+     * @return the number of match attempts
+     */
+    long getAttempts();
+
+    /**
+     * Obtain the number of match attempts that succeeded.
+     * @return the number of successful matches
+     */
+    long getSuccesses();
+
+    /**
+     * Obtain the number of Token objects of the TokenType produced; that
+     * is, the number of times it was the longest match.
+     * @return the number of Token objects of the TokenType
+     */
+    long getWins();
+
+    /**
+     * Obtain the total length of the successful matches.
+     * @return the number of characters matched
+     */
+    long getMatchedChars();
+
+    /**
+     * Obtain the total time spent matching the Pattern.
+     * @return the time spent matching, in nanoseconds
+     */
+    long getMatchNanos();
+}
@@ -0,0 +1,150 @@
+/*
+ * TokenTypeSet.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * TokenTypeSet is an immutable set of TokenType objects; typically, the
+ * TokenType objects that a parser expects to come next. Provide one to
+ * <code>next(TokenTypeSet)</code>, and the lexer tries only those TokenType
+ * objects, plus the skipped ones, against the input.
+ *
+ * A lexer prepares itself for each TokenTypeSet the first time it sees
+ * it, so build the sets a parser needs once, and reuse them.
+ */
+public final class TokenTypeSet implements Iterable<TokenType>
+{
+    /**
+     * Create a TokenTypeSet.
+     * @param tokenTypes the TokenType objects of the set
+     * @return TokenTypeSet of the provided TokenType objects
+     * @throws NullPointerException if any of the TokenType objects are null
+     */
+    public static TokenTypeSet of(TokenType... tokenTypes) {
+        return of(Arrays.asList(tokenTypes));
+    }
+
+    /**
+     * Create a TokenTypeSet.
+     * @param tokenTypes the TokenType objects of the set
+     * @return TokenTypeSet of the provided TokenType objects
+     * @throws NullPointerException if tokenTypes or any of the TokenType
+     *         objects are null
+     */
+    public static TokenTypeSet of(Collection<TokenType> tokenTypes) {
+        Set<TokenType> set = new LinkedHashSet<TokenType>();
+        for(TokenType tokenType : tokenTypes) {
+            if(tokenType == null) throw new NullPointerException();
+            set.add(tokenType);
+        }
+        return new TokenTypeSet(Collections.unmodifiableSet(set));
+    }
+
+    /**
+     * Construct a TokenTypeSet.
+     * @param tokenTypes the TokenType objects of the set
+     */
+    private TokenTypeSet(Set<TokenType> tokenTypes)
+    {
+        this.hashCode = tokenTypes.hashCode();
+        this.tokenTypes = tokenTypes;
+    }
+
+    /**
+     * Determine if a TokenType is a member of this set.
+     * @param tokenType the TokenType to check
+     * @return true, if the TokenType is a member of this set
+     */
+    public boolean contains(TokenType tokenType) {
+        return tokenTypes.contains(tokenType);
+    }
+
+    /**
+     * Obtain the TokenType objects of this set, in the order they were
+     * provided.
+     * @return Iterator over the TokenType objects of this set
+     */
+    @Override
+    public Iterator<TokenType> iterator() {
+        return tokenTypes.iterator();
+    }
+
+    /**
+     * Obtain the number of TokenType objects in this set.
+     * @return the number of TokenType objects in this set
+     */
+    public int size() {
+        return tokenTypes.size();
+    }
+
+    /**
+     * Obtain the hashCode of this TokenTypeSet.
+     * @return the hashCode of this TokenTypeSet
+     */
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    /**
+     * Determine if the provided Object is a TokenTypeSet of the same
+     * TokenType objects as this one.
+     * @param obj Object to compare to this TokenTypeSet
+     * @return true, if the provided Object is an equal TokenTypeSet,
+     *         otherwise false
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if(obj == this) return true;
+        if(obj instanceof TokenTypeSet == false) return false;
+        TokenTypeSet other = (TokenTypeSet) obj;
+        return hashCode == other.hashCode && tokenTypes.equals(other.tokenTypes);
+    }
+
+    /**
+     * Obtain a String representation of this TokenTypeSet. This may be
+     * useful for debugging purposes.
+     * @return a String representation of this TokenTypeSet
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for(TokenType tokenType : tokenTypes) {
+            if(sb.length() > 1) sb.append(", ");
+            sb.append(tokenType.getName());
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * The hash code of the set, computed once.
+     */
+    private final int hashCode;
+
+    /**
+     * The TokenType objects of the set.
+     */
+    private final Set<TokenType> tokenTypes;
+}
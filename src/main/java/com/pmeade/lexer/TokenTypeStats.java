@@ -0,0 +1,146 @@
+/*
+ * TokenTypeStats.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+/**
+ * TokenTypeStats is a snapshot of the statistics a LexerMonitor collected
+ * for a single TokenType.
+ *
+ * @see LexerStats
+ */
+public final class TokenTypeStats
+{
+    /**
+     * Construct a TokenTypeStats.
+     * @param tokenType the TokenType
+     * @param attempts the number of match attempts
+     * @param successes the number of successful matches
+     * @param wins the number of Token objects of the TokenType
+     * @param matchedChars the total length of the successful matches
+     * @param matchNanos the total time spent matching, in nanoseconds
+     */
+    TokenTypeStats(TokenType tokenType, long attempts, long successes, long wins,
+            long matchedChars, long matchNanos)
+    {
+        this.attempts = attempts;
+        this.matchNanos = matchNanos;
+        this.matchedChars = matchedChars;
+        this.successes = successes;
+        this.tokenType = tokenType;
+        this.wins = wins;
+    }
+
+    /**
+     * Obtain the number of times the Pattern was matched against the input.
+     * @return the number of match attempts
+     */
+    public long getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Obtain the average time of a match attempt.
+     * @return the average time of a match attempt, in nanoseconds, or 0 if
+     *         there were no attempts
+     */
+    public double getAverageMatchNanos() {
+        return (attempts == 0) ? 0.0 : (double) matchNanos / attempts;
+    }
+
+    /**
+     * Obtain the total time spent matching the Pattern.
+     * @return the time spent matching, in nanoseconds
+     */
+    public long getMatchNanos() {
+        return matchNanos;
+    }
+
+    /**
+     * Obtain the total length of the successful matches.
+     * @return the number of characters matched
+     */
+    public long getMatchedChars() {
+        return matchedChars;
+    }
+
+    /**
+     * Obtain the number of match attempts that succeeded.
+     * @return the number of successful matches
+     */
+    public long getSuccesses() {
+        return successes;
+    }
+
+    /**
+     * Obtain the TokenType these statistics are about.
+     * @return the TokenType
+     */
+    public TokenType getTokenType() {
+        return tokenType;
+    }
+
+    /**
+     * Obtain the number of Token objects of the TokenType produced.
+     * @return the number of times the TokenType was the longest match
+     */
+    public long getWins() {
+        return wins;
+    }
+
+    /**
+     * Obtain a String representation of this TokenTypeStats. This may be
+     * useful for debugging purposes.
+     * @return a String representation of this TokenTypeStats
+     */
+    @Override
+    public String toString() {
+        return tokenType.getName() + " attempts=" + attempts + " successes=" + successes
+                + " wins=" + wins + " chars=" + matchedChars + " nanos=" + matchNanos;
+    }
+
+    /**
+     * The number of match attempts.
+     */
+    private final long attempts;
+
+    /**
+     * The total time spent matching, in nanoseconds.
+     */
+    private final long matchNanos;
+
+    /**
+     * The total length of the successful matches.
+     */
+    private final long matchedChars;
+
+    /**
+     * The number of successful matches.
+     */
+    private final long successes;
+
+    /**
+     * The TokenType these statistics are about.
+     */
+    private final TokenType tokenType;
+
+    /**
+     * The number of Token objects of the TokenType produced.
+     */
+    private final long wins;
+}
@@ -0,0 +1,379 @@
+/*
+ * JfrLexerEvents.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JfrLexerEvents reports what a Lexer is doing as Java Flight Recorder
+ * events. This class, and the event classes within it, are only loaded on
+ * a JVM that has the Java Flight Recorder.
+ *
+ * <ul>
+ *   <li>com.pmeade.lexer.Lifecycle - a Lexer was created or reset</li>
+ *   <li>com.pmeade.lexer.Scan - scan() or scanNoSkip() of a document</li>
+ *   <li>com.pmeade.lexer.Token - one Token decision in every
+ *       <code>com.pmeade.lexer.jfr.tokenSampleInterval</code> (a system
+ *       property; 100 by default)</li>
+ *   <li>com.pmeade.lexer.SlowToken - any Token decision over the
+ *       threshold (10 ms by default)</li>
+ *   <li>com.pmeade.lexer.Error - a Lexer could not match its input, or
+ *       recovered from that with an ERROR Token; with the lexical state,
+ *       and the length of the ERROR Token</li>
+ * </ul>
+ *
+ * @see LexerEvents
+ */
+final class JfrLexerEvents extends LexerEvents
+{
+    @Override
+    void lifecycle(String phase, int specSize, int inputLength) {
+        if(LIFECYCLE.isEnabled() == false) return;
+        LifecycleEvent event = new LifecycleEvent();
+        event.phase = phase;
+        event.specSize = specSize;
+        event.inputLength = inputLength;
+        event.commit();
+    }
+
+    @Override
+    Object beginScan() {
+        if(SCAN.isEnabled() == false) return null;
+        ScanEvent event = new ScanEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    void endScan(Object scope, boolean skipped, int tokenCount,
+            int inputLength, boolean error)
+    {
+        ScanEvent event = (ScanEvent) scope;
+        event.end();
+        if(event.shouldCommit()) {
+            event.skipped = skipped;
+            event.tokenCount = tokenCount;
+            event.inputLength = inputLength;
+            event.error = error;
+            event.commit();
+        }
+    }
+
+    @Override
+    Object beginToken(int sequence) {
+        boolean sampled = TOKEN.isEnabled() && (sequence % TOKEN_SAMPLE_INTERVAL == 0);
+        boolean slow = SLOW_TOKEN.isEnabled();
+        boolean error = ERROR.isEnabled();
+        if((sampled || slow || error) == false) return null;
+        TokenScope scope = new TokenScope();
+        if(sampled) {
+            scope.sample = new TokenEvent();
+            scope.sample.begin();
+        }
+        if(slow) {
+            scope.slow = new SlowTokenEvent();
+            scope.slow.begin();
+        }
+        if(error) {
+            scope.error = new ErrorEvent();
+            scope.error.begin();
+        }
+        return scope;
+    }
+
+    @Override
+    void endToken(Object scope, Token token, int position, String state) {
+        TokenScope tokenScope = (TokenScope) scope;
+        if(token == null) {
+            if(tokenScope.error != null) {
+                tokenScope.error.end();
+                tokenScope.error.set(position, state, 0);
+                tokenScope.error.commit();
+            }
+            return;
+        }
+        String tokenType = token.getTokenType().getName();
+        int length = position - token.getPosition();
+        if(token.getTokenType() == TokenType.ERROR && tokenScope.error != null) {
+            // error recovery turned the unlexable input into a Token
+            tokenScope.error.end();
+            tokenScope.error.set(token.getPosition(), state, length);
+            tokenScope.error.commit();
+        }
+        if(tokenScope.sample != null) {
+            tokenScope.sample.end();
+            if(tokenScope.sample.shouldCommit()) {
+                tokenScope.sample.set(tokenType, token.getPosition(), length);
+                tokenScope.sample.commit();
+            }
+        }
+        if(tokenScope.slow != null) {
+            tokenScope.slow.end();
+            if(tokenScope.slow.shouldCommit()) {
+                tokenScope.slow.set(tokenType, token.getPosition(), length);
+                tokenScope.slow.commit();
+            }
+        }
+    }
+
+    @Override
+    boolean isTokenEnabled() {
+        return TOKEN.isEnabled() || SLOW_TOKEN.isEnabled() || ERROR.isEnabled();
+    }
+
+    /**
+     * TokenScope holds the events begun for a single Token decision.
+     */
+    private static final class TokenScope
+    {
+        /**
+         * The Error event, if enabled.
+         */
+        ErrorEvent error;
+
+        /**
+         * The Token event, if enabled and this Token is sampled.
+         */
+        TokenEvent sample;
+
+        /**
+         * The SlowToken event, if enabled.
+         */
+        SlowTokenEvent slow;
+    }
+
+    @Name("com.pmeade.lexer.Lifecycle")
+    @Label("Lexer Lifecycle")
+    @Category({"Lexer"})
+    @Description("A Lexer was created or reset")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class LifecycleEvent extends Event
+    {
+        /**
+         * What happened to the Lexer; "created" or "reset".
+         */
+        @Label("Phase")
+        String phase;
+
+        /**
+         * The number of TokenType objects of the Lexer.
+         */
+        @Label("Token Types")
+        int specSize;
+
+        /**
+         * The length of the input of the Lexer.
+         */
+        @Label("Input Length")
+        int inputLength;
+    }
+
+    @Name("com.pmeade.lexer.Scan")
+    @Label("Lexer Scan")
+    @Category({"Lexer"})
+    @Description("A Lexer scanned an entire document")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class ScanEvent extends Event
+    {
+        /**
+         * Flag: Were skipped Token objects suppressed by the scan?
+         */
+        @Label("Skipped Tokens Suppressed")
+        boolean skipped;
+
+        /**
+         * The number of Token objects returned by the scan.
+         */
+        @Label("Tokens")
+        int tokenCount;
+
+        /**
+         * The length of the input of the Lexer.
+         */
+        @Label("Input Length")
+        int inputLength;
+
+        /**
+         * Flag: Did the scan end with an error?
+         */
+        @Label("Error")
+        boolean error;
+    }
+
+    @Name("com.pmeade.lexer.Token")
+    @Label("Lexer Token")
+    @Category({"Lexer"})
+    @Description("A Lexer decided a Token; only one in every sample interval is recorded")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class TokenEvent extends Event
+    {
+        /**
+         * Set the fields of the event.
+         * @param tokenType the name of the TokenType of the Token
+         * @param position the position of the Token
+         * @param length the length of the match
+         */
+        void set(String tokenType, int position, int length) {
+            this.tokenType = tokenType;
+            this.position = position;
+            this.length = length;
+        }
+
+        /**
+         * The name of the TokenType of the Token.
+         */
+        @Label("Token Type")
+        String tokenType;
+
+        /**
+         * The position of the Token.
+         */
+        @Label("Position")
+        int position;
+
+        /**
+         * The length of the match.
+         */
+        @Label("Match Length")
+        int length;
+    }
+
+    @Name("com.pmeade.lexer.SlowToken")
+    @Label("Lexer Slow Token")
+    @Category({"Lexer"})
+    @Description("A Lexer took longer than the threshold to decide a Token")
+    @Enabled(false)
+    @Threshold("10 ms")
+    static final class SlowTokenEvent extends Event
+    {
+        /**
+         * Set the fields of the event.
+         * @param tokenType the name of the TokenType of the Token
+         * @param position the position of the Token
+         * @param length the length of the match
+         */
+        void set(String tokenType, int position, int length) {
+            this.tokenType = tokenType;
+            this.position = position;
+            this.length = length;
+        }
+
+        /**
+         * The name of the TokenType of the Token.
+         */
+        @Label("Token Type")
+        String tokenType;
+
+        /**
+         * The position of the Token.
+         */
+        @Label("Position")
+        int position;
+
+        /**
+         * The length of the match.
+         */
+        @Label("Match Length")
+        int length;
+    }
+
+    @Name("com.pmeade.lexer.Error")
+    @Label("Lexer Error")
+    @Category({"Lexer"})
+    @Description("No TokenType matched the input of a Lexer, with or without error recovery")
+    @Enabled(false)
+    static final class ErrorEvent extends Event
+    {
+        /**
+         * Set the fields of the event.
+         * @param position the position of the input that no TokenType
+         *                 matched
+         * @param state the lexical state of the Lexer at the error
+         * @param recoveredLength the length of the ERROR Token, or 0 if
+         *                        the Lexer did not recover
+         */
+        void set(int position, String state, int recoveredLength) {
+            this.position = position;
+            this.state = state;
+            this.recoveredLength = recoveredLength;
+        }
+
+        /**
+         * The position of the input that no TokenType matched.
+         */
+        @Label("Position")
+        int position;
+
+        /**
+         * The lexical state of the Lexer at the error.
+         */
+        @Label("Lexical State")
+        String state;
+
+        /**
+         * The length of the input passed over by error recovery, as an
+         * ERROR Token; 0 if the Lexer did not recover.
+         */
+        @Label("Recovered Length")
+        @Description("Characters passed over as an ERROR Token; 0 without error recovery")
+        int recoveredLength;
+    }
+
+    /**
+     * One Token decision in this many is reported by a Token event.
+     */
+    private static final int TOKEN_SAMPLE_INTERVAL =
+            Math.max(1, Integer.getInteger("com.pmeade.lexer.jfr.tokenSampleInterval", 100));
+
+    /**
+     * The EventType of the Error event, to check if it is enabled.
+     */
+    private static final EventType ERROR = EventType.getEventType(ErrorEvent.class);
+
+    /**
+     * The EventType of the Lifecycle event, to check if it is enabled.
+     */
+    private static final EventType LIFECYCLE = EventType.getEventType(LifecycleEvent.class);
+
+    /**
+     * The EventType of the Scan event, to check if it is enabled.
+     */
+    private static final EventType SCAN = EventType.getEventType(ScanEvent.class);
+
+    /**
+     * The EventType of the SlowToken event, to check if it is enabled.
+     */
+    private static final EventType SLOW_TOKEN = EventType.getEventType(SlowTokenEvent.class);
+
+    /**
+     * The EventType of the Token event, to check if it is enabled.
+     */
+    private static final EventType TOKEN = EventType.getEventType(TokenEvent.class);
+}
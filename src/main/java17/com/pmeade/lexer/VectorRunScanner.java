@@ -0,0 +1,190 @@
+/*
+ * VectorRunScanner.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * VectorRunScanner finds where a run of characters from one CharSet ends
+ * in a String, and where either of two chars is in a buffer, comparing as
+ * many chars at once as the vector registers of the machine hold. It only
+ * exists in the Java 17 part of the multi-release jar, and can only be
+ * loaded when the jdk.incubator.vector module is present; RunScanner falls
+ * back to scanning one char at a time when it can not be.
+ *
+ * Most runs are a few chars long, so a run is scanned one char at a time
+ * for its first SCALAR_PREFIX chars, and only a run that goes on is worth
+ * the setup of the vectors.
+ *
+ * A String does not expose its chars, so they are copied into a buffer a
+ * chunk at a time, and loaded from there into ShortVector lanes. Each
+ * range of the CharSet costs a subtraction and an unsigned comparison
+ * per vector: c is in [lo, hi] exactly when (c - lo) is at most
+ * (hi - lo), unsigned. Up to four ranges are compared, so only a CharSet
+ * with that few is accepted; anything else is left to the scalar loop of
+ * RunScanner. An empty CharSet has no ranges, and is not accepted either.
+ */
+final class VectorRunScanner extends RunScanner
+{
+    /**
+     * Construct a VectorRunScanner. RunScanner does this by reflection.
+     */
+    VectorRunScanner() {
+        // nothing to set up
+    }
+
+    /**
+     * Determine if a CharSet is simple enough to be scanned with vectors.
+     * @param chars the characters of the run
+     * @return true, if its runs may be scanned with vectors, otherwise false
+     */
+    static boolean accepts(CharSet chars) {
+        int count = chars.getRangeCount();
+        return count > 0 && count <= MAX_RANGES;
+    }
+
+    /**
+     * Find the first of either of two chars in a buffer.
+     * @param buffer the chars to be searched
+     * @param position the index at which the search begins
+     * @param end the index at which the search ends
+     * @param a a char to be found
+     * @param b another char to be found
+     * @return the index of the first a or b at or after position, or end
+     *         if there is none
+     */
+    @Override
+    int indexOf(char[] buffer, int position, int end, char a, char b) {
+        for(; position <= end - SPECIES.length(); position += SPECIES.length()) {
+            ShortVector lanes = ShortVector.fromCharArray(SPECIES, buffer, position);
+            VectorMask<Short> found = lanes.compare(VectorOperators.EQ, (short) a)
+                    .or(lanes.compare(VectorOperators.EQ, (short) b));
+            if(found.anyTrue()) {
+                return position + found.firstTrue();
+            }
+        }
+        // the tail of the buffer that does not fill a vector
+        while(position < end && buffer[position] != a && buffer[position] != b) {
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * Find the end of a run of characters from a CharSet.
+     * @param text the String to be scanned
+     * @param position the position at which the run begins
+     * @param end the position at which the text ends
+     * @param chars the characters of the run; none may be surrogates
+     * @return the position of the first character at or after position
+     *         that is not in chars, or end if there is none
+     */
+    @Override
+    int scan(String text, int position, int end, CharSet chars) {
+        int prefix = Math.min(end, position + SCALAR_PREFIX);
+        while(position < prefix && chars.contains(text.charAt(position))) {
+            position++;
+        }
+        if(position < prefix || position == end) {
+            return position;
+        }
+        if(accepts(chars) == false) {
+            return super.scan(text, position, end, chars);
+        }
+        // unused ranges repeat the last one, which changes nothing
+        int last = chars.getRangeCount() - 1;
+        short lo0 = lo(chars, 0);
+        short lo1 = lo(chars, Math.min(1, last));
+        short lo2 = lo(chars, Math.min(2, last));
+        short lo3 = lo(chars, Math.min(3, last));
+        short span0 = span(chars, 0);
+        short span1 = span(chars, Math.min(1, last));
+        short span2 = span(chars, Math.min(2, last));
+        short span3 = span(chars, Math.min(3, last));
+        char[] buffer = new char[Math.min(CHUNK, end - position)];
+        while(position < end) {
+            int length = Math.min(buffer.length, end - position);
+            text.getChars(position, position + length, buffer, 0);
+            int i = 0;
+            for(; i <= length - SPECIES.length(); i += SPECIES.length()) {
+                ShortVector lanes = ShortVector.fromCharArray(SPECIES, buffer, i);
+                VectorMask<Short> in = lanes.sub(lo0).compare(VectorOperators.UNSIGNED_LE, span0)
+                        .or(lanes.sub(lo1).compare(VectorOperators.UNSIGNED_LE, span1))
+                        .or(lanes.sub(lo2).compare(VectorOperators.UNSIGNED_LE, span2))
+                        .or(lanes.sub(lo3).compare(VectorOperators.UNSIGNED_LE, span3));
+                if(in.allTrue() == false) {
+                    return position + i + in.not().firstTrue();
+                }
+            }
+            // the tail of the chunk that does not fill a vector
+            for(; i < length; i++) {
+                if(chars.contains(buffer[i]) == false) {
+                    return position + i;
+                }
+            }
+            position += length;
+        }
+        return end;
+    }
+
+    /**
+     * Obtain the first character of a range of a CharSet, as a lane value.
+     * @param chars the CharSet
+     * @param index the index of the range
+     * @return the first character of the range
+     */
+    private static short lo(CharSet chars, int index) {
+        return (short) chars.getRangeLo(index);
+    }
+
+    /**
+     * Obtain the width of a range of a CharSet, less one, as a lane value.
+     * @param chars the CharSet
+     * @param index the index of the range
+     * @return the last character of the range, less the first
+     */
+    private static short span(CharSet chars, int index) {
+        return (short) (chars.getRangeHi(index) - chars.getRangeLo(index));
+    }
+
+    /**
+     * The number of chars copied out of the String at a time.
+     */
+    private static final int CHUNK = 1024;
+
+    /**
+     * The most ranges a CharSet may have to be scanned with vectors.
+     */
+    private static final int MAX_RANGES = 4;
+
+    /**
+     * The number of chars scanned one at a time, before the vectors are
+     * set up.
+     */
+    private static final int SCALAR_PREFIX = 32;
+
+    /**
+     * The shape of the vectors: as many 16-bit lanes as the machine
+     * prefers.
+     */
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+}
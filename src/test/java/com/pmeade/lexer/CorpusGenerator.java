@@ -0,0 +1,302 @@
+/*
+ * CorpusGenerator.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * CorpusGenerator produces synthetic input for a lexical specification,
+ * for benchmarks and throughput tests. The input is a random sequence of
+ * Token texts, each drawn from the regular expression of its TokenType.
+ *
+ * The mix of TokenType objects is controlled by weights; by default every
+ * TokenType has a weight of 1. The output depends only on the
+ * specification, the weights, the seed, and the length, so a corpus can
+ * be reproduced without having to store it.
+ *
+ * Every Token is checked against the one that follows it, so that the
+ * corpus lexes back into the Token objects it was generated from: two
+ * INTEGER_LITERAL texts never run together, and so on. When a Token can
+ * not be followed by anything the weights allow, a Token of a skipped
+ * TokenType (whitespace, typically) is placed between them.
+ *
+ * CorpusGenerator lives in the test sources, and is shared with the
+ * benchmarks module through the test jar of the lexer; it is not part of
+ * the library itself.
+ *
+ * The general pattern is this:
+ *
+ * <code>
+ * String input = new CorpusGenerator(MathLexer.MATH_TOKENS)
+ *           .seed(42)
+ *           .weight("WHITESPACE", 3.0)
+ *           .generate(1 &lt;&lt; 20);
+ * </code>
+ *
+ * A TokenType whose Pattern RegexParser can not analyze, or which has
+ * features (lookaround, back references, Unicode categories, and so on)
+ * that can not be sampled, is left out of the corpus.
+ */
+public class CorpusGenerator
+{
+    /**
+     * Construct a CorpusGenerator for the provided specification.
+     * @param spec List of TokenType objects, in priority order
+     * @throws NullPointerException if spec is null
+     */
+    public CorpusGenerator(List<TokenType> spec)
+    {
+        this.spec = LexerSpec.compile(spec);
+        this.sampler = new TokenSampler(this.spec);
+        this.seed = 0L;
+        this.weights = new double[this.spec.size()];
+        for(int i=0; i<weights.length; i++) {
+            weights[i] = 1.0;
+        }
+    }
+
+    /**
+     * Specify the seed of the random number generator.
+     * @param seed the seed of the random number generator
+     * @return CorpusGenerator for additional chained calls
+     */
+    public CorpusGenerator seed(long seed)
+    {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Specify the relative frequency of a TokenType in the corpus.
+     * @param name the name of the TokenType
+     * @param weight the weight of the TokenType; 0 leaves it out entirely
+     * @return CorpusGenerator for additional chained calls
+     * @throws IllegalArgumentException if no TokenType has the provided
+     *         name, or the weight is negative
+     */
+    public CorpusGenerator weight(String name, double weight)
+    {
+        boolean found = false;
+        for(int i=0; i<spec.size(); i++) {
+            if(spec.getTokenType(i).getName().equals(name)) {
+                setWeight(i, weight);
+                found = true;
+            }
+        }
+        if(found == false) {
+            throw new IllegalArgumentException("no TokenType named " + name);
+        }
+        return this;
+    }
+
+    /**
+     * Specify the relative frequency of a TokenType in the corpus.
+     * @param tokenType the TokenType
+     * @param weight the weight of the TokenType; 0 leaves it out entirely
+     * @return CorpusGenerator for additional chained calls
+     * @throws IllegalArgumentException if the TokenType is not part of the
+     *         specification, or the weight is negative
+     */
+    public CorpusGenerator weight(TokenType tokenType, double weight)
+    {
+        int index = spec.getTokenTypes().indexOf(tokenType);
+        if(index < 0) {
+            throw new IllegalArgumentException("TokenType is not in the specification");
+        }
+        setWeight(index, weight);
+        return this;
+    }
+
+    /**
+     * Generate a corpus.
+     * @param length the length of the corpus, in characters
+     * @return String containing the corpus; this is at least the provided
+     *         length, ending at the first Token boundary at or after it
+     * @throws IllegalStateException if no TokenType can be sampled
+     */
+    public String generate(int length)
+    {
+        StringBuilder sb = new StringBuilder(length + 64);
+        try {
+            generate(sb, length);
+        } catch(IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Generate a corpus, writing it to the provided Appendable. Only a
+     * couple of Token texts are held in memory at any time, so this is how
+     * to generate a corpus too large for a String.
+     * @param out the Appendable to receive the corpus
+     * @param length the length of the corpus, in characters; the corpus
+     *               ends at the first Token boundary at or after it
+     * @return the number of Token objects in the corpus
+     * @throws IOException if the corpus can not be written
+     * @throws IllegalStateException if no TokenType can be sampled
+     */
+    public long generate(Appendable out, long length) throws IOException
+    {
+        if(length <= 0L) return 0L;
+        Random random = new Random(seed);
+        double[] effective = effectiveWeights(random);
+        long written = 0L;
+        long count = 0L;
+        String current = null;
+        int currentType = -1;
+        while(current == null || written + current.length() < length) {
+            String next = null;
+            int nextType = -1;
+            for(int attempt=0; attempt<MAX_ATTEMPTS; attempt++) {
+                // after a few failures, try to separate them instead
+                boolean separate = (attempt >= MAX_ATTEMPTS / 2);
+                int index = choose(random, effective, separate);
+                if(index < 0) continue;
+                String text = sampler.sample(random, index);
+                if(text == null) continue;
+                if(sampler.lexesAs(text, index) == false) continue;
+                if(current == null || sampler.follows(current, currentType, text)) {
+                    next = text;
+                    nextType = index;
+                    break;
+                }
+            }
+            if(next == null && current == null) {
+                throw new IllegalStateException("no TokenType can be sampled");
+            }
+            if(next == null) {
+                throw new IllegalStateException("nothing can follow "
+                        + spec.getTokenType(currentType).getName() + " \"" + current + "\"");
+            }
+            if(current != null) {
+                out.append(current);
+                written += current.length();
+                count++;
+            }
+            current = next;
+            currentType = nextType;
+        }
+        out.append(current);
+        count++;
+        return count;
+    }
+
+    /**
+     * Set the weight of a TokenType.
+     * @param index the index of the TokenType
+     * @param weight the weight of the TokenType
+     */
+    private void setWeight(int index, double weight) {
+        if(weight < 0.0 || Double.isNaN(weight)) {
+            throw new IllegalArgumentException("weight must not be negative");
+        }
+        weights[index] = weight;
+    }
+
+    /**
+     * Determine the weights actually used, leaving out the TokenType
+     * objects that can not be sampled.
+     * @param random the random number generator
+     * @return the weight of each TokenType
+     */
+    private double[] effectiveWeights(Random random) {
+        double[] result = new double[weights.length];
+        double total = 0.0;
+        for(int i=0; i<weights.length; i++) {
+            if(weights[i] > 0.0 && canSample(random, i)) {
+                result[i] = weights[i];
+                total += weights[i];
+            }
+        }
+        if(total == 0.0) {
+            throw new IllegalStateException("no TokenType can be sampled");
+        }
+        return result;
+    }
+
+    /**
+     * Determine if a TokenType can be sampled.
+     * @param random the random number generator
+     * @param index the index of the TokenType
+     * @return true, if the TokenSampler produced text for the TokenType
+     */
+    private boolean canSample(Random random, int index) {
+        if(spec.getTokenType(index).getSyntax() == null) return false;
+        for(int attempt=0; attempt<MAX_ATTEMPTS; attempt++) {
+            if(sampler.sample(random, index) != null) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Choose a TokenType at random, according to the weights.
+     * @param random the random number generator
+     * @param weights the weight of each TokenType
+     * @param skippedOnly true, if only skipped TokenType objects may be
+     *                    chosen
+     * @return the index of the chosen TokenType, or -1 if there is none
+     */
+    private int choose(Random random, double[] weights, boolean skippedOnly) {
+        double total = 0.0;
+        for(int i=0; i<weights.length; i++) {
+            if(skippedOnly && spec.getTokenType(i).isSkipped() == false) continue;
+            total += weights[i];
+        }
+        if(total == 0.0) return -1;
+        double choice = random.nextDouble() * total;
+        int last = -1;
+        for(int i=0; i<weights.length; i++) {
+            if(skippedOnly && spec.getTokenType(i).isSkipped() == false) continue;
+            if(weights[i] == 0.0) continue;
+            last = i;
+            choice -= weights[i];
+            if(choice < 0.0) return i;
+        }
+        return last;
+    }
+
+    /**
+     * The number of attempts made to sample a TokenType, or to find a
+     * Token that can follow the current one.
+     */
+    private static final int MAX_ATTEMPTS = 32;
+
+    /**
+     * The TokenSampler that draws and checks every Token text.
+     */
+    private final TokenSampler sampler;
+
+    /**
+     * The seed of the random number generator.
+     */
+    private long seed;
+
+    /**
+     * The compiled lexical specification.
+     */
+    private final LexerSpec spec;
+
+    /**
+     * The relative frequency of each TokenType.
+     */
+    private final double[] weights;
+}
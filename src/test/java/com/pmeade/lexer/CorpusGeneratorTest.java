@@ -0,0 +1,161 @@
+/*
+ * CorpusGeneratorTest.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import com.pmeade.lexer.example.MathLexer;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CorpusGeneratorTest
+{
+    public CorpusGeneratorTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @Test
+    public void testAlwaysSucceed() {
+        assertTrue(true);
+    }
+
+    @Test
+    public void testLength() {
+        String corpus = new CorpusGenerator(MathLexer.MATH_TOKENS).generate(10000);
+        assertTrue(corpus.length() >= 10000);
+        assertTrue(corpus.length() < 10100);
+        assertEquals("", new CorpusGenerator(MathLexer.MATH_TOKENS).generate(0));
+    }
+
+    @Test
+    public void testSeed() {
+        CorpusGenerator generator = new CorpusGenerator(MathLexer.MATH_TOKENS);
+        String corpus1 = generator.seed(1L).generate(1000);
+        String corpus2 = generator.seed(1L).generate(1000);
+        String corpus3 = generator.seed(2L).generate(1000);
+        assertEquals(corpus1, corpus2);
+        assertFalse(corpus1.equals(corpus3));
+    }
+
+    @Test
+    public void testLexesWithoutError() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        long count = new CorpusGenerator(MathLexer.MATH_TOKENS).seed(7L).generate(sb, 20000);
+        SpecializedLexer lexer = new SpecializedLexer(MathLexer.MATH_TOKENS, sb);
+        List<Token> tokens = lexer.scanNoSkip();
+        assertFalse(lexer.isError());
+        assertEquals(count, tokens.size());
+    }
+
+    @Test
+    public void testWeights() {
+        String corpus = new CorpusGenerator(MathLexer.MATH_TOKENS)
+            .weight("PLUS", 10.0)
+            .weight("FLOAT_LITERAL", 0.0)
+            .weight(MathLexer.MATH_TOKENS.get(8), 0.0)
+            .generate(20000);
+        List<Token> tokens = new SpecializedLexer(MathLexer.MATH_TOKENS, corpus).scanNoSkip();
+        int plus = 0;
+        for(Token token : tokens) {
+            assertFalse("FLOAT_LITERAL".equals(token.getTokenType().getName()));
+            if(token.getTokenType().getName().equals("PLUS")) plus++;
+        }
+        // PLUS is 10 of 16 parts of the weight, less separating whitespace
+        assertTrue(plus > tokens.size() / 2);
+    }
+
+    @Test
+    public void testSeparators() {
+        List<TokenType> tokenTypes = new ArrayList<TokenType>();
+        tokenTypes.add(new TokenTypeBuilder().name("WORD").pattern("[a-z]+").create());
+        tokenTypes.add(new TokenTypeBuilder().name("SPACE").pattern(" ").skip().create());
+        String corpus = new CorpusGenerator(tokenTypes).weight("SPACE", 0.01).generate(1000);
+        List<Token> tokens = new SpecializedLexer(tokenTypes, corpus).scanNoSkip();
+        for(int i=1; i<tokens.size(); i++) {
+            // words can only ever be separated by a space
+            assertFalse(tokens.get(i-1).getTokenType() == tokenTypes.get(0)
+                    && tokens.get(i).getTokenType() == tokenTypes.get(0));
+        }
+        assertTrue(tokens.size() > 100);
+    }
+
+    @Test
+    public void testKeywords() {
+        List<TokenType> tokenTypes = new ArrayList<TokenType>();
+        tokenTypes.add(new TokenTypeBuilder().name("IF").pattern("if").create());
+        tokenTypes.add(new TokenTypeBuilder().name("IDENT").pattern("[a-j]{1,2}").create());
+        tokenTypes.add(new TokenTypeBuilder().name("SPACE").pattern(" ").skip().create());
+        String corpus = new CorpusGenerator(tokenTypes).generate(5000);
+        Lexer lexer = new Lexer(tokenTypes, corpus, ExecutionMode.SEQUENTIAL);
+        lexer.scanNoSkip();
+        assertFalse(lexer.isError());
+    }
+
+    @Test
+    public void testUnsampled() {
+        List<TokenType> tokenTypes = new ArrayList<TokenType>();
+        tokenTypes.add(new TokenTypeBuilder().name("LETTERS").pattern("\\p{L}+").create());
+        try {
+            new CorpusGenerator(tokenTypes).generate(100);
+            fail();
+        } catch(IllegalStateException e) {
+            // expected
+        }
+        tokenTypes.add(new TokenTypeBuilder().name("DIGITS").pattern("[0-9]").create());
+        String corpus = new CorpusGenerator(tokenTypes).generate(100);
+        assertTrue(corpus.matches("[0-9]+"));
+    }
+
+    @Test
+    public void testBadWeights() {
+        CorpusGenerator generator = new CorpusGenerator(MathLexer.MATH_TOKENS);
+        try {
+            generator.weight("NO_SUCH_TYPE", 1.0);
+            fail();
+        } catch(IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            generator.weight("PLUS", -1.0);
+            fail();
+        } catch(IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
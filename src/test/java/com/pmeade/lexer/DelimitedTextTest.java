@@ -0,0 +1,177 @@
+/*
+ * DelimitedTextTest.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import com.pmeade.lexer.example.MathLexer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class DelimitedTextTest
+{
+    private static final String[] FRAGMENTS = {
+        "/*", "*/", "*", "/", "\"", "\\", "<<", ">>", "<", ">", "a", " ", "\n", "😀", "\uD83D",
+    };
+
+    public DelimitedTextTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @Test
+    public void testAlwaysSucceed() {
+        assertTrue(true);
+    }
+
+    @Test
+    public void testMatch() {
+        DelimitedText comment = new DelimitedText("/*", "*/");
+        assertEquals(7, comment.match("/* a */ b */", 0, 12));
+        assertEquals(4, comment.match("/**/", 0, 4));
+        assertEquals(DelimitedText.NO_MATCH, comment.match("/*/", 0, 3));
+        assertEquals(DelimitedText.NO_MATCH, comment.match(" /**/", 0, 5));
+        assertEquals(DelimitedText.NO_MATCH, comment.match("/* a */", 0, 6));
+        DelimitedText string = new DelimitedText("\"", "\"", '\\');
+        assertEquals(6, string.match("\"a\\\"b\"c\"", 0, 8));
+        assertEquals(4, string.match("\"\\\\\"\"", 0, 5));
+        assertEquals(DelimitedText.NO_MATCH, string.match("\"a\\", 0, 3));
+        DelimitedText nested = new DelimitedText("/*", "*/").nest(1);
+        assertEquals(15, nested.match("/* /* a */ b */ */", 0, 18));
+        assertEquals(DelimitedText.NO_MATCH, nested.match("/* /* a */", 0, 10));
+        // deeper than the nesting, an open delimiter is just text
+        assertEquals(14, nested.match("/* /* /* */ */ */ */", 0, 20));
+    }
+
+    @Test
+    public void testMatchesRegex() {
+        DelimitedText[] texts = {
+            new DelimitedText("/*", "*/"),
+            new DelimitedText("\"", "\""),
+            new DelimitedText("\"", "\"", '\\'),
+            new DelimitedText("<<", ">>", '\\'),
+            new DelimitedText("/*", "*/").nest(1),
+            new DelimitedText("<", ">", '\\').nest(3),
+            new DelimitedText("<<", ">").nest(2),
+        };
+        Random random = new Random(50);
+        for(DelimitedText text : texts) {
+            Pattern pattern = Pattern.compile(text.toRegex());
+            for(int i=0; i<2000; i++) {
+                StringBuilder sb = new StringBuilder();
+                int count = random.nextInt(16);
+                for(int j=0; j<count; j++) {
+                    sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+                }
+                String input = sb.toString();
+                int start = random.nextInt(input.length() + 1);
+                int end = start + random.nextInt(input.length() - start + 1);
+                Matcher matcher = pattern.matcher(input);
+                matcher.region(start, end);
+                int expected = matcher.lookingAt() ? matcher.end() - start : DelimitedText.NO_MATCH;
+                assertEquals(text + " on \"" + input + "\" at " + start,
+                        expected, text.match(input, start, end));
+            }
+        }
+    }
+
+    @Test
+    public void testLongBody() {
+        TokenType comment = new TokenTypeBuilder().name("COMMENT").delimited("/*", "*/").skip().create();
+        TokenType string = new TokenTypeBuilder().name("STRING").delimited("\"", "\"", '\\').create();
+        List<TokenType> spec = new ArrayList<TokenType>(MathLexer.MATH_TOKENS);
+        spec.add(0, comment);
+        spec.add(1, string);
+        StringBuilder sb = new StringBuilder("1 /*");
+        for(int i=0; i<100000; i++) sb.append("comment\n");
+        sb.append("*/ + \"");
+        for(int i=0; i<100000; i++) sb.append("string\\\"");
+        sb.append("\" + 2");
+        String input = sb.toString();
+        for(ExecutionMode mode : ExecutionMode.values()) {
+            List<Token> tokens = new Lexer(spec, input, mode).scan();
+            assertEquals(5, tokens.size());
+            assertSame(string, tokens.get(2).getTokenType());
+            assertEquals(800002, tokens.get(2).getTokenText().length());
+        }
+        List<Token> tokens = new SpecializedLexer(spec, input).scan();
+        assertEquals(5, tokens.size());
+        assertSame(string, tokens.get(2).getTokenType());
+    }
+
+    @Test
+    public void testNesting() {
+        new DelimitedText("(*", "*)").nest(2);
+        try {
+            new DelimitedText("\"", "\"").nest(1);
+            fail();
+        } catch(IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            new DelimitedText("/*", "*/").nest(-1);
+            fail();
+        } catch(IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testInvalidDelimiters() {
+        try {
+            new DelimitedText(null, "*/");
+            fail();
+        } catch(NullPointerException e) {
+            // expected
+        }
+        try {
+            new DelimitedText("", "*/");
+            fail();
+        } catch(IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            new DelimitedText("'", "\\'", '\\');
+            fail();
+        } catch(IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * KeywordTableTest.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class KeywordTableTest
+{
+    private static final String[] JAVA_KEYWORDS = {
+        "abstract", "assert", "boolean", "break", "byte", "case", "catch",
+        "char", "class", "const", "continue", "default", "do", "double",
+        "else", "enum", "extends", "final", "finally", "float", "for", "goto",
+        "if", "implements", "import", "instanceof", "int", "interface", "long",
+        "native", "new", "package", "private", "protected", "public", "return",
+        "short", "static", "strictfp", "super", "switch", "synchronized",
+        "this", "throw", "throws", "transient", "try", "void", "volatile",
+        "while",
+    };
+
+    public KeywordTableTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @Test
+    public void testAlwaysSucceed() {
+        assertTrue(true);
+    }
+
+    @Test
+    public void testLookup() {
+        List<TokenType> keywords = keywords(false, JAVA_KEYWORDS);
+        KeywordTable table = new KeywordTable(keywords);
+        assertEquals(JAVA_KEYWORDS.length, table.getKeywords().size());
+        for(TokenType keyword : keywords) {
+            String input = "(" + keyword.getStaticText() + ")";
+            assertSame(keyword, table.lookup(input, 1, input.length() - 1));
+            assertNull(table.lookup(input, 0, input.length() - 1));
+            if(keyword.getName().equals("THROWS") == false) {
+                assertNull(table.lookup(input, 1, input.length() - 2));
+            }
+            assertNull(table.lookup(input.toUpperCase(), 1, input.length() - 1));
+        }
+        assertNull(table.lookup("identifier", 0, 10));
+        assertNull(table.lookup("", 0, 0));
+    }
+
+    @Test
+    public void testIgnoreCase() {
+        List<TokenType> keywords = keywords(true, "select", "from", "where");
+        KeywordTable table = new KeywordTable(keywords);
+        assertSame(keywords.get(0), table.lookup("SELECT", 0, 6));
+        assertSame(keywords.get(1), table.lookup("From", 0, 4));
+        assertSame(keywords.get(2), table.lookup("wHeRe", 0, 5));
+        assertNull(table.lookup("wHeRa", 0, 5));
+    }
+
+    @Test
+    public void testEmpty() {
+        KeywordTable table = new KeywordTable(new ArrayList<TokenType>());
+        assertTrue(table.getKeywords().isEmpty());
+        assertNull(table.lookup("if", 0, 2));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testSameText() {
+        new KeywordTable(keywords(false, "if", "while", "if"));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testSameTextIgnoringCase() {
+        new KeywordTable(keywords(true, "if", "IF"));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testNoStaticText() {
+        List<TokenType> keywords = keywords(false, "if");
+        keywords.add(new TokenTypeBuilder().name("WHILE").pattern("while").create());
+        new KeywordTable(keywords);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testMixedCaseSensitivity() {
+        List<TokenType> keywords = keywords(false, "if");
+        keywords.addAll(keywords(true, "while"));
+        new KeywordTable(keywords);
+    }
+
+    @Test(expected=NullPointerException.class)
+    public void testNullKeyword() {
+        List<TokenType> keywords = keywords(false, "if");
+        keywords.add(null);
+        new KeywordTable(keywords);
+    }
+
+    private static List<TokenType> keywords(boolean ignoreCase, String... texts) {
+        List<TokenType> keywords = new ArrayList<TokenType>();
+        for(String text : texts) {
+            keywords.add(new TokenTypeBuilder().name(text.toUpperCase())
+                    .pattern(text).literal().ignoreCase(ignoreCase).create());
+        }
+        return keywords;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * LexerEventsTest.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import com.pmeade.lexer.example.MathLexer;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LexerEventsTest
+{
+    public LexerEventsTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @Test
+    public void testAlwaysSucceed() {
+        assertTrue(true);
+    }
+
+    @Test
+    public void testFlightRecorderAvailable() {
+        // on the test class path from META-INF/versions/17, see pom.xml
+        assertEquals("com.pmeade.lexer.JfrLexerEvents", LexerEvents.INSTANCE.getClass().getName());
+    }
+
+    @Test
+    public void testDisabledByDefault() throws Exception {
+        List<RecordedEvent> events = record(null, false);
+        for(RecordedEvent event : events) {
+            assertFalse(event.getEventType().getName().startsWith("com.pmeade.lexer."));
+        }
+    }
+
+    @Test
+    public void testEvents() throws Exception {
+        Configuration configuration = lexerConfiguration();
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        RecordedEvent token = null;
+        RecordedEvent error = null;
+        for(RecordedEvent event : record(configuration, false)) {
+            String name = event.getEventType().getName();
+            Integer count = counts.get(name);
+            counts.put(name, (count == null) ? 1 : count + 1);
+            if(name.equals("com.pmeade.lexer.Token")) token = event;
+            if(name.equals("com.pmeade.lexer.Error")) error = event;
+        }
+        // created, reset
+        assertEquals(Integer.valueOf(2), counts.get("com.pmeade.lexer.Lifecycle"));
+        // scanNoSkip, scan
+        assertEquals(Integer.valueOf(2), counts.get("com.pmeade.lexer.Scan"));
+        // the first Token of each scan is sampled
+        assertEquals(Integer.valueOf(2), counts.get("com.pmeade.lexer.Token"));
+        assertEquals(Integer.valueOf(2), counts.get("com.pmeade.lexer.Error"));
+        assertEquals("LPAREN", token.getString("tokenType"));
+        assertEquals(0, token.getInt("position"));
+        assertEquals(1, token.getInt("length"));
+        assertEquals(7, error.getInt("position"));
+        assertEquals(TokenType.DEFAULT_STATE, error.getString("state"));
+        assertEquals(0, error.getInt("recoveredLength"));
+    }
+
+    @Test
+    public void testRecoveredError() throws Exception {
+        List<RecordedEvent> errors = new ArrayList<RecordedEvent>();
+        for(RecordedEvent event : record(lexerConfiguration(), true)) {
+            if(event.getEventType().getName().equals("com.pmeade.lexer.Error")) errors.add(event);
+        }
+        // the ERROR Token of each scan
+        assertEquals(2, errors.size());
+        assertEquals(7, errors.get(0).getInt("position"));
+        assertEquals(7, errors.get(1).getInt("position"));
+        // just the '%', up to the whitespace after it
+        assertEquals(1, errors.get(0).getInt("recoveredLength"));
+        assertEquals(TokenType.DEFAULT_STATE, errors.get(0).getString("state"));
+    }
+
+    @Test
+    public void testErrorState() throws Exception {
+        List<TokenType> spec = new ArrayList<TokenType>();
+        spec.add(new TokenTypeBuilder().name("TYPE_NAME").pattern("[A-Z][A-Za-z]*")
+                .state(TokenType.DEFAULT_STATE, "TYPE").emit().create());
+        spec.add(new TokenTypeBuilder().name("IDENT").pattern("[a-z]+").emit().create());
+        spec.add(new TokenTypeBuilder().name("LESS_THAN").pattern("<")
+                .pushState("TYPE").emit().create());
+        spec.add(new TokenTypeBuilder().name("GREATER_THAN").pattern(">")
+                .state("TYPE").popState().emit().create());
+        List<RecordedEvent> errors = new ArrayList<RecordedEvent>();
+        for(RecordedEvent event : record(lexerConfiguration(), spec, "a<bc>", true)) {
+            if(event.getEventType().getName().equals("com.pmeade.lexer.Error")) errors.add(event);
+        }
+        // IDENT is not active in the TYPE state; "bc" is passed over
+        assertEquals(2, errors.size());
+        assertEquals(2, errors.get(0).getInt("position"));
+        assertEquals("TYPE", errors.get(0).getString("state"));
+        assertEquals(2, errors.get(0).getInt("recoveredLength"));
+    }
+
+    private static Configuration lexerConfiguration() throws Exception {
+        Reader reader = new InputStreamReader(LexerEventsTest.class.getResourceAsStream("/lexer.jfc"), "UTF-8");
+        return Configuration.create(reader);
+    }
+
+    private static List<RecordedEvent> record(Configuration configuration, boolean errorRecovery) throws Exception {
+        return record(configuration, MathLexer.MATH_TOKENS, "(1 + 2 % 3)", errorRecovery);
+    }
+
+    private static List<RecordedEvent> record(Configuration configuration, List<TokenType> spec,
+            String input, boolean errorRecovery) throws Exception
+    {
+        Recording recording = (configuration == null) ? new Recording() : new Recording(configuration);
+        File file = File.createTempFile("lexer", ".jfr");
+        try {
+            recording.start();
+            Lexer lexer = new Lexer(spec, input, ExecutionMode.SEQUENTIAL);
+            lexer.setErrorRecovery(errorRecovery);
+            lexer.scanNoSkip();
+            lexer.reset();
+            lexer.scan();
+            recording.stop();
+            recording.dump(file.toPath());
+            return RecordingFile.readAllEvents(file.toPath());
+        } finally {
+            recording.close();
+            file.delete();
+        }
+    }
+}
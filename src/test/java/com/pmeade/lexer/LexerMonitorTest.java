@@ -0,0 +1,168 @@
+/*
+ * LexerMonitorTest.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import com.pmeade.lexer.example.MathLexer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LexerMonitorTest
+{
+    private static final String INPUT = "(1 + 2.5) * 3";
+
+    public LexerMonitorTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @Test
+    public void testAlwaysSucceed() {
+        assertTrue(true);
+    }
+
+    @Test
+    public void testSnapshot() {
+        for(ExecutionMode mode : ExecutionMode.values()) {
+            LexerMonitor monitor = new LexerMonitor(MathLexer.MATH_TOKENS);
+            Lexer lexer = new Lexer(MathLexer.MATH_TOKENS, INPUT, mode);
+            lexer.setMonitor(monitor);
+            List<Token> tokens = lexer.scanNoSkip();
+            LexerStats stats = monitor.snapshot();
+            assertEquals(tokens.size(), stats.getTokenCount());
+            assertEquals(0, stats.getErrorCount());
+            assertEquals(MathLexer.MATH_TOKENS.size(), stats.getTokenTypeStats().size());
+            long wins = 0;
+            long chars = 0;
+            for(TokenTypeStats typeStats : stats.getTokenTypeStats()) {
+                // every TokenType is tried at every position, unless the
+                // Lexer knows it could not win there
+                if(mode == ExecutionMode.ADAPTIVE) {
+                    assertTrue(typeStats.getAttempts() <= tokens.size());
+                } else {
+                    assertEquals(tokens.size(), typeStats.getAttempts());
+                }
+                assertTrue(typeStats.getSuccesses() >= typeStats.getWins());
+                wins += typeStats.getWins();
+                if(typeStats.getTokenType().getName().equals("WHITESPACE")) {
+                    assertEquals(4, typeStats.getWins());
+                    assertEquals(4, typeStats.getMatchedChars());
+                }
+                if(typeStats.getTokenType().getName().equals("FLOAT_LITERAL")) {
+                    assertEquals(1, typeStats.getWins());
+                }
+            }
+            assertEquals(tokens.size(), wins);
+            assertTrue(stats.getElapsedNanos() > 0);
+        }
+    }
+
+    @Test
+    public void testErrors() {
+        LexerMonitor monitor = new LexerMonitor(MathLexer.MATH_TOKENS);
+        Lexer lexer = new Lexer(MathLexer.MATH_TOKENS, "1 % 2", ExecutionMode.SEQUENTIAL);
+        lexer.setMonitor(monitor);
+        lexer.scan();
+        assertTrue(lexer.isError());
+        assertEquals(1, monitor.getErrorCount());
+        assertEquals(2, monitor.getTokenCount());
+        monitor.reset();
+        assertEquals(0, monitor.getErrorCount());
+        assertEquals(0, monitor.getTokenCount());
+        assertEquals(0, monitor.snapshot().getTokenTypeStats().get(0).getAttempts());
+    }
+
+    @Test
+    public void testShared() {
+        LexerMonitor monitor = new LexerMonitor(MathLexer.MATH_TOKENS);
+        for(int i=0; i<3; i++) {
+            Lexer lexer = new Lexer(MathLexer.MATH_TOKENS, INPUT, ExecutionMode.SEQUENTIAL);
+            lexer.setMonitor(monitor);
+            lexer.scan();
+        }
+        assertEquals(33, monitor.getTokenCount());
+        assertTrue(monitor.getTokensPerSecond() > 0.0);
+    }
+
+    @Test
+    public void testUnmonitored() {
+        LexerMonitor monitor = new LexerMonitor(MathLexer.MATH_TOKENS);
+        Lexer lexer = new Lexer(MathLexer.MATH_TOKENS, INPUT, ExecutionMode.SEQUENTIAL);
+        lexer.setMonitor(monitor);
+        lexer.setMonitor(null);
+        lexer.scan();
+        assertEquals(0, monitor.getTokenCount());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testWrongSpec() {
+        List<TokenType> spec = new ArrayList<TokenType>(MathLexer.MATH_TOKENS);
+        spec.remove(0);
+        new Lexer(MathLexer.MATH_TOKENS, INPUT).setMonitor(new LexerMonitor(spec));
+    }
+
+    @Test
+    public void testRegister() throws Exception {
+        LexerMonitor monitor = new LexerMonitor(MathLexer.MATH_TOKENS);
+        monitor.register("LexerMonitorTest");
+        try {
+            Lexer lexer = new Lexer(MathLexer.MATH_TOKENS, INPUT, ExecutionMode.SEQUENTIAL);
+            lexer.setMonitor(monitor);
+            lexer.scan();
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("com.pmeade.lexer:type=LexerMonitor,name=\"LexerMonitorTest\"");
+            assertEquals(11L, server.getAttribute(name, "TokenCount"));
+            ObjectName plus = new ObjectName("com.pmeade.lexer:type=LexerMonitor,name=\"LexerMonitorTest\",tokenType=\"0:PLUS\"");
+            assertEquals("PLUS", server.getAttribute(plus, "Name"));
+            assertEquals(1L, server.getAttribute(plus, "Wins"));
+            try {
+                monitor.register("LexerMonitorTest");
+                fail();
+            } catch(IllegalStateException e) {
+                // expected
+            }
+        } finally {
+            monitor.unregister();
+        }
+        assertTrue(ManagementFactory.getPlatformMBeanServer().queryNames(
+                new ObjectName("com.pmeade.lexer:*"), null).isEmpty());
+    }
+}
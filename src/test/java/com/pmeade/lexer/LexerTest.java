@@ -21,6 +21,7 @@ package com.pmeade.lexer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 import org.junit.After;
 import org.junit.AfterClass;
 import static org.junit.Assert.*;
@@ -255,6 +256,210 @@ public class LexerTest
         }
     }
 
+    @Test
+    public void testSequentialScan() {
+        String input = "public static void main";
+        Lexer concurrent = new Lexer(wordTokens, input);
+        Lexer sequential = new Lexer(wordTokens, input, ExecutionMode.SEQUENTIAL);
+        assertEquals(concurrent.scanNoSkip(), sequential.scanNoSkip());
+        assertFalse(sequential.isError());
+    }
+
+    @Test
+    public void testSequentialMissingToken() {
+        Lexer lexer = new Lexer(calcTokens, "(3*5)", ExecutionMode.SEQUENTIAL);
+        assertEquals(2, lexer.scan().size());
+        assertTrue(lexer.isError());
+    }
+
+    @Test
+    public void testAdaptiveScan() {
+        String[] inputs = {
+            "public static void main",
+            "(2+3)-(4*5)/6",
+            "(3*5)",
+            "",
+        };
+        List<List<TokenType>> specs = new ArrayList<List<TokenType>>();
+        specs.add(wordTokens);
+        specs.add(calcTokens);
+        specs.add(ciLangTokens);
+        for(List<TokenType> spec : specs) {
+            for(String input : inputs) {
+                Lexer sequential = new Lexer(spec, input, ExecutionMode.SEQUENTIAL);
+                Lexer adaptive = new Lexer(spec, input, ExecutionMode.ADAPTIVE);
+                // twice, so the second pass runs in the learned order
+                for(int i=0; i<2; i++) {
+                    assertEquals(input, sequential.scanNoSkip(), adaptive.scanNoSkip());
+                    assertEquals(input, sequential.isError(), adaptive.isError());
+                    sequential.reset();
+                    adaptive.reset();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAdaptiveEarlyExit() {
+        List<TokenType> spec = new ArrayList<TokenType>();
+        spec.add(new TokenTypeBuilder().name("IDENT").pattern("[a-z]+").emit().create());
+        spec.add(new TokenTypeBuilder().name("IF").pattern("if").create());
+        spec.add(new TokenTypeBuilder().name("I").pattern("i").create());
+        spec.add(new TokenTypeBuilder().name("WHITESPACE").pattern("\\s+").skip().create());
+        LexerMonitor monitor = new LexerMonitor(spec);
+        Lexer lexer = new Lexer(spec, "iffy if i", ExecutionMode.ADAPTIVE);
+        lexer.setMonitor(monitor);
+        assertEquals(3, lexer.scan().size());
+        List<TokenTypeStats> stats = monitor.snapshot().getTokenTypeStats();
+        // IDENT wins every time; nothing can beat its match, or tie it
+        // from a lower priority
+        assertEquals(3, stats.get(0).getWins());
+        assertEquals(0, stats.get(1).getAttempts());
+        assertEquals(0, stats.get(2).getAttempts());
+        assertEquals(2, stats.get(3).getAttempts());
+    }
+
+    @Test
+    public void testMaxLength() {
+        List<TokenType> spec = new ArrayList<TokenType>();
+        spec.add(new TokenTypeBuilder().name("COMMENT").pattern("/\\*.*?\\*/")
+                .dotAll().maxLength(12).skip().create());
+        spec.add(new TokenTypeBuilder().name("NUMBER").pattern("[0-9]+")
+                .maxLength(3).emit().create());
+        spec.add(new TokenTypeBuilder().name("SLASH").pattern("/").emit().create());
+        spec.add(new TokenTypeBuilder().name("STAR").pattern("\\*").emit().create());
+        spec.add(new TokenTypeBuilder().name("WHITESPACE").pattern("\\s+").skip().create());
+        String input = "/* short */ 12345 /* far too long */";
+        for(ExecutionMode mode : ExecutionMode.values()) {
+            Lexer lexer = new Lexer(spec, input, mode);
+            List<Token> tokens = lexer.scanNoSkip();
+            assertEquals(mode.name(), "COMMENT", tokens.get(0).getTokenType().getName());
+            // the limit cuts the number short
+            assertEquals(mode.name(), "123", tokens.get(2).getTokenText());
+            assertEquals(mode.name(), "45", tokens.get(3).getTokenText());
+            // and the long comment is never found
+            assertEquals(mode.name(), "SLASH", tokens.get(5).getTokenType().getName());
+            assertEquals(mode.name(), new SpecializedLexer(spec, input).scanNoSkip(), tokens);
+        }
+    }
+
+    @Test
+    public void testLexicalStates() {
+        List<TokenType> spec = new ArrayList<TokenType>();
+        spec.add(new TokenTypeBuilder().name("TYPE_NAME").pattern("[A-Z][A-Za-z]*")
+                .state(TokenType.DEFAULT_STATE, "TYPE").emit().create());
+        spec.add(new TokenTypeBuilder().name("IDENT").pattern("[a-z]+").emit().create());
+        spec.add(new TokenTypeBuilder().name("LESS_THAN").pattern("<")
+                .state(TokenType.ANY_STATE).pushState("TYPE").emit().create());
+        spec.add(new TokenTypeBuilder().name("GREATER_THAN").pattern(">")
+                .state("TYPE").popState().emit().create());
+        spec.add(new TokenTypeBuilder().name("RIGHT_SHIFT").pattern(">>").emit().create());
+        spec.add(new TokenTypeBuilder().name("COMMA").pattern(",")
+                .state("TYPE").emit().create());
+        spec.add(new TokenTypeBuilder().name("QUOTE").pattern("\"")
+                .switchState("STRING").emit().create());
+        spec.add(new TokenTypeBuilder().name("CHARS").pattern("[^\"]+")
+                .state("STRING").emit().create());
+        spec.add(new TokenTypeBuilder().name("END_QUOTE").pattern("\"")
+                .state("STRING").switchState(TokenType.DEFAULT_STATE).emit().create());
+        spec.add(new TokenTypeBuilder().name("WHITESPACE").pattern("\\s+")
+                .state(TokenType.ANY_STATE).skip().create());
+        String input = "Map<String, List<TokenType>> x >> y \"Map<a>> b\" z";
+        String[] expected = {
+            "TYPE_NAME", "LESS_THAN", "TYPE_NAME", "COMMA", "TYPE_NAME",
+            "LESS_THAN", "TYPE_NAME", "GREATER_THAN", "GREATER_THAN",
+            "IDENT", "RIGHT_SHIFT", "IDENT",
+            "QUOTE", "CHARS", "END_QUOTE", "IDENT",
+        };
+        for(ExecutionMode mode : ExecutionMode.values()) {
+            Lexer lexer = new Lexer(spec, input, mode);
+            List<Token> tokens = lexer.scan();
+            assertFalse(mode.name(), lexer.isError());
+            assertEquals(mode.name(), expected.length, tokens.size());
+            for(int i=0; i<expected.length; i++) {
+                assertEquals(mode.name(), expected[i], tokens.get(i).getTokenType().getName());
+            }
+            assertEquals(TokenType.DEFAULT_STATE, lexer.getState());
+            SpecializedLexer specialized = new SpecializedLexer(spec, input);
+            assertEquals(mode.name(), tokens, specialized.scan());
+            // the same again, after returning to the default state
+            lexer.reset();
+            specialized.reset();
+            assertEquals(mode.name(), tokens, lexer.scan());
+            assertEquals(mode.name(), tokens, specialized.scan());
+        }
+    }
+
+    @Test
+    public void testLexicalStateError() {
+        List<TokenType> spec = new ArrayList<TokenType>();
+        spec.add(new TokenTypeBuilder().name("OPEN").pattern("\\(").pushState("PAREN").emit().create());
+        spec.add(new TokenTypeBuilder().name("CLOSE").pattern("\\)").state("PAREN").popState().emit().create());
+        spec.add(new TokenTypeBuilder().name("DIGIT").pattern("[0-9]").state("PAREN").emit().create());
+        Lexer lexer = new Lexer(spec, "(1)(2)1", ExecutionMode.SEQUENTIAL);
+        assertEquals(6, lexer.scan().size());
+        assertTrue(lexer.isError());
+        assertEquals(TokenType.DEFAULT_STATE, lexer.getState());
+        lexer = new Lexer(spec, "(1", ExecutionMode.SEQUENTIAL);
+        lexer.scan();
+        assertEquals("PAREN", lexer.getState());
+    }
+
+    @Test
+    public void testExpected() {
+        TokenType typeName = new TokenTypeBuilder().name("TYPE_NAME").pattern("[A-Z][a-z]*").emit().create();
+        TokenType lessThan = new TokenTypeBuilder().name("LESS_THAN").pattern("<").emit().create();
+        TokenType greaterThan = new TokenTypeBuilder().name("GREATER_THAN").pattern(">").emit().create();
+        TokenType rightShift = new TokenTypeBuilder().name("RIGHT_SHIFT").pattern(">>").emit().create();
+        TokenType whitespace = new TokenTypeBuilder().name("WHITESPACE").pattern("\\s+").skip().create();
+        List<TokenType> spec = new ArrayList<TokenType>();
+        Collections.addAll(spec, typeName, lessThan, greaterThan, rightShift, whitespace);
+        TokenTypeSet typeArgument = TokenTypeSet.of(typeName);
+        TokenTypeSet afterType = TokenTypeSet.of(lessThan, greaterThan);
+        String input = "Map<List<Set >>";
+        for(ExecutionMode mode : ExecutionMode.values()) {
+            Lexer lexer = new Lexer(spec, input, mode);
+            // left alone, the lexer finds a RIGHT_SHIFT
+            List<Token> tokens = lexer.scan();
+            assertSame(rightShift, tokens.get(tokens.size() - 1).getTokenType());
+            // but not when the parser expects a GREATER_THAN
+            lexer.reset();
+            SpecializedLexer specialized = new SpecializedLexer(spec, input);
+            TokenTypeSet[] sets = {
+                typeArgument, afterType, typeArgument, afterType,
+                typeArgument, afterType, afterType, afterType,
+            };
+            TokenType[] expected = {
+                typeName, lessThan, typeName, lessThan,
+                typeName, greaterThan, greaterThan, greaterThan,
+            };
+            for(int i=0; i<sets.length; i++) {
+                Token token = lexer.next(sets[i]);
+                assertEquals(mode.name(), token, specialized.next(sets[i]));
+                if(i < sets.length - 1) {
+                    assertSame(mode.name(), expected[i], token.getTokenType());
+                } else {
+                    assertNull(mode.name(), token);
+                }
+            }
+            assertFalse(mode.name(), lexer.isError());
+            // an unexpected token is an error
+            lexer.reset();
+            assertNull(mode.name(), lexer.next(afterType));
+            assertTrue(mode.name(), lexer.isError());
+        }
+    }
+
+    @Test(expected=NullPointerException.class)
+    public void testNextNullExpected() {
+        new Lexer(calcTokens, "(2+3)").next(null);
+    }
+
+    @Test(expected=NullPointerException.class)
+    public void testNullExecutionMode() {
+        new Lexer(calcTokens, "(2+3)", null);
+    }
+
     @Test
     public void testTokenSequence() {
         Lexer lexer = new Lexer(calcTokens, "(2+3)");
@@ -528,4 +733,374 @@ public class LexerTest
         assertNull(token2);
         assertFalse(lexer.isError());
     }
+
+    @Test
+    public void testKeywords() {
+        String[] texts = { "if", "else", "while", "return" };
+        List<TokenType> keywords = new ArrayList<TokenType>();
+        for(String text : texts) {
+            keywords.add(new TokenTypeBuilder().name(text.toUpperCase()).pattern(text).literal().create());
+        }
+        TokenType ident = new TokenTypeBuilder().name("IDENT").pattern("[A-Za-z_][A-Za-z0-9_]*").create();
+        TokenType identWithKeywords = new TokenTypeBuilder().name("IDENT")
+                .pattern("[A-Za-z_][A-Za-z0-9_]*").keywords(keywords).create();
+        TokenType number = new TokenTypeBuilder().name("NUMBER").pattern("[0-9]+").create();
+        TokenType whitespace = new TokenTypeBuilder().name("WHITESPACE").pattern("\\s+").skip().create();
+        // the keywords as their own TokenType objects, ahead of IDENT
+        List<TokenType> literalSpec = new ArrayList<TokenType>(keywords);
+        Collections.addAll(literalSpec, ident, number, whitespace);
+        // the keywords looked up from IDENT
+        List<TokenType> keywordSpec = new ArrayList<TokenType>();
+        Collections.addAll(keywordSpec, identWithKeywords, number, whitespace);
+        String input = "if x1 else while whilex return 42 iff _if Return";
+        List<Token> expected = new Lexer(literalSpec, input).scan();
+        for(ExecutionMode mode : ExecutionMode.values()) {
+            List<Token> tokens = new Lexer(keywordSpec, input, mode).scan();
+            assertEquals(mode.name(), expected.size(), tokens.size());
+            for(int i=0; i<tokens.size(); i++) {
+                Token want = expected.get(i);
+                Token got = tokens.get(i);
+                assertEquals(mode.name(), want.getTokenText(), got.getTokenText());
+                assertEquals(mode.name(), want.getPosition(), got.getPosition());
+                TokenType wantType = (want.getTokenType() == ident) ? identWithKeywords : want.getTokenType();
+                assertSame(mode.name(), wantType, got.getTokenType());
+            }
+            assertEquals(mode.name(), tokens, new SpecializedLexer(keywordSpec, input).scan());
+        }
+        // keywords carry their static text
+        Token token = new Lexer(keywordSpec, "while").next();
+        assertSame(keywords.get(2), token.getTokenType());
+        assertSame(keywords.get(2).getStaticText(), token.getTokenText());
+    }
+
+    @Test
+    public void testSymbolPool() {
+        TokenType ident = new TokenTypeBuilder().name("IDENT").pattern("[a-z]+").create();
+        TokenType plus = new TokenTypeBuilder().name("PLUS").pattern("+").literal().create();
+        List<TokenType> spec = new ArrayList<TokenType>();
+        Collections.addAll(spec, ident, plus);
+        String input = "x+y+x+x";
+        for(ExecutionMode mode : ExecutionMode.values()) {
+            SymbolPool pool = new SymbolPool(10);
+            Lexer lexer = new Lexer(spec, input, mode);
+            lexer.setSymbolPool(pool);
+            List<Token> tokens = lexer.scan();
+            SpecializedLexer specialized = new SpecializedLexer(spec, input);
+            specialized.setSymbolPool(pool);
+            assertEquals(mode.name(), tokens, specialized.scan());
+            assertEquals(mode.name(), new Lexer(spec, input, mode).scan(), tokens);
+            assertEquals(mode.name(), 0, tokens.get(0).getSymbol());
+            assertEquals(mode.name(), 1, tokens.get(2).getSymbol());
+            assertEquals(mode.name(), 0, tokens.get(4).getSymbol());
+            assertSame(mode.name(), tokens.get(0).getTokenText(), tokens.get(6).getTokenText());
+            // static text is never interned
+            assertEquals(mode.name(), Token.NO_SYMBOL, tokens.get(1).getSymbol());
+            assertEquals(mode.name(), 2, pool.size());
+        }
+        assertEquals(Token.NO_SYMBOL, new Lexer(spec, input).next().getSymbol());
+    }
+
+    @Test
+    public void testScanResultText() throws Exception {
+        TokenType ident = new TokenTypeBuilder().name("IDENT").pattern("[a-z]+").create();
+        TokenType comment = new TokenTypeBuilder().name("COMMENT").pattern("#.*?;").create();
+        ScanResult scanResult = new ScanResult(0, ident, "abc+d", false, null).call();
+        assertEquals(3, scanResult.getLength());
+        assertEquals("abc", scanResult.getTokenText());
+        // the text is copied out of the input only once
+        assertSame(scanResult.getTokenText(), scanResult.getTokenText());
+        scanResult = new ScanResult(1, comment, "# x; y;", false, null).call();
+        assertEquals(4, scanResult.getLength());
+        assertEquals("# x;", scanResult.getTokenText());
+        scanResult = new ScanResult(0, ident, "+abc", false, null).call();
+        assertEquals(-1, scanResult.getLength());
+        assertNull(scanResult.getTokenText());
+        scanResult = new ScanResult(0, ident, "abc", false, null);
+        scanResult.defer();
+        assertEquals(-1, scanResult.call().getLength());
+    }
+
+    @Test
+    public void testErrorRecovery() {
+        TokenType number = new TokenTypeBuilder().name("NUMBER").pattern("[0-9]+").create();
+        TokenType word = new TokenTypeBuilder().name("WORD").pattern("[a-z]+;").create();
+        TokenType whitespace = new TokenTypeBuilder().name("WHITESPACE").pattern(" +").skip().create();
+        List<TokenType> spec = new ArrayList<TokenType>();
+        Collections.addAll(spec, number, word, whitespace);
+        // "ab" could begin a WORD, but does not match one
+        String input = "12 $$ 34@ab5 x; é#";
+        String[] texts = { "12", "$$", "34", "@ab", "5", "x;", "é#" };
+        TokenType[] types = { number, TokenType.ERROR, number, TokenType.ERROR, number, word, TokenType.ERROR };
+        for(ExecutionMode mode : ExecutionMode.values()) {
+            Lexer lexer = new Lexer(spec, input, mode);
+            assertTrue(mode.name(), lexer.scan().size() < texts.length);
+            assertTrue(mode.name(), lexer.isError());
+            lexer = new Lexer(spec, input, mode);
+            lexer.setErrorRecovery(true);
+            List<Token> tokens = lexer.scan();
+            assertFalse(mode.name(), lexer.isError());
+            assertEquals(mode.name(), texts.length, tokens.size());
+            for(int i=0; i<texts.length; i++) {
+                assertEquals(mode.name(), texts[i], tokens.get(i).getTokenText());
+                assertSame(mode.name(), types[i], tokens.get(i).getTokenType());
+            }
+            SpecializedLexer specialized = new SpecializedLexer(spec, input);
+            specialized.setErrorRecovery(true);
+            assertEquals(mode.name(), tokens, specialized.scan());
+            assertFalse(mode.name(), specialized.isError());
+        }
+    }
+
+    @Test
+    public void testCharClass() {
+        TokenType hex = new TokenTypeBuilder().name("HEX").charClass("0x", "0-9a-fA-F").create();
+        TokenType integer = new TokenTypeBuilder().name("INTEGER").charClass("0-9").create();
+        TokenType word = new TokenTypeBuilder().name("WORD").charClass("a-zA-Z").maxLength(3).create();
+        TokenType whitespace = new TokenTypeBuilder().name("WHITESPACE").charClass(" \\t").skip().create();
+        List<TokenType> spec = new ArrayList<TokenType>();
+        Collections.addAll(spec, hex, integer, word, whitespace);
+        String input = "0x1F 42 0xg abcdef";
+        String[] texts = { "0x1F", "42", "0", "xg", "abc", "def" };
+        for(ExecutionMode mode : ExecutionMode.values()) {
+            List<Token> tokens = new Lexer(spec, input, mode).scan();
+            assertEquals(mode.name(), texts.length, tokens.size());
+            for(int i=0; i<texts.length; i++) {
+                assertEquals(mode.name(), texts[i], tokens.get(i).getTokenText());
+            }
+            assertEquals(mode.name(), tokens, new SpecializedLexer(spec, input).scan());
+        }
+    }
+
+    @Test
+    public void testSkipAhead() {
+        TokenType divide = new TokenTypeBuilder().name("DIVIDE").pattern("/").literal().create();
+        TokenType lineComment = new TokenTypeBuilder().name("LINE_COMMENT").pattern("//[^\\n]*").skip().create();
+        TokenType commentStart = new TokenTypeBuilder().name("COMMENT_START").pattern("/*").literal().skip().pushState("COMMENT").create();
+        TokenType commentText = new TokenTypeBuilder().name("COMMENT_TEXT").pattern("[^*]+|\\*").skip().state("COMMENT").create();
+        TokenType commentEnd = new TokenTypeBuilder().name("COMMENT_END").pattern("*/").literal().skip().state("COMMENT").popState().create();
+        TokenType number = new TokenTypeBuilder().name("NUMBER").charClass("0-9").create();
+        TokenType spaces = new TokenTypeBuilder().name("SPACES").pattern("\\s+").skip().create();
+        TokenType stars = new TokenTypeBuilder().name("STARS").pattern("\\s+\\*+").create();
+        List<TokenType> spec = new ArrayList<TokenType>();
+        Collections.addAll(spec, divide, lineComment, commentStart, commentText, commentEnd, number, spaces, stars);
+        String input = "1 / 2 // half\n /* a * b */ 3 /4  ** 5 //";
+        for(ExecutionMode mode : ExecutionMode.values()) {
+            List<Token> expected = new ArrayList<Token>();
+            for(Token token : new Lexer(spec, input, mode).scanNoSkip()) {
+                if(token.getTokenType().isSkipped() == false) expected.add(token);
+            }
+            Lexer lexer = new Lexer(spec, input, mode);
+            List<Token> tokens = lexer.scan();
+            assertEquals(mode.name(), expected, tokens);
+            assertFalse(mode.name(), lexer.isError());
+            assertSame(mode.name(), stars, tokens.get(tokens.size() - 2).getTokenType());
+            assertEquals(mode.name(), TokenType.DEFAULT_STATE, lexer.getState());
+            // the skipped tokens still count in the sequence
+            assertEquals(mode.name(), 0, tokens.get(0).getSequence());
+            assertEquals(mode.name(), 2, tokens.get(1).getSequence());
+        }
+    }
+
+    @Test
+    public void testStepBudget() throws Exception {
+        TokenType evil = new TokenTypeBuilder().name("EVIL").pattern("(a|aa)+b").create();
+        TokenType word = new TokenTypeBuilder().name("WORD").charClass("a-z").create();
+        TokenType whitespace = new TokenTypeBuilder().name("WHITESPACE").charClass(" ").skip().create();
+        List<TokenType> spec = new ArrayList<TokenType>();
+        Collections.addAll(spec, evil, word, whitespace);
+        StringBuilder sb = new StringBuilder("aab ");
+        for(int i=0; i<200; i++) sb.append('a');
+        String input = sb.toString();
+        for(ExecutionMode mode : ExecutionMode.values()) {
+            // the hostile run of a's overruns a small per-token budget
+            Lexer lexer = new Lexer(spec, input, mode);
+            lexer.setStepBudget(100, 0);
+            lexer.setErrorRecovery(true);
+            List<Token> tokens = lexer.scan();
+            assertEquals(mode.name(), 1, tokens.size());
+            assertSame(mode.name(), evil, tokens.get(0).getTokenType());
+            assertTrue(mode.name(), lexer.isError());
+            BudgetOverrun overrun = lexer.getBudgetOverrun();
+            assertNotNull(mode.name(), overrun);
+            assertSame(mode.name(), evil, overrun.getTokenType());
+            assertEquals(mode.name(), 4, overrun.getPosition());
+            assertEquals(mode.name(), 100L, overrun.getSteps());
+            assertFalse(mode.name(), overrun.isDocumentBudget());
+            // a budget that is big enough changes nothing
+            lexer.setStepBudget(100000, 1000000);
+            lexer.reset();
+            assertEquals(mode.name(), new Lexer(spec, input, mode).scan(), lexer.scan());
+            assertFalse(mode.name(), lexer.isError());
+            assertNull(mode.name(), lexer.getBudgetOverrun());
+            // the budget of the whole input runs out across tokens
+            lexer.setStepBudget(0, 10);
+            lexer.reset();
+            assertTrue(mode.name(), lexer.scan().size() <= 1);
+            assertTrue(mode.name(), lexer.getBudgetOverrun().isDocumentBudget());
+        }
+        try {
+            new Lexer(spec, input).setStepBudget(-1, 0);
+            fail();
+        } catch(IllegalArgumentException e) {
+            // expected
+        }
+        // the matches deciding a token share its budget
+        TokenType evil2 = new TokenTypeBuilder().name("EVIL2").pattern("(a|aa)+c").create();
+        spec = new ArrayList<TokenType>();
+        Collections.addAll(spec, evil, evil2, word);
+        sb = new StringBuilder();
+        for(int i=0; i<16; i++) sb.append('a');
+        input = sb.toString();
+        long[] alone = { Long.MAX_VALUE };
+        new ScanResult(0, evil, input, false, alone).call();
+        long cost = Long.MAX_VALUE - alone[0];
+        long budget = cost + cost / 2;
+        for(ExecutionMode mode : ExecutionMode.values()) {
+            Lexer lexer = new Lexer(spec, input, mode);
+            lexer.setStepBudget(budget, 0);
+            assertTrue(mode.name(), lexer.scan().isEmpty());
+            BudgetOverrun overrun = lexer.getBudgetOverrun();
+            assertSame(mode.name(), evil2, overrun.getTokenType());
+            assertEquals(mode.name(), 0, overrun.getPosition());
+            assertEquals(mode.name(), budget, overrun.getSteps());
+            assertFalse(mode.name(), overrun.isDocumentBudget());
+            // and the budget of the input runs out at the same decision
+            lexer.setStepBudget(0, budget);
+            lexer.reset();
+            assertTrue(mode.name(), lexer.scan().isEmpty());
+            overrun = lexer.getBudgetOverrun();
+            assertSame(mode.name(), evil2, overrun.getTokenType());
+            assertEquals(mode.name(), 0, overrun.getPosition());
+            assertTrue(mode.name(), overrun.isDocumentBudget());
+        }
+    }
+
+    @Test
+    public void testFindAhead() {
+        TokenType comment = new TokenTypeBuilder().name("COMMENT").pattern("/\\*.*?\\*/").dotAll().create();
+        TokenType word = new TokenTypeBuilder().name("WORD").charClass("a-z").create();
+        TokenType slash = new TokenTypeBuilder().name("SLASH").pattern("/").literal().create();
+        TokenType star = new TokenTypeBuilder().name("STAR").pattern("*").literal().create();
+        TokenType whitespace = new TokenTypeBuilder().name("WHITESPACE").charClass(" \n").skip().create();
+        List<TokenType> spec = new ArrayList<TokenType>();
+        Collections.addAll(spec, comment, word, slash, star, whitespace);
+        String[] fragments = { "ab", " ", "\n", "/", "*", "/* c */", "/**/", "x*/", "/*" };
+        Random random = new Random(48);
+        for(int i=0; i<100; i++) {
+            StringBuilder sb = new StringBuilder();
+            int count = random.nextInt(12);
+            for(int j=0; j<count; j++) {
+                sb.append(fragments[random.nextInt(fragments.length)]);
+            }
+            String input = sb.toString();
+            for(ExecutionMode mode : ExecutionMode.values()) {
+                Lexer lexer = new Lexer(spec, input, mode);
+                List<Token> expected = lexer.scanNoSkip();
+                boolean error = lexer.isError();
+                lexer = new Lexer(spec, input, mode);
+                lexer.setFindAhead(true);
+                assertEquals(input, expected, lexer.scanNoSkip());
+                assertEquals(input, error, lexer.isError());
+                lexer.reset();
+                assertEquals(input, expected, lexer.scanNoSkip());
+            }
+        }
+        // the comment is only tried where one begins
+        StringBuilder sb = new StringBuilder();
+        for(int i=0; i<100; i++) sb.append("ab / * ");
+        sb.append("/* one */ ab");
+        LexerMonitor monitor = new LexerMonitor(spec);
+        Lexer lexer = new Lexer(spec, sb.toString(), ExecutionMode.SEQUENTIAL);
+        lexer.setFindAhead(true);
+        lexer.setMonitor(monitor);
+        List<Token> tokens = lexer.scan();
+        assertFalse(lexer.isError());
+        assertSame(comment, tokens.get(300).getTokenType());
+        assertEquals(1L, monitor.snapshot().getTokenTypeStats().get(0).getAttempts());
+    }
+
+    @Test
+    public void testMatchPolicy() {
+        TokenType ifType = new TokenTypeBuilder().name("IF").pattern("if").literal().create();
+        TokenType ident = new TokenTypeBuilder().name("IDENT").charClass("a-z").create();
+        TokenType integer = new TokenTypeBuilder().name("INTEGER").charClass("0-9").create();
+        TokenType decimal = new TokenTypeBuilder().name("DECIMAL").pattern("[0-9]+\\.[0-9]+").create();
+        TokenType dot = new TokenTypeBuilder().name("DOT").pattern(".").literal().create();
+        TokenType whitespace = new TokenTypeBuilder().name("WHITESPACE").charClass(" ").skip().create();
+        List<TokenType> spec = new ArrayList<TokenType>();
+        Collections.addAll(spec, ifType, ident, integer, decimal, dot, whitespace);
+        String input = "iffy 1.5";
+        for(ExecutionMode mode : ExecutionMode.values()) {
+            Lexer lexer = new Lexer(spec, input, mode);
+            assertEquals(MatchPolicy.LONGEST_MATCH, lexer.getMatchPolicy());
+            assertTokenTypes(lexer.scan(), ident, decimal);
+            lexer = new Lexer(spec, input, mode);
+            lexer.setMatchPolicy(MatchPolicy.FIRST_MATCH);
+            assertEquals(MatchPolicy.FIRST_MATCH, lexer.getMatchPolicy());
+            assertTokenTypes(lexer.scan(), ifType, ident, integer, dot, integer);
+            lexer = new Lexer(spec, input, mode);
+            lexer.setMatchPolicy(MatchPolicy.PRIORITY_CUTOFF, integer);
+            assertTokenTypes(lexer.scan(), ifType, ident, decimal);
+            lexer.setMatchPolicy(MatchPolicy.LONGEST_MATCH);
+            lexer.reset();
+            assertTokenTypes(lexer.scan(), ident, decimal);
+        }
+        // every ExecutionMode and the SpecializedLexer agree
+        LexerSpec compiled = LexerSpec.compile(spec);
+        String[] fragments = { "if", "iffy", "x", " ", "1", "1.5", ".", "22.", "?" };
+        Random random = new Random(49);
+        for(int i=0; i<100; i++) {
+            StringBuilder sb = new StringBuilder();
+            int count = random.nextInt(10);
+            for(int j=0; j<count; j++) {
+                sb.append(fragments[random.nextInt(fragments.length)]);
+            }
+            String text = sb.toString();
+            for(TokenType cutoff : spec) {
+                SpecializedLexer specialized = new SpecializedLexer(compiled, text);
+                specialized.setMatchPolicy(MatchPolicy.PRIORITY_CUTOFF, cutoff);
+                List<Token> expected = specialized.scanNoSkip();
+                for(ExecutionMode mode : ExecutionMode.values()) {
+                    Lexer lexer = new Lexer(spec, text, mode);
+                    lexer.setMatchPolicy(MatchPolicy.PRIORITY_CUTOFF, cutoff);
+                    assertEquals(text, expected, lexer.scanNoSkip());
+                    assertEquals(text, specialized.isError(), lexer.isError());
+                }
+            }
+        }
+        // the cutoff must be provided for PRIORITY_CUTOFF only
+        Lexer lexer = new Lexer(spec, input);
+        try {
+            lexer.setMatchPolicy(null);
+            fail();
+        } catch(NullPointerException e) {
+            // expected
+        }
+        try {
+            lexer.setMatchPolicy(MatchPolicy.PRIORITY_CUTOFF);
+            fail();
+        } catch(IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            lexer.setMatchPolicy(MatchPolicy.FIRST_MATCH, ident);
+            fail();
+        } catch(IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            lexer.setMatchPolicy(MatchPolicy.PRIORITY_CUTOFF, TokenType.ERROR);
+            fail();
+        } catch(IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(MatchPolicy.LONGEST_MATCH, lexer.getMatchPolicy());
+    }
+
+    private static void assertTokenTypes(List<Token> tokens, TokenType... tokenTypes) {
+        assertEquals(tokens.toString(), tokenTypes.length, tokens.size());
+        for(int i=0; i<tokenTypes.length; i++) {
+            assertSame(tokens.toString(), tokenTypes[i], tokens.get(i).getTokenType());
+        }
+    }
 }
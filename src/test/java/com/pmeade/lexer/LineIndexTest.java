@@ -0,0 +1,190 @@
+/*
+ * LineIndexTest.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import com.pmeade.lexer.example.MathLexer;
+import java.util.List;
+import java.util.Random;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LineIndexTest
+{
+    public LineIndexTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @Test
+    public void testAlwaysSucceed() {
+        assertTrue(true);
+    }
+
+    @Test
+    public void testLines() {
+        LineIndex index = new LineIndex("ab\ncd\r\nef\rg\n");
+        assertEquals(5, index.getLineCount());
+        assertEquals(1, index.getLine(0));
+        assertEquals(1, index.getColumn(0));
+        assertEquals(1, index.getLine(2));
+        assertEquals(3, index.getColumn(2));
+        assertEquals(2, index.getLine(3));
+        assertEquals(2, index.getLine(6));
+        assertEquals(3, index.getLine(7));
+        assertEquals(4, index.getLine(10));
+        assertEquals(5, index.getLine(12));
+        assertEquals(1, index.getColumn(12));
+        assertEquals(7, index.getLineStart(3));
+    }
+
+    @Test
+    public void testColumnFirst() {
+        // a column is the first thing asked of a fresh LineIndex
+        assertEquals(2, new LineIndex("ab\ncd").getColumn(4));
+        Token token = new Token(0, MathLexer.MATH_TOKENS.get(0), "cd", 3);
+        assertEquals(1, new LineIndex("ab\ncd").columnOf(token));
+    }
+
+    @Test
+    public void testEmpty() {
+        LineIndex index = new LineIndex("");
+        assertEquals(1, index.getLineCount());
+        assertEquals(1, index.getLine(0));
+        assertEquals(1, index.getColumn(0));
+    }
+
+    @Test
+    public void testRandomInputs() {
+        Random random = new Random(40);
+        for(int i=0; i<200; i++) {
+            String input = randomText(random, random.nextInt(40));
+            assertSameAsScan(input, new LineIndex(input));
+        }
+    }
+
+    @Test
+    public void testLargeInput() {
+        Random random = new Random(41);
+        StringBuilder sb = new StringBuilder(randomText(random, 3 << 20));
+        LineIndex index = new LineIndex(sb);
+        LineIndex reference = new LineIndex(sb.toString().replace("\r\n", " \n").replace('\r', '\n'));
+        assertEquals(reference.getLineCount(), index.getLineCount());
+        for(int i=0; i<10000; i++) {
+            int position = random.nextInt(sb.length() + 1);
+            assertEquals(reference.getLine(position), index.getLine(position));
+            assertEquals(reference.getColumn(position), index.getColumn(position));
+        }
+    }
+
+    @Test
+    public void testUpdate() {
+        Random random = new Random(42);
+        for(int i=0; i<500; i++) {
+            String input = randomText(random, random.nextInt(30));
+            LineIndex index = new LineIndex(input);
+            index.getLineCount();
+            for(int j=0; j<5; j++) {
+                int start = random.nextInt(input.length() + 1);
+                int removed = random.nextInt(input.length() - start + 1);
+                String insertion = randomText(random, random.nextInt(6));
+                input = input.substring(0, start) + insertion + input.substring(start + removed);
+                index.update(input, start, removed, insertion.length());
+                assertSameAsScan(input, index);
+            }
+        }
+    }
+
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void testUpdateMismatch() {
+        new LineIndex("abc").update("abcd", 0, 1, 1);
+    }
+
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void testPositionOutOfRange() {
+        new LineIndex("abc").getLine(4);
+    }
+
+    @Test
+    public void testTokenLines() {
+        Lexer lexer = new Lexer(MathLexer.MATH_TOKENS, "(1 +\n 2)\r\n* 3");
+        List<Token> tokens = lexer.scan();
+        LineIndex index = lexer.getLineIndex();
+        assertSame(index, lexer.getLineIndex());
+        assertEquals(1, index.lineOf(tokens.get(2)));
+        assertEquals(4, index.columnOf(tokens.get(2)));
+        assertEquals(2, index.lineOf(tokens.get(3)));
+        assertEquals(2, index.columnOf(tokens.get(3)));
+        assertEquals(3, index.lineOf(tokens.get(5)));
+        assertEquals(3, index.columnOf(tokens.get(6)));
+        assertEquals(3, new SpecializedLexer(MathLexer.MATH_TOKENS, "(1 +\n 2)\r\n* 3")
+                .getLineIndex().getLineCount());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testTokenOfOtherInput() {
+        Token token = new Token(0, MathLexer.MATH_TOKENS.get(0), "cd", 3);
+        new LineIndex("abcd").lineOf(token);
+    }
+
+    private static String randomText(Random random, int length) {
+        char[] chars = { 'a', 'b', ' ', '\n', '\r' };
+        StringBuilder sb = new StringBuilder(length);
+        for(int i=0; i<length; i++) {
+            sb.append(chars[random.nextInt(chars.length)]);
+        }
+        return sb.toString();
+    }
+
+    private static void assertSameAsScan(String input, LineIndex index) {
+        int line = 1;
+        int column = 1;
+        for(int p=0; p<=input.length(); p++) {
+            assertEquals(input, line, index.getLine(p));
+            assertEquals(input, column, index.getColumn(p));
+            if(p == input.length()) break;
+            char c = input.charAt(p);
+            boolean crlf = (c == '\r') && (p + 1 < input.length()) && (input.charAt(p + 1) == '\n');
+            if((c == '\n' || c == '\r') && crlf == false) {
+                line++;
+                column = 1;
+            } else {
+                column++;
+            }
+        }
+        assertEquals(input, line, index.getLineCount());
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * LinearPatternTest.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LinearPatternTest
+{
+    private static final String ALPHABET = "aAbB019_.+-*/()\"\\ \t\n\ré😀";
+
+    public LinearPatternTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() {
+    }
+    
+    @AfterClass
+    public static void tearDownClass() {
+    }
+    
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    @Test
+    public void testAlwaysSucceed() {
+        assertTrue(true);
+    }
+
+    @Test
+    public void testLinearForms() {
+        assertNotNull(linear("+", Pattern.LITERAL));
+        assertNotNull(linear("[0-9]+\\.[0-9]+", 0));
+        assertNotNull(linear("([1-9][0-9]*)|(0)", 0));
+        assertNotNull(linear("\\s+", 0));
+        assertNotNull(linear("[a-z_][a-z0-9_]*", Pattern.CASE_INSENSITIVE));
+        assertNotNull(linear("\"[^\"\\\\]*\"", 0));
+        assertNotNull(linear("goto|gosub", Pattern.CASE_INSENSITIVE));
+        assertNotNull(linear("a{2,4}b?c", 0));
+    }
+
+    @Test
+    public void testNonLinearForms() {
+        assertNull(linear("[0-9]*[0-9]", 0));
+        assertNull(linear("/\\*.*?\\*/", Pattern.DOTALL));
+        assertNull(linear("(ab)+", 0));
+        assertNull(linear("^foo", 0));
+        assertNull(linear("(a|ab)c", 0));
+        assertNull(linear("(?i)abc", 0));
+        assertNull(linear("\\p{L}+", 0));
+        assertNull(linear("abc", Pattern.COMMENTS));
+    }
+
+    @Test
+    public void testLiteral() {
+        assertEquals("+", linear("+", Pattern.LITERAL).getLiteral());
+        assertEquals("goto", linear("goto", 0).getLiteral());
+        assertNull(linear("goto", Pattern.CASE_INSENSITIVE).getLiteral());
+        assertNull(linear("[0-9]+", 0).getLiteral());
+    }
+
+    @Test
+    public void testMatchesPattern() {
+        String[] regexes = {
+            "+", "[0-9]+\\.[0-9]+", "([1-9][0-9]*)|(0)", "\\s+", "[a-z_][a-z0-9_]*",
+            "\"[^\"\\\\]*\"", "goto|gosub", "a{2,4}b?c", ".+", "[^a]{1,3}", "\\W*",
+            "a|", "(?:a|b)+", "[\\x41-\\x43]+", "\\Q+-\\E+", "(?>a+)b", "a++b", "é+"
+        };
+        int[] flagSets = { 0, Pattern.CASE_INSENSITIVE, Pattern.DOTALL };
+        Random random = new Random(42);
+        for(String regex : regexes) {
+            for(int flags : flagSets) {
+                if(regex.equals("+")) flags |= Pattern.LITERAL;
+                LinearPattern linear = linear(regex, flags);
+                assertNotNull(regex, linear);
+                Pattern pattern = Pattern.compile(regex, flags);
+                for(int i=0; i<500; i++) {
+                    String input = randomInput(random, regex);
+                    int start = random.nextInt(input.length() + 1);
+                    int length = linear.match(input, start, input.length());
+                    if(length == LinearPattern.FALLBACK) continue;
+                    Matcher matcher = pattern.matcher(input);
+                    matcher.region(start, input.length());
+                    int expected = matcher.lookingAt() ? matcher.end() - start : LinearPattern.NO_MATCH;
+                    assertEquals(regex + " on \"" + input + "\" at " + start, expected, length);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSurrogateFallback() {
+        LinearPattern linear = linear(".+", 0);
+        assertEquals(LinearPattern.FALLBACK, linear.match("a😀", 0, 3));
+        assertEquals(1, linear("[a-z]+", 0).match("a😀", 0, 3));
+    }
+
+    @Test
+    public void testRuns() {
+        assertNotNull(linear("\\s+", 0).asRun());
+        assertNotNull(linear("[0-9]+", 0).asRun());
+        assertNotNull(linear("[a-z]*", Pattern.CASE_INSENSITIVE).asRun());
+        assertNotNull(linear("a{2,}", 0).asRun());
+        assertNull(linear("[0-9]+\\.[0-9]+", 0).asRun());
+        assertNull(linear("a{2,4}", 0).asRun());
+        assertNull(linear("a+|b+", 0).asRun());
+        assertNull(linear(".+", 0).asRun());
+        String[] regexes = { "\\s+", "[0-9]+", "[a-z]*", "a{2,}", "[ -~]+", "é+" };
+        Random random = new Random(41);
+        for(String regex : regexes) {
+            Pattern pattern = Pattern.compile(regex);
+            CharClassRun run = linear(regex, 0).asRun();
+            for(int i=0; i<200; i++) {
+                String input = randomInput(random, regex);
+                for(int end=0; end<=input.length(); end++) {
+                    Matcher matcher = pattern.matcher(input).region(0, end);
+                    int expected = matcher.lookingAt() ? matcher.end() : CharClassRun.NO_MATCH;
+                    assertEquals(regex + " " + input, expected, run.match(input, 0, end));
+                    assertEquals(regex + " " + input, expected,
+                            run.match(new StringBuilder(input), 0, end));
+                }
+            }
+        }
+    }
+
+    private static LinearPattern linear(String regex, int flags) {
+        return LinearPattern.from(RegexParser.parse(regex, flags));
+    }
+
+    private static String randomInput(Random random, String regex) {
+        StringBuilder sb = new StringBuilder();
+        int length = random.nextInt(8);
+        for(int i=0; i<length; i++) {
+            if(random.nextBoolean()) {
+                // favor characters that appear in the regular expression
+                sb.append(regex.charAt(random.nextInt(regex.length())));
+            } else {
+                sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+        }
+        return sb.toString();
+    }
+}
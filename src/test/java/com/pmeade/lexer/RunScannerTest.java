@@ -0,0 +1,140 @@
+/*
+ * RunScannerTest.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.util.Random;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RunScannerTest
+{
+    private static final CharSet[] SETS = {
+        CharSet.SPACE,
+        CharSet.DIGIT,
+        CharSet.WORD,
+        CharSet.of(" ").union(CharSet.range('à', 'ÿ')),
+        CharSet.range('\u8000', '\uD7FF').union(CharSet.range('\uE000', '\uFFFF')),
+        CharSet.of("acegikmoq"),
+    };
+
+    private static final char[] CHARS = {
+        ' ', '\t', '\n', '\r', '0', '9', 'a', 'z', 'A', '_', '+',
+        'é', '×', '\u8000', '\uFFFF', '\u7FFF', '\uE000',
+    };
+
+    public RunScannerTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @Test
+    public void testAlwaysSucceed() {
+        assertTrue(true);
+    }
+
+    @Test
+    public void testScan() {
+        RunScanner scalar = new RunScanner();
+        assertEquals(3, scalar.scan("   x", 0, 4, CharSet.SPACE));
+        assertEquals(2, scalar.scan("   x", 0, 2, CharSet.SPACE));
+        assertEquals(1, scalar.scan("x  ", 1, 1, CharSet.SPACE));
+        assertEquals(0, scalar.scan("x  ", 0, 3, CharSet.SPACE));
+        assertEquals(6, scalar.scan("a 123456b", 2, 9, CharSet.DIGIT) - 2);
+    }
+
+    @Test
+    public void testVectorScan() {
+        // on the test class path from META-INF/versions/17, see pom.xml
+        RunScanner vector = RunScanner.INSTANCE;
+        assertEquals("com.pmeade.lexer.VectorRunScanner", vector.getClass().getName());
+        RunScanner scalar = new RunScanner();
+        Random random = new Random(41);
+        for(int i=0; i<2000; i++) {
+            CharSet chars = SETS[random.nextInt(SETS.length)];
+            // a long run of the set, broken by a stray char somewhere
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(3000);
+            for(int j=0; j<length; j++) {
+                char c = CHARS[random.nextInt(CHARS.length)];
+                sb.append((random.nextInt(length) == 0 || chars.contains(c)) ? c : chars.getRangeHi(0));
+            }
+            String text = sb.toString();
+            int start = random.nextInt(Math.max(1, length));
+            int end = start + random.nextInt(length - start + 1);
+            assertEquals(text, scalar.scan(text, start, end, chars),
+                    vector.scan(text, start, end, chars));
+        }
+    }
+
+    @Test
+    public void testIndexOf() {
+        RunScanner scalar = new RunScanner();
+        char[] buffer = "ab\r\ncd\n".toCharArray();
+        assertEquals(2, scalar.indexOf(buffer, 0, buffer.length, '\n', '\r'));
+        assertEquals(3, scalar.indexOf(buffer, 3, buffer.length, '\n', '\r'));
+        assertEquals(6, scalar.indexOf(buffer, 4, buffer.length, '\n', '\r'));
+        assertEquals(6, scalar.indexOf(buffer, 4, 6, '\n', '\r'));
+        RunScanner vector = RunScanner.INSTANCE;
+        Random random = new Random(40);
+        for(int i=0; i<2000; i++) {
+            buffer = new char[random.nextInt(500)];
+            for(int j=0; j<buffer.length; j++) {
+                buffer[j] = (random.nextInt(buffer.length) == 0)
+                        ? '\n' : CHARS[random.nextInt(CHARS.length)];
+            }
+            int start = random.nextInt(Math.max(1, buffer.length));
+            int end = start + random.nextInt(buffer.length - start + 1);
+            assertEquals(scalar.indexOf(buffer, start, end, '\n', '\uFFFF'),
+                    vector.indexOf(buffer, start, end, '\n', '\uFFFF'));
+        }
+    }
+
+    @Test
+    public void testCharClassRun() {
+        CharClassRun run = new CharClassRun(CharSet.SPACE, 1);
+        StringBuilder sb = new StringBuilder("x");
+        for(int i=0; i<100; i++) sb.append(" \t");
+        sb.append("y");
+        String text = sb.toString();
+        assertEquals(200, run.match(text, 1, text.length()));
+        assertEquals(CharClassRun.NO_MATCH, run.match(text, 0, text.length()));
+        // through the decorated input of a Lexer, and not
+        CharSequence lexical = new LexicalCharSequence(text).subSequence(1, 202);
+        assertEquals(199, run.match(lexical, 1, 201));
+        assertEquals(200, run.match(new StringBuilder(text), 1, 202));
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * SlowTokenDetectorTest.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.pmeade.lexer;
+
+import com.pmeade.lexer.example.MathLexer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SlowTokenDetectorTest
+{
+    public SlowTokenDetectorTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @Test
+    public void testAlwaysSucceed() {
+        assertTrue(true);
+    }
+
+    @Test
+    public void testZeroThreshold() {
+        CollectingSink sink = new CollectingSink();
+        Lexer lexer = new Lexer(MathLexer.MATH_TOKENS, "(1 + 2.5)", ExecutionMode.SEQUENTIAL);
+        lexer.setSlowTokenDetector(new SlowTokenDetector(0, TimeUnit.NANOSECONDS, sink));
+        List<Token> tokens = lexer.scanNoSkip();
+        assertEquals(tokens.size(), sink.reports.size());
+        for(int i=0; i<tokens.size(); i++) {
+            SlowToken report = sink.reports.get(i);
+            assertEquals(tokens.get(i), report.getToken());
+            assertEquals(tokens.get(i).getPosition(), report.getPosition());
+            assertEquals("(1 + 2.5)", report.getExcerpt());
+            assertEquals(0, report.getExcerptStart());
+            assertEquals(MathLexer.MATH_TOKENS, new ArrayList<TokenType>(report.getMatchNanos().keySet()));
+            assertNotNull(report.getSlowestTokenType());
+        }
+    }
+
+    @Test
+    public void testErrorIsReported() {
+        CollectingSink sink = new CollectingSink();
+        Lexer lexer = new Lexer(MathLexer.MATH_TOKENS, "(3 % 5)", ExecutionMode.SEQUENTIAL);
+        lexer.setSlowTokenDetector(new SlowTokenDetector(0, TimeUnit.NANOSECONDS, sink));
+        lexer.scanNoSkip();
+        assertTrue(lexer.isError());
+        SlowToken last = sink.reports.get(sink.reports.size() - 1);
+        assertNull(last.getToken());
+        assertEquals(3, last.getPosition());
+        assertTrue(last.toString().contains("error"));
+    }
+
+    @Test
+    public void testThreshold() {
+        CollectingSink sink = new CollectingSink();
+        Lexer lexer = new Lexer(MathLexer.MATH_TOKENS, "(1 + 2.5)", ExecutionMode.SEQUENTIAL);
+        lexer.setSlowTokenDetector(new SlowTokenDetector(1, TimeUnit.HOURS, sink));
+        assertEquals(5, lexer.scan().size());
+        assertTrue(sink.reports.isEmpty());
+    }
+
+    @Test
+    public void testMatchNanos() {
+        List<TokenType> spec = new ArrayList<TokenType>();
+        spec.add(new TokenTypeBuilder().name("WORD").pattern("[a-c]+").emit().create());
+        spec.add(new TokenTypeBuilder().name("NESTED").pattern("(a+)+b").emit().create());
+        spec.add(new TokenTypeBuilder().name("WHITESPACE").pattern("\\s+").skip().create());
+        CollectingSink sink = new CollectingSink();
+        Lexer lexer = new Lexer(spec, "abc aaaaaaaaaac abc");
+        lexer.setSlowTokenDetector(new SlowTokenDetector(0, TimeUnit.NANOSECONDS, sink)
+                .excerptLength(10));
+        assertEquals(3, lexer.scan().size());
+        assertEquals(5, sink.reports.size());
+        SlowToken report = sink.reports.get(2);
+        assertEquals(4, report.getPosition());
+        assertEquals("abc aaaaaa", report.getExcerpt());
+        assertEquals(0, report.getExcerptStart());
+        assertSame(spec.get(0), report.getToken().getTokenType());
+        long total = 0L;
+        for(long nanos : report.getMatchNanos().values()) {
+            assertTrue(nanos >= 0L);
+            total += nanos;
+        }
+        assertTrue(total > 0L);
+    }
+
+    @Test
+    public void testExcerptAtEnd() {
+        CollectingSink sink = new CollectingSink();
+        Lexer lexer = new Lexer(MathLexer.MATH_TOKENS, "1+2+3+4+5+6", ExecutionMode.SEQUENTIAL);
+        lexer.setSlowTokenDetector(new SlowTokenDetector(0, TimeUnit.NANOSECONDS, sink)
+                .excerptLength(4));
+        lexer.scan();
+        SlowToken last = sink.reports.get(sink.reports.size() - 1);
+        assertEquals(10, last.getPosition());
+        assertEquals("+5+6", last.getExcerpt());
+        assertEquals(7, last.getExcerptStart());
+    }
+
+    @Test
+    public void testLoggingSink() {
+        final List<LogRecord> records = new ArrayList<LogRecord>();
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) { records.add(record); }
+            @Override
+            public void flush() { }
+            @Override
+            public void close() { }
+        });
+        Lexer lexer = new Lexer(MathLexer.MATH_TOKENS, "1\n+2", ExecutionMode.SEQUENTIAL);
+        lexer.setSlowTokenDetector(new SlowTokenDetector(0, TimeUnit.NANOSECONDS,
+                new LoggingSlowTokenSink(logger)));
+        lexer.scanNoSkip();
+        assertEquals(4, records.size());
+        assertTrue(records.get(0).getMessage().contains("\"1\\n+2\""));
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        try {
+            new SlowTokenDetector(1, null, new CollectingSink());
+            fail();
+        } catch(NullPointerException e) {
+            // expected
+        }
+        try {
+            new SlowTokenDetector(1, TimeUnit.SECONDS, null);
+            fail();
+        } catch(NullPointerException e) {
+            // expected
+        }
+        try {
+            new SlowTokenDetector(-1, TimeUnit.SECONDS, new CollectingSink());
+            fail();
+        } catch(IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            new SlowTokenDetector(1, TimeUnit.SECONDS, new CollectingSink()).excerptLength(-1);
+            fail();
+        } catch(IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static class CollectingSink implements SlowTokenSink
+    {
+        @Override
+        public void slowToken(SlowToken slowToken) {
+            reports.add(slowToken);
+        }
+
+        private final List<SlowToken> reports = new ArrayList<SlowToken>();
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * SpecFuzzerTest.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import com.pmeade.lexer.example.MathLexer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SpecFuzzerTest
+{
+    private static final TokenType EVIL = new TokenTypeBuilder().name("EVIL").pattern("(a+)+b").create();
+    private static final TokenType WORD = new TokenTypeBuilder().name("WORD").pattern("[a-z]+").create();
+    private static final TokenType WHITESPACE = new TokenTypeBuilder().name("WHITESPACE").pattern("\\s+").skip().create();
+
+    public SpecFuzzerTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @Test
+    public void testAlwaysSucceed() {
+        assertTrue(true);
+    }
+
+    @Test
+    public void testFindsBacktracking() {
+        List<SlowInput> worst = new SpecFuzzer(evilSpec())
+                .seed(42)
+                .maxLength(48)
+                .iterations(2000)
+                .fuzz();
+        assertFalse(worst.isEmpty());
+        SlowInput slowest = worst.get(0);
+        assertSame(EVIL, slowest.getCostliestTokenType());
+        assertTrue(slowest.toString(), slowest.getCostPerChar() > 300.0);
+        for(int i=1; i<worst.size(); i++) {
+            assertTrue(worst.get(i-1).getCostPerChar() >= worst.get(i).getCostPerChar());
+        }
+    }
+
+    @Test
+    public void testLinearSpecStaysCheap() {
+        List<SlowInput> worst = new SpecFuzzer(MathLexer.MATH_TOKENS)
+                .seed(42)
+                .iterations(500)
+                .keep(3)
+                .fuzz();
+        assertEquals(3, worst.size());
+        for(SlowInput slowInput : worst) {
+            assertFalse(slowInput.isBudgetExceeded());
+            assertTrue(slowInput.toString(), slowInput.getCostPerChar() < 100.0);
+        }
+    }
+
+    @Test
+    public void testDeterministic() {
+        List<SlowInput> first = new SpecFuzzer(evilSpec()).seed(7).iterations(300).fuzz();
+        List<SlowInput> second = new SpecFuzzer(evilSpec()).seed(7).iterations(300).fuzz();
+        assertEquals(first.size(), second.size());
+        for(int i=0; i<first.size(); i++) {
+            assertEquals(first.get(i).getInput(), second.get(i).getInput());
+            assertEquals(first.get(i).getCost(), second.get(i).getCost());
+        }
+    }
+
+    @Test
+    public void testMeasure() {
+        SpecFuzzer fuzzer = new SpecFuzzer(evilSpec());
+        SlowInput shortInput = fuzzer.measure("aaaaaaaa!");
+        SlowInput longInput = fuzzer.measure("aaaaaaaaaaaa!");
+        assertEquals(3, shortInput.getTypeCosts().size());
+        assertEquals("aaaaaaaa!", shortInput.getInput());
+        long sum = 0L;
+        for(long cost : shortInput.getTypeCosts().values()) {
+            sum += cost;
+        }
+        assertEquals(sum, shortInput.getCost());
+        double evilGrowth = (double) longInput.getTypeCosts().get(EVIL) / shortInput.getTypeCosts().get(EVIL);
+        double wordGrowth = (double) longInput.getTypeCosts().get(WORD) / shortInput.getTypeCosts().get(WORD);
+        assertTrue(evilGrowth > wordGrowth);
+        assertEquals(shortInput.getCost(), fuzzer.measure("aaaaaaaa!").getCost());
+        assertEquals(0.0, fuzzer.measure("").getCostPerChar(), 0.0);
+    }
+
+    @Test
+    public void testBudget() {
+        SlowInput slowInput = new SpecFuzzer(evilSpec()).budget(1000)
+                .measure("aaaaaaaaaaaaaaaaaaaaaaaa!");
+        assertTrue(slowInput.isBudgetExceeded());
+        assertEquals(1000L, slowInput.getTypeCosts().get(EVIL).longValue());
+        assertTrue(slowInput.toString().contains("+ charAt"));
+        assertFalse(new SpecFuzzer(evilSpec()).measure("ab").isBudgetExceeded());
+    }
+
+    @Test
+    public void testCountingCharSequence() {
+        CountingCharSequence text = new CountingCharSequence("hello, world", 5);
+        CharSequence sub = text.subSequence(7, 12);
+        assertEquals("world", sub.toString());
+        assertEquals('w', sub.charAt(0));
+        assertEquals('h', text.charAt(0));
+        assertEquals(2L, text.getCount());
+        assertEquals(5, sub.length());
+        assertEquals(2L, text.getCount());
+        sub.charAt(1);
+        sub.charAt(2);
+        sub.charAt(3);
+        assertTrue(text.isExhausted());
+        try {
+            text.charAt(1);
+            fail();
+        } catch(CountingCharSequence.BudgetExceededException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testEmptySpec() {
+        assertTrue(new SpecFuzzer(new ArrayList<TokenType>()).fuzz().isEmpty());
+    }
+
+    @Test
+    public void testArguments() {
+        try {
+            new SpecFuzzer(null);
+            fail();
+        } catch(NullPointerException e) {
+            // expected
+        }
+        SpecFuzzer fuzzer = new SpecFuzzer(evilSpec());
+        try {
+            fuzzer.budget(0L);
+            fail();
+        } catch(IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            fuzzer.iterations(-1);
+            fail();
+        } catch(IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            fuzzer.keep(0);
+            fail();
+        } catch(IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            fuzzer.maxLength(0);
+            fail();
+        } catch(IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static List<TokenType> evilSpec() {
+        List<TokenType> spec = new ArrayList<TokenType>();
+        spec.add(EVIL);
+        spec.add(WORD);
+        spec.add(WHITESPACE);
+        return spec;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * SpecLinterTest.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import com.pmeade.lexer.example.MathLexer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SpecLinterTest
+{
+    public SpecLinterTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @Test
+    public void testAlwaysSucceed() {
+        assertTrue(true);
+    }
+
+    @Test
+    public void testCleanSpec() {
+        LintReport report = LexerSpec.compile(MathLexer.MATH_TOKENS).lint();
+        assertTrue(report.toString(), report.isClean());
+        assertFalse(report.hasErrors());
+        assertSame(report, report.check());
+    }
+
+    @Test
+    public void testNullable() {
+        assertKinds("[0-9]*", LintIssue.Kind.NULLABLE);
+        assertKinds("a?", LintIssue.Kind.NULLABLE);
+        assertKinds("a|", LintIssue.Kind.NULLABLE);
+        assertKinds("\\bfoo");
+        assertKinds("\\b", LintIssue.Kind.NULLABLE);
+        LintReport report = lint("x*");
+        assertTrue(report.hasErrors());
+        assertEquals(1, report.getIssues(LintIssue.Severity.ERROR).size());
+        assertEquals(0, report.getIssues(LintIssue.Severity.WARNING).size());
+    }
+
+    @Test
+    public void testNestedQuantifiers() {
+        assertKinds("(a+)+b", LintIssue.Kind.NESTED_QUANTIFIER);
+        assertKinds("x(\\w+\\s?)*y", LintIssue.Kind.NESTED_QUANTIFIER);
+        assertKinds("(a*b*)+c", LintIssue.Kind.NESTED_QUANTIFIER);
+        // a delimiter after the inner repetition keeps the iterations apart
+        assertKinds("([a-z]+,)+");
+        // possessive and atomic repetitions never give back
+        assertKinds("(a++)+b");
+        assertKinds("(?>a+)+b");
+        assertKinds("(a+)++b");
+    }
+
+    @Test
+    public void testOverlappingAlternation() {
+        assertKinds("(a|ab)+c", LintIssue.Kind.OVERLAPPING_ALTERNATION);
+        assertKinds("(\\w|\\d)+", LintIssue.Kind.OVERLAPPING_ALTERNATION);
+        assertKinds("(a|b)+");
+        assertKinds("(a|ab)c");
+        assertKinds("(a|ab)*+c");
+    }
+
+    @Test
+    public void testReport() {
+        List<TokenType> spec = new ArrayList<TokenType>();
+        spec.add(new TokenTypeBuilder().name("GOOD").pattern("[0-9]+").create());
+        spec.add(new TokenTypeBuilder().name("EMPTY").pattern("[0-9]*").create());
+        spec.add(new TokenTypeBuilder().name("SLOW").pattern("(a+)+b").create());
+        LintReport report = LexerSpec.compile(spec).lint();
+        assertEquals(2, report.getIssues().size());
+        LintIssue issue = report.getIssues().get(0);
+        assertSame(spec.get(1), issue.getTokenType());
+        assertEquals(LintIssue.Severity.ERROR, issue.getSeverity());
+        assertNotNull(issue.getSuggestion());
+        issue = report.getIssues().get(1);
+        assertSame(spec.get(2), issue.getTokenType());
+        assertEquals(LintIssue.Severity.WARNING, issue.getSeverity());
+        assertTrue(issue.getSuggestion(), issue.getSuggestion().contains("possessive"));
+        assertTrue(report.toString(), report.toString().contains("EMPTY"));
+        try {
+            report.check();
+            fail();
+        } catch(IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("NULLABLE"));
+        }
+    }
+
+    @Test
+    public void testBuilderLint() {
+        new TokenTypeBuilder().name("SLOW").pattern("(a+)+b").lint().create();
+        try {
+            new TokenTypeBuilder().name("EMPTY").pattern("[0-9]*").lint().create();
+            fail();
+        } catch(IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("EMPTY"));
+        }
+        // without lint(), a nullable pattern is still accepted
+        new TokenTypeBuilder().name("EMPTY").pattern("[0-9]*").create();
+        new TokenTypeBuilder().name("EMPTY").pattern("[0-9]*").lint().lint(false).create();
+        try {
+            new TokenTypeBuilder().name("EMPTY").pattern("[0-9]*").lint(true).create();
+            fail();
+        } catch(IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static LintReport lint(String regex) {
+        List<TokenType> spec = new ArrayList<TokenType>();
+        spec.add(new TokenTypeBuilder().name("T").pattern(regex).create());
+        return LexerSpec.compile(spec).lint();
+    }
+
+    private static void assertKinds(String regex, LintIssue.Kind... kinds) {
+        List<LintIssue> issues = lint(regex).getIssues();
+        List<LintIssue.Kind> found = new ArrayList<LintIssue.Kind>();
+        for(LintIssue issue : issues) {
+            found.add(issue.getKind());
+        }
+        assertEquals(regex + " " + issues, Arrays.asList(kinds), found);
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * SpecOptimizerTest.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import com.pmeade.lexer.example.MathLexer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SpecOptimizerTest
+{
+    private static final TokenType IDENT = new TokenTypeBuilder().name("IDENT").pattern("[a-z]+").create();
+    private static final TokenType IF = new TokenTypeBuilder().name("IF").pattern("if").staticText("if").create();
+    private static final TokenType LETTERS = new TokenTypeBuilder().name("LETTERS").pattern("[a-c]+").create();
+    private static final TokenType NUMBER = new TokenTypeBuilder().name("NUMBER").pattern("[0-9]+").create();
+    private static final TokenType NUMBER2 = new TokenTypeBuilder().name("NUMBER2").pattern("[0-9]+").create();
+    private static final TokenType LT = new TokenTypeBuilder().name("LT").pattern("<").literal().create();
+    private static final TokenType SHL = new TokenTypeBuilder().name("SHL").pattern("<<").literal().create();
+    private static final TokenType LE = new TokenTypeBuilder().name("LE").pattern("<=").literal().create();
+    private static final TokenType SHL_ASSIGN = new TokenTypeBuilder().name("SHL_ASSIGN").pattern("<<=").literal().create();
+    private static final TokenType A_OR_AB = new TokenTypeBuilder().name("A_OR_AB").pattern("=|=>").create();
+    private static final TokenType ARROW = new TokenTypeBuilder().name("ARROW").pattern("=>").literal().create();
+    private static final TokenType TINY = new TokenTypeBuilder().name("TINY").pattern("#[0-9]").maxLength(1).create();
+    private static final TokenType INSIDE = new TokenTypeBuilder().name("INSIDE").pattern("#").state("NEVER").create();
+    private static final TokenType WHITESPACE = new TokenTypeBuilder().name("WHITESPACE").pattern("\\s+").skip().create();
+
+    private static final String[] FRAGMENTS = {
+        "if", "ifx", "abc", "x", "0", "42", "<", "<<", "<=", "<<=", "<<<",
+        "=", "=>", "#", "#1", " ", "\n", "é",
+    };
+
+    public SpecOptimizerTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @Test
+    public void testAlwaysSucceed() {
+        assertTrue(true);
+    }
+
+    @Test
+    public void testRemovesDeadRules() {
+        OptimizationReport report = LexerSpec.compile(mixedSpec()).optimize();
+        assertEquals(Arrays.asList(IF, LETTERS, NUMBER2, TINY, INSIDE),
+                new ArrayList<TokenType>(report.getRemoved().keySet()));
+        assertEquals("shadowed by IDENT", report.getRemoved().get(IF));
+        assertEquals("shadowed by IDENT", report.getRemoved().get(LETTERS));
+        assertEquals("shadowed by NUMBER", report.getRemoved().get(NUMBER2));
+        // "=|=>" stops at "=", so it does not shadow "=>"
+        assertTrue(report.getTokenTypes().contains(A_OR_AB));
+        assertTrue(report.getTokenTypes().contains(ARROW));
+        assertTrue(report.toString().contains("removed TINY: shortest match is longer than maxLength 1"));
+    }
+
+    @Test
+    public void testMergesLiterals() {
+        OptimizationReport report = LexerSpec.compile(mixedSpec()).optimize();
+        assertEquals(1, report.getMerged().size());
+        TokenType merged = report.getMerged().keySet().iterator().next();
+        assertEquals(Arrays.asList(LT, SHL, LE, SHL_ASSIGN), report.getMerged().get(merged));
+        assertEquals(new HashSet<TokenType>(Arrays.asList(LT, SHL, LE, SHL_ASSIGN)),
+                new HashSet<TokenType>(merged.getKeywords()));
+        assertEquals("\\<(?:\\<\\=?|\\=)?", merged.getPattern().pattern());
+        assertEquals(Arrays.asList(IDENT, NUMBER, merged, A_OR_AB, ARROW, WHITESPACE),
+                report.getTokenTypes());
+        assertFalse(report.isUnchanged());
+    }
+
+    @Test
+    public void testMathLexer() {
+        OptimizationReport report = LexerSpec.compile(MathLexer.MATH_TOKENS).optimize();
+        assertTrue(report.getRemoved().isEmpty());
+        assertEquals(4, report.getTokenTypes().size());
+        TokenType merged = report.getTokenTypes().get(0);
+        assertEquals(MathLexer.MATH_TOKENS.subList(0, 6), report.getMerged().get(merged));
+        assertEquals("[\\(\\)\\*\\+\\-\\/]", merged.getPattern().pattern());
+        assertNotNull(merged.getLinearPattern());
+        String input = "((0.90909/3.14159)-(8*-3))+0";
+        assertEquals(new Lexer(MathLexer.MATH_TOKENS, input).scan(),
+                new Lexer(report.getTokenTypes(), input).scan());
+    }
+
+    @Test
+    public void testSameTokens() {
+        List<TokenType> spec = mixedSpec();
+        List<TokenType> optimized = LexerSpec.compile(spec).optimize().getTokenTypes();
+        Random random = new Random(47);
+        for(int i=0; i<300; i++) {
+            StringBuilder sb = new StringBuilder();
+            int count = random.nextInt(10);
+            for(int j=0; j<count; j++) {
+                sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+            }
+            String input = sb.toString();
+            Lexer original = new Lexer(spec, input, ExecutionMode.SEQUENTIAL);
+            Lexer faster = new Lexer(optimized, input, ExecutionMode.SEQUENTIAL);
+            assertEquals(input, original.scanNoSkip(), faster.scanNoSkip());
+            assertEquals(input, original.isError(), faster.isError());
+        }
+    }
+
+    @Test
+    public void testUnchanged() {
+        List<TokenType> spec = new ArrayList<TokenType>();
+        spec.add(IDENT);
+        spec.add(WHITESPACE);
+        OptimizationReport report = LexerSpec.compile(spec).optimize();
+        assertTrue(report.isUnchanged());
+        assertEquals(spec, report.getTokenTypes());
+        assertEquals("no changes", report.toString());
+    }
+
+    private static List<TokenType> mixedSpec() {
+        List<TokenType> spec = new ArrayList<TokenType>();
+        spec.add(IDENT);
+        spec.add(IF);
+        spec.add(LETTERS);
+        spec.add(NUMBER);
+        spec.add(NUMBER2);
+        spec.add(LT);
+        spec.add(SHL);
+        spec.add(LE);
+        spec.add(SHL_ASSIGN);
+        spec.add(A_OR_AB);
+        spec.add(ARROW);
+        spec.add(TINY);
+        spec.add(INSIDE);
+        spec.add(WHITESPACE);
+        return spec;
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * SpecializedLexerTest.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import com.pmeade.lexer.example.MathLexer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SpecializedLexerTest
+{
+    private static final List<TokenType> MIXED_TOKENS = new ArrayList<TokenType>();
+
+    static {
+        MIXED_TOKENS.add(new TokenTypeBuilder().name("IF").pattern("if").create());
+        MIXED_TOKENS.add(new TokenTypeBuilder().name("WHILE").pattern("while").ignoreCase().emit().create());
+        MIXED_TOKENS.add(new TokenTypeBuilder().name("IDENT").pattern("[A-Za-z_][A-Za-z0-9_]*").emit().create());
+        MIXED_TOKENS.add(new TokenTypeBuilder().name("STRING").pattern("\"(\\\\.|[^\"\\\\])*\"").emit().create());
+        MIXED_TOKENS.add(new TokenTypeBuilder().name("NUMBER").pattern("([1-9][0-9]*)|(0)").emit().create());
+        MIXED_TOKENS.add(new TokenTypeBuilder().name("SCATTER").pattern("[$@#%&~`0-2]{2,3}").emit().create());
+        MIXED_TOKENS.add(new TokenTypeBuilder().name("LETTERS").pattern("\\p{L}+").emit().create());
+        MIXED_TOKENS.add(new TokenTypeBuilder().name("OTHER").pattern("[^\\x00-\\x7F]").emit().create());
+        MIXED_TOKENS.add(new TokenTypeBuilder().name("AB").pattern("a|ab").emit().create());
+        MIXED_TOKENS.add(new TokenTypeBuilder().name("WHITESPACE").pattern("\\s+").skip().create());
+    }
+
+    private static final String[] FRAGMENTS = {
+        "if", "while", "WhIlE", "ifx", "x_1", "\"str\"", "\"a\\\"b\"", "\"",
+        "0", "120", "$@", "%%%%", "12", "é", "éé", "😀", "\uD800",
+        "ab", "a", " ", "\n", "+", "{", " ",
+    };
+
+    public SpecializedLexerTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @Test
+    public void testAlwaysSucceed() {
+        assertTrue(true);
+    }
+
+    @Test
+    public void testMathLexer() {
+        String[] inputs = {
+            "((0.90909/3.14159)-(8*-3))+0",
+            "(  -5.0 \n /    2 )\n",
+            "007 0.0 10.01 . 1.",
+            "(3 % 5)",
+            "1 + é",
+            "",
+        };
+        LexerSpec spec = LexerSpec.compile(MathLexer.MATH_TOKENS);
+        for(String input : inputs) {
+            assertSameTokens(MathLexer.MATH_TOKENS, spec, input);
+        }
+    }
+
+    @Test
+    public void testMixedSpec() {
+        LexerSpec spec = LexerSpec.compile(MIXED_TOKENS);
+        Random random = new Random(27);
+        for(int i=0; i<200; i++) {
+            StringBuilder sb = new StringBuilder();
+            int count = random.nextInt(8);
+            for(int j=0; j<count; j++) {
+                sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+            }
+            assertSameTokens(MIXED_TOKENS, spec, sb.toString());
+        }
+    }
+
+    @Test
+    public void testSpecMatcherIsHidden() {
+        SpecMatcher specMatcher = LexerSpec.compile(MIXED_TOKENS).getSpecMatcher();
+        assertTrue(specMatcher.getClass().isHidden());
+    }
+
+    @Test
+    public void testSpecMatcherIsShared() {
+        LexerSpec spec = LexerSpec.compile(MathLexer.MATH_TOKENS);
+        assertSame(spec.getSpecMatcher(), spec.getSpecMatcher());
+    }
+
+    @Test
+    public void testInterpretedSpecMatcher() {
+        LexerSpec spec = LexerSpec.compile(MIXED_TOKENS);
+        SpecMatcher specialized = spec.getSpecMatcher();
+        SpecMatcher interpreted = new InterpretedSpecMatcher(spec);
+        StringBuilder sb = new StringBuilder();
+        for(String fragment : FRAGMENTS) {
+            sb.append(fragment);
+        }
+        String input = sb.toString();
+        for(int start=0; start<input.length(); start++) {
+            for(int end=start+1; end<=input.length(); end++) {
+                assertEquals(input.substring(start, end),
+                        interpreted.match(input, start, end),
+                        specialized.match(input, start, end));
+            }
+        }
+    }
+
+    @Test
+    public void testSameTokenTypes() {
+        List<Token> tokens = new SpecializedLexer(MathLexer.MATH_TOKENS, "(1+2.5)").scan();
+        assertEquals(5, tokens.size());
+        assertSame(MathLexer.MATH_TOKENS.get(4), tokens.get(0).getTokenType());
+        assertSame(MathLexer.MATH_TOKENS.get(6), tokens.get(3).getTokenType());
+    }
+
+    @Test
+    public void testReset() {
+        TokenStream lexer = new SpecializedLexer(MathLexer.MATH_TOKENS, "(3 % 5)");
+        List<Token> tokens = lexer.scan();
+        assertTrue(lexer.isError());
+        lexer.reset();
+        assertFalse(lexer.isError());
+        assertEquals(tokens, lexer.scan());
+    }
+
+    @Test
+    public void testResetSource() {
+        SpecializedLexer lexer = new SpecializedLexer(MIXED_TOKENS, "\u00e9t\u00e9 $@ while");
+        lexer.scan();
+        String input = "\u00e0 ab\n@@0 \"x\" %";
+        lexer.reset(input);
+        assertFalse(lexer.isError());
+        assertEquals(new SpecializedLexer(MIXED_TOKENS, input).scan(), lexer.scan());
+        assertEquals(2, lexer.getLineIndex().getLineCount());
+    }
+
+    @Test
+    public void testEmptySpec() {
+        TokenStream lexer = new SpecializedLexer(new ArrayList<TokenType>(), "x");
+        assertNull(lexer.nextNoSkip());
+        assertTrue(lexer.isError());
+    }
+
+    @Test
+    public void testNullArguments() {
+        try {
+            new SpecializedLexer((LexerSpec) null, "");
+            fail();
+        } catch(NullPointerException e) {
+            // expected
+        }
+        try {
+            new SpecializedLexer(MathLexer.MATH_TOKENS, null);
+            fail();
+        } catch(NullPointerException e) {
+            // expected
+        }
+    }
+
+    private static void assertSameTokens(List<TokenType> tokenTypes, LexerSpec spec, String input) {
+        Lexer lexer = new Lexer(tokenTypes, input);
+        TokenStream specialized = new SpecializedLexer(spec, input);
+        assertEquals(input, lexer.scanNoSkip(), specialized.scanNoSkip());
+        assertEquals(input, lexer.isError(), specialized.isError());
+        lexer.reset();
+        specialized.reset();
+        assertEquals(input, lexer.scan(), specialized.scan());
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * SymbolPoolTest.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SymbolPoolTest
+{
+    public SymbolPoolTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @Test
+    public void testAlwaysSucceed() {
+        assertTrue(true);
+    }
+
+    @Test
+    public void testIntern() {
+        SymbolPool pool = new SymbolPool(100);
+        String input = "foo bar foo baz bar";
+        int foo = pool.intern(input, 0, 3);
+        int bar = pool.intern(input, 4, 7);
+        assertEquals(0, foo);
+        assertEquals(1, bar);
+        assertEquals(foo, pool.intern(input, 8, 11));
+        assertEquals(2, pool.intern(input, 12, 15));
+        assertEquals(bar, pool.intern(input, 16, 19));
+        assertEquals(3, pool.size());
+        assertEquals("foo", pool.getText(foo));
+        assertSame(pool.getText(foo), pool.getText(pool.intern("xfoo", 1, 4)));
+        assertEquals(3, pool.intern(input, 0, 0));
+        assertEquals("", pool.getText(3));
+    }
+
+    @Test
+    public void testManySymbols() {
+        SymbolPool pool = new SymbolPool(10000, 4);
+        for(int i=0; i<5000; i++) {
+            assertEquals(i, pool.intern("s" + i, 0, ("s" + i).length()));
+        }
+        for(int i=0; i<5000; i++) {
+            String text = "s" + i;
+            assertEquals(i, pool.intern(text, 0, text.length()));
+            assertEquals(text, pool.getText(i));
+        }
+        assertEquals(5000, pool.size());
+    }
+
+    @Test
+    public void testFull() {
+        SymbolPool pool = new SymbolPool(2);
+        assertEquals(0, pool.intern("a", 0, 1));
+        assertEquals(1, pool.intern("b", 0, 1));
+        assertEquals(Token.NO_SYMBOL, pool.intern("c", 0, 1));
+        assertEquals(Token.NO_SYMBOL, pool.intern("d", 0, 1));
+        assertEquals(0, pool.intern("a", 0, 1));
+        assertEquals(2, pool.size());
+        assertEquals(2, pool.getCapacity());
+    }
+
+    @Test
+    public void testConcurrentIntern() throws InterruptedException {
+        final SymbolPool pool = new SymbolPool(1000);
+        final int[][] symbols = new int[4][500];
+        List<Thread> threads = new ArrayList<Thread>();
+        for(int t=0; t<symbols.length; t++) {
+            final int[] mine = symbols[t];
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for(int i=0; i<mine.length; i++) {
+                        String text = "t" + i;
+                        mine[i] = pool.intern(text, 0, text.length());
+                    }
+                }
+            }));
+        }
+        for(Thread thread : threads) thread.start();
+        for(Thread thread : threads) thread.join();
+        assertEquals(500, pool.size());
+        for(int i=0; i<500; i++) {
+            for(int t=1; t<symbols.length; t++) {
+                assertEquals(symbols[0][i], symbols[t][i]);
+            }
+            assertEquals("t" + i, pool.getText(symbols[0][i]));
+        }
+    }
+
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void testNoSuchSymbol() {
+        new SymbolPool(10).getText(0);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testCapacityNotPositive() {
+        new SymbolPool(0);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testStripesNotPositive() {
+        new SymbolPool(10, 0);
+    }
+}
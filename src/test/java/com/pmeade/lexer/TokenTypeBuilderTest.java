@@ -703,4 +703,163 @@ public class TokenTypeBuilderTest
         assertFalse(regex == tokenType.getStaticText());
         assertTrue(staticText == tokenType.getStaticText());
     }
+
+    @Test
+    public void testStaticMaxLength() {
+        assertEquals(2, new TokenTypeBuilder().pattern("if").create().getMaxLength());
+        assertEquals(3, new TokenTypeBuilder().pattern("a|b{1,3}").create().getMaxLength());
+        assertEquals(TokenType.UNBOUNDED, new TokenTypeBuilder().pattern("[0-9]+").create().getMaxLength());
+        assertEquals(TokenType.UNBOUNDED, new TokenTypeBuilder().pattern("if\\b").create().getMaxLength());
+        assertEquals(TokenType.UNBOUNDED, new TokenTypeBuilder().pattern("(?=i)if").create().getMaxLength());
+    }
+
+    @Test
+    public void testMaxLength() {
+        TokenType tokenType = new TokenTypeBuilder()
+                .pattern("/\\*.*?\\*/")
+                .dotAll()
+                .maxLength(100)
+                .create();
+        assertEquals(100, tokenType.getMaxLength());
+        assertNull(tokenType.getLinearPattern());
+        // the analysis wins when it finds a smaller limit
+        tokenType = new TokenTypeBuilder().pattern("if").maxLength(100).create();
+        assertEquals(2, tokenType.getMaxLength());
+        assertNotNull(tokenType.getLinearPattern());
+        // a limit on a linear pattern gives up the linear form
+        tokenType = new TokenTypeBuilder().pattern("[0-9]+").maxLength(4).create();
+        assertEquals(4, tokenType.getMaxLength());
+        assertNull(tokenType.getLinearPattern());
+        // assertions depend on the input outside the limit
+        tokenType = new TokenTypeBuilder().pattern("[a-z]+$").maxLength(4).create();
+        assertEquals(TokenType.UNBOUNDED, tokenType.getMaxLength());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testMaxLengthNotPositive() {
+        new TokenTypeBuilder().maxLength(0);
+    }
+
+    @Test
+    public void testDefaultState() {
+        TokenType tokenType = new TokenTypeBuilder().pattern("a").create();
+        assertEquals(1, tokenType.getStates().size());
+        assertTrue(tokenType.isActiveIn(TokenType.DEFAULT_STATE));
+        assertFalse(tokenType.isActiveIn("STRING"));
+        assertNull(tokenType.getTransition());
+        assertNull(tokenType.getTransitionState());
+    }
+
+    @Test
+    public void testState() {
+        TokenType tokenType = new TokenTypeBuilder().pattern("a")
+                .state("STRING").state("COMMENT", "STRING").create();
+        assertEquals(2, tokenType.getStates().size());
+        assertTrue(tokenType.isActiveIn("STRING"));
+        assertTrue(tokenType.isActiveIn("COMMENT"));
+        assertFalse(tokenType.isActiveIn(TokenType.DEFAULT_STATE));
+        tokenType = new TokenTypeBuilder().pattern("a").state(TokenType.ANY_STATE).create();
+        assertTrue(tokenType.isActiveIn(TokenType.DEFAULT_STATE));
+        assertTrue(tokenType.isActiveIn("ANYTHING"));
+    }
+
+    @Test
+    public void testTransitions() {
+        TokenType tokenType = new TokenTypeBuilder().pattern("a").pushState("X").create();
+        assertEquals(StateTransition.PUSH, tokenType.getTransition());
+        assertEquals("X", tokenType.getTransitionState());
+        tokenType = new TokenTypeBuilder().pattern("a").pushState("X").popState().create();
+        assertEquals(StateTransition.POP, tokenType.getTransition());
+        assertNull(tokenType.getTransitionState());
+        tokenType = new TokenTypeBuilder().pattern("a").switchState("Y").create();
+        assertEquals(StateTransition.SWITCH, tokenType.getTransition());
+        assertEquals("Y", tokenType.getTransitionState());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testTransitionToAnyState() {
+        new TokenTypeBuilder().pattern("a").switchState(TokenType.ANY_STATE).create();
+    }
+
+    @Test
+    public void testKeywords() {
+        TokenType ifType = new TokenTypeBuilder().name("IF").pattern("if").literal().create();
+        TokenType whileType = new TokenTypeBuilder().name("WHILE").pattern("while").literal().create();
+        TokenType tokenType = new TokenTypeBuilder().pattern("[a-z]+")
+                .keywords(ifType).keywords(whileType).create();
+        assertEquals(2, tokenType.getKeywords().size());
+        assertTrue(tokenType.getKeywords().contains(ifType));
+        assertTrue(tokenType.getKeywords().contains(whileType));
+        assertSame(whileType, tokenType.classify("while", 0, 5));
+        assertSame(tokenType, tokenType.classify("whilst", 0, 6));
+        tokenType = new TokenTypeBuilder().pattern("[a-z]+").create();
+        assertTrue(tokenType.getKeywords().isEmpty());
+        assertSame(tokenType, tokenType.classify("if", 0, 2));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testKeywordNotMatched() {
+        TokenType ifType = new TokenTypeBuilder().name("IF").pattern("if").literal().create();
+        new TokenTypeBuilder().pattern("[0-9]+").keywords(ifType).create();
+    }
+
+    @Test(expected=NullPointerException.class)
+    public void testNullKeyword() {
+        new TokenTypeBuilder().pattern("[a-z]+").keywords((TokenType) null);
+    }
+
+    @Test
+    public void testCharClass() {
+        TokenType tokenType = new TokenTypeBuilder().name("INTEGER").charClass("0-9").create();
+        assertEquals("[0-9]+", tokenType.getPattern().pattern());
+        assertNotNull(tokenType.getCharClassRun());
+        tokenType = new TokenTypeBuilder().name("HEX").charClass("0x", "0-9a-fA-F").create();
+        assertTrue(tokenType.getPattern().matcher("0xCAFE").matches());
+        assertFalse(tokenType.getPattern().matcher("0x").matches());
+        assertNotNull(tokenType.getLinearPattern());
+        tokenType = new TokenTypeBuilder().name("DOT").charClass(".", "0-9").create();
+        assertFalse(tokenType.getPattern().matcher("x5").matches());
+        // a later pattern() replaces the character class
+        tokenType = new TokenTypeBuilder().charClass("\\p{L}").pattern("\\p{L}+").create();
+        assertNull(tokenType.getLinearPattern());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testCharClassEmpty() {
+        new TokenTypeBuilder().charClass("");
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testCharClassNeedsRegex() {
+        new TokenTypeBuilder().charClass("\\p{L}").create();
+    }
+
+    @Test
+    public void testDelimited() {
+        TokenType tokenType = new TokenTypeBuilder().name("COMMENT").delimited("/*", "*/").create();
+        assertNotNull(tokenType.getDelimitedText());
+        assertTrue(tokenType.getPattern().matcher("/* a */").matches());
+        assertFalse(tokenType.getPattern().matcher("/* a */ */").matches());
+        tokenType = new TokenTypeBuilder().name("STRING").delimited("\"", "\"", '\\').create();
+        assertTrue(tokenType.getPattern().matcher("\"a\\\"b\"").matches());
+        tokenType = new TokenTypeBuilder().name("COMMENT").delimited("(*", "*)").nesting(1).create();
+        assertEquals(1, tokenType.getDelimitedText().getNesting());
+        assertTrue(tokenType.getPattern().matcher("(* (* a *) *)").matches());
+        // case folding needs the regex engine
+        tokenType = new TokenTypeBuilder().delimited("<<EOT", "EOT").ignoreCase().create();
+        assertNull(tokenType.getDelimitedText());
+        // a later pattern() replaces the delimited text
+        tokenType = new TokenTypeBuilder().delimited("/*", "*/").pattern("/\\*.*?\\*/").create();
+        assertNull(tokenType.getDelimitedText());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testDelimitedLiteral() {
+        new TokenTypeBuilder().delimited("/*", "*/").literal().create();
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testNestingNeedsDelimited() {
+        new TokenTypeBuilder().pattern("a").nesting(1).create();
+    }
 }
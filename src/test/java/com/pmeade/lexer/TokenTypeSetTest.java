@@ -0,0 +1,94 @@
+/*
+ * TokenTypeSetTest.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.pmeade.lexer;
+
+import com.pmeade.lexer.example.MathLexer;
+import java.util.Iterator;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class TokenTypeSetTest
+{
+    public TokenTypeSetTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @Test
+    public void testAlwaysSucceed() {
+        assertTrue(true);
+    }
+
+    @Test
+    public void testOf() {
+        TokenType first = MathLexer.MATH_TOKENS.get(0);
+        TokenType second = MathLexer.MATH_TOKENS.get(1);
+        TokenTypeSet set = TokenTypeSet.of(second, first, second);
+        assertEquals(2, set.size());
+        assertTrue(set.contains(first));
+        assertTrue(set.contains(second));
+        assertFalse(set.contains(MathLexer.MATH_TOKENS.get(2)));
+        Iterator<TokenType> iterator = set.iterator();
+        assertSame(second, iterator.next());
+        assertSame(first, iterator.next());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void testEquals() {
+        TokenType first = MathLexer.MATH_TOKENS.get(0);
+        TokenType second = MathLexer.MATH_TOKENS.get(1);
+        TokenTypeSet set = TokenTypeSet.of(first, second);
+        assertEquals(set, TokenTypeSet.of(second, first));
+        assertEquals(set.hashCode(), TokenTypeSet.of(second, first).hashCode());
+        assertFalse(set.equals(TokenTypeSet.of(first)));
+        assertFalse(set.equals(null));
+    }
+
+    @Test(expected=UnsupportedOperationException.class)
+    public void testImmutable() {
+        Iterator<TokenType> iterator = TokenTypeSet.of(MathLexer.MATH_TOKENS).iterator();
+        iterator.next();
+        iterator.remove();
+    }
+
+    @Test(expected=NullPointerException.class)
+    public void testNullTokenType() {
+        TokenTypeSet.of(MathLexer.MATH_TOKENS.get(0), null);
+    }
+}
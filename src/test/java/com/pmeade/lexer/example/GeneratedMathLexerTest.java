@@ -0,0 +1,122 @@
+/*
+ * GeneratedMathLexerTest.java
+ * Copyright 2014 Patrick Meade.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pmeade.lexer.example;
+
+import com.pmeade.lexer.Lexer;
+import com.pmeade.lexer.Token;
+import com.pmeade.lexer.TokenStream;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * GeneratedMathLexer is generated from MathLexer.MATH_TOKENS at build time
+ * by LexerGenerator; see pom.xml. It must produce exactly what Lexer does.
+ */
+public class GeneratedMathLexerTest
+{
+    private static final String[] INPUTS = {
+        "((0.90909/3.14159)-(8*-3))+0",
+        "0+1+2+3+4+5",
+        "0.1+1.2+2.3+3.4+4.5+5.6",
+        "(  -5.0 \n /    2 )\n",
+        "(((0.1 + 256) / (3.14 * 48)) - 5.0)",
+        "007 0.0 10.01 . 1.",
+        "(3 % 5)",
+        "1 + é",
+        "",
+    };
+
+    public GeneratedMathLexerTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() {
+    }
+    
+    @AfterClass
+    public static void tearDownClass() {
+    }
+    
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    @Test
+    public void testAlwaysSucceed() {
+        assertTrue(true);
+    }
+
+    @Test
+    public void testScan() {
+        for(String input : INPUTS) {
+            Lexer lexer = new Lexer(MathLexer.MATH_TOKENS, input);
+            TokenStream generated = new GeneratedMathLexer(input);
+            assertEquals(input, lexer.scan(), generated.scan());
+            assertEquals(input, lexer.isError(), generated.isError());
+        }
+    }
+
+    @Test
+    public void testScanNoSkip() {
+        for(String input : INPUTS) {
+            Lexer lexer = new Lexer(MathLexer.MATH_TOKENS, input);
+            TokenStream generated = new GeneratedMathLexer(input);
+            assertEquals(input, lexer.scanNoSkip(), generated.scanNoSkip());
+            assertEquals(input, lexer.isError(), generated.isError());
+        }
+    }
+
+    @Test
+    public void testSameTokenTypes() {
+        List<Token> tokens = new GeneratedMathLexer("(1+2.5)").scan();
+        assertEquals(5, tokens.size());
+        assertSame(MathLexer.MATH_TOKENS.get(4), tokens.get(0).getTokenType());
+        assertSame(MathLexer.MATH_TOKENS.get(6), tokens.get(3).getTokenType());
+        assertSame("(", tokens.get(0).getTokenText());
+    }
+
+    @Test
+    public void testReset() {
+        TokenStream generated = new GeneratedMathLexer("(3 % 5)");
+        List<Token> tokens = generated.scan();
+        assertTrue(generated.isError());
+        generated.reset();
+        assertFalse(generated.isError());
+        assertEquals(tokens, generated.scan());
+    }
+
+    @Test
+    public void testNullInput() {
+        try {
+            new GeneratedMathLexer(null);
+            fail();
+        } catch(NullPointerException e) {
+            // expected
+        }
+    }
+}